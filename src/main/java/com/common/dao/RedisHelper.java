@@ -1,14 +1,77 @@
 package com.common.dao;
 
-import com.alibaba.fastjson.JSON;
+import com.common.dao.redis.AsyncPipeline;
+import com.common.dao.redis.BloomFilter;
+import com.common.dao.redis.BloomGuard;
+import com.common.dao.redis.CircuitBreakers;
+import com.common.dao.redis.CircuitOpenException;
+import com.common.dao.redis.ClusterPipelineException;
+import com.common.dao.redis.ClusterNodeExecutor;
+import com.common.dao.redis.ClusterPipeline;
+import com.common.dao.redis.ClusterPurger;
+import com.common.dao.redis.ClusterScanner;
+import com.common.dao.redis.ClusterSlotRouter;
+import com.common.dao.redis.CounterAggregator;
+import com.common.dao.redis.EarlyRefresh;
+import com.common.dao.redis.HashScanIterator;
+import com.common.dao.redis.InvalidationBus;
+import com.common.dao.redis.InvalidationTransport;
+import com.common.dao.redis.JedisInvalidationTransport;
+import com.common.dao.redis.KeyTrafficMonitor;
+import com.common.dao.redis.LocalBloomFilter;
+import com.common.dao.redis.LockMetrics;
+import com.common.dao.redis.NamedThreadFactory;
+import com.common.dao.redis.NearCache;
+import com.common.dao.redis.PipelineOutcomeUnknownException;
+import com.common.dao.redis.RedisBloomFilter;
+import com.common.dao.redis.RedisLock;
+import com.common.dao.redis.RedisRateLimiter;
+import com.common.dao.redis.ReplicaReader;
+import com.common.dao.redis.SingleFlight;
+import com.common.dao.redis.ScanIterator;
+import com.common.dao.redis.ScriptRegistry;
+import com.common.dao.redis.StaleCache;
+import com.common.dao.redis.WriteBehindBuffer;
+import com.common.dao.redis.codec.DeflateCompressor;
+import com.common.dao.redis.codec.JsonRedisCodec;
+import com.common.dao.redis.codec.RedisCodec;
+import com.common.dao.redis.codec.RedisValueSerializer;
+import com.common.dao.redis.metrics.MetricsSink;
+import com.common.dao.redis.metrics.PoolStats;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.SafeEncoder;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,10 +85,36 @@ import org.slf4j.LoggerFactory;
  *
  * 					 type定义
  * 					 Type type = new TypeReference<TestEntity<SampleEntity>>() {}.getType();
+ *
+ * 					 值的编码由 codec 决定（默认json），读取时按值的版本头识别编码，切换codec后旧数据仍可读
  */
 public class RedisHelper {
     protected transient final Logger logger = LoggerFactory.getLogger(getClass());
 
+    /**
+     * 布隆过滤器：不使用、进程内、redis位图
+     */
+    public static final String BLOOM_NONE = "none";
+    public static final String BLOOM_LOCAL = "local";
+    public static final String BLOOM_REDIS = "redis";
+
+    /**
+     * 读偏好：只读主节点、优先从节点、延迟最低的节点
+     */
+    public static final String READ_MASTER = "master";
+    public static final String READ_REPLICA = "replica";
+    public static final String READ_NEAREST = "nearest";
+
+    /**
+     * 值等于 ARGV[1] 时删除
+     */
+    private static final String COMPARE_AND_DELETE = "lua/compare_and_delete.lua";
+
+    /**
+     * 值等于 ARGV[1] 时写入 ARGV[2]
+     */
+    private static final String COMPARE_AND_SET = "lua/compare_and_set.lua";
+
     /**
      * 操作域
      */
@@ -37,302 +126,3246 @@ public class RedisHelper {
     public JedisCluster jedisCluster;
 
     /**
-     * 读数据加域
-     *
-     * @param key
-     * @return
+     * 值编解码器，默认为原json格式
      */
-    public <T> T get(final String key, Type type) {
-        final String fullkey = domain + ":" + key;
-        return getB(fullkey, type);
-    }
+    private RedisCodec codec = new JsonRedisCodec();
 
     /**
-     * 读数据
-     *
-     * @param key
-     * @return
+     * 额外可读取的编解码器（迁移期间使用）
      */
-    public <T> T getB(final String fullkey,Type type) {
+    private List<RedisCodec> codecs;
 
-        // 得到value
-        if (jedisCluster.exists(fullkey)) {
-            String reslut = jedisCluster.get(fullkey);
-            return JSON.parseObject(reslut, type);
-        } else {
-            return null;
-        }
-    }
+    /**
+     * 编码后超过该字节数的值压缩写入，0 表示不压缩
+     */
+    private int compressThreshold = 0;
 
     /**
-     * map 取值 加域
-     *
-     * @param key
-     * @param field
-     * @return
+     * 压缩级别 1~9
      */
-    public <T> T hget(final String key, final String field,Type type) {
-        String fullkey = domain + ":" + key;
-        return hgetB(fullkey, field, type);
-    }
+    private int compressLevel = 1;
 
     /**
-     * map 取值
-     *
-     * @param fullkey
-     * @param field
-     * @return
+     * 值序列化，首次使用时创建
      */
-    public <T> T hgetB(final String fullkey, final String field,Type type) {
+    private volatile RedisValueSerializer serializer;
 
-        // 得到value
-        if (jedisCluster.exists(fullkey)) {
-            String result = jedisCluster.hget(fullkey, field);
-            return JSON.parseObject(result, type);
-        } else {
-            return null;
-        }
+    /**
+     * 二进制单key命令执行器，首次使用时创建
+     */
+    private volatile ClusterNodeExecutor nodeExecutor;
 
-    }
+    /**
+     * 是否启用本地缓存
+     */
+    private boolean nearCacheEnabled = false;
 
     /**
-     * 删除数据
-     * 返回值为：被删除 key 的数量
-     * @param key
+     * 本地缓存最大条数
      */
-    public Long hdel(final String key, final String field) {
-        final String fullkey = domain + ":" + key;
-        return hdelb(fullkey, field);
-    }
+    private long nearCacheMaxEntries = 10000;
 
     /**
-     * 删除原始键值
-     *
-     * @param key
+     * 本地缓存最大存储字节数，0 表示按条数限制
      */
-    public Long hdelb(final String fullkey, final String field) {
+    private long nearCacheMaxWeight = 0;
 
-    	Long delNum = 0L;
-        if (jedisCluster.exists(fullkey)) {
-        	delNum = jedisCluster.del(fullkey);
-        }
+    /**
+     * 本地缓存最长存活毫秒数，不超过redis剩余过期时间
+     */
+    private long nearCacheTtlMillis = 60000;
 
-        return delNum;
-    }
+    /**
+     * 本地缓存，首次使用时创建
+     */
+    private volatile NearCache nearCache;
 
     /**
-     * map 赋值 加域
-     * 返回值 如果 field 是哈希表中的一个新建域，并且值设置成功，返回 1 。
-	 *     如果哈希表中域 field 已经存在且旧值已被新值覆盖，返回 0 。
-     * @param key
-     * @param field
-     * @param value
+     * 布隆过滤器模式，用于 bloomBlocksLoad：none 不使用；
+     * local 进程内，只包含本进程写入及重建时扫描到的key，只适用于单个进程写入的数据；
+     * redis 保存在redis位图中多进程共享
+     * get 不查询布隆过滤器，过滤器不会挡住其他进程或客户端写入的key
      */
-    public Long hset(final String key, final String field, Object value) {
-        String fullkey = domain + ":" + key;
-        return hsetb(fullkey, field, JSON.toJSONString(value));
-    }
+    private String bloomMode = BLOOM_NONE;
 
     /**
-     * map 赋值
-	 *
-     * @param fullkey
-     * @param field
-     * @param value
-     * @return
-	 */
-    public Long hsetb(final String fullkey, final String field, final String value) {
+     * 布隆过滤器预计key数
+     */
+    private long bloomExpectedKeys = 1000000;
 
-        return jedisCluster.hset(fullkey, field, value);
+    /**
+     * 布隆过滤器误判率
+     */
+    private double bloomFpp = 0.01;
 
-    }
+    /**
+     * 布隆过滤器重建间隔毫秒数
+     */
+    private long bloomRebuildMillis = 3600000;
 
     /**
-     * 取map 加域
-     *
-     * @param key
-     * @return
+     * 布隆过滤器重建时的key来源，为null时扫描域下所有key
      */
-    public Map<String, String> hgetMap(final String key) {
-        String fullkey = domain + ":" + key;
-        return hgetMapB(fullkey);
-    }
+    private BloomGuard.KeySource bloomKeySource;
 
     /**
-     * 取map
-     *
-     * @param fullkey
-     * @return
+     * getOrLoad 时布隆过滤器中不存在的key直接返回null，不调用loader
+     * 需要通过 bloomKeySource 或 addToBloom 把所有有效key（例如数据库中全部id）加入过滤器
      */
-    public Map<String, String> hgetMapB(final String fullkey) {
-        Map<String, String> result = new HashMap<String, String>();
-        result = jedisCluster.hgetAll(fullkey);
-        return result;
-    }
+    private boolean bloomBlocksLoad = false;
 
     /**
-     * 写数据加域
-     * SET 在设置操作成功完成时，返回 OK 。
-	 * 如果设置了 NX 或者 XX ，但因为条件没达到而造成设置操作未执行，那么命令返回空批量回复（NULL Bulk Reply）。
-     * @param key
-     * @param value
+     * 布隆过滤器，首次使用时创建
      */
-    public String set(final String key, Object value) {
-        final String fullkey = domain + ":" + key;
-        return this.setB(fullkey, JSON.toJSONString(value));
-    }
+    private volatile BloomGuard bloomGuard;
 
     /**
-     * 写数据
-     *
-     * @param key
-     * @param value
+     * 操作指标输出，为null时不记录
      */
-    public String setB(final String fullkey, final String value) {
-        return  jedisCluster.set(fullkey, value);
-    }
+    private MetricsSink metricsSink;
+
+    /**
+     * 连接池状态上报间隔毫秒数
+     */
+    private long metricsReportMillis = 60000;
 
+    /**
+     * 连接池状态上报，配置 metricsSink 时在首次记录指标时启动
+     */
+    private volatile ScheduledExecutorService metricsReporter;
 
     /**
-     * 删除数据
-     * 返回值：被删除 key 的数量
-     * @param key
+     * 热点key统计抽样率，每 N 次访问抽样一次，0 表示不统计热点key、大key
      */
-    public Long del(final String key) {
-        final String fullkey = domain + ":" + key;
-        return delB(fullkey);
-    }
+    private int keyMonitorSampleRate = 0;
 
     /**
-     * 删除原始键值
-     *
-     * @param key
+     * 保留的热点key、大key个数
      */
-    public Long delB(final String fullkey) {
-        return jedisCluster.del(fullkey);
-    }
+    private int keyMonitorTopK = 50;
 
     /**
-     * 设置过期加域
-     *
-     * @param key
-     * @param time
+     * 热点key统计周期毫秒数，每个周期输出一次日志
      */
-    public Long expire(final String key, final int time) {
-        final String fullkey = domain + ":" + key;
-        return expireB(fullkey, time);
-    }
+    private long keyMonitorPeriodMillis = 60000;
 
     /**
-     * 设置过期
-     * 返回值：设置成功返回 1 。
-			当 key 不存在或者不能为 key 设置生存时间时，返回 0 。
-     * @param key
-     * @param time
+     * 值达到该字节数视为大key
      */
-    public Long expireB(final String fullkey, final int time) {
-        return jedisCluster.expire(fullkey, time);
-    }
+    private int bigKeyThreshold = 1024 * 1024;
 
     /**
-     * 得到查找键
-     *
-     * @param query
-     * @return
+     * 热点key本地缓存毫秒数，0 表示不提升热点key到本地缓存
+     * 该缓存不接收其他进程的失效通知，其他进程修改后最长在该时间内读到旧值
      */
-    public HashSet<String> find(final String query) {
-        final String fullQuery = domain + ":" + query;
-        return findB(fullQuery);
-    }
+    private long hotKeyPromoteTtlMillis = 0;
 
     /**
-     * 得到查找键
-     *
-     * @param query
-     * @return keys
+     * 周期内估计访问次数达到该值的key视为热点
      */
-    public HashSet<String> findB(final String fullQuery) {
+    private long hotKeyPromoteMinCount = 1000;
 
-        HashSet<String> keys = new HashSet<String>();
-        Map<String, JedisPool> clusterNodes = jedisCluster.getClusterNodes();
+    /**
+     * 热点key、大key统计，首次使用时创建
+     */
+    private volatile KeyTrafficMonitor keyMonitor;
 
-        for (String k : clusterNodes.keySet()) {
-            JedisPool jp = clusterNodes.get(k);
-            Jedis connection = jp.getResource();
-            try {
-                keys.addAll(connection.keys(fullQuery));
-            } catch (Exception e) {
-            	logger.error("redis find error", e);
-            } finally {
-                connection.close();
-            }
-        }
+    /**
+     * 按节点熔断，为null时不熔断
+     */
+    private CircuitBreakers circuitBreakers;
 
-        return keys;
-    }
+    /**
+     * 降级数据最多保存的字节数，0 不保存
+     * 读命令连接失败或节点熔断时返回最后一次读到的值
+     */
+    private long staleMaxBytes = 0;
 
-	/**
-	 * 以秒为单位，返回给定 key 的剩余生存时间(TTL, time to live)。
-	 * 时间复杂度：O(1)
-	 * 返回值：
-	 * 当 key 不存在时，返回 -2 。
-	 * 当 key 存在但没有设置剩余生存时间时，返回 -1 。
-	 * 否则，以秒为单位，返回 key 的剩余生存时间。
-	 *
-	 * @param key
-	 * @return
-	 */
-	public Long ttl(final String key) {
-		final String fullQuery = domain + ":" + key;
-		return ttlb(fullQuery);
-	}
+    /**
+     * 降级数据在最后一次读取后保留的毫秒数
+     */
+    private long staleTtlMillis = 3600000;
 
-	/**
-	 * 以秒为单位，返回给定 key 的剩余生存时间(TTL, time to live)。
-	 * 时间复杂度：O(1)
-	 * 返回值：
-	 * 当 key 不存在时，返回 -2 。
-	 * 当 key 存在但没有设置剩余生存时间时，返回 -1 。
-	 * 否则，以秒为单位，返回 key 的剩余生存时间。
-	 *
-	 * @param key
-	 * @return
-	 */
-	public Long ttlb(final String fullkey) {
-		return jedisCluster.ttl(fullkey);
-	}
+    /**
+     * 降级数据，首次使用时创建
+     */
+    private volatile StaleCache staleCache;
 
     /**
-     * 清除域下所有信息
-     * 返回值：删除个数
+     * get/hget/ttl/scan 的读偏好：master 只读主节点；replica 优先从节点；nearest 主从节点中延迟最低者
+     * 从节点数据可能落后于主节点，只适合可以容忍短暂旧数据的域
      */
-    public Integer clear() {
-        final String key = "*";
-        HashSet<String> keys = find(key);
-        for (String ki : keys) {
-            delB(ki);
-        }
-        return keys.size();
-    }
+    private String readFrom = READ_MASTER;
 
+    /**
+     * 本域可容忍的从节点数据落后毫秒数，超过时读主节点；小于0不检查
+     * 按主节点 master_repl_offset 与从节点 offset 估算，精度为 replicaProbeMillis，从节点每秒确认一次 offset，
+     * 因此有持续写入时健康的从节点也会估算出约1秒的落后，容忍值不宜小于 1000 + replicaProbeMillis
+     */
+    private long replicaMaxLagMillis = 2000;
 
     /**
-     * get/set
+     * 从节点延迟、复制延迟探测间隔毫秒数
      */
-    public String getDomain() {
-        return domain;
-    }
+    private long replicaProbeMillis = 1000;
 
-    public void setDomain(String domain) {
-        this.domain = domain;
-    }
+    /**
+     * 从节点连接池配置，为null时使用默认配置
+     */
+    private GenericObjectPoolConfig replicaPoolConfig;
 
-    public JedisCluster getJedisCluster() {
-        return jedisCluster;
-    }
+    /**
+     * 从节点读，首次使用时创建
+     */
+    private volatile ReplicaReader replicaReader;
 
-    public void setJedisCluster(JedisCluster jedisCluster) {
-        this.jedisCluster = jedisCluster;
+    /**
+     * 本地聚合计数器定时写入间隔毫秒数
+     */
+    private long counterFlushMillis = 1000;
+
+    /**
+     * 本地聚合计数器累加次数达到该值时立即写入，0 表示只定时写入
+     */
+    private long counterFlushEvents = 10000;
+
+    /**
+     * 本地聚合计数器，首次使用时创建
+     */
+    private volatile CounterAggregator counterAggregator;
+
+    /**
+     * 延迟写入定时写入间隔毫秒数
+     */
+    private long writeBehindFlushMillis = 100;
+
+    /**
+     * 延迟写入缓冲条数达到该值时立即写入，0 表示只定时写入
+     */
+    private int writeBehindFlushEntries = 1000;
+
+    /**
+     * 延迟写入缓冲最大条数
+     */
+    private int writeBehindMaxEntries = 100000;
+
+    /**
+     * 延迟写入缓冲已满时最多等待的毫秒数，超过抛出 RejectedExecutionException
+     */
+    private long writeBehindMaxBlockMillis = 100;
+
+    /**
+     * 延迟写入缓冲，首次使用时创建
+     */
+    private volatile WriteBehindBuffer writeBehindBuffer;
+
+    /**
+     * 分布式锁统计
+     */
+    private final LockMetrics lockMetrics = new LockMetrics();
+
+    /**
+     * 分布式锁续期线程池，首次使用时创建
+     */
+    private volatile ScheduledExecutorService lockRenewer;
+
+    /**
+     * lua脚本注册表，首次使用时创建
+     */
+    private volatile ScriptRegistry scriptRegistry;
+
+    /**
+     * 是否通过 pub/sub 通知其他JVM失效本地缓存
+     */
+    private boolean nearCacheBroadcast = true;
+
+    /**
+     * 失效消息合并发送间隔毫秒数
+     */
+    private long nearCacheBroadcastIntervalMillis = 5;
+
+    /**
+     * 失效消息通道，默认为 redis pub/sub
+     */
+    private InvalidationTransport invalidationTransport;
+
+    /**
+     * 本地缓存跨JVM失效
+     */
+    private volatile InvalidationBus invalidationBus;
+
+    /**
+     * 带过期时间写入时的随机偏移百分比，0 表示不偏移
+     * 例如 10 表示实际过期时间在 [ttl, ttl * 1.1] 之间，避免批量写入的key同时过期
+     */
+    private int ttlJitterPercent = 0;
+
+    /**
+     * getOrLoad 同一key的并发加载合并
+     */
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * getOrLoad 是否使用redis锁保证多个JVM只有一个在加载
+     */
+    private boolean loadLockEnabled = false;
+
+    /**
+     * getOrLoad redis锁过期毫秒数，未拿到锁时最多等待同样时长
+     */
+    private long loadLockMillis = 3000;
+
+    /**
+     * getOrLoad 提前刷新系数，0 表示不提前刷新
+     */
+    private double earlyRefreshBeta = 1.0;
+
+    /**
+     * getOrLoad 提前刷新，首次使用时创建
+     */
+    private volatile EarlyRefresh earlyRefresh;
+
+    /**
+     * getOrLoad 后台刷新线程池，首次使用时创建
+     */
+    private volatile ThreadPoolExecutor refreshExecutor;
+
+    /**
+     * 单次往返读取节省的网络往返次数（原 exists + get 两次请求）
+     */
+    private final AtomicLong savedRoundTrips = new AtomicLong();
+
+    /**
+     * 批量操作并行线程数
+     */
+    private int pipelineThreads = 8;
+
+    /**
+     * 批量操作执行器，首次使用时创建
+     */
+    private volatile ClusterPipeline clusterPipeline;
+
+    /**
+     * SCAN 每页建议条数
+     */
+    private int scanCount = 1000;
+
+    /**
+     * 扫描执行器，按读偏好扫描从节点，首次使用时创建
+     */
+    private volatile ClusterScanner clusterScanner;
+
+    /**
+     * 只扫描主节点的扫描执行器，用于清除与布隆过滤器重建，读偏好为 master 时与 clusterScanner 相同
+     */
+    private volatile ClusterScanner masterScanner;
+
+    /**
+     * 清除域时每批删除的key数
+     */
+    private int purgeBatchSize = 500;
+
+    /**
+     * 清除域时每秒最多删除的key数，0 表示不限制
+     */
+    private int purgeMaxKeysPerSecond = 0;
+
+    /**
+     * 清除执行器，首次使用时创建
+     */
+    private volatile ClusterPurger clusterPurger;
+
+    /**
+     * 异步操作线程数
+     */
+    private int asyncThreads = 4;
+
+    /**
+     * 异步操作排队命令上限
+     */
+    private int asyncQueueCapacity = 10000;
+
+    /**
+     * 异步操作单次pipeline最多合并的命令数
+     */
+    private int asyncMaxBatch = 128;
+
+    /**
+     * 异步执行器，首次使用时创建
+     */
+    private volatile AsyncPipeline asyncPipeline;
+
+    /**
+     * 读数据加域
+     *
+     * @param key
+     * @return
+     */
+    public <T> T get(final String key, Type type) {
+        final String fullkey = domain + ":" + key;
+        return getB(fullkey, type);
+    }
+
+    /**
+     * 读数据
+     *
+     * @param key
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getB(final String fullkey,Type type) {
+        if (writeBehindBuffer != null) {
+            byte[] buffered = writeBehindBuffer.get(fullkey, null);
+            if (buffered != null) {
+                return decode(buffered, type);
+            }
+        }
+        NearCache near = localCache(fullkey);
+        if (near != null) {
+            NearCache.Entry entry = near.get(fullkey, type);
+            if (entry != null) {
+                record(fullkey, null);
+                return (T) entry.getValue();
+            }
+            long stamp = near.stamp(fullkey);
+            long start = System.nanoTime();
+            TtlValue loaded = getWithTtl(fullkey, true);
+            long network = System.nanoTime() - start;
+            saved(loaded.data);
+            record(fullkey, loaded.data);
+            T value = decode(loaded.data, type);
+            metric("get", start, System.nanoTime() - start - network, loaded.data);
+            near.put(fullkey, stamp, value, type, loaded.size(), loaded.pttl);
+            return value;
+        }
+
+        // 得到value，不存在时返回null，无需先exists
+        final byte[] rawkey = SafeEncoder.encode(fullkey);
+        long start = System.nanoTime();
+        byte[] reslut;
+        try {
+            reslut = read(fullkey, new ClusterNodeExecutor.NodeCommand<byte[]>() {
+                @Override
+                public byte[] execute(Jedis connection) {
+                    return connection.get(rawkey);
+                }
+            });
+            remember(fullkey, reslut);
+        } catch (JedisConnectionException e) {
+            reslut = stale(fullkey, e);
+        }
+        long network = System.nanoTime() - start;
+        saved(reslut);
+        record(fullkey, reslut);
+        T value = decode(reslut, type);
+        metric("get", start, System.nanoTime() - start - network, reslut);
+        return value;
+    }
+
+    /**
+     * 读数据加域，不存在时调用loader加载并写入（cache-aside）
+     * 同一JVM内同一key只有一个线程执行loader，其余线程等待其结果；
+     * loadLockEnabled 时通过redis锁使多个JVM也只有一个在加载；
+     * 热点key按加载耗时在过期前概率性地后台刷新
+     * loader返回null时不写入
+     *
+     * @param key
+     * @param type
+     * @param ttl 过期秒数
+     * @param loader
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getOrLoad(final String key, final Type type, final int ttl, final Callable<T> loader) {
+        final String fullkey = domain + ":" + key;
+        if (writeBehindBuffer != null) {
+            byte[] buffered = writeBehindBuffer.get(fullkey, null);
+            if (buffered != null) {
+                return decode(buffered, type);
+            }
+        }
+        NearCache near = getNearCache();
+        if (near != null) {
+            NearCache.Entry entry = near.get(fullkey, type);
+            if (entry != null) {
+                return (T) entry.getValue();
+            }
+        }
+
+        long stamp = near == null ? 0 : near.stamp(fullkey);
+        TtlValue loaded = getWithTtl(fullkey);
+        saved(loaded.data);
+        if (loaded.stale) {
+            // 降级数据，不刷新、不加载
+            return decode(loaded.data, type);
+        }
+        if (loaded.data != null) {
+            T value = decode(loaded.data, type);
+            if (getEarlyRefresh().shouldRefresh(fullkey, loaded.pttl)) {
+                singleFlight.executeAsync(fullkey, new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        return loadAndSet(fullkey, ttl, loader);
+                    }
+                }, getRefreshExecutor());
+            } else if (near != null) {
+                near.put(fullkey, stamp, value, type, loaded.size(), loaded.pttl);
+            }
+            return value;
+        }
+
+        if (bloomBlocksLoad && definitelyAbsent(fullkey)) {
+            // 布隆过滤器中不存在的key视为不存在，不调用loader
+            return null;
+        }
+        try {
+            return singleFlight.execute(fullkey, new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    if (!loadLockEnabled) {
+                        return loadAndSet(fullkey, ttl, loader);
+                    }
+                    return lockedLoad(fullkey, type, ttl, loader);
+                }
+            });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("redis getOrLoad error, key:" + fullkey, e);
+        }
+    }
+
+    /**
+     * 持有redis锁时加载，未拿到锁时等待其他JVM写入
+     */
+    private <T> T lockedLoad(final String fullkey, final Type type, final int ttl, final Callable<T> loader) throws Exception {
+        final String lockKey = fullkey + ":load-lock";
+        final String token = UUID.randomUUID().toString();
+        long deadline = System.currentTimeMillis() + loadLockMillis;
+        long backoff = 10;
+        while (!"OK".equals(jedisCluster.set(lockKey, token, "NX", "PX", loadLockMillis))) {
+            // 其他JVM正在加载，等待其写入
+            Thread.sleep(backoff);
+            backoff = Math.min(backoff * 2, 200);
+            T value = getB(fullkey, type);
+            if (value != null) {
+                return value;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                logger.warn("redis getOrLoad lock wait timeout, load anyway, key:" + fullkey);
+                return loadAndSet(fullkey, ttl, loader);
+            }
+        }
+        try {
+            // 拿到锁后再读一次，可能刚被其他JVM写入
+            T value = getB(fullkey, type);
+            if (value != null) {
+                return value;
+            }
+            return loadAndSet(fullkey, ttl, loader);
+        } finally {
+            ScriptRegistry scripts = getScriptRegistry();
+            scripts.eval(scripts.load(COMPARE_AND_DELETE), Collections.singletonList(lockKey),
+                    Collections.singletonList(token));
+        }
+    }
+
+    /**
+     * 调用loader并带过期时间写入
+     */
+    private <T> T loadAndSet(final String fullkey, final int ttl, final Callable<T> loader) throws Exception {
+        long start = System.currentTimeMillis();
+        T value = loader.call();
+        getEarlyRefresh().record(fullkey, System.currentTimeMillis() - start);
+        if (value != null) {
+            final byte[] rawkey = SafeEncoder.encode(fullkey);
+            final byte[] data = encode(value);
+            bloomPut(fullkey);
+            getNodeExecutor().execute(fullkey, new ClusterNodeExecutor.NodeCommand<String>() {
+                @Override
+                public String execute(Jedis connection) {
+                    return connection.setex(rawkey, jitter(ttl), data);
+                }
+            });
+            invalidateNear(fullkey);
+        }
+        return value;
+    }
+
+    /**
+     * map 取值 加域
+     *
+     * @param key
+     * @param field
+     * @return
+     */
+    public <T> T hget(final String key, final String field,Type type) {
+        String fullkey = domain + ":" + key;
+        return hgetB(fullkey, field, type);
+    }
+
+    /**
+     * map 取值
+     *
+     * @param fullkey
+     * @param field
+     * @return
+     */
+    public <T> T hgetB(final String fullkey, final String field,Type type) {
+        if (writeBehindBuffer != null) {
+            byte[] buffered = writeBehindBuffer.get(fullkey, field);
+            if (buffered != null) {
+                return decode(buffered, type);
+            }
+        }
+
+        // 得到value，key或field不存在时返回null，无需先exists
+        final byte[] rawkey = SafeEncoder.encode(fullkey);
+        final byte[] rawfield = SafeEncoder.encode(field);
+        long start = System.nanoTime();
+        byte[] result = read(fullkey, new ClusterNodeExecutor.NodeCommand<byte[]>() {
+            @Override
+            public byte[] execute(Jedis connection) {
+                return connection.hget(rawkey, rawfield);
+            }
+        });
+        long network = System.nanoTime() - start;
+        saved(result);
+        record(fullkey, result);
+        T value = decode(result, type);
+        metric("hget", start, System.nanoTime() - start - network, result);
+        return value;
+    }
+
+    /**
+     * map 批量取值 加域
+     * 只读取并反序列化指定的field，返回值与fields顺序一致，不存在的field为null
+     *
+     * @param key
+     * @param fields
+     * @param type
+     * @return
+     */
+    public <T> List<T> hmget(final String key, final Collection<String> fields, Type type) {
+        String fullkey = domain + ":" + key;
+        return hmgetB(fullkey, fields, type);
+    }
+
+    /**
+     * map 批量取值
+     *
+     * @param fullkey
+     * @param fields
+     * @param type
+     * @return
+     */
+    public <T> List<T> hmgetB(final String fullkey, final Collection<String> fields, Type type) {
+        if (fields == null || fields.isEmpty()) {
+            return new ArrayList<T>();
+        }
+        final byte[] rawkey = SafeEncoder.encode(fullkey);
+        final byte[][] rawfields = new byte[fields.size()][];
+        int i = 0;
+        for (String field : fields) {
+            rawfields[i++] = SafeEncoder.encode(field);
+        }
+        long start = System.nanoTime();
+        List<byte[]> replies = getNodeExecutor().execute(fullkey, new ClusterNodeExecutor.NodeCommand<List<byte[]>>() {
+            @Override
+            public List<byte[]> execute(Jedis connection) {
+                return connection.hmget(rawkey, rawfields);
+            }
+        });
+        long network = System.nanoTime() - start;
+        List<T> result = new ArrayList<T>(replies.size());
+        int bytes = 0;
+        Iterator<String> names = fields.iterator();
+        for (byte[] reply : replies) {
+            // 延迟写入缓冲中的值优先
+            byte[] buffered = writeBehindBuffer == null ? null : writeBehindBuffer.get(fullkey, names.next());
+            if (buffered != null) {
+                reply = buffered;
+            }
+            bytes += reply == null ? 0 : reply.length;
+            result.add(this.<T>decode(reply, type));
+        }
+        metric("hmget", start, System.nanoTime() - start - network, bytes);
+        return result;
+    }
+
+    /**
+     * map 批量赋值 加域
+     * 一次往返写入多个field，未指定的field保持不变
+     *
+     * @param key
+     * @param values field -> value
+     * @return OK
+     */
+    public String hmset(final String key, final Map<String, Object> values) {
+        String fullkey = domain + ":" + key;
+        return hmsetB(fullkey, values);
+    }
+
+    /**
+     * map 批量赋值
+     *
+     * @param fullkey
+     * @param values field -> value
+     * @return OK
+     */
+    public String hmsetB(final String fullkey, final Map<String, Object> values) {
+        if (values == null || values.isEmpty()) {
+            return "OK";
+        }
+        final byte[] rawkey = SafeEncoder.encode(fullkey);
+        long start = System.nanoTime();
+        final Map<byte[], byte[]> hash = new LinkedHashMap<byte[], byte[]>();
+        int bytes = 0;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            discardBehind(fullkey, entry.getKey());
+            byte[] data = encode(entry.getValue());
+            bytes += data.length;
+            hash.put(SafeEncoder.encode(entry.getKey()), data);
+        }
+        long codec = System.nanoTime() - start;
+        String reply = getNodeExecutor().execute(fullkey, new ClusterNodeExecutor.NodeCommand<String>() {
+            @Override
+            public String execute(Jedis connection) {
+                return connection.hmset(rawkey, hash);
+            }
+        });
+        metric("hmset", start, codec, bytes);
+        return reply;
+    }
+
+    /**
+     * 删除map中的field 加域
+     * 返回值为：被删除 field 的数量
+     * 保留单个field的签名，已按该签名编译的调用方无需重新编译
+     * @param key
+     * @param field
+     */
+    public Long hdel(final String key, final String field) {
+        return hdel(key, new String[]{field});
+    }
+
+    /**
+     * 删除map中的field 加域
+     * 返回值为：被删除 field 的数量
+     * @param key
+     * @param fields
+     */
+    public Long hdel(final String key, final String... fields) {
+        final String fullkey = domain + ":" + key;
+        return hdelb(fullkey, fields);
+    }
+
+    /**
+     * 删除map中的单个field
+     *
+     * @param fullkey
+     * @param field
+     */
+    public Long hdelb(final String fullkey, final String field) {
+        return hdelb(fullkey, new String[]{field});
+    }
+
+    /**
+     * 删除map中的field，删除整个map请使用 delB
+     *
+     * @param fullkey
+     * @param fields
+     */
+    public Long hdelb(final String fullkey, final String... fields) {
+        if (fields == null || fields.length == 0) {
+            return 0L;
+        }
+        for (String field : fields) {
+            discardBehind(fullkey, field);
+        }
+        Long delNum = jedisCluster.hdel(fullkey, fields);
+        invalidateNear(fullkey);
+
+        return delNum;
+    }
+
+    /**
+     * map 赋值 加域
+     * 返回值 如果 field 是哈希表中的一个新建域，并且值设置成功，返回 1 。
+	 *     如果哈希表中域 field 已经存在且旧值已被新值覆盖，返回 0 。
+     * @param key
+     * @param field
+     * @param value
+     */
+    public Long hset(final String key, final String field, Object value) {
+        String fullkey = domain + ":" + key;
+        final byte[] rawkey = SafeEncoder.encode(fullkey);
+        final byte[] rawfield = SafeEncoder.encode(field);
+        long start = System.nanoTime();
+        final byte[] data = encode(value);
+        long codec = System.nanoTime() - start;
+        discardBehind(fullkey, field);
+        record(fullkey, data);
+        Long reply = getNodeExecutor().execute(fullkey, new ClusterNodeExecutor.NodeCommand<Long>() {
+            @Override
+            public Long execute(Jedis connection) {
+                return connection.hset(rawkey, rawfield, data);
+            }
+        });
+        metric("hset", start, codec, data);
+        return reply;
+    }
+
+    /**
+     * map 赋值 加域并设置整个map的过期时间
+     * HSET 与 EXPIRE 在同一pipeline中发送，一次往返
+     *
+     * @param key
+     * @param field
+     * @param value
+     * @param ttl 过期秒数，小于等于0时不设置过期
+     * @return 同 hset
+     */
+    public Long hset(final String key, final String field, Object value, final int ttl) {
+        String fullkey = domain + ":" + key;
+        final byte[] rawkey = SafeEncoder.encode(fullkey);
+        final byte[] rawfield = SafeEncoder.encode(field);
+        long start = System.nanoTime();
+        final byte[] data = encode(value);
+        long codec = System.nanoTime() - start;
+        discardBehind(fullkey, field);
+        record(fullkey, data);
+        final int seconds = jitter(ttl);
+        Long result = getNodeExecutor().execute(fullkey, new ClusterNodeExecutor.NodeCommand<Long>() {
+            @Override
+            public Long execute(Jedis connection) {
+                Pipeline pipeline = connection.pipelined();
+                Response<Long> reply = pipeline.hset(rawkey, rawfield, data);
+                Response<Long> expired = seconds > 0 ? pipeline.expire(rawkey, seconds) : null;
+                pipeline.sync();
+                if (expired != null) {
+                    expired.get();
+                }
+                return reply.get();
+            }
+        });
+        metric("hset", start, codec, data);
+        return result;
+    }
+
+    /**
+     * map 赋值
+	 *
+     * @param fullkey
+     * @param field
+     * @param value
+     * @return
+	 */
+    public Long hsetb(final String fullkey, final String field, final String value) {
+
+        discardBehind(fullkey, field);
+        return jedisCluster.hset(fullkey, field, value);
+
+    }
+
+    /**
+     * 取map 加域
+     *
+     * @param key
+     * @return
+     */
+    public Map<String, String> hgetMap(final String key) {
+        String fullkey = domain + ":" + key;
+        return hgetMapB(fullkey);
+    }
+
+    /**
+     * 取map
+     *
+     * @param fullkey
+     * @return
+     */
+    public Map<String, String> hgetMapB(final String fullkey) {
+        Map<String, String> result = new HashMap<String, String>();
+        result = jedisCluster.hgetAll(fullkey);
+        return result;
+    }
+
+    /**
+     * 分页扫描map 加域
+     * 按游标逐页读取，不会一次把整个map读入内存，大map请用此方法代替 hgetMap
+     *
+     * @param key
+     * @param pattern field 匹配模式，为null时不过滤
+     * @param count 每页建议条数
+     * @param type value 类型
+     * @return
+     */
+    public <T> HashScanIterator<T> hscan(final String key, final String pattern, final int count, Type type) {
+        String fullkey = domain + ":" + key;
+        return hscanB(fullkey, pattern, count, type);
+    }
+
+    /**
+     * 分页扫描map
+     *
+     * @param fullkey
+     * @param pattern field 匹配模式，为null时不过滤
+     * @param count 每页建议条数
+     * @param type value 类型
+     * @return
+     */
+    public <T> HashScanIterator<T> hscanB(final String fullkey, final String pattern, final int count, Type type) {
+        return new HashScanIterator<T>(getNodeExecutor(), fullkey, pattern, count, this.<T>decoder(type));
+    }
+
+    /**
+     * 写数据加域
+     * SET 在设置操作成功完成时，返回 OK 。
+	 * 如果设置了 NX 或者 XX ，但因为条件没达到而造成设置操作未执行，那么命令返回空批量回复（NULL Bulk Reply）。
+     * @param key
+     * @param value
+     */
+    public String set(final String key, Object value) {
+        final String fullkey = domain + ":" + key;
+        final byte[] rawkey = SafeEncoder.encode(fullkey);
+        long start = System.nanoTime();
+        final byte[] data = encode(value);
+        long codec = System.nanoTime() - start;
+        discardBehind(fullkey);
+        record(fullkey, data);
+        bloomPut(fullkey);
+        String reply = getNodeExecutor().execute(fullkey, new ClusterNodeExecutor.NodeCommand<String>() {
+            @Override
+            public String execute(Jedis connection) {
+                return connection.set(rawkey, data);
+            }
+        });
+        invalidateNear(fullkey);
+        metric("set", start, codec, data);
+        return reply;
+    }
+
+    /**
+     * 写数据加域并设置过期时间
+     * 通过 SETEX 一次完成，不会出现写入成功但未设置过期的情况
+     * 过期时间按 ttlJitterPercent 加随机偏移
+     *
+     * @param key
+     * @param value
+     * @param ttl 过期秒数，小于等于0时不过期
+     * @return OK
+     */
+    public String set(final String key, Object value, final int ttl) {
+        final String fullkey = domain + ":" + key;
+        final byte[] rawkey = SafeEncoder.encode(fullkey);
+        long start = System.nanoTime();
+        final byte[] data = encode(value);
+        long codec = System.nanoTime() - start;
+        discardBehind(fullkey);
+        record(fullkey, data);
+        bloomPut(fullkey);
+        final int seconds = jitter(ttl);
+        String reply = getNodeExecutor().execute(fullkey, new ClusterNodeExecutor.NodeCommand<String>() {
+            @Override
+            public String execute(Jedis connection) {
+                return seconds > 0 ? connection.setex(rawkey, seconds, data) : connection.set(rawkey, data);
+            }
+        });
+        invalidateNear(fullkey);
+        metric("set", start, codec, data);
+        return reply;
+    }
+
+    /**
+     * 写数据
+     *
+     * @param key
+     * @param value
+     */
+    public String setB(final String fullkey, final String value) {
+        discardBehind(fullkey);
+        bloomPut(fullkey);
+        String reply = jedisCluster.set(fullkey, value);
+        invalidateNear(fullkey);
+        return reply;
+    }
+
+    /**
+     * 写数据并设置过期时间
+     *
+     * @param fullkey
+     * @param value
+     * @param ttl 过期秒数，小于等于0时不过期
+     * @return OK
+     */
+    public String setB(final String fullkey, final String value, final int ttl) {
+        discardBehind(fullkey);
+        bloomPut(fullkey);
+        String reply = ttl > 0 ? jedisCluster.setex(fullkey, jitter(ttl), value) : jedisCluster.set(fullkey, value);
+        invalidateNear(fullkey);
+        return reply;
+    }
+
+
+    /**
+     * 删除数据
+     * 返回值：被删除 key 的数量
+     * @param key
+     */
+    public Long del(final String key) {
+        final String fullkey = domain + ":" + key;
+        return delB(fullkey);
+    }
+
+    /**
+     * 删除原始键值
+     *
+     * @param key
+     */
+    public Long delB(final String fullkey) {
+        discardBehind(fullkey);
+        long start = System.nanoTime();
+        Long reply = jedisCluster.del(fullkey);
+        metric("del", start, 0, 0);
+        invalidateNear(fullkey);
+        return reply;
+    }
+
+    /**
+     * 设置过期加域
+     *
+     * @param key
+     * @param time
+     */
+    public Long expire(final String key, final int time) {
+        final String fullkey = domain + ":" + key;
+        return expireB(fullkey, time);
+    }
+
+    /**
+     * 设置过期
+     * 返回值：设置成功返回 1 。
+			当 key 不存在或者不能为 key 设置生存时间时，返回 0 。
+     * @param key
+     * @param time
+     */
+    public Long expireB(final String fullkey, final int time) {
+        Long reply = jedisCluster.expire(fullkey, time);
+        invalidateNear(fullkey);
+        return reply;
+    }
+
+    /**
+     * 得到查找键
+     *
+     * @param query
+     * @return
+     */
+    public HashSet<String> find(final String query) {
+        final String fullQuery = domain + ":" + query;
+        return findB(fullQuery);
+    }
+
+    /**
+     * 得到查找键
+     *
+     * @param query
+     * @return keys
+     */
+    public HashSet<String> findB(final String fullQuery) {
+
+        HashSet<String> keys = new HashSet<String>();
+        ScanIterator iterator = scanB(fullQuery, scanCount);
+        try {
+            while (iterator.hasNext()) {
+                keys.add(iterator.next());
+            }
+        } finally {
+            iterator.close();
+        }
+
+        return keys;
+    }
+
+    /**
+     * 惰性遍历查找键加域
+     * 基于 SCAN 游标，所有主节点并行扫描；提前结束遍历时需调用 close()
+     *
+     * @param query
+     * @param count 每页建议条数
+     * @return keys
+     */
+    public ScanIterator scan(final String query, final int count) {
+        final String fullQuery = domain + ":" + query;
+        return scanB(fullQuery, count);
+    }
+
+    /**
+     * 惰性遍历查找键
+     *
+     * @param fullQuery
+     * @param count 每页建议条数
+     * @return keys
+     */
+    public ScanIterator scanB(final String fullQuery, final int count) {
+        return getClusterScanner().iterator(fullQuery, count);
+    }
+
+    /**
+     * 按页回调查找键加域
+     * 所有主节点并行扫描，全部完成后返回，不同节点的回调可能并发执行
+     *
+     * @param query
+     * @param count 每页建议条数
+     * @param callback
+     * @return 回调的key总数
+     */
+    public long scan(final String query, final int count, final ClusterScanner.KeyBatchCallback callback) {
+        final String fullQuery = domain + ":" + query;
+        return getClusterScanner().scan(fullQuery, count, callback);
+    }
+
+	/**
+	 * 以秒为单位，返回给定 key 的剩余生存时间(TTL, time to live)。
+	 * 时间复杂度：O(1)
+	 * 返回值：
+	 * 当 key 不存在时，返回 -2 。
+	 * 当 key 存在但没有设置剩余生存时间时，返回 -1 。
+	 * 否则，以秒为单位，返回 key 的剩余生存时间。
+	 *
+	 * @param key
+	 * @return
+	 */
+	public Long ttl(final String key) {
+		final String fullQuery = domain + ":" + key;
+		return ttlb(fullQuery);
+	}
+
+	/**
+	 * 以秒为单位，返回给定 key 的剩余生存时间(TTL, time to live)。
+	 * 时间复杂度：O(1)
+	 * 返回值：
+	 * 当 key 不存在时，返回 -2 。
+	 * 当 key 存在但没有设置剩余生存时间时，返回 -1 。
+	 * 否则，以秒为单位，返回 key 的剩余生存时间。
+	 *
+	 * @param key
+	 * @return
+	 */
+	public Long ttlb(final String fullkey) {
+		if (getReplicaReader() == null) {
+			return jedisCluster.ttl(fullkey);
+		}
+		final byte[] rawkey = SafeEncoder.encode(fullkey);
+		return getReplicaReader().read(fullkey, new ClusterNodeExecutor.NodeCommand<Long>() {
+			@Override
+			public Long execute(Jedis connection) {
+				return connection.ttl(rawkey);
+			}
+		});
+	}
+
+    /**
+     * 清除域下所有信息
+     * 返回值：删除个数
+     */
+    public Integer clear() {
+        return (int) purge(null);
+    }
+
+    /**
+     * 清除域下所有信息
+     * 各节点边扫描边按槽位批量删除(UNLINK)，受 purgeBatchSize、purgeMaxKeysPerSecond 控制
+     *
+     * @param listener 进度回调，可为null
+     * @return 删除个数
+     */
+    public long purge(final ClusterPurger.ProgressListener listener) {
+        final String fullQuery = domain + ":*";
+        try {
+            return getClusterPurger().purge(fullQuery, listener);
+        } finally {
+            if (nearCache != null) {
+                nearCache.invalidateAll();
+            }
+            if (keyMonitor != null && keyMonitor.getPromotedCache() != null) {
+                keyMonitor.getPromotedCache().invalidateAll();
+            }
+            if (invalidationBus != null) {
+                invalidationBus.publishAll();
+            }
+        }
+    }
+
+
+    /**
+     * 批量读数据加域
+     * 按节点pipeline并行读取，返回值与keys顺序一致，不存在的key对应null
+     *
+     * @param keys
+     * @param type
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> mget(final Collection<String> keys, final Type type) {
+        final List<String> allkeys = fullkeys(keys);
+        final NearCache near = getNearCache();
+        final WriteBehindBuffer buffer = writeBehindBuffer;
+        final List<T> result = new ArrayList<T>(allkeys.size());
+
+        // 延迟写入缓冲、本地缓存命中的直接返回，其余批量读取
+        final List<String> fullkeys;
+        final List<Integer> positions = new ArrayList<Integer>();
+        if (near != null || buffer != null) {
+            fullkeys = new ArrayList<String>();
+            for (int i = 0; i < allkeys.size(); i++) {
+                byte[] buffered = buffer == null ? null : buffer.get(allkeys.get(i), null);
+                if (buffered != null) {
+                    result.add(this.<T>decode(buffered, type));
+                    continue;
+                }
+                NearCache.Entry entry = near == null ? null : near.get(allkeys.get(i), type);
+                result.add(entry == null ? null : (T) entry.getValue());
+                if (entry != null) {
+                    record(allkeys.get(i), null);
+                } else {
+                    fullkeys.add(allkeys.get(i));
+                    positions.add(i);
+                }
+            }
+        } else {
+            fullkeys = allkeys;
+            for (int i = 0; i < allkeys.size(); i++) {
+                result.add(null);
+                positions.add(i);
+            }
+        }
+        if (fullkeys.isEmpty()) {
+            return result;
+        }
+
+        final long[] stamps = new long[fullkeys.size()];
+        final Object[] ttls = new Object[fullkeys.size()];
+        if (near != null) {
+            for (int i = 0; i < fullkeys.size(); i++) {
+                stamps[i] = near.stamp(fullkeys.get(i));
+            }
+        }
+        long start = System.nanoTime();
+        List<byte[]> values;
+        try {
+            values = getClusterPipeline().execute(fullkeys, new ClusterPipeline.Operation<byte[]>() {
+                @Override
+                public Response<byte[]> pipelined(Pipeline pipeline, int index) {
+                    byte[] rawkey = SafeEncoder.encode(fullkeys.get(index));
+                    Response<byte[]> response = pipeline.get(rawkey);
+                    if (near != null) {
+                        ttls[index] = pipeline.pttl(rawkey);
+                    }
+                    return response;
+                }
+
+                @Override
+                public byte[] direct(int index) {
+                    TtlValue loaded = getWithTtl(fullkeys.get(index));
+                    ttls[index] = loaded.pttl;
+                    return loaded.data;
+                }
+            });
+            for (int i = 0; i < values.size(); i++) {
+                remember(fullkeys.get(i), values.get(i));
+            }
+        } catch (CircuitOpenException e) {
+            // 有节点熔断时逐个读取：正常节点照常读，熔断节点直接失败或返回降级数据
+            values = new ArrayList<byte[]>(fullkeys.size());
+            for (int i = 0; i < fullkeys.size(); i++) {
+                TtlValue loaded = getWithTtl(fullkeys.get(i));
+                ttls[i] = loaded.pttl;
+                values.add(loaded.data);
+            }
+        } catch (ClusterPipelineException e) {
+            // GET 可重复执行：pipeline 发送后断开的key逐个重新读取，其余错误照常抛出
+            for (RuntimeException error : e.getErrors().values()) {
+                if (!(error instanceof PipelineOutcomeUnknownException)) {
+                    throw e;
+                }
+            }
+            values = new ArrayList<byte[]>(fullkeys.size());
+            for (int i = 0; i < fullkeys.size(); i++) {
+                if (e.getErrors().containsKey(i)) {
+                    TtlValue loaded = getWithTtl(fullkeys.get(i));
+                    ttls[i] = loaded.pttl;
+                    values.add(loaded.data);
+                } else {
+                    values.add((byte[]) e.getResults().get(i));
+                    remember(fullkeys.get(i), values.get(i));
+                }
+            }
+        }
+        long network = System.nanoTime() - start;
+        int bytes = 0;
+        for (int i = 0; i < values.size(); i++) {
+            byte[] data = values.get(i);
+            bytes += data == null ? 0 : data.length;
+            record(fullkeys.get(i), data);
+            T value = this.<T>decode(data, type);
+            result.set(positions.get(i), value);
+            if (near != null) {
+                Long pttl = pttlOf(ttls[i]);
+                if (pttl != null) {
+                    near.put(fullkeys.get(i), stamps[i], value, type, data == null ? 0 : data.length, pttl);
+                }
+            }
+        }
+        metric("mget", start, System.nanoTime() - start - network, bytes);
+        return result;
+    }
+
+    /**
+     * 批量写数据加域
+     * 按节点pipeline并行写入
+     * 返回值：写入成功的个数
+     *
+     * @param values
+     * @return
+     */
+    public Integer mset(final Map<String, Object> values) {
+        return mset(values, 0);
+    }
+
+    /**
+     * 批量写数据加域并设置过期时间
+     * 按节点pipeline并行 SETEX，过期时间按 ttlJitterPercent 逐个加随机偏移
+     * 返回值：写入成功的个数
+     *
+     * @param values
+     * @param ttl 过期秒数，小于等于0表示不过期
+     * @return
+     */
+    public Integer mset(final Map<String, Object> values, final int ttl) {
+        final List<String> fullkeys = new ArrayList<String>(values.size());
+        final List<byte[]> datas = new ArrayList<byte[]>(values.size());
+        long start = System.nanoTime();
+        int bytes = 0;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            fullkeys.add(domain + ":" + entry.getKey());
+            datas.add(encode(entry.getValue()));
+            bytes += datas.get(datas.size() - 1).length;
+            record(fullkeys.get(fullkeys.size() - 1), datas.get(datas.size() - 1));
+            discardBehind(fullkeys.get(fullkeys.size() - 1));
+            bloomPut(fullkeys.get(fullkeys.size() - 1));
+        }
+        long codec = System.nanoTime() - start;
+        invalidateNear(fullkeys);
+        List<String> replies = getClusterPipeline().execute(fullkeys, new ClusterPipeline.Operation<String>() {
+            @Override
+            public Response<String> pipelined(Pipeline pipeline, int index) {
+                byte[] rawkey = SafeEncoder.encode(fullkeys.get(index));
+                if (ttl > 0) {
+                    return pipeline.setex(rawkey, jitter(ttl), datas.get(index));
+                }
+                return pipeline.set(rawkey, datas.get(index));
+            }
+
+            @Override
+            public String direct(final int index) {
+                final byte[] rawkey = SafeEncoder.encode(fullkeys.get(index));
+                return getNodeExecutor().execute(fullkeys.get(index), new ClusterNodeExecutor.NodeCommand<String>() {
+                    @Override
+                    public String execute(Jedis connection) {
+                        if (ttl > 0) {
+                            return connection.setex(rawkey, jitter(ttl), datas.get(index));
+                        }
+                        return connection.set(rawkey, datas.get(index));
+                    }
+                });
+            }
+        });
+        invalidateNear(fullkeys);
+        int count = 0;
+        for (String reply : replies) {
+            if ("OK".equals(reply)) {
+                count++;
+            }
+        }
+        metric("mset", start, codec, bytes);
+        return count;
+    }
+
+    /**
+     * 批量删除数据加域
+     * 返回值：被删除 key 的数量
+     *
+     * @param keys
+     * @return
+     */
+    public Long mdel(final Collection<String> keys) {
+        final List<String> fullkeys = fullkeys(keys);
+        for (String fullkey : fullkeys) {
+            discardBehind(fullkey);
+        }
+        List<Long> replies = getClusterPipeline().execute(fullkeys, new ClusterPipeline.Operation<Long>() {
+            @Override
+            public Response<Long> pipelined(Pipeline pipeline, int index) {
+                return pipeline.del(fullkeys.get(index));
+            }
+
+            @Override
+            public Long direct(int index) {
+                return jedisCluster.del(fullkeys.get(index));
+            }
+        });
+        invalidateNear(fullkeys);
+        long count = 0;
+        for (Long reply : replies) {
+            if (reply != null) {
+                count += reply;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 执行lua脚本 加域
+     * 脚本从classpath加载，以 EVALSHA 执行；keys 必须在同一槽位（可用 {hashtag}）
+     *
+     * @param script classpath资源路径，例如 lua/compare_and_delete.lua
+     * @param keys 不含域的key
+     * @param args 参数：String/数字 按字符串发送，其余对象按存储格式序列化
+     * @param type 返回值类型
+     * @return
+     */
+    public <T> T eval(final String script, final List<String> keys, final List<?> args, Type type) {
+        ScriptRegistry scripts = getScriptRegistry();
+        return scripts.eval(scripts.load(script), fullkeys(keys), args, type);
+    }
+
+    /**
+     * 值等于expected时删除 加域
+     * 值按存储格式比较，expected需与写入时的对象一致
+     *
+     * @param key
+     * @param expected
+     * @return 是否删除
+     */
+    public boolean compareAndDelete(final String key, final Object expected) {
+        final String fullkey = domain + ":" + key;
+        discardBehind(fullkey);
+        ScriptRegistry scripts = getScriptRegistry();
+        Boolean deleted = scripts.eval(scripts.load(COMPARE_AND_DELETE), Collections.singletonList(fullkey),
+                Collections.singletonList(encode(expected)), Boolean.class);
+        invalidateNear(fullkey);
+        return deleted;
+    }
+
+    /**
+     * 值等于expected时写入新值 加域
+     * 值按存储格式比较，expected需与写入时的对象一致
+     *
+     * @param key
+     * @param expected
+     * @param value
+     * @param ttl 过期秒数，小于等于0表示不过期
+     * @return 是否写入
+     */
+    public boolean compareAndSet(final String key, final Object expected, final Object value, final int ttl) {
+        final String fullkey = domain + ":" + key;
+        discardBehind(fullkey);
+        ScriptRegistry scripts = getScriptRegistry();
+        Boolean updated = scripts.eval(scripts.load(COMPARE_AND_SET), Collections.singletonList(fullkey),
+                Arrays.asList(encode(expected), encode(value), ttl > 0 ? jitter(ttl) : 0), Boolean.class);
+        invalidateNear(fullkey);
+        return updated;
+    }
+
+    /**
+     * 计数 加域
+     * 先在本地累加，按 counterFlushMillis / counterFlushEvents 批量 INCRBY 写入redis，
+     * 适合浏览数、点赞数等允许秒级延迟写入的热点计数
+     *
+     * @param key
+     * @param delta
+     */
+    public void count(final String key, final long delta) {
+        getCounterAggregator().incr(domain + ":" + key, delta);
+    }
+
+    /**
+     * map 计数 加域
+     * 先在本地累加，批量 HINCRBY 写入redis
+     *
+     * @param key
+     * @param field
+     * @param delta
+     */
+    public void hcount(final String key, final String field, final long delta) {
+        getCounterAggregator().hincr(domain + ":" + key, field, delta);
+    }
+
+    /**
+     * 读计数 加域
+     * redis中的值加上本进程尚未写入的增量
+     *
+     * @param key
+     * @return
+     */
+    public long getCount(final String key) {
+        final String fullkey = domain + ":" + key;
+        String value = jedisCluster.get(fullkey);
+        long count = value == null ? 0L : Long.parseLong(value);
+        return count + getCounterAggregator().pending(fullkey, null);
+    }
+
+    /**
+     * 读map计数 加域
+     * redis中的值加上本进程尚未写入的增量
+     *
+     * @param key
+     * @param field
+     * @return
+     */
+    public long hgetCount(final String key, final String field) {
+        final String fullkey = domain + ":" + key;
+        String value = jedisCluster.hget(fullkey, field);
+        long count = value == null ? 0L : Long.parseLong(value);
+        return count + getCounterAggregator().pending(fullkey, field);
+    }
+
+    /**
+     * 立即把本地计数写入redis
+     */
+    public void flushCounters() {
+        if (counterAggregator != null) {
+            counterAggregator.flush();
+        }
+    }
+
+    /**
+     * 延迟写入 加域
+     * 先放入本地缓冲，同一key多次写入只保留最后一次，按 writeBehindFlushMillis / writeBehindFlushEntries 批量写入redis；
+     * 适合高频覆盖写、允许短暂延迟和进程崩溃时丢失最后一批写入的数据
+     * 缓冲已满且等待超过 writeBehindMaxBlockMillis 时抛出 RejectedExecutionException
+     * get/getOrLoad/getAsync/mget/hget/hmget 优先返回缓冲中的值，del/mdel/hdel 丢弃缓冲；
+     * 其余读命令（exists、ttl、hgetAll、scan 等）与 clear/purge 只作用于redis中已写入的数据
+     *
+     * @param key
+     * @param value
+     * @param ttl 过期秒数，0 不设置过期
+     */
+    public void setBehind(final String key, Object value, final int ttl) {
+        final String fullkey = domain + ":" + key;
+        byte[] data = encode(value);
+        record(fullkey, data);
+        bloomPut(fullkey);
+        getWriteBehindBuffer().set(fullkey, data, ttl > 0 ? jitter(ttl) : 0);
+        invalidateNear(fullkey);
+    }
+
+    /**
+     * map 延迟写入 加域
+     * 同 setBehind，同一 key + field 多次写入只保留最后一次
+     *
+     * @param key
+     * @param field
+     * @param value
+     * @param ttl 整个map的过期秒数，0 不设置过期
+     */
+    public void hsetBehind(final String key, final String field, Object value, final int ttl) {
+        final String fullkey = domain + ":" + key;
+        byte[] data = encode(value);
+        record(fullkey, data);
+        getWriteBehindBuffer().hset(fullkey, field, data, ttl > 0 ? jitter(ttl) : 0);
+    }
+
+    /**
+     * 立即把延迟写入缓冲写入redis
+     */
+    public void flushWrites() {
+        if (writeBehindBuffer != null) {
+            writeBehindBuffer.flush();
+        }
+    }
+
+    /**
+     * 异步读数据加域
+     *
+     * @param key
+     * @param type
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> getAsync(final String key, final Type type) {
+        final String fullkey = domain + ":" + key;
+        if (writeBehindBuffer != null) {
+            byte[] buffered = writeBehindBuffer.get(fullkey, null);
+            if (buffered != null) {
+                return CompletableFuture.completedFuture(this.<T>decode(buffered, type));
+            }
+        }
+        final byte[] rawkey = SafeEncoder.encode(fullkey);
+        final NearCache near = getNearCache();
+        if (near == null) {
+            return getAsyncPipeline().submit(fullkey, new AsyncPipeline.Command<byte[]>() {
+                @Override
+                public Response<byte[]> pipelined(Pipeline pipeline) {
+                    return pipeline.get(rawkey);
+                }
+
+                @Override
+                public byte[] direct() {
+                    return getNodeExecutor().execute(fullkey, new ClusterNodeExecutor.NodeCommand<byte[]>() {
+                        @Override
+                        public byte[] execute(Jedis connection) {
+                            return connection.get(rawkey);
+                        }
+                    });
+                }
+            }).thenApply(this.<T>decoder(type));
+        }
+
+        NearCache.Entry entry = near.get(fullkey, type);
+        if (entry != null) {
+            return CompletableFuture.completedFuture((T) entry.getValue());
+        }
+        final long stamp = near.stamp(fullkey);
+        final Object[] ttl = new Object[1];
+        return getAsyncPipeline().submit(fullkey, new AsyncPipeline.Command<byte[]>() {
+            @Override
+            public Response<byte[]> pipelined(Pipeline pipeline) {
+                Response<byte[]> response = pipeline.get(rawkey);
+                ttl[0] = pipeline.pttl(rawkey);
+                return response;
+            }
+
+            @Override
+            public byte[] direct() {
+                TtlValue loaded = getWithTtl(fullkey);
+                ttl[0] = loaded.pttl;
+                return loaded.data;
+            }
+        }).thenApply(new Function<byte[], T>() {
+            @Override
+            public T apply(byte[] data) {
+                T value = decode(data, type);
+                Long pttl = pttlOf(ttl[0]);
+                if (pttl != null) {
+                    near.put(fullkey, stamp, value, type, data == null ? 0 : data.length, pttl);
+                }
+                return value;
+            }
+        });
+    }
+
+    /**
+     * 异步 map 取值 加域
+     *
+     * @param key
+     * @param field
+     * @param type
+     * @return
+     */
+    public <T> CompletableFuture<T> hgetAsync(final String key, final String field, final Type type) {
+        final String fullkey = domain + ":" + key;
+        final byte[] rawkey = SafeEncoder.encode(fullkey);
+        final byte[] rawfield = SafeEncoder.encode(field);
+        return getAsyncPipeline().submit(fullkey, new AsyncPipeline.Command<byte[]>() {
+            @Override
+            public Response<byte[]> pipelined(Pipeline pipeline) {
+                return pipeline.hget(rawkey, rawfield);
+            }
+
+            @Override
+            public byte[] direct() {
+                return getNodeExecutor().execute(fullkey, new ClusterNodeExecutor.NodeCommand<byte[]>() {
+                    @Override
+                    public byte[] execute(Jedis connection) {
+                        return connection.hget(rawkey, rawfield);
+                    }
+                });
+            }
+        }).thenApply(this.<T>decoder(type));
+    }
+
+    /**
+     * 异步批量读数据加域
+     * 各key分别排队，同一节点的并发命令会合并为一次pipeline，返回值与keys顺序一致
+     *
+     * @param keys
+     * @param type
+     * @return
+     */
+    public <T> CompletableFuture<List<T>> mgetAsync(final Collection<String> keys, final Type type) {
+        final List<CompletableFuture<T>> futures = new ArrayList<CompletableFuture<T>>(keys.size());
+        for (String key : keys) {
+            futures.add(this.<T>getAsync(key, type));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+                .thenApply(new Function<Void, List<T>>() {
+                    @Override
+                    public List<T> apply(Void ignored) {
+                        List<T> result = new ArrayList<T>(futures.size());
+                        for (CompletableFuture<T> future : futures) {
+                            result.add(future.join());
+                        }
+                        return result;
+                    }
+                });
+    }
+
+    /**
+     * 异步写数据加域
+     *
+     * @param key
+     * @param value
+     * @return
+     */
+    public CompletableFuture<String> setAsync(final String key, final Object value) {
+        final String fullkey = domain + ":" + key;
+        final byte[] rawkey = SafeEncoder.encode(fullkey);
+        final byte[] data = encode(value);
+        discardBehind(fullkey);
+        record(fullkey, data);
+        bloomPut(fullkey);
+        return invalidateNearAfter(fullkey, getAsyncPipeline().submit(fullkey, new AsyncPipeline.Command<String>() {
+            @Override
+            public Response<String> pipelined(Pipeline pipeline) {
+                return pipeline.set(rawkey, data);
+            }
+
+            @Override
+            public String direct() {
+                return getNodeExecutor().execute(fullkey, new ClusterNodeExecutor.NodeCommand<String>() {
+                    @Override
+                    public String execute(Jedis connection) {
+                        return connection.set(rawkey, data);
+                    }
+                });
+            }
+        }));
+    }
+
+    /**
+     * 异步 map 赋值 加域
+     *
+     * @param key
+     * @param field
+     * @param value
+     * @return
+     */
+    public CompletableFuture<Long> hsetAsync(final String key, final String field, final Object value) {
+        final String fullkey = domain + ":" + key;
+        final byte[] rawkey = SafeEncoder.encode(fullkey);
+        final byte[] rawfield = SafeEncoder.encode(field);
+        final byte[] data = encode(value);
+        discardBehind(fullkey, field);
+        return getAsyncPipeline().submit(fullkey, new AsyncPipeline.Command<Long>() {
+            @Override
+            public Response<Long> pipelined(Pipeline pipeline) {
+                return pipeline.hset(rawkey, rawfield, data);
+            }
+
+            @Override
+            public Long direct() {
+                return getNodeExecutor().execute(fullkey, new ClusterNodeExecutor.NodeCommand<Long>() {
+                    @Override
+                    public Long execute(Jedis connection) {
+                        return connection.hset(rawkey, rawfield, data);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 异步删除数据加域
+     *
+     * @param key
+     * @return
+     */
+    public CompletableFuture<Long> delAsync(final String key) {
+        final String fullkey = domain + ":" + key;
+        discardBehind(fullkey);
+        return invalidateNearAfter(fullkey, getAsyncPipeline().submit(fullkey, new AsyncPipeline.Command<Long>() {
+            @Override
+            public Response<Long> pipelined(Pipeline pipeline) {
+                return pipeline.del(fullkey);
+            }
+
+            @Override
+            public Long direct() {
+                return jedisCluster.del(fullkey);
+            }
+        }));
+    }
+
+    /**
+     * 异步设置过期加域
+     *
+     * @param key
+     * @param time
+     * @return
+     */
+    public CompletableFuture<Long> expireAsync(final String key, final int time) {
+        final String fullkey = domain + ":" + key;
+        return invalidateNearAfter(fullkey, getAsyncPipeline().submit(fullkey, new AsyncPipeline.Command<Long>() {
+            @Override
+            public Response<Long> pipelined(Pipeline pipeline) {
+                return pipeline.expire(fullkey, time);
+            }
+
+            @Override
+            public Long direct() {
+                return jedisCluster.expire(fullkey, time);
+            }
+        }));
+    }
+
+    /**
+     * 过期时间加随机偏移
+     *
+     * @param ttl 过期秒数
+     * @return
+     */
+    private int jitter(int ttl) {
+        if (ttlJitterPercent <= 0 || ttl <= 0) {
+            return ttl;
+        }
+        long spread = (long) ttl * ttlJitterPercent / 100;
+        if (spread <= 0) {
+            return ttl;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, ttl + ThreadLocalRandom.current().nextLong(spread + 1));
+    }
+
+    /**
+     * 读取值及剩余过期毫秒数，一次往返
+     *
+     * @param fullkey
+     * @return
+     */
+    private TtlValue getWithTtl(final String fullkey) {
+        return getWithTtl(fullkey, false);
+    }
+
+    /**
+     * 读取值及剩余过期毫秒数，一次往返
+     *
+     * @param fullkey
+     * @param replica 是否按读偏好读从节点
+     * @return
+     */
+    private TtlValue getWithTtl(final String fullkey, boolean replica) {
+        final byte[] rawkey = SafeEncoder.encode(fullkey);
+        ClusterNodeExecutor.NodeCommand<TtlValue> command = new ClusterNodeExecutor.NodeCommand<TtlValue>() {
+            @Override
+            public TtlValue execute(Jedis connection) {
+                Pipeline pipeline = connection.pipelined();
+                Response<byte[]> data = pipeline.get(rawkey);
+                Response<Long> pttl = pipeline.pttl(rawkey);
+                pipeline.sync();
+                return new TtlValue(data.get(), pttl.get());
+            }
+        };
+        TtlValue loaded;
+        try {
+            loaded = replica ? read(fullkey, command) : getNodeExecutor().execute(fullkey, command);
+        } catch (JedisConnectionException e) {
+            return TtlValue.stale(stale(fullkey, e));
+        }
+        remember(fullkey, loaded.data);
+        return loaded;
+    }
+
+    /**
+     * 按读偏好执行只读命令，未配置从节点读时在主节点执行
+     *
+     * @param fullkey
+     * @param command
+     * @return
+     */
+    private <T> T read(String fullkey, ClusterNodeExecutor.NodeCommand<T> command) {
+        ReplicaReader reader = getReplicaReader();
+        if (reader == null) {
+            return getNodeExecutor().execute(fullkey, command);
+        }
+        return reader.read(fullkey, command);
+    }
+
+    /**
+     * 同步写入、删除前丢弃key的延迟写入，之后不会读到缓冲中的旧值，缓冲写入也不会覆盖新值
+     *
+     * @param fullkey
+     */
+    private void discardBehind(String fullkey) {
+        if (writeBehindBuffer != null) {
+            writeBehindBuffer.discard(fullkey);
+        }
+    }
+
+    /**
+     * 同步写入、删除map的field前丢弃其延迟写入
+     *
+     * @param fullkey
+     * @param field
+     */
+    private void discardBehind(String fullkey, String field) {
+        if (writeBehindBuffer != null) {
+            writeBehindBuffer.discard(fullkey, field);
+        }
+    }
+
+    /**
+     * 记录读到的值，用于降级
+     *
+     * @param fullkey
+     * @param data
+     */
+    private void remember(String fullkey, byte[] data) {
+        StaleCache cache = getStaleCache();
+        if (cache != null) {
+            cache.put(fullkey, data);
+        }
+    }
+
+    /**
+     * 读命令连接失败或熔断时返回最后一次读到的值，没有时抛出原异常
+     *
+     * @param fullkey
+     * @param e
+     * @return 最后一次读取时key不存在则返回null
+     */
+    private byte[] stale(String fullkey, JedisConnectionException e) {
+        StaleCache cache = getStaleCache();
+        Object data = cache == null ? null : cache.get(fullkey);
+        if (data == null) {
+            throw e;
+        }
+        return data == StaleCache.ABSENT ? null : (byte[]) data;
+    }
+
+    /**
+     * pipeline 中的 PTTL 结果，出错时返回null
+     *
+     * @param ttl
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private static Long pttlOf(Object ttl) {
+        try {
+            if (ttl instanceof Response) {
+                return ((Response<Long>) ttl).get();
+            }
+            return (Long) ttl;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 得到key可用的本地缓存：启用本地缓存时为本地缓存，否则热点key为热点缓存，都没有时返回null
+     *
+     * @param fullkey
+     * @return
+     */
+    private NearCache localCache(String fullkey) {
+        NearCache near = getNearCache();
+        if (near != null) {
+            return near;
+        }
+        KeyTrafficMonitor monitor = getKeyMonitor();
+        if (monitor != null && monitor.getPromotedCache() != null && monitor.isHot(fullkey)) {
+            return monitor.getPromotedCache();
+        }
+        return null;
+    }
+
+    /**
+     * 是否有需要失效的本地缓存
+     *
+     * @return
+     */
+    private boolean hasLocalCache() {
+        return getNearCache() != null || (keyMonitor != null && keyMonitor.getPromotedCache() != null);
+    }
+
+    /**
+     * 记录操作指标，网络耗时为总耗时减去序列化耗时
+     *
+     * @param command
+     * @param start 开始时间（System.nanoTime）
+     * @param codecNanos 序列化/反序列化耗时
+     * @param data 值
+     */
+    private void metric(String command, long start, long codecNanos, byte[] data) {
+        metric(command, start, codecNanos, data == null ? 0 : data.length);
+    }
+
+    /**
+     * 记录操作指标
+     *
+     * @param command
+     * @param start 开始时间（System.nanoTime）
+     * @param codecNanos 序列化/反序列化耗时
+     * @param bytes 值的字节数
+     */
+    private void metric(String command, long start, long codecNanos, int bytes) {
+        if (metricsSink != null) {
+            metricElapsed(command, System.nanoTime() - start - codecNanos, codecNanos, bytes);
+        }
+    }
+
+    /**
+     * 记录已计算好耗时的操作指标
+     *
+     * @param command
+     * @param networkNanos 网络耗时
+     * @param codecNanos 序列化/反序列化耗时
+     * @param bytes 值的字节数
+     */
+    private void metricElapsed(String command, long networkNanos, long codecNanos, int bytes) {
+        MetricsSink sink = metricsSink;
+        if (sink != null) {
+            if (metricsReporter == null) {
+                startMetricsReporter();
+            }
+            sink.recordCommand(command, networkNanos, codecNanos, bytes);
+        }
+    }
+
+    /**
+     * 按 metricsReportMillis 定期上报连接池状态，不依赖属性的设置顺序
+     */
+    private void startMetricsReporter() {
+        synchronized (this) {
+            if (metricsReporter != null) {
+                return;
+            }
+            ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(
+                    new NamedThreadFactory("redis-metrics"));
+            reporter.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    MetricsSink sink = RedisHelper.this.metricsSink;
+                    if (sink == null || jedisCluster == null) {
+                        return;
+                    }
+                    try {
+                        sink.recordPools(getPoolStats());
+                    } catch (Exception e) {
+                        logger.warn("redis metrics report error", e);
+                    }
+                }
+            }, metricsReportMillis, metricsReportMillis, TimeUnit.MILLISECONDS);
+            metricsReporter = reporter;
+        }
+    }
+
+    /**
+     * 布隆过滤器判断key一定不存在
+     *
+     * @param fullkey
+     * @return
+     */
+    private boolean definitelyAbsent(String fullkey) {
+        BloomGuard guard = getBloomGuard();
+        return guard != null && !guard.mightContain(fullkey);
+    }
+
+    /**
+     * 写入前把key加入布隆过滤器
+     *
+     * @param fullkey
+     */
+    private void bloomPut(String fullkey) {
+        BloomGuard guard = getBloomGuard();
+        if (guard != null) {
+            guard.put(fullkey);
+        }
+    }
+
+    /**
+     * 记录key访问，用于热点key、大key统计
+     *
+     * @param fullkey
+     * @param data 值，未知时为null
+     */
+    private void record(String fullkey, byte[] data) {
+        KeyTrafficMonitor monitor = getKeyMonitor();
+        if (monitor != null) {
+            monitor.record(fullkey, data == null ? 0 : data.length);
+        }
+    }
+
+    /**
+     * 本地缓存失效
+     *
+     * @param fullkey
+     */
+    private void invalidateNear(String fullkey) {
+        // 只写不读的实例也要创建本地缓存，否则不会向其他JVM广播失效
+        NearCache near = getNearCache();
+        if (near != null) {
+            near.invalidate(fullkey);
+        }
+        if (staleCache != null) {
+            staleCache.invalidate(fullkey);
+        }
+        if (keyMonitor != null && keyMonitor.getPromotedCache() != null) {
+            keyMonitor.getPromotedCache().invalidate(fullkey);
+        }
+        if (invalidationBus != null) {
+            invalidationBus.publish(fullkey);
+        }
+    }
+
+    /**
+     * 本地缓存失效
+     *
+     * @param fullkeys
+     */
+    private void invalidateNear(List<String> fullkeys) {
+        if (hasLocalCache() || staleCache != null) {
+            for (String fullkey : fullkeys) {
+                invalidateNear(fullkey);
+            }
+        }
+    }
+
+    /**
+     * 异步写完成后本地缓存失效
+     *
+     * @param fullkey
+     * @param future
+     * @return
+     */
+    private <R> CompletableFuture<R> invalidateNearAfter(final String fullkey, CompletableFuture<R> future) {
+        if (!hasLocalCache()) {
+            return future;
+        }
+        invalidateNear(fullkey);
+        return future.whenComplete(new BiConsumer<R, Throwable>() {
+            @Override
+            public void accept(R reply, Throwable e) {
+                invalidateNear(fullkey);
+            }
+        });
+    }
+
+    /**
+     * 值及剩余过期毫秒数
+     */
+    private static class TtlValue {
+        private final byte[] data;
+        private final long pttl;
+        private final boolean stale;
+
+        TtlValue(byte[] data, Long pttl) {
+            this(data, pttl == null ? -1 : pttl, false);
+        }
+
+        private TtlValue(byte[] data, long pttl, boolean stale) {
+            this.data = data;
+            this.pttl = pttl;
+            this.stale = stale;
+        }
+
+        /**
+         * 降级数据，剩余过期时间为0，不进入本地缓存
+         */
+        static TtlValue stale(byte[] data) {
+            return new TtlValue(data, 0, true);
+        }
+
+        int size() {
+            return data == null ? 0 : data.length;
+        }
+    }
+
+    /**
+     * 对象转存储字节
+     *
+     * @param value
+     * @return
+     */
+    private byte[] encode(Object value) {
+        return getSerializer().serialize(value);
+    }
+
+    /**
+     * 存储字节转对象，null返回null
+     *
+     * @param data
+     * @param type
+     * @return
+     */
+    private <T> T decode(byte[] data, Type type) {
+        return getSerializer().deserialize(data, type);
+    }
+
+    /**
+     * 存储字节转对象
+     *
+     * @param type
+     * @return
+     */
+    private <T> Function<byte[], T> decoder(final Type type) {
+        return new Function<byte[], T>() {
+            @Override
+            public T apply(byte[] data) {
+                return decode(data, type);
+            }
+        };
+    }
+
+    /**
+     * key加域
+     *
+     * @param keys
+     * @return
+     */
+    private List<String> fullkeys(final Collection<String> keys) {
+        List<String> fullkeys = new ArrayList<String>(keys.size());
+        for (String key : keys) {
+            fullkeys.add(domain + ":" + key);
+        }
+        return fullkeys;
+    }
+
+    /**
+     * 得到值序列化
+     *
+     * @return
+     */
+    public RedisValueSerializer getSerializer() {
+        if (serializer == null) {
+            synchronized (this) {
+                if (serializer == null) {
+                    serializer = new RedisValueSerializer(codec, codecs,
+                            new DeflateCompressor(compressThreshold, compressLevel));
+                }
+            }
+        }
+        return serializer;
+    }
+
+    /**
+     * 得到二进制单key命令执行器
+     *
+     * @return
+     */
+    public ClusterNodeExecutor getNodeExecutor() {
+        if (nodeExecutor == null) {
+            synchronized (this) {
+                if (nodeExecutor == null) {
+                    nodeExecutor = new ClusterNodeExecutor(getClusterPipeline().getRouter(), circuitBreakers);
+                }
+            }
+        }
+        return nodeExecutor;
+    }
+
+    /**
+     * 得到分布式锁 加域
+     * 锁持有期间自动续期，用法：
+     * RedisLock.Lease lease = redisHelper.getLock("job", 30000).tryLock(5, TimeUnit.SECONDS);
+     * if (lease != null) { try { ... } finally { lease.unlock(); } }
+     *
+     * @param name 锁名
+     * @param leaseMillis 租期毫秒数，持有者进程退出后最多经过该时长锁自动释放
+     * @return
+     */
+    public RedisLock getLock(final String name, final long leaseMillis) {
+        return new RedisLock(getScriptRegistry(), getLockRenewer(), lockMetrics, domain, name, leaseMillis);
+    }
+
+    /**
+     * 得到令牌桶限流器 加域
+     * 同一限流器请复用返回的实例
+     *
+     * @param name 限流器名
+     * @param permitsPerSecond 每秒许可数（所有JVM合计）
+     * @param capacity 桶容量（允许的突发量）
+     * @param leaseBatch 每次向redis批量申请的许可数，越大访问redis越少，1 表示每次都访问
+     * @return
+     */
+    public RedisRateLimiter getTokenBucketLimiter(final String name, final double permitsPerSecond,
+                                                  final long capacity, final int leaseBatch) {
+        return RedisRateLimiter.tokenBucket(getScriptRegistry(), domain + ":ratelimit:" + name,
+                permitsPerSecond, capacity, leaseBatch);
+    }
+
+    /**
+     * 得到滑动窗口限流器 加域
+     * 同一限流器请复用返回的实例
+     *
+     * @param name 限流器名
+     * @param limit 窗口内许可上限（所有JVM合计）
+     * @param windowMillis 窗口毫秒数
+     * @param leaseBatch 每次向redis批量申请的许可数，越大访问redis越少，1 表示每次都访问
+     * @return
+     */
+    public RedisRateLimiter getSlidingWindowLimiter(final String name, final long limit,
+                                                    final long windowMillis, final int leaseBatch) {
+        return RedisRateLimiter.slidingWindow(getScriptRegistry(), domain + ":ratelimit:" + name,
+                limit, windowMillis, leaseBatch);
+    }
+
+    /**
+     * 得到分布式锁统计
+     *
+     * @return
+     */
+    public LockMetrics getLockMetrics() {
+        return lockMetrics;
+    }
+
+    /**
+     * 加入布隆过滤器 加域
+     * 用于预先加入有效key（例如数据库中的全部id），配合 bloomBlocksLoad 防止查询不存在的数据穿透到数据库
+     *
+     * @param key
+     */
+    public void addToBloom(final String key) {
+        bloomPut(domain + ":" + key);
+    }
+
+    /**
+     * 得到从节点读，readFrom 为 master 时返回null
+     *
+     * @return
+     */
+    public ReplicaReader getReplicaReader() {
+        if (READ_MASTER.equals(readFrom)) {
+            return null;
+        }
+        if (replicaReader == null) {
+            synchronized (this) {
+                if (replicaReader == null) {
+                    replicaReader = new ReplicaReader(getClusterPipeline().getRouter(), getNodeExecutor(),
+                            READ_NEAREST.equals(readFrom), replicaMaxLagMillis,
+                            replicaPoolConfig == null ? new GenericObjectPoolConfig() : replicaPoolConfig,
+                            clusterTimeout(), replicaProbeMillis);
+                }
+            }
+        }
+        return replicaReader;
+    }
+
+    /**
+     * jedisCluster 连接的读超时毫秒数，从节点连接使用相同的超时
+     * JedisCluster(2.7.3) 不提供配置的超时，从任一节点连接读取，都不可用时为默认值
+     *
+     * @return
+     */
+    private int clusterTimeout() {
+        for (JedisPool pool : jedisCluster.getClusterNodes().values()) {
+            Jedis connection = null;
+            try {
+                connection = pool.getResource();
+                return connection.getClient().getSoTimeout();
+            } catch (JedisException e) {
+                logger.debug("redis timeout probe error", e);
+            } finally {
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        }
+        return Protocol.DEFAULT_TIMEOUT;
+    }
+
+    /**
+     * 得到降级数据，staleMaxBytes 为0时返回null
+     *
+     * @return
+     */
+    public StaleCache getStaleCache() {
+        if (staleMaxBytes <= 0) {
+            return null;
+        }
+        if (staleCache == null) {
+            synchronized (this) {
+                if (staleCache == null) {
+                    staleCache = new StaleCache(staleMaxBytes, staleTtlMillis);
+                }
+            }
+        }
+        return staleCache;
+    }
+
+    /**
+     * 得到布隆过滤器，未启用时返回null
+     *
+     * @return
+     */
+    public BloomGuard getBloomGuard() {
+        if (BLOOM_NONE.equals(bloomMode)) {
+            return null;
+        }
+        if (bloomGuard == null) {
+            synchronized (this) {
+                if (bloomGuard == null) {
+                    BloomGuard.KeySource source = bloomKeySource;
+                    if (source == null) {
+                        source = new BloomGuard.KeySource() {
+                            @Override
+                            public void load(final BloomFilter target) {
+                                getMasterScanner().scan(domain + ":*", scanCount, new ClusterScanner.KeyBatchCallback() {
+                                    @Override
+                                    public boolean onKeys(String node, List<String> keys) {
+                                        target.putAll(keys);
+                                        return true;
+                                    }
+                                });
+                            }
+                        };
+                    }
+                    BloomGuard guard = new BloomGuard(BLOOM_REDIS.equals(bloomMode)
+                            ? redisBloomFactory() : localBloomFactory(), source);
+                    guard.start(bloomRebuildMillis);
+                    bloomGuard = guard;
+                }
+            }
+        }
+        return bloomGuard;
+    }
+
+    /**
+     * 进程内布隆过滤器
+     *
+     * @return
+     */
+    private BloomGuard.Factory localBloomFactory() {
+        return new BloomGuard.Factory() {
+            @Override
+            public BloomFilter existing() {
+                return null;
+            }
+
+            @Override
+            public BloomFilter create() {
+                return new LocalBloomFilter(bloomExpectedKeys, bloomFpp);
+            }
+
+            @Override
+            public BloomFilter publish(BloomFilter staged) {
+                return staged;
+            }
+
+            @Override
+            public void abort(BloomFilter staged) {
+            }
+        };
+    }
+
+    /**
+     * redis位图布隆过滤器
+     * 位图 bloom:{域}，重建时写入 bloom:{域}:rebuild 后改名替换；
+     * bloom:{域}:rebuilt 标记本周期已有进程在重建，其他进程跳过
+     *
+     * @return
+     */
+    private BloomGuard.Factory redisBloomFactory() {
+        final String bitmapKey = "bloom:{" + domain + "}";
+        final String stagingKey = bitmapKey + ":rebuild";
+        final String markerKey = bitmapKey + ":rebuilt";
+        final long numBits = BloomFilter.optimalNumBits(bloomExpectedKeys, bloomFpp);
+        final int numHashes = BloomFilter.optimalNumHashes(bloomExpectedKeys, numBits);
+        return new BloomGuard.Factory() {
+            @Override
+            public BloomFilter existing() {
+                RedisBloomFilter filter = new RedisBloomFilter(getScriptRegistry(), bitmapKey, stagingKey, numBits, numHashes);
+                return filter.exists() ? filter : null;
+            }
+
+            @Override
+            public BloomFilter create() {
+                if (!"OK".equals(jedisCluster.set(markerKey, "1", "NX", "PX", bloomRebuildMillis))) {
+                    return null;
+                }
+                RedisBloomFilter staged = new RedisBloomFilter(getScriptRegistry(), stagingKey, null, numBits, numHashes);
+                staged.reset();
+                return staged;
+            }
+
+            @Override
+            public BloomFilter publish(BloomFilter staged) {
+                return ((RedisBloomFilter) staged).renameTo(bitmapKey);
+            }
+
+            @Override
+            public void abort(BloomFilter staged) {
+                staged.clear();
+                jedisCluster.del(markerKey);
+            }
+        };
+    }
+
+    /**
+     * 各节点连接池状态
+     *
+     * @return
+     */
+    public List<PoolStats> getPoolStats() {
+        List<PoolStats> pools = new ArrayList<PoolStats>();
+        for (Map.Entry<String, JedisPool> entry : jedisCluster.getClusterNodes().entrySet()) {
+            pools.add(PoolStats.of(entry.getKey(), entry.getValue()));
+        }
+        return pools;
+    }
+
+    /**
+     * 得到热点key、大key统计，未启用时返回null
+     *
+     * @return
+     */
+    public KeyTrafficMonitor getKeyMonitor() {
+        if (keyMonitorSampleRate <= 0) {
+            return null;
+        }
+        if (keyMonitor == null) {
+            synchronized (this) {
+                if (keyMonitor == null) {
+                    KeyTrafficMonitor monitor = new KeyTrafficMonitor(domain, keyMonitorSampleRate, keyMonitorTopK,
+                            bigKeyThreshold, hotKeyPromoteTtlMillis, hotKeyPromoteMinCount);
+                    monitor.start(keyMonitorPeriodMillis);
+                    keyMonitor = monitor;
+                }
+            }
+        }
+        return keyMonitor;
+    }
+
+    /**
+     * 得到延迟写入缓冲
+     *
+     * @return
+     */
+    public WriteBehindBuffer getWriteBehindBuffer() {
+        if (writeBehindBuffer == null) {
+            synchronized (this) {
+                if (writeBehindBuffer == null) {
+                    WriteBehindBuffer buffer = new WriteBehindBuffer(getClusterPipeline(), getScriptRegistry(),
+                            writeBehindFlushMillis, writeBehindFlushEntries, writeBehindMaxEntries, writeBehindMaxBlockMillis);
+                    buffer.start();
+                    writeBehindBuffer = buffer;
+                }
+            }
+        }
+        return writeBehindBuffer;
+    }
+
+    /**
+     * 得到本地聚合计数器
+     *
+     * @return
+     */
+    public CounterAggregator getCounterAggregator() {
+        if (counterAggregator == null) {
+            synchronized (this) {
+                if (counterAggregator == null) {
+                    CounterAggregator aggregator = new CounterAggregator(getClusterPipeline(), getNodeExecutor(),
+                            counterFlushMillis, counterFlushEvents);
+                    aggregator.start();
+                    counterAggregator = aggregator;
+                }
+            }
+        }
+        return counterAggregator;
+    }
+
+    /**
+     * 得到分布式锁续期线程池
+     *
+     * @return
+     */
+    private ScheduledExecutorService getLockRenewer() {
+        if (lockRenewer == null) {
+            synchronized (this) {
+                if (lockRenewer == null) {
+                    lockRenewer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("redis-lock"));
+                }
+            }
+        }
+        return lockRenewer;
+    }
+
+    /**
+     * 得到lua脚本注册表
+     *
+     * @return
+     */
+    public ScriptRegistry getScriptRegistry() {
+        if (scriptRegistry == null) {
+            synchronized (this) {
+                if (scriptRegistry == null) {
+                    scriptRegistry = new ScriptRegistry(getNodeExecutor(), getSerializer());
+                }
+            }
+        }
+        return scriptRegistry;
+    }
+
+    /**
+     * 得到本地缓存，未启用时返回null
+     *
+     * @return
+     */
+    public NearCache getNearCache() {
+        if (!nearCacheEnabled) {
+            return null;
+        }
+        if (nearCache == null) {
+            synchronized (this) {
+                if (nearCache == null) {
+                    NearCache cache = new NearCache(nearCacheMaxEntries, nearCacheMaxWeight, nearCacheTtlMillis);
+                    if (nearCacheBroadcast) {
+                        InvalidationTransport transport = invalidationTransport;
+                        if (transport == null) {
+                            transport = new JedisInvalidationTransport(getClusterPipeline().getRouter());
+                        }
+                        InvalidationBus bus = new InvalidationBus(cache, transport,
+                                "nearcache:invalidate:" + domain, nearCacheBroadcastIntervalMillis);
+                        bus.start();
+                        invalidationBus = bus;
+                    }
+                    nearCache = cache;
+                }
+            }
+        }
+        return nearCache;
+    }
+
+    /**
+     * 得到提前刷新
+     *
+     * @return
+     */
+    public EarlyRefresh getEarlyRefresh() {
+        if (earlyRefresh == null) {
+            synchronized (this) {
+                if (earlyRefresh == null) {
+                    earlyRefresh = new EarlyRefresh(earlyRefreshBeta, 10000);
+                }
+            }
+        }
+        return earlyRefresh;
+    }
+
+    /**
+     * 得到后台刷新线程池，队列满时放弃本次提前刷新
+     *
+     * @return
+     */
+    private ThreadPoolExecutor getRefreshExecutor() {
+        if (refreshExecutor == null) {
+            synchronized (this) {
+                if (refreshExecutor == null) {
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60L, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(1000), new NamedThreadFactory("redis-refresh"));
+                    executor.allowCoreThreadTimeOut(true);
+                    refreshExecutor = executor;
+                }
+            }
+        }
+        return refreshExecutor;
+    }
+
+    /**
+     * 得到批量操作执行器
+     *
+     * @return
+     */
+    public ClusterPipeline getClusterPipeline() {
+        if (clusterPipeline == null) {
+            synchronized (this) {
+                if (clusterPipeline == null) {
+                    clusterPipeline = new ClusterPipeline(new ClusterSlotRouter(jedisCluster), pipelineThreads, circuitBreakers);
+                }
+            }
+        }
+        return clusterPipeline;
+    }
+
+    /**
+     * 得到扫描执行器，scan/scanB 使用，按读偏好扫描从节点
+     *
+     * @return
+     */
+    public ClusterScanner getClusterScanner() {
+        if (clusterScanner == null) {
+            synchronized (this) {
+                if (clusterScanner == null) {
+                    clusterScanner = newClusterScanner(getReplicaReader());
+                }
+            }
+        }
+        return clusterScanner;
+    }
+
+    /**
+     * 得到只扫描主节点的扫描执行器
+     * 清除与布隆过滤器重建必须看到最新写入的key，不能扫描可能落后的从节点
+     *
+     * @return
+     */
+    public ClusterScanner getMasterScanner() {
+        if (getReplicaReader() == null) {
+            return getClusterScanner();
+        }
+        if (masterScanner == null) {
+            synchronized (this) {
+                if (masterScanner == null) {
+                    masterScanner = newClusterScanner(null);
+                }
+            }
+        }
+        return masterScanner;
+    }
+
+    private ClusterScanner newClusterScanner(ReplicaReader reader) {
+        ClusterScanner scanner = new ClusterScanner(getClusterPipeline().getRouter(), pipelineThreads, reader);
+        // 每页 SCAN 按 scan 记录指标
+        scanner.setMetricsSink(new MetricsSink() {
+            @Override
+            public void recordCommand(String command, long networkNanos, long codecNanos, int bytes) {
+                metricElapsed(command, networkNanos, codecNanos, bytes);
+            }
+
+            @Override
+            public void recordPools(List<PoolStats> pools) {
+            }
+        });
+        return scanner;
+    }
+
+    /**
+     * 得到清除执行器
+     *
+     * @return
+     */
+    public ClusterPurger getClusterPurger() {
+        if (clusterPurger == null) {
+            synchronized (this) {
+                if (clusterPurger == null) {
+                    ClusterPurger purger = new ClusterPurger(getMasterScanner());
+                    purger.setBatchSize(purgeBatchSize);
+                    purger.setMaxKeysPerSecond(purgeMaxKeysPerSecond);
+                    clusterPurger = purger;
+                }
+            }
+        }
+        return clusterPurger;
+    }
+
+    /**
+     * 得到异步执行器
+     *
+     * @return
+     */
+    public AsyncPipeline getAsyncPipeline() {
+        if (asyncPipeline == null) {
+            synchronized (this) {
+                if (asyncPipeline == null) {
+                    asyncPipeline = new AsyncPipeline(getClusterPipeline().getRouter(),
+                            asyncThreads, asyncQueueCapacity, asyncMaxBatch, circuitBreakers);
+                }
+            }
+        }
+        return asyncPipeline;
+    }
+
+    /**
+     * 释放后台线程，由spring destroy-method 调用
+     */
+    public void destroy() {
+        if (bloomGuard != null) {
+            bloomGuard.shutdown();
+        }
+        if (metricsReporter != null) {
+            metricsReporter.shutdown();
+        }
+        if (keyMonitor != null) {
+            keyMonitor.shutdown();
+        }
+        if (counterAggregator != null) {
+            // 在关闭pipeline之前写入剩余计数
+            counterAggregator.shutdown();
+        }
+        if (writeBehindBuffer != null) {
+            // 在关闭pipeline之前同步写入剩余缓冲
+            writeBehindBuffer.shutdown();
+        }
+        if (lockRenewer != null) {
+            lockRenewer.shutdown();
+        }
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdown();
+        }
+        if (invalidationBus != null) {
+            invalidationBus.stop();
+        }
+        if (asyncPipeline != null) {
+            asyncPipeline.shutdown();
+        }
+        if (clusterPipeline != null) {
+            clusterPipeline.shutdown();
+        }
+        if (clusterScanner != null) {
+            clusterScanner.shutdown();
+        }
+        if (masterScanner != null) {
+            masterScanner.shutdown();
+        }
+        if (replicaReader != null) {
+            replicaReader.shutdown();
+        }
+    }
+
+    /**
+     * 命中时记一次节省的往返（原实现为 EXISTS + GET，未命中时只有一次 EXISTS）
+     *
+     * @param data
+     */
+    private void saved(byte[] data) {
+        if (data != null) {
+            savedRoundTrips.incrementAndGet();
+        }
+    }
+
+    /**
+     * 单次往返读取累计节省的网络往返次数
+     *
+     * @return
+     */
+    public long getSavedRoundTrips() {
+        return savedRoundTrips.get();
+    }
+
+    /**
+     * get/set
+     */
+    public String getDomain() {
+        return domain;
+    }
+
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    public JedisCluster getJedisCluster() {
+        return jedisCluster;
+    }
+
+    public void setJedisCluster(JedisCluster jedisCluster) {
+        this.jedisCluster = jedisCluster;
+    }
+
+    public RedisCodec getCodec() {
+        return codec;
+    }
+
+    public void setCodec(RedisCodec codec) {
+        this.codec = codec;
+    }
+
+    public List<RedisCodec> getCodecs() {
+        return codecs;
+    }
+
+    public void setCodecs(List<RedisCodec> codecs) {
+        this.codecs = codecs;
+    }
+
+    /**
+     * 压缩统计：压缩比、压缩/解压耗时
+     *
+     * @return
+     */
+    public DeflateCompressor getCompressionStats() {
+        return getSerializer().getCompressor();
+    }
+
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    public int getCompressLevel() {
+        return compressLevel;
+    }
+
+    public void setCompressLevel(int compressLevel) {
+        this.compressLevel = compressLevel;
+    }
+
+    public boolean isNearCacheEnabled() {
+        return nearCacheEnabled;
+    }
+
+    public void setNearCacheEnabled(boolean nearCacheEnabled) {
+        this.nearCacheEnabled = nearCacheEnabled;
+    }
+
+    public long getNearCacheMaxEntries() {
+        return nearCacheMaxEntries;
+    }
+
+    public void setNearCacheMaxEntries(long nearCacheMaxEntries) {
+        this.nearCacheMaxEntries = nearCacheMaxEntries;
+    }
+
+    public long getNearCacheMaxWeight() {
+        return nearCacheMaxWeight;
+    }
+
+    public void setNearCacheMaxWeight(long nearCacheMaxWeight) {
+        this.nearCacheMaxWeight = nearCacheMaxWeight;
+    }
+
+    public long getNearCacheTtlMillis() {
+        return nearCacheTtlMillis;
+    }
+
+    public void setNearCacheTtlMillis(long nearCacheTtlMillis) {
+        this.nearCacheTtlMillis = nearCacheTtlMillis;
+    }
+
+    public boolean isNearCacheBroadcast() {
+        return nearCacheBroadcast;
+    }
+
+    public void setNearCacheBroadcast(boolean nearCacheBroadcast) {
+        this.nearCacheBroadcast = nearCacheBroadcast;
+    }
+
+    public long getNearCacheBroadcastIntervalMillis() {
+        return nearCacheBroadcastIntervalMillis;
+    }
+
+    public void setNearCacheBroadcastIntervalMillis(long nearCacheBroadcastIntervalMillis) {
+        this.nearCacheBroadcastIntervalMillis = nearCacheBroadcastIntervalMillis;
+    }
+
+    public InvalidationTransport getInvalidationTransport() {
+        return invalidationTransport;
+    }
+
+    public void setInvalidationTransport(InvalidationTransport invalidationTransport) {
+        this.invalidationTransport = invalidationTransport;
+    }
+
+    public CircuitBreakers getCircuitBreakers() {
+        return circuitBreakers;
+    }
+
+    public void setCircuitBreakers(CircuitBreakers circuitBreakers) {
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    public long getStaleMaxBytes() {
+        return staleMaxBytes;
+    }
+
+    public void setStaleMaxBytes(long staleMaxBytes) {
+        this.staleMaxBytes = staleMaxBytes;
+    }
+
+    public long getStaleTtlMillis() {
+        return staleTtlMillis;
+    }
+
+    public void setStaleTtlMillis(long staleTtlMillis) {
+        this.staleTtlMillis = staleTtlMillis;
+    }
+
+    public String getReadFrom() {
+        return readFrom;
+    }
+
+    public void setReadFrom(String readFrom) {
+        this.readFrom = readFrom;
+    }
+
+    public long getReplicaMaxLagMillis() {
+        return replicaMaxLagMillis;
+    }
+
+    public void setReplicaMaxLagMillis(long replicaMaxLagMillis) {
+        this.replicaMaxLagMillis = replicaMaxLagMillis;
+    }
+
+    public long getReplicaProbeMillis() {
+        return replicaProbeMillis;
+    }
+
+    public void setReplicaProbeMillis(long replicaProbeMillis) {
+        this.replicaProbeMillis = replicaProbeMillis;
+    }
+
+    public GenericObjectPoolConfig getReplicaPoolConfig() {
+        return replicaPoolConfig;
+    }
+
+    public void setReplicaPoolConfig(GenericObjectPoolConfig replicaPoolConfig) {
+        this.replicaPoolConfig = replicaPoolConfig;
+    }
+
+    public String getBloomMode() {
+        return bloomMode;
+    }
+
+    public void setBloomMode(String bloomMode) {
+        this.bloomMode = bloomMode;
+    }
+
+    public long getBloomExpectedKeys() {
+        return bloomExpectedKeys;
+    }
+
+    public void setBloomExpectedKeys(long bloomExpectedKeys) {
+        this.bloomExpectedKeys = bloomExpectedKeys;
+    }
+
+    public double getBloomFpp() {
+        return bloomFpp;
+    }
+
+    public void setBloomFpp(double bloomFpp) {
+        this.bloomFpp = bloomFpp;
+    }
+
+    public long getBloomRebuildMillis() {
+        return bloomRebuildMillis;
+    }
+
+    public void setBloomRebuildMillis(long bloomRebuildMillis) {
+        this.bloomRebuildMillis = bloomRebuildMillis;
+    }
+
+    public BloomGuard.KeySource getBloomKeySource() {
+        return bloomKeySource;
+    }
+
+    public void setBloomKeySource(BloomGuard.KeySource bloomKeySource) {
+        this.bloomKeySource = bloomKeySource;
+    }
+
+    public boolean isBloomBlocksLoad() {
+        return bloomBlocksLoad;
+    }
+
+    public void setBloomBlocksLoad(boolean bloomBlocksLoad) {
+        this.bloomBlocksLoad = bloomBlocksLoad;
+    }
+
+    public MetricsSink getMetricsSink() {
+        return metricsSink;
+    }
+
+    /**
+     * 设置操作指标输出，首次记录指标时开始按 metricsReportMillis 定期上报连接池状态
+     *
+     * @param metricsSink
+     */
+    public void setMetricsSink(MetricsSink metricsSink) {
+        this.metricsSink = metricsSink;
+    }
+
+    public long getMetricsReportMillis() {
+        return metricsReportMillis;
+    }
+
+    public void setMetricsReportMillis(long metricsReportMillis) {
+        this.metricsReportMillis = metricsReportMillis;
+    }
+
+    public int getKeyMonitorSampleRate() {
+        return keyMonitorSampleRate;
+    }
+
+    public void setKeyMonitorSampleRate(int keyMonitorSampleRate) {
+        this.keyMonitorSampleRate = keyMonitorSampleRate;
+    }
+
+    public int getKeyMonitorTopK() {
+        return keyMonitorTopK;
+    }
+
+    public void setKeyMonitorTopK(int keyMonitorTopK) {
+        this.keyMonitorTopK = keyMonitorTopK;
+    }
+
+    public long getKeyMonitorPeriodMillis() {
+        return keyMonitorPeriodMillis;
+    }
+
+    public void setKeyMonitorPeriodMillis(long keyMonitorPeriodMillis) {
+        this.keyMonitorPeriodMillis = keyMonitorPeriodMillis;
+    }
+
+    public int getBigKeyThreshold() {
+        return bigKeyThreshold;
+    }
+
+    public void setBigKeyThreshold(int bigKeyThreshold) {
+        this.bigKeyThreshold = bigKeyThreshold;
+    }
+
+    public long getHotKeyPromoteTtlMillis() {
+        return hotKeyPromoteTtlMillis;
+    }
+
+    public void setHotKeyPromoteTtlMillis(long hotKeyPromoteTtlMillis) {
+        this.hotKeyPromoteTtlMillis = hotKeyPromoteTtlMillis;
+    }
+
+    public long getHotKeyPromoteMinCount() {
+        return hotKeyPromoteMinCount;
+    }
+
+    public void setHotKeyPromoteMinCount(long hotKeyPromoteMinCount) {
+        this.hotKeyPromoteMinCount = hotKeyPromoteMinCount;
+    }
+
+    public long getCounterFlushMillis() {
+        return counterFlushMillis;
+    }
+
+    public void setCounterFlushMillis(long counterFlushMillis) {
+        this.counterFlushMillis = counterFlushMillis;
+    }
+
+    public long getCounterFlushEvents() {
+        return counterFlushEvents;
+    }
+
+    public void setCounterFlushEvents(long counterFlushEvents) {
+        this.counterFlushEvents = counterFlushEvents;
+    }
+
+    public long getWriteBehindFlushMillis() {
+        return writeBehindFlushMillis;
+    }
+
+    public void setWriteBehindFlushMillis(long writeBehindFlushMillis) {
+        this.writeBehindFlushMillis = writeBehindFlushMillis;
+    }
+
+    public int getWriteBehindFlushEntries() {
+        return writeBehindFlushEntries;
+    }
+
+    public void setWriteBehindFlushEntries(int writeBehindFlushEntries) {
+        this.writeBehindFlushEntries = writeBehindFlushEntries;
+    }
+
+    public int getWriteBehindMaxEntries() {
+        return writeBehindMaxEntries;
+    }
+
+    public void setWriteBehindMaxEntries(int writeBehindMaxEntries) {
+        this.writeBehindMaxEntries = writeBehindMaxEntries;
+    }
+
+    public long getWriteBehindMaxBlockMillis() {
+        return writeBehindMaxBlockMillis;
+    }
+
+    public void setWriteBehindMaxBlockMillis(long writeBehindMaxBlockMillis) {
+        this.writeBehindMaxBlockMillis = writeBehindMaxBlockMillis;
+    }
+
+    public int getTtlJitterPercent() {
+        return ttlJitterPercent;
+    }
+
+    public void setTtlJitterPercent(int ttlJitterPercent) {
+        this.ttlJitterPercent = ttlJitterPercent;
+    }
+
+    public boolean isLoadLockEnabled() {
+        return loadLockEnabled;
+    }
+
+    public void setLoadLockEnabled(boolean loadLockEnabled) {
+        this.loadLockEnabled = loadLockEnabled;
+    }
+
+    public long getLoadLockMillis() {
+        return loadLockMillis;
+    }
+
+    public void setLoadLockMillis(long loadLockMillis) {
+        this.loadLockMillis = loadLockMillis;
+    }
+
+    public double getEarlyRefreshBeta() {
+        return earlyRefreshBeta;
+    }
+
+    public void setEarlyRefreshBeta(double earlyRefreshBeta) {
+        this.earlyRefreshBeta = earlyRefreshBeta;
+    }
+
+    public int getPipelineThreads() {
+        return pipelineThreads;
+    }
+
+    public void setPipelineThreads(int pipelineThreads) {
+        this.pipelineThreads = pipelineThreads;
+    }
+
+    public int getScanCount() {
+        return scanCount;
+    }
+
+    public void setScanCount(int scanCount) {
+        this.scanCount = scanCount;
+    }
+
+    public int getPurgeBatchSize() {
+        return purgeBatchSize;
+    }
+
+    public void setPurgeBatchSize(int purgeBatchSize) {
+        this.purgeBatchSize = purgeBatchSize;
+    }
+
+    public int getPurgeMaxKeysPerSecond() {
+        return purgeMaxKeysPerSecond;
+    }
+
+    public void setPurgeMaxKeysPerSecond(int purgeMaxKeysPerSecond) {
+        this.purgeMaxKeysPerSecond = purgeMaxKeysPerSecond;
+    }
+
+    public int getAsyncThreads() {
+        return asyncThreads;
+    }
+
+    public void setAsyncThreads(int asyncThreads) {
+        this.asyncThreads = asyncThreads;
+    }
+
+    public int getAsyncQueueCapacity() {
+        return asyncQueueCapacity;
+    }
+
+    public void setAsyncQueueCapacity(int asyncQueueCapacity) {
+        this.asyncQueueCapacity = asyncQueueCapacity;
+    }
+
+    public int getAsyncMaxBatch() {
+        return asyncMaxBatch;
+    }
+
+    public void setAsyncMaxBatch(int asyncMaxBatch) {
+        this.asyncMaxBatch = asyncMaxBatch;
     }
 
 
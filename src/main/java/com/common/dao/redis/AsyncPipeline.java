@@ -0,0 +1,301 @@
+package com.common.dao.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Description: 异步命令执行
+ * 				   命令按key所在主节点排队，每个节点同一时刻只有一个线程在执行，
+ * 				   执行时把队列中已积累的命令合并为一次pipeline，并发请求越多合并越多
+ * 				   排队命令总数有上限，超出时返回的future以 RejectedExecutionException 结束
+ * 				   配置熔断时每批命令执行前申请节点许可，被拒绝时整批以 CircuitOpenException 结束，不发送；
+ * 				   取连接失败（未发送）时逐个走 JedisCluster，发送后连接断开时以 PipelineOutcomeUnknownException 结束，不重放
+ */
+public class AsyncPipeline {
+    protected transient final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * 单个异步命令
+     *
+     * @param <R>
+     */
+    public interface Command<R> {
+
+        /**
+         * 在节点pipeline中执行
+         *
+         * @param pipeline
+         * @return
+         */
+        Response<R> pipelined(Pipeline pipeline);
+
+        /**
+         * 直接通过 JedisCluster 执行（重定向、节点未知时）
+         *
+         * @return
+         */
+        R direct();
+    }
+
+    private final ClusterSlotRouter router;
+
+    /**
+     * 节点熔断，为null时不熔断
+     */
+    private final CircuitBreakers breakers;
+
+    private final ExecutorService executor;
+
+    /**
+     * 排队命令总数上限
+     */
+    private final int queueCapacity;
+
+    /**
+     * 单次pipeline最多合并的命令数
+     */
+    private final int maxBatch;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final ConcurrentHashMap<String, NodeQueue> nodes = new ConcurrentHashMap<String, NodeQueue>();
+
+    public AsyncPipeline(ClusterSlotRouter router, int threads, int queueCapacity, int maxBatch) {
+        this(router, threads, queueCapacity, maxBatch, null);
+    }
+
+    /**
+     * @param router
+     * @param threads 执行线程数
+     * @param queueCapacity 排队命令总数上限
+     * @param maxBatch 单次pipeline最多合并的命令数
+     * @param breakers 节点熔断，为null时不熔断
+     */
+    public AsyncPipeline(ClusterSlotRouter router, int threads, int queueCapacity, int maxBatch,
+                         CircuitBreakers breakers) {
+        this.router = router;
+        this.breakers = breakers;
+        this.queueCapacity = queueCapacity;
+        this.maxBatch = maxBatch;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("redis-async"));
+        ((ThreadPoolExecutor) executor).allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 提交命令
+     *
+     * @param fullkey 命令操作的完整key，用于确定节点
+     * @param command
+     * @return
+     */
+    public <R> CompletableFuture<R> submit(String fullkey, Command<R> command) {
+        final CompletableFuture<R> future = new CompletableFuture<R>();
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            future.completeExceptionally(new RejectedExecutionException("redis async queue full"));
+            return future;
+        }
+        String node = router.masterOf(fullkey);
+        if (node == null || router.pool(node) == null) {
+            node = "";
+        }
+        NodeQueue nodeQueue = nodes.get(node);
+        if (nodeQueue == null) {
+            NodeQueue created = new NodeQueue(node);
+            nodeQueue = nodes.putIfAbsent(node, created);
+            if (nodeQueue == null) {
+                nodeQueue = created;
+            }
+        }
+        nodeQueue.commands.add(new Pending<R>(command, future));
+        nodeQueue.schedule();
+        return future;
+    }
+
+    /**
+     * 关闭线程池，已排队的命令仍会执行完
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 执行一批命令
+     */
+    private void execute(String node, List<Pending<?>> batch) {
+        JedisPool pool = node.isEmpty() ? null : router.pool(node);
+        if (pool == null) {
+            for (Pending<?> pending : batch) {
+                pending.direct();
+            }
+            return;
+        }
+        CircuitBreaker breaker = breakers == null ? null : breakers.get(node);
+        CircuitBreaker.Permit permit = breaker == null ? null : breaker.tryAcquire();
+        if (permit == CircuitBreaker.Permit.REJECTED) {
+            fail(batch, new CircuitOpenException(node));
+            return;
+        }
+        List<Response<?>> responses = new ArrayList<Response<?>>(batch.size());
+        boolean failed = false;
+        long start = System.nanoTime();
+        boolean sent = false;
+        PipelineOutcomeUnknownException unknown = null;
+        Jedis connection = null;
+        try {
+            connection = pool.getResource();
+            // 之后的命令可能已部分或全部到达节点
+            sent = true;
+            Pipeline pipeline = connection.pipelined();
+            for (Pending<?> pending : batch) {
+                responses.add(pending.command.pipelined(pipeline));
+            }
+            pipeline.sync();
+        } catch (JedisConnectionException e) {
+            logger.warn("redis async connection error, node:" + node, e);
+            failed = true;
+            unknown = sent ? new PipelineOutcomeUnknownException(node, e) : null;
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            if (breaker != null) {
+                breaker.onResult(permit, System.nanoTime() - start, failed);
+            }
+        }
+        // 熔断器记录结果后再结束future
+        if (unknown != null) {
+            fail(batch, unknown);
+            return;
+        }
+        if (failed) {
+            router.refresh();
+            for (Pending<?> pending : batch) {
+                pending.direct();
+            }
+            return;
+        }
+        boolean moved = false;
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                batch.get(i).complete(responses.get(i).get());
+            } catch (JedisRedirectionException e) {
+                if (!moved) {
+                    moved = true;
+                    router.refresh();
+                }
+                batch.get(i).direct();
+            } catch (Exception e) {
+                batch.get(i).future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static void fail(List<Pending<?>> batch, RuntimeException e) {
+        for (Pending<?> pending : batch) {
+            pending.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 单个节点的命令队列
+     */
+    private class NodeQueue implements Runnable {
+        private final String node;
+        private final Queue<Pending<?>> commands = new ConcurrentLinkedQueue<Pending<?>>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        NodeQueue(String node) {
+            this.node = node;
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    Pending<?> pending;
+                    while ((pending = commands.poll()) != null) {
+                        queued.decrementAndGet();
+                        pending.future.completeExceptionally(e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                List<Pending<?>> batch = new ArrayList<Pending<?>>();
+                Pending<?> pending;
+                while (batch.size() < maxBatch && (pending = commands.poll()) != null) {
+                    batch.add(pending);
+                }
+                if (!batch.isEmpty()) {
+                    queued.addAndGet(-batch.size());
+                    try {
+                        execute(node, batch);
+                    } catch (Exception e) {
+                        for (Pending<?> item : batch) {
+                            item.future.completeExceptionally(e);
+                        }
+                    }
+                    continue;
+                }
+                scheduled.set(false);
+                // 释放标记后若又有命令入队且未被其他线程接手，继续执行
+                if (commands.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 排队中的命令
+     */
+    private static class Pending<R> {
+        private final Command<R> command;
+        private final CompletableFuture<R> future;
+
+        Pending(Command<R> command, CompletableFuture<R> future) {
+            this.command = command;
+            this.future = future;
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(Object value) {
+            future.complete((R) value);
+        }
+
+        void direct() {
+            try {
+                future.complete(command.direct());
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.common.dao.redis;
+
+import redis.clients.util.SafeEncoder;
+
+import java.util.Collection;
+
+/**
+ * @Description: 布隆过滤器
+ * 				   mightContain 返回false时key一定未写入过，返回true时有 fpp 的概率误判
+ * 				   位数 m = -n * ln(p) / (ln2)^2，哈希次数 k = m / n * ln2，
+ * 				   k 个位置由两个64位哈希组合得到（h1 + i * h2）
+ */
+public abstract class BloomFilter {
+
+    protected final long numBits;
+
+    protected final int numHashes;
+
+    protected BloomFilter(long numBits, int numHashes) {
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+    }
+
+    /**
+     * key 是否可能存在
+     *
+     * @param key
+     * @return
+     */
+    public boolean mightContain(String key) {
+        return test(indexes(key));
+    }
+
+    /**
+     * 加入key
+     *
+     * @param key
+     */
+    public void put(String key) {
+        set(indexes(key));
+    }
+
+    /**
+     * 批量加入key
+     *
+     * @param keys
+     */
+    public void putAll(Collection<String> keys) {
+        for (String key : keys) {
+            put(key);
+        }
+    }
+
+    /**
+     * 清空
+     */
+    public abstract void clear();
+
+    protected abstract boolean test(long[] indexes);
+
+    protected abstract void set(long[] indexes);
+
+    public long getNumBits() {
+        return numBits;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    /**
+     * key 对应的 k 个位
+     *
+     * @param key
+     * @return
+     */
+    protected long[] indexes(String key) {
+        byte[] data = SafeEncoder.encode(key);
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : data) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        long h1 = mix(hash);
+        long h2 = mix(hash ^ 0x9e3779b97f4a7c15L) | 1L;
+        long[] indexes = new long[numHashes];
+        for (int i = 0; i < numHashes; i++) {
+            indexes[i] = Long.remainderUnsigned(h1 + i * h2, numBits);
+        }
+        return indexes;
+    }
+
+    /**
+     * 最优位数
+     *
+     * @param expectedKeys 预计key数
+     * @param fpp 误判率
+     * @return
+     */
+    public static long optimalNumBits(long expectedKeys, double fpp) {
+        long n = Math.max(expectedKeys, 1);
+        return Math.max(64L, (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+    }
+
+    /**
+     * 最优哈希次数
+     *
+     * @param expectedKeys
+     * @param numBits
+     * @return
+     */
+    public static int optimalNumHashes(long expectedKeys, long numBits) {
+        long n = Math.max(expectedKeys, 1);
+        return Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
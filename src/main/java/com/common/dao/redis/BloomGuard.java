@@ -0,0 +1,199 @@
+package com.common.dao.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 布隆过滤器防穿透
+ * 				   首次重建完成前不做判断（一律视为可能存在），之后写入的key同时加入过滤器
+ * 				   定期重建：新建空过滤器，从 KeySource 加载全部key后替换，期间写入的key同时加入新旧过滤器，
+ * 				   以清除已删除、已过期key留下的位，使误判率保持在配置值附近
+ * 				   写入时先加入过滤器再写redis，新过滤器可见前刚加入旧过滤器的key可能尚未写到redis而被扫描漏掉，
+ * 				   因此新过滤器可见后等待 stagingGraceMillis 再开始加载
+ */
+public class BloomGuard {
+    protected transient final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * 过滤器的创建与发布
+     */
+    public interface Factory {
+
+        /**
+         * 已可直接使用的过滤器（例如其他进程已建好的redis位图），没有时返回null
+         *
+         * @return
+         */
+        BloomFilter existing();
+
+        /**
+         * 创建用于重建的空过滤器，不需要本进程重建时（例如其他进程正在重建）返回null
+         *
+         * @return
+         */
+        BloomFilter create();
+
+        /**
+         * 重建完成，返回替换后的过滤器
+         *
+         * @param staged
+         * @return
+         */
+        BloomFilter publish(BloomFilter staged);
+
+        /**
+         * 重建失败
+         *
+         * @param staged
+         */
+        void abort(BloomFilter staged);
+    }
+
+    /**
+     * 重建时的key来源
+     */
+    public interface KeySource {
+
+        /**
+         * 把全部key加入 target
+         *
+         * @param target
+         */
+        void load(BloomFilter target);
+    }
+
+    private final Factory factory;
+
+    private final KeySource source;
+
+    private final ScheduledExecutorService scheduler;
+
+    private volatile BloomFilter current;
+
+    private volatile BloomFilter staging;
+
+    /**
+     * 新过滤器可见后到开始加载的等待毫秒数，应大于写命令的最长耗时
+     */
+    private long stagingGraceMillis = 1000;
+
+    public BloomGuard(Factory factory, KeySource source) {
+        this.factory = factory;
+        this.source = source;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("redis-bloom"));
+    }
+
+    /**
+     * 立即开始首次重建，之后每隔 periodMillis 重建一次
+     *
+     * @param periodMillis
+     */
+    public void start(long periodMillis) {
+        try {
+            current = factory.existing();
+        } catch (Exception e) {
+            logger.warn("redis bloom filter load error", e);
+        }
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                rebuild();
+            }
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * key 是否可能存在，过滤器未就绪或出错时返回true
+     *
+     * @param fullkey
+     * @return
+     */
+    public boolean mightContain(String fullkey) {
+        BloomFilter filter = current;
+        if (filter == null) {
+            return true;
+        }
+        try {
+            return filter.mightContain(fullkey);
+        } catch (Exception e) {
+            logger.warn("redis bloom filter test error, key:" + fullkey, e);
+            return true;
+        }
+    }
+
+    /**
+     * 加入key
+     *
+     * @param fullkey
+     */
+    public void put(String fullkey) {
+        // 先读 staging 再读 current：发布时先替换 current 再清空 staging，读到 staging 为null时已能读到新的 current
+        BloomFilter next = staging;
+        if (next != null) {
+            next.put(fullkey);
+        }
+        BloomFilter filter = current;
+        if (filter != null) {
+            filter.put(fullkey);
+        }
+    }
+
+    /**
+     * 是否已就绪
+     *
+     * @return
+     */
+    public boolean isReady() {
+        return current != null;
+    }
+
+    /**
+     * 重建
+     */
+    public synchronized void rebuild() {
+        BloomFilter next = null;
+        try {
+            next = factory.create();
+            if (next == null) {
+                if (current == null) {
+                    current = factory.existing();
+                }
+                return;
+            }
+            staging = next;
+            long start = System.currentTimeMillis();
+            if (stagingGraceMillis > 0) {
+                Thread.sleep(stagingGraceMillis);
+            }
+            source.load(next);
+            current = factory.publish(next);
+            logger.info("redis bloom filter rebuilt in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (InterruptedException e) {
+            factory.abort(next);
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("redis bloom filter rebuild error", e);
+            if (next != null) {
+                factory.abort(next);
+            }
+        } finally {
+            staging = null;
+        }
+    }
+
+    public long getStagingGraceMillis() {
+        return stagingGraceMillis;
+    }
+
+    public void setStagingGraceMillis(long stagingGraceMillis) {
+        this.stagingGraceMillis = stagingGraceMillis;
+    }
+}
@@ -0,0 +1,203 @@
+package com.common.dao.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 单个节点的熔断器
+ * 				   关闭：统计最近 windowMillis 内的调用，调用数达到 minimumCalls 且失败率或慢调用率超过阈值时打开
+ * 				   打开：所有调用直接失败，openMillis 后进入半开
+ * 				   半开：按 probeRatio 比例放行少量调用作为探测（同时最多 maxProbes 个），其余直接失败；
+ * 				   连续 probeSuccesses 次探测成功后关闭，任一探测失败或过慢则重新打开
+ */
+public class CircuitBreaker {
+    protected transient final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final int BUCKETS = 10;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * 调用许可
+     */
+    public enum Permit {
+        /**
+         * 拒绝，直接失败
+         */
+        REJECTED,
+        /**
+         * 正常调用
+         */
+        CALL,
+        /**
+         * 半开状态下的探测调用
+         */
+        PROBE
+    }
+
+    private final String node;
+
+    private final CircuitBreakers config;
+
+    private final long bucketMillis;
+
+    private final long[] bucketIds = new long[BUCKETS];
+
+    private final int[] calls = new int[BUCKETS];
+
+    private final int[] failures = new int[BUCKETS];
+
+    private final int[] slowCalls = new int[BUCKETS];
+
+    private volatile State state = State.CLOSED;
+
+    private long openedAt;
+
+    private int probing;
+
+    private int probeSuccesses;
+
+    CircuitBreaker(String node, CircuitBreakers config) {
+        this.node = node;
+        this.config = config;
+        this.bucketMillis = Math.max(1, config.getWindowMillis() / BUCKETS);
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * 调用前申请许可，返回 CALL/PROBE 时调用结束后必须调用 onResult
+     *
+     * @return
+     */
+    public Permit tryAcquire() {
+        if (state == State.CLOSED) {
+            return Permit.CALL;
+        }
+        synchronized (this) {
+            if (state == State.OPEN) {
+                if (System.currentTimeMillis() - openedAt < config.getOpenMillis()) {
+                    return Permit.REJECTED;
+                }
+                transition(State.HALF_OPEN);
+                probeSuccesses = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                if (probing >= config.getMaxProbes() || ThreadLocalRandom.current().nextDouble() >= config.getProbeRatio()) {
+                    return Permit.REJECTED;
+                }
+                probing++;
+                return Permit.PROBE;
+            }
+            return Permit.CALL;
+        }
+    }
+
+    /**
+     * 归还未使用的许可（申请后没有发出调用），不计入统计
+     *
+     * @param permit tryAcquire 的返回值
+     */
+    public synchronized void release(Permit permit) {
+        if (permit == Permit.PROBE) {
+            probing--;
+        }
+    }
+
+    /**
+     * 记录调用结果
+     *
+     * @param permit tryAcquire 的返回值
+     * @param nanos 耗时
+     * @param failed 是否连接失败或超时
+     */
+    public synchronized void onResult(Permit permit, long nanos, boolean failed) {
+        boolean slow = nanos >= TimeUnit.MILLISECONDS.toNanos(config.getSlowCallMillis());
+        if (permit == Permit.PROBE) {
+            probing--;
+            if (state != State.HALF_OPEN) {
+                return;
+            }
+            if (failed || slow) {
+                open();
+            } else if (++probeSuccesses >= config.getProbeSuccesses()) {
+                close();
+            }
+            return;
+        }
+        if (permit != Permit.CALL || state != State.CLOSED) {
+            return;
+        }
+        long bucketId = System.currentTimeMillis() / bucketMillis;
+        int index = (int) (bucketId % BUCKETS);
+        if (bucketIds[index] != bucketId) {
+            bucketIds[index] = bucketId;
+            calls[index] = 0;
+            failures[index] = 0;
+            slowCalls[index] = 0;
+        }
+        calls[index]++;
+        if (failed) {
+            failures[index]++;
+        }
+        if (slow) {
+            slowCalls[index]++;
+        }
+
+        int totalCalls = 0;
+        int totalFailures = 0;
+        int totalSlow = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (bucketId - bucketIds[i] < BUCKETS) {
+                totalCalls += calls[i];
+                totalFailures += failures[i];
+                totalSlow += slowCalls[i];
+            }
+        }
+        if (totalCalls >= config.getMinimumCalls()
+                && (totalFailures >= totalCalls * config.getFailureRateThreshold()
+                || totalSlow >= totalCalls * config.getSlowCallRateThreshold())) {
+            logger.warn("redis circuit open, node:" + node + ", calls:" + totalCalls
+                    + ", failures:" + totalFailures + ", slow:" + totalSlow);
+            open();
+        }
+    }
+
+    private void open() {
+        transition(State.OPEN);
+        openedAt = System.currentTimeMillis();
+    }
+
+    private void close() {
+        for (int i = 0; i < BUCKETS; i++) {
+            bucketIds[i] = 0;
+            calls[i] = 0;
+            failures[i] = 0;
+            slowCalls[i] = 0;
+        }
+        transition(State.CLOSED);
+    }
+
+    private void transition(State next) {
+        if (state != next) {
+            logger.warn("redis circuit " + state + " -> " + next + ", node:" + node);
+            state = next;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return node + ":" + state;
+    }
+}
@@ -0,0 +1,162 @@
+package com.common.dao.redis;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Description: 按节点的熔断器及其配置，节点首次访问时创建
+ * 				   节点卡住时请求线程会在 JedisCluster 中阻塞到超时，熔断打开后直接失败，避免耗尽调用方线程池
+ */
+public class CircuitBreakers {
+
+    /**
+     * 打开熔断的失败率（连接失败、超时）
+     */
+    private double failureRateThreshold = 0.5;
+
+    /**
+     * 超过该毫秒数的调用计为慢调用
+     */
+    private long slowCallMillis = 1000;
+
+    /**
+     * 打开熔断的慢调用率
+     */
+    private double slowCallRateThreshold = 0.8;
+
+    /**
+     * 统计窗口内至少有这么多调用才判断是否打开
+     */
+    private int minimumCalls = 20;
+
+    /**
+     * 统计窗口毫秒数
+     */
+    private long windowMillis = 10000;
+
+    /**
+     * 打开后经过该毫秒数进入半开
+     */
+    private long openMillis = 5000;
+
+    /**
+     * 半开时放行作为探测的请求比例
+     */
+    private double probeRatio = 0.05;
+
+    /**
+     * 半开时同时进行的探测数上限
+     */
+    private int maxProbes = 2;
+
+    /**
+     * 半开时连续成功该次数后关闭
+     */
+    private int probeSuccesses = 5;
+
+    private final ConcurrentHashMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+
+    /**
+     * 得到节点的熔断器
+     *
+     * @param node host:port
+     * @return
+     */
+    public CircuitBreaker get(String node) {
+        CircuitBreaker breaker = breakers.get(node);
+        if (breaker == null) {
+            CircuitBreaker created = new CircuitBreaker(node, this);
+            breaker = breakers.putIfAbsent(node, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * 各节点熔断状态
+     *
+     * @return
+     */
+    public Map<String, CircuitBreaker.State> states() {
+        Map<String, CircuitBreaker.State> states = new LinkedHashMap<String, CircuitBreaker.State>();
+        for (Map.Entry<String, CircuitBreaker> entry : breakers.entrySet()) {
+            states.put(entry.getKey(), entry.getValue().getState());
+        }
+        return states;
+    }
+
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public void setFailureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    public long getSlowCallMillis() {
+        return slowCallMillis;
+    }
+
+    public void setSlowCallMillis(long slowCallMillis) {
+        this.slowCallMillis = slowCallMillis;
+    }
+
+    public double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public void setSlowCallRateThreshold(double slowCallRateThreshold) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public void setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    public long getOpenMillis() {
+        return openMillis;
+    }
+
+    public void setOpenMillis(long openMillis) {
+        this.openMillis = openMillis;
+    }
+
+    public double getProbeRatio() {
+        return probeRatio;
+    }
+
+    public void setProbeRatio(double probeRatio) {
+        this.probeRatio = probeRatio;
+    }
+
+    public int getMaxProbes() {
+        return maxProbes;
+    }
+
+    public void setMaxProbes(int maxProbes) {
+        this.maxProbes = maxProbes;
+    }
+
+    public int getProbeSuccesses() {
+        return probeSuccesses;
+    }
+
+    public void setProbeSuccesses(int probeSuccesses) {
+        this.probeSuccesses = probeSuccesses;
+    }
+}
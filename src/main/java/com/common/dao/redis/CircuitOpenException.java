@@ -0,0 +1,23 @@
+package com.common.dao.redis;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * @Description: 节点熔断中，命令未发送直接失败
+ * 				   继承 JedisConnectionException，调用方按连接失败处理（重试、降级）
+ */
+public class CircuitOpenException extends JedisConnectionException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String node;
+
+    public CircuitOpenException(String node) {
+        super("redis circuit open, node:" + node);
+        this.node = node;
+    }
+
+    public String getNode() {
+        return node;
+    }
+}
@@ -0,0 +1,122 @@
+package com.common.dao.redis;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisClusterMaxRedirectionsException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+
+/**
+ * @Description: 单key命令在所属主节点上执行
+ * 				   JedisCluster(2.7.3) 只有字符串接口，二进制值通过本类直接在节点连接上执行，
+ * 				   MOVED 时刷新槽位重试，ASK 时向目标节点发送 ASKING 后重试
+ * 				   配置熔断时按节点统计连接失败与耗时，熔断中的节点直接抛出 CircuitOpenException
+ */
+public class ClusterNodeExecutor {
+
+    /**
+     * 节点上执行的命令
+     *
+     * @param <T>
+     */
+    public interface NodeCommand<T> {
+
+        T execute(Jedis connection);
+    }
+
+    private static final int MAX_REDIRECTIONS = 5;
+
+    private final ClusterSlotRouter router;
+
+    private final CircuitBreakers breakers;
+
+    public ClusterNodeExecutor(ClusterSlotRouter router) {
+        this(router, null);
+    }
+
+    /**
+     * @param router
+     * @param breakers 节点熔断，为null时不熔断
+     */
+    public ClusterNodeExecutor(ClusterSlotRouter router, CircuitBreakers breakers) {
+        this.router = router;
+        this.breakers = breakers;
+    }
+
+    public ClusterSlotRouter getRouter() {
+        return router;
+    }
+
+    public CircuitBreakers getBreakers() {
+        return breakers;
+    }
+
+    /**
+     * 执行命令
+     *
+     * @param fullkey 命令操作的完整key
+     * @param command
+     * @return
+     */
+    public <T> T execute(String fullkey, NodeCommand<T> command) {
+        String node = router.masterOf(fullkey);
+        boolean asking = false;
+        RuntimeException last = null;
+        for (int attempt = 0; attempt < MAX_REDIRECTIONS; attempt++) {
+            JedisPool pool = node == null ? null : router.pool(node);
+            if (pool == null) {
+                router.refresh();
+                node = router.masterOf(fullkey);
+                pool = node == null ? null : router.pool(node);
+                if (pool == null) {
+                    throw new JedisConnectionException("no reachable node for key: " + fullkey);
+                }
+            }
+            CircuitBreaker breaker = breakers == null ? null : breakers.get(node);
+            CircuitBreaker.Permit permit = breaker == null ? null : breaker.tryAcquire();
+            if (permit == CircuitBreaker.Permit.REJECTED) {
+                throw new CircuitOpenException(node);
+            }
+            long start = System.nanoTime();
+            Jedis connection = null;
+            try {
+                connection = pool.getResource();
+                if (asking) {
+                    connection.asking();
+                    asking = false;
+                }
+                return command.execute(connection);
+            } catch (JedisMovedDataException e) {
+                last = e;
+                router.refresh();
+                node = e.getTargetNode().getHost() + ":" + e.getTargetNode().getPort();
+            } catch (JedisAskDataException e) {
+                last = e;
+                asking = true;
+                node = e.getTargetNode().getHost() + ":" + e.getTargetNode().getPort();
+            } catch (JedisConnectionException e) {
+                if (breaker != null) {
+                    breaker.onResult(permit, System.nanoTime() - start, true);
+                    boolean open = breaker.getState() != CircuitBreaker.State.CLOSED;
+                    breaker = null;
+                    if (open) {
+                        // 已熔断，不再刷新槽位重试，避免再次阻塞
+                        throw e;
+                    }
+                }
+                last = e;
+                router.refresh();
+                node = router.masterOf(fullkey);
+            } finally {
+                if (connection != null) {
+                    connection.close();
+                }
+                if (breaker != null) {
+                    breaker.onResult(permit, System.nanoTime() - start, false);
+                }
+            }
+        }
+        throw new JedisClusterMaxRedirectionsException(last);
+    }
+}
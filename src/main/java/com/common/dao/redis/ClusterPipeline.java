@@ -0,0 +1,274 @@
+package com.common.dao.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 集群批量执行
+ * 				   按槽位把key分到所属主节点，每个节点一次pipeline，多个节点并行执行
+ * 				   结果按调用方key的顺序返回
+ * 				   遇到 MOVED/ASK 或取连接失败（命令未发送）时刷新槽位并改为逐个走 JedisCluster；
+ * 				   命令发送后连接断开时节点是否已执行未知，这些key以 PipelineOutcomeUnknownException 记入错误，不重试
+ * 				   单个key的错误回复（如 WRONGTYPE）不重试，等待所有节点执行完后以 ClusterPipelineException 抛出，
+ * 				   其中带有其余key的结果，避免非幂等命令因其他key失败而重复执行
+ * 				   配置熔断时每个节点执行前申请许可，任一节点被拒绝时批量命令整体抛出 CircuitOpenException，不执行；
+ * 				   打开超过 openMillis 后批量命令也可以作为半开探测执行，只有批量流量的节点同样能恢复
+ */
+public class ClusterPipeline {
+    protected transient final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * 单个key的操作
+     *
+     * @param <R>
+     */
+    public interface Operation<R> {
+
+        /**
+         * 在节点pipeline中执行
+         *
+         * @param pipeline
+         * @param index key在原集合中的下标
+         * @return
+         */
+        Response<R> pipelined(Pipeline pipeline, int index);
+
+        /**
+         * 直接通过 JedisCluster 执行（重定向、节点未知时）
+         *
+         * @param index key在原集合中的下标
+         * @return
+         */
+        R direct(int index);
+    }
+
+    private final ClusterSlotRouter router;
+
+    private final ExecutorService executor;
+
+    private final CircuitBreakers breakers;
+
+    public ClusterPipeline(ClusterSlotRouter router, int threads) {
+        this(router, threads, null);
+    }
+
+    /**
+     * @param router
+     * @param threads 并行执行的线程数
+     * @param breakers 节点熔断，为null时不熔断
+     */
+    public ClusterPipeline(ClusterSlotRouter router, int threads, CircuitBreakers breakers) {
+        this.router = router;
+        this.breakers = breakers;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("redis-pipeline"));
+        ((ThreadPoolExecutor) executor).allowCoreThreadTimeOut(true);
+    }
+
+    public ClusterSlotRouter getRouter() {
+        return router;
+    }
+
+    /**
+     * 批量执行
+     *
+     * @param keys 完整key
+     * @param operation
+     * @return 与keys顺序一致的结果
+     * @throws ClusterPipelineException 部分key执行失败，其余key均已执行
+     */
+    @SuppressWarnings("unchecked")
+    public <R> List<R> execute(final List<String> keys, final Operation<R> operation) {
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final Object[] results = new Object[keys.size()];
+        final Map<Integer, RuntimeException> errors = new ConcurrentHashMap<Integer, RuntimeException>();
+        List<Integer> retry = new ArrayList<Integer>();
+
+        Map<String, List<Integer>> groups = router.groupByMaster(keys);
+        List<Integer> unknown = groups.remove(null);
+        if (unknown != null) {
+            retry.addAll(unknown);
+        }
+        final Map<String, CircuitBreaker.Permit> permits = acquire(groups.keySet());
+
+        // 最后一个节点在当前线程执行，其余节点并行
+        List<Map.Entry<String, List<Integer>>> entries = new ArrayList<Map.Entry<String, List<Integer>>>(groups.entrySet());
+        List<Future<List<Integer>>> futures = new ArrayList<Future<List<Integer>>>();
+        for (int i = 0; i < entries.size() - 1; i++) {
+            final Map.Entry<String, List<Integer>> entry = entries.get(i);
+            futures.add(executor.submit(new Callable<List<Integer>>() {
+                @Override
+                public List<Integer> call() {
+                    return executeOnNode(entry.getKey(), permits.get(entry.getKey()), entry.getValue(), operation, results,
+                            errors);
+                }
+            }));
+        }
+        if (!entries.isEmpty()) {
+            Map.Entry<String, List<Integer>> last = entries.get(entries.size() - 1);
+            try {
+                retry.addAll(executeOnNode(last.getKey(), permits.get(last.getKey()), last.getValue(), operation, results,
+                        errors));
+            } catch (RuntimeException e) {
+                fail(last.getValue(), e, errors);
+            }
+        }
+        // 等待所有节点，任一节点异常都不影响其他节点结果的收集
+        boolean interrupted = false;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                retry.addAll(futures.get(i).get());
+            } catch (InterruptedException e) {
+                interrupted = true;
+                i--;
+            } catch (ExecutionException e) {
+                // 节点上是否已执行未知，不重试
+                logger.warn("redis pipeline error, node:" + entries.get(i).getKey(), e.getCause());
+                fail(entries.get(i).getValue(), e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause() : new JedisException(e.getCause()), errors);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!retry.isEmpty()) {
+            router.refresh();
+            for (Integer index : retry) {
+                try {
+                    results[index] = operation.direct(index);
+                } catch (RuntimeException e) {
+                    errors.put(index, e);
+                }
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new ClusterPipelineException(Arrays.asList(results), new TreeMap<Integer, RuntimeException>(errors));
+        }
+        return (List<R>) Arrays.asList(results);
+    }
+
+    /**
+     * 为每个节点申请熔断许可，任一节点被拒绝时归还已申请的许可并抛出 CircuitOpenException
+     *
+     * @param nodes
+     * @return node -> 许可，未配置熔断时为空
+     */
+    private Map<String, CircuitBreaker.Permit> acquire(Collection<String> nodes) {
+        Map<String, CircuitBreaker.Permit> permits = new HashMap<String, CircuitBreaker.Permit>();
+        if (breakers == null) {
+            return permits;
+        }
+        for (String node : nodes) {
+            CircuitBreaker.Permit permit = breakers.get(node).tryAcquire();
+            if (permit == CircuitBreaker.Permit.REJECTED) {
+                for (Map.Entry<String, CircuitBreaker.Permit> acquired : permits.entrySet()) {
+                    breakers.get(acquired.getKey()).release(acquired.getValue());
+                }
+                throw new CircuitOpenException(node);
+            }
+            permits.put(node, permit);
+        }
+        return permits;
+    }
+
+    private static void fail(List<Integer> indexes, RuntimeException e, Map<Integer, RuntimeException> errors) {
+        for (Integer index : indexes) {
+            errors.put(index, e);
+        }
+    }
+
+    /**
+     * 在单个节点上执行pipeline，单个key的错误回复记入 errors
+     *
+     * @param permit 熔断许可，未配置熔断时为null
+     * @return 需要逐个重试的下标（重定向、命令发送前连接失败）
+     */
+    private <R> List<Integer> executeOnNode(String node, CircuitBreaker.Permit permit, List<Integer> indexes,
+                                            Operation<R> operation, Object[] results,
+                                            Map<Integer, RuntimeException> errors) {
+        CircuitBreaker breaker = permit == null ? null : breakers.get(node);
+        JedisPool pool = router.pool(node);
+        if (pool == null) {
+            if (breaker != null) {
+                breaker.release(permit);
+            }
+            return indexes;
+        }
+        List<Integer> retry = new ArrayList<Integer>();
+        boolean failed = false;
+        long start = System.nanoTime();
+        boolean sent = false;
+        Jedis connection = null;
+        try {
+            connection = pool.getResource();
+            // 之后的命令可能已部分或全部到达节点
+            sent = true;
+            Pipeline pipeline = connection.pipelined();
+            List<Response<R>> responses = new ArrayList<Response<R>>(indexes.size());
+            for (Integer index : indexes) {
+                responses.add(operation.pipelined(pipeline, index));
+            }
+            pipeline.sync();
+            for (int i = 0; i < indexes.size(); i++) {
+                try {
+                    results[indexes.get(i)] = responses.get(i).get();
+                } catch (JedisRedirectionException e) {
+                    retry.add(indexes.get(i));
+                } catch (JedisDataException e) {
+                    errors.put(indexes.get(i), e);
+                }
+            }
+        } catch (JedisConnectionException e) {
+            logger.warn("redis pipeline connection error, node:" + node, e);
+            failed = true;
+            if (!sent) {
+                return indexes;
+            }
+            fail(indexes, new PipelineOutcomeUnknownException(node, e), errors);
+            return Collections.emptyList();
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            if (breaker != null) {
+                breaker.onResult(permit, System.nanoTime() - start, failed);
+            }
+        }
+        return retry;
+    }
+
+    /**
+     * 关闭线程池
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,45 @@
+package com.common.dao.redis;
+
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Description: 批量执行中部分key失败
+ * 				   其余key已执行，结果见 getResults；失败的下标及异常见 getErrors
+ * 				   PipelineOutcomeUnknownException 的key可能已在redis执行（pipeline发送后断开），类型错误等的key未生效
+ */
+public class ClusterPipelineException extends JedisException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Object> results;
+
+    private final Map<Integer, RuntimeException> errors;
+
+    public ClusterPipelineException(List<Object> results, Map<Integer, RuntimeException> errors) {
+        super(errors.size() + " of " + results.size() + " pipeline commands failed", errors.values().iterator().next());
+        this.results = results;
+        this.errors = Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * 与keys顺序一致的结果，失败的下标为null
+     *
+     * @return
+     */
+    public List<Object> getResults() {
+        return results;
+    }
+
+    /**
+     * 失败的下标 -> 异常
+     *
+     * @return
+     */
+    public Map<Integer, RuntimeException> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,293 @@
+package com.common.dao.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @Description: 集群批量清除
+ * 				   各主节点并行 SCAN，边扫描边删除，同一节点内按槽位分组，每批一次pipeline
+ * 				   删除优先使用 UNLINK（redis 4.0+，异步释放内存），服务端不支持时自动改用 DEL
+ * 				   支持批大小、每秒删除数限制以及进度回调，不会把全部key放入内存
+ * 				   删除失败时停止所有节点的扫描并抛出异常，不会返回部分删除数
+ */
+public class ClusterPurger {
+    protected transient final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * UNLINK 以lua执行，结果转为字符串以便在pipeline中读取
+     */
+    public static final String UNLINK_SCRIPT = "return tostring(redis.call('UNLINK', unpack(KEYS)))";
+
+    /**
+     * 进度回调，不同节点的回调可能并发执行
+     */
+    public interface ProgressListener {
+
+        /**
+         * 一批删除完成
+         *
+         * @param node 节点 host:port
+         * @param scanned 该节点已扫描key数
+         * @param deleted 全部节点累计删除数
+         */
+        void onProgress(String node, long scanned, long deleted);
+    }
+
+    private final ClusterScanner scanner;
+
+    /**
+     * 每批删除的key数
+     */
+    private int batchSize = 500;
+
+    /**
+     * 每秒最多删除的key数，0 表示不限制
+     */
+    private int maxKeysPerSecond = 0;
+
+    /**
+     * 是否使用 UNLINK
+     */
+    private volatile boolean unlink = true;
+
+    /**
+     * 限速：下一批允许执行的时间
+     */
+    private long nextPermitNanos = 0;
+
+    public ClusterPurger(ClusterScanner scanner) {
+        this.scanner = scanner;
+    }
+
+    /**
+     * 清除匹配的key
+     *
+     * @param pattern 完整匹配串
+     * @param listener 进度回调，可为null
+     * @return 删除个数
+     * @throws JedisException 删除失败时停止所有节点的扫描并抛出，此前的删除已生效
+     */
+    public long purge(final String pattern, final ProgressListener listener) {
+        final AtomicLong deleted = new AtomicLong();
+        final Map<String, NodeBuffer> buffers = Collections.synchronizedMap(new HashMap<String, NodeBuffer>());
+        final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+        scanner.scan(pattern, Math.max(batchSize, 10), new ClusterScanner.KeyBatchCallback() {
+            @Override
+            public boolean onKeys(String node, List<String> keys) {
+                if (failure.get() != null) {
+                    return false;
+                }
+                NodeBuffer buffer = buffers.get(node);
+                if (buffer == null) {
+                    buffer = new NodeBuffer(node);
+                    buffers.put(node, buffer);
+                }
+                try {
+                    for (String key : keys) {
+                        buffer.keys.add(key);
+                        buffer.scanned++;
+                        if (buffer.keys.size() >= batchSize) {
+                            flush(buffer, deleted, listener);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    // 扫描线程只记录日志，这里保存异常并停止扫描，由 purge 抛出
+                    failure.compareAndSet(null, e);
+                    return false;
+                }
+                return true;
+            }
+        });
+        RuntimeException error = failure.get();
+        if (error != null) {
+            logger.error("redis purge " + pattern + " failed, deleted:" + deleted.get());
+            throw error;
+        }
+        // 各节点扫描已结束，删除剩余不足一批的key
+        for (NodeBuffer buffer : buffers.values()) {
+            flush(buffer, deleted, listener);
+        }
+        logger.info("redis purge " + pattern + " deleted:" + deleted.get());
+        return deleted.get();
+    }
+
+    private void flush(NodeBuffer buffer, AtomicLong deleted, ProgressListener listener) {
+        if (buffer.keys.isEmpty()) {
+            return;
+        }
+        acquire(buffer.keys.size());
+        long count = delete(buffer.node, buffer.keys);
+        buffer.keys.clear();
+        long total = deleted.addAndGet(count);
+        if (listener != null) {
+            listener.onProgress(buffer.node, buffer.scanned, total);
+        }
+    }
+
+    /**
+     * 在节点上按槽位分组删除
+     *
+     * @return 删除个数
+     */
+    private long delete(String node, List<String> keys) {
+        ClusterSlotRouter router = scanner.getRouter();
+        Map<Integer, List<String>> slots = new HashMap<Integer, List<String>>();
+        for (String key : keys) {
+            int slot = router.slot(key);
+            List<String> group = slots.get(slot);
+            if (group == null) {
+                group = new ArrayList<String>();
+                slots.put(slot, group);
+            }
+            group.add(key);
+        }
+
+        JedisPool pool = router.pool(node);
+        if (pool == null) {
+            // 节点已下线或主从切换：刷新槽位后按key当前所属的主节点删除
+            router.refresh();
+            return deleteByMaster(keys);
+        }
+        boolean useUnlink = unlink;
+        List<List<String>> groups = new ArrayList<List<String>>(slots.values());
+        List<Response<?>> responses = new ArrayList<Response<?>>(groups.size());
+        Jedis connection = pool.getResource();
+        try {
+            Pipeline pipeline = connection.pipelined();
+            for (List<String> group : groups) {
+                String[] array = group.toArray(new String[group.size()]);
+                if (useUnlink) {
+                    responses.add(pipeline.eval(UNLINK_SCRIPT, array.length, array));
+                } else {
+                    responses.add(pipeline.del(array));
+                }
+            }
+            pipeline.sync();
+        } finally {
+            connection.close();
+        }
+
+        long count = 0;
+        for (int i = 0; i < groups.size(); i++) {
+            try {
+                count += Long.parseLong(String.valueOf(responses.get(i).get()));
+            } catch (JedisRedirectionException e) {
+                // 槽位迁移中，留给下次清除
+                logger.warn("redis purge skip moved slot, node:" + node);
+            } catch (JedisDataException e) {
+                if (useUnlink && isUnknownCommand(e)) {
+                    logger.info("redis UNLINK not supported, fallback to DEL");
+                    unlink = false;
+                    return delete(node, keys);
+                }
+                throw e;
+            }
+        }
+        return count;
+    }
+
+    private long deleteByMaster(List<String> keys) {
+        ClusterSlotRouter router = scanner.getRouter();
+        Map<String, List<Integer>> groups = router.groupByMaster(keys);
+        List<Integer> unknown = groups.remove(null);
+        if (unknown != null) {
+            throw new JedisConnectionException("redis purge no reachable master for key:" + keys.get(unknown.get(0)));
+        }
+        long count = 0;
+        for (Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+            List<String> nodeKeys = new ArrayList<String>(group.getValue().size());
+            for (Integer index : group.getValue()) {
+                nodeKeys.add(keys.get(index));
+            }
+            count += delete(group.getKey(), nodeKeys);
+        }
+        return count;
+    }
+
+    private static boolean isUnknownCommand(JedisDataException e) {
+        String message = e.getMessage();
+        return message != null && message.toLowerCase().contains("unknown");
+    }
+
+    /**
+     * 按每秒删除数限速，多个节点线程共享
+     */
+    private void acquire(int permits) {
+        if (maxKeysPerSecond <= 0) {
+            return;
+        }
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (nextPermitNanos < now) {
+                nextPermitNanos = now;
+            }
+            wait = nextPermitNanos - now;
+            nextPermitNanos += TimeUnit.SECONDS.toNanos(permits) / maxKeysPerSecond;
+        }
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 单个节点待删除的key
+     */
+    private static class NodeBuffer {
+        private final String node;
+        private final List<String> keys = new ArrayList<String>();
+        private long scanned = 0;
+
+        NodeBuffer(String node) {
+            this.node = node;
+        }
+    }
+
+    /**
+     * get/set
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getMaxKeysPerSecond() {
+        return maxKeysPerSecond;
+    }
+
+    public void setMaxKeysPerSecond(int maxKeysPerSecond) {
+        this.maxKeysPerSecond = maxKeysPerSecond;
+    }
+
+    public boolean isUnlink() {
+        return unlink;
+    }
+
+    public void setUnlink(boolean unlink) {
+        this.unlink = unlink;
+    }
+}
@@ -0,0 +1,198 @@
+package com.common.dao.redis;
+
+import com.common.dao.redis.metrics.MetricsSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.util.Pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 集群key扫描
+ * 				   基于 SCAN MATCH COUNT 游标分页，每个分片扫描一次，多个分片并行
+ * 				   默认在主节点上扫描，配置从节点读时由 ReplicaReader 选择分片内的节点
+ * 				   每页单独借还连接，不会长时间阻塞redis，也不会把全部key放入内存
+ * 				   注意：SCAN 语义下迁移中的key可能被重复返回
+ */
+public class ClusterScanner {
+    protected transient final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * 每页key回调，同一节点的回调按顺序执行，不同节点的回调可能并发执行
+     */
+    public interface KeyBatchCallback {
+
+        /**
+         * 处理一页key
+         *
+         * @param node 节点 host:port
+         * @param keys
+         * @return false 时停止该节点的扫描
+         */
+        boolean onKeys(String node, List<String> keys);
+    }
+
+    private final ClusterSlotRouter router;
+
+    private final ExecutorService executor;
+
+    private final ReplicaReader replicaReader;
+
+    /**
+     * 每页 SCAN 的指标输出，为null时不记录
+     */
+    private volatile MetricsSink metricsSink;
+
+    public ClusterScanner(ClusterSlotRouter router, int threads) {
+        this(router, threads, null);
+    }
+
+    /**
+     * @param router
+     * @param threads 并行扫描的线程数
+     * @param replicaReader 从节点读，为null时只扫描主节点
+     */
+    public ClusterScanner(ClusterSlotRouter router, int threads, ReplicaReader replicaReader) {
+        this.router = router;
+        this.replicaReader = replicaReader;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("redis-scan"));
+        ((ThreadPoolExecutor) executor).allowCoreThreadTimeOut(true);
+    }
+
+    public ClusterSlotRouter getRouter() {
+        return router;
+    }
+
+    /**
+     * 惰性遍历所有主节点上匹配的key
+     * 迭代器内部为有界队列（每个节点最多缓存两页），消费慢时扫描线程会等待；
+     * 提前结束遍历时需调用 close()，未调用时调用方超过一分钟不读取后扫描线程自动停止
+     *
+     * @param pattern 完整匹配串
+     * @param count 每页建议条数
+     * @return
+     */
+    public ScanIterator iterator(final String pattern, final int count) {
+        Set<String> masters = router.masters();
+        // 按页缓存，每个节点最多缓存两页，与 count 无关
+        final ScanIterator iterator = new ScanIterator(masters.size(), masters.size() * 2);
+        for (final String node : masters) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        scanNode(node, pattern, count, new KeyBatchCallback() {
+                            @Override
+                            public boolean onKeys(String node, List<String> keys) {
+                                return iterator.offer(keys);
+                            }
+                        });
+                    } finally {
+                        iterator.finish();
+                    }
+                }
+            });
+        }
+        return iterator;
+    }
+
+    /**
+     * 并行扫描所有主节点，按页回调，全部节点扫描完成后返回
+     *
+     * @param pattern 完整匹配串
+     * @param count 每页建议条数
+     * @param callback
+     * @return 回调的key总数
+     */
+    public long scan(final String pattern, final int count, final KeyBatchCallback callback) {
+        List<Future<Long>> futures = new ArrayList<Future<Long>>();
+        for (final String node : router.masters()) {
+            futures.add(executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return scanNode(node, pattern, count, callback);
+                }
+            }));
+        }
+        long total = 0;
+        for (Future<Long> future : futures) {
+            try {
+                total += future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                logger.error("redis scan error", e.getCause());
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 扫描单个节点
+     *
+     * @param node 主节点，配置从节点读时可能在其从节点上扫描
+     * @return 回调的key总数
+     */
+    public long scanNode(String node, String pattern, int count, KeyBatchCallback callback) {
+        Pool<Jedis> pool = replicaReader == null ? router.pool(node) : replicaReader.scanPool(node);
+        if (pool == null) {
+            logger.warn("redis scan skip unknown node:" + node);
+            return 0;
+        }
+        ScanParams params = new ScanParams().match(pattern).count(count);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        long total = 0;
+        try {
+            do {
+                ScanResult<String> page;
+                long start = System.nanoTime();
+                Jedis connection = pool.getResource();
+                try {
+                    page = connection.scan(cursor, params);
+                } finally {
+                    connection.close();
+                }
+                MetricsSink sink = metricsSink;
+                if (sink != null) {
+                    sink.recordCommand("scan", System.nanoTime() - start, 0, 0);
+                }
+                cursor = page.getStringCursor();
+                List<String> keys = page.getResult();
+                if (!keys.isEmpty()) {
+                    total += keys.size();
+                    if (!callback.onKeys(node, keys)) {
+                        break;
+                    }
+                }
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        } catch (Exception e) {
+            logger.error("redis scan error, node:" + node, e);
+        }
+        return total;
+    }
+
+    public void setMetricsSink(MetricsSink metricsSink) {
+        this.metricsSink = metricsSink;
+    }
+
+    /**
+     * 关闭线程池
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
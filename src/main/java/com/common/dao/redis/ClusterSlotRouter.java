@@ -0,0 +1,190 @@
+package com.common.dao.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @Description: redis集群槽位路由
+ * 				   通过 CLUSTER SLOTS 维护 slot -> 主节点 / 从节点 的映射，
+ * 				   用于把域下的多个key按节点分组，以便按节点批量(pipeline)执行
+ * 				   节点key格式与 JedisCluster.getClusterNodes() 一致：host:port
+ */
+public class ClusterSlotRouter {
+    protected transient final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final JedisCluster jedisCluster;
+
+    /**
+     * slot -> 主节点
+     */
+    private volatile String[] slotMasters = new String[JedisCluster.HASHSLOTS];
+
+    /**
+     * 主节点 -> 从节点列表
+     */
+    private volatile Map<String, List<String>> replicas = Collections.emptyMap();
+
+    private volatile boolean initialized = false;
+
+    public ClusterSlotRouter(JedisCluster jedisCluster) {
+        this.jedisCluster = jedisCluster;
+    }
+
+    /**
+     * 计算key所在槽位
+     *
+     * @param key
+     * @return
+     */
+    public int slot(String key) {
+        return JedisClusterCRC16.getSlot(key);
+    }
+
+    /**
+     * 得到key所在主节点，未知时返回null
+     *
+     * @param key
+     * @return
+     */
+    public String masterOf(String key) {
+        ensureInitialized();
+        return slotMasters[slot(key)];
+    }
+
+    /**
+     * 得到所有主节点
+     *
+     * @return
+     */
+    public Set<String> masters() {
+        ensureInitialized();
+        return replicas.keySet();
+    }
+
+    /**
+     * 得到主节点的所有从节点
+     *
+     * @param master
+     * @return
+     */
+    public List<String> replicasOf(String master) {
+        ensureInitialized();
+        List<String> list = replicas.get(master);
+        return list == null ? Collections.<String>emptyList() : list;
+    }
+
+    /**
+     * 得到节点连接池
+     *
+     * @param node
+     * @return
+     */
+    public JedisPool pool(String node) {
+        return jedisCluster.getClusterNodes().get(node);
+    }
+
+    /**
+     * 得到所有节点连接池
+     *
+     * @return
+     */
+    public Map<String, JedisPool> getClusterNodes() {
+        return jedisCluster.getClusterNodes();
+    }
+
+    /**
+     * 按主节点对key分组，value为key在原集合中的下标
+     * 无法确定节点的key归入 null 分组，由调用方逐个走 JedisCluster
+     *
+     * @param keys
+     * @return
+     */
+    public Map<String, List<Integer>> groupByMaster(List<String> keys) {
+        ensureInitialized();
+        Map<String, List<Integer>> groups = new LinkedHashMap<String, List<Integer>>();
+        for (int i = 0; i < keys.size(); i++) {
+            String node = slotMasters[slot(keys.get(i))];
+            if (node != null && pool(node) == null) {
+                node = null;
+            }
+            List<Integer> indexes = groups.get(node);
+            if (indexes == null) {
+                indexes = new ArrayList<Integer>();
+                groups.put(node, indexes);
+            }
+            indexes.add(i);
+        }
+        return groups;
+    }
+
+    /**
+     * 重新加载槽位信息（节点迁移、MOVED后调用）
+     */
+    public synchronized void refresh() {
+        for (Map.Entry<String, JedisPool> entry : jedisCluster.getClusterNodes().entrySet()) {
+            Jedis connection = null;
+            try {
+                connection = entry.getValue().getResource();
+                load(connection.clusterSlots());
+                initialized = true;
+                return;
+            } catch (Exception e) {
+                logger.warn("redis cluster slots error, node:" + entry.getKey(), e);
+            } finally {
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        }
+        logger.error("redis cluster slots error, no reachable node");
+    }
+
+    private void ensureInitialized() {
+        if (!initialized) {
+            refresh();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void load(List<Object> slots) {
+        String[] masters = new String[JedisCluster.HASHSLOTS];
+        Map<String, List<String>> nodes = new HashMap<String, List<String>>();
+        for (Object item : slots) {
+            List<Object> range = (List<Object>) item;
+            int start = ((Long) range.get(0)).intValue();
+            int end = ((Long) range.get(1)).intValue();
+            String master = nodeKey((List<Object>) range.get(2));
+            for (int slot = start; slot <= end; slot++) {
+                masters[slot] = master;
+            }
+            Set<String> slaves = new LinkedHashSet<String>();
+            if (nodes.containsKey(master)) {
+                slaves.addAll(nodes.get(master));
+            }
+            for (int i = 3; i < range.size(); i++) {
+                slaves.add(nodeKey((List<Object>) range.get(i)));
+            }
+            nodes.put(master, Collections.unmodifiableList(new ArrayList<String>(slaves)));
+        }
+        this.slotMasters = masters;
+        this.replicas = Collections.unmodifiableMap(nodes);
+    }
+
+    private static String nodeKey(List<Object> node) {
+        return SafeEncoder.encode((byte[]) node.get(0)) + ":" + node.get(1);
+    }
+}
@@ -0,0 +1,349 @@
+package com.common.dao.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisClusterMaxRedirectionsException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Description: 本地聚合计数器
+ * 				   计数先累加到进程内按key分段的 LongAdder，热点key的并发累加互不竞争；
+ * 				   每隔 flushMillis 或累计 flushEvents 次累加后，按节点pipeline批量 INCRBY / HINCRBY 写入redis
+ * 				   按计数器逐个处理失败：连接失败的增量放回本地下次再写，连接在pipeline中途断开时可能重复写入（至少一次）；
+ * 				   类型错误等无法重试成功的错误只放弃该计数器的增量，同批其他计数器不受影响
+ * 				   读取时 redis 值加上本地尚未写入（含正在写入）的增量
+ */
+public class CounterAggregator {
+    protected transient final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ClusterPipeline pipeline;
+
+    private final ClusterNodeExecutor executor;
+
+    private final long flushMillis;
+
+    private final long flushEvents;
+
+    private final ConcurrentHashMap<CounterKey, LongAdder> pending = new ConcurrentHashMap<CounterKey, LongAdder>();
+
+    /**
+     * 正在写入redis的增量
+     */
+    private final ConcurrentHashMap<CounterKey, AtomicLong> inflight = new ConcurrentHashMap<CounterKey, AtomicLong>();
+
+    /**
+     * 上次写入后连续无增量、已从 pending 移除的计数器，下次写入时再检查一次迟到的累加
+     */
+    private List<Map.Entry<CounterKey, LongAdder>> retired = new ArrayList<Map.Entry<CounterKey, LongAdder>>();
+
+    private final AtomicLong events = new AtomicLong();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong flushed = new AtomicLong();
+
+    private final AtomicLong commands = new AtomicLong();
+
+    /**
+     * @param pipeline
+     * @param executor
+     * @param flushMillis 定时写入间隔毫秒数
+     * @param flushEvents 累加次数达到该值时立即写入，0 表示只定时写入
+     */
+    public CounterAggregator(ClusterPipeline pipeline, ClusterNodeExecutor executor, long flushMillis, long flushEvents) {
+        this.pipeline = pipeline;
+        this.executor = executor;
+        this.flushMillis = flushMillis;
+        this.flushEvents = flushEvents;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("redis-counter"));
+    }
+
+    /**
+     * 启动定时写入
+     */
+    public void start() {
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushQuietly();
+            }
+        }, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 累加 key
+     *
+     * @param fullkey
+     * @param delta
+     */
+    public void incr(String fullkey, long delta) {
+        add(new CounterKey(fullkey, null), delta);
+    }
+
+    /**
+     * 累加 map 中的 field
+     *
+     * @param fullkey
+     * @param field
+     * @param delta
+     */
+    public void hincr(String fullkey, String field, long delta) {
+        add(new CounterKey(fullkey, field), delta);
+    }
+
+    /**
+     * 本地尚未写入redis的增量
+     *
+     * @param fullkey
+     * @param field 为null时表示 key 计数器
+     * @return
+     */
+    public long pending(String fullkey, String field) {
+        CounterKey key = new CounterKey(fullkey, field);
+        long delta = 0;
+        LongAdder adder = pending.get(key);
+        if (adder != null) {
+            delta += adder.sum();
+        }
+        AtomicLong writing = inflight.get(key);
+        if (writing != null) {
+            delta += writing.get();
+        }
+        return delta;
+    }
+
+    /**
+     * 立即把本地增量写入redis
+     */
+    public synchronized void flush() {
+        events.set(0);
+        final List<CounterKey> keys = new ArrayList<CounterKey>();
+        final List<Long> deltas = new ArrayList<Long>();
+        List<Map.Entry<CounterKey, LongAdder>> idle = new ArrayList<Map.Entry<CounterKey, LongAdder>>();
+        for (Map.Entry<CounterKey, LongAdder> entry : retired) {
+            drain(entry.getKey(), entry.getValue(), keys, deltas);
+        }
+        for (Map.Entry<CounterKey, LongAdder> entry : pending.entrySet()) {
+            if (!drain(entry.getKey(), entry.getValue(), keys, deltas)) {
+                idle.add(entry);
+            }
+        }
+        // 一个周期内无累加的计数器移出，避免key无限增长
+        retired = new ArrayList<Map.Entry<CounterKey, LongAdder>>();
+        for (Map.Entry<CounterKey, LongAdder> entry : idle) {
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                retired.add(entry);
+            }
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        List<String> fullkeys = new ArrayList<String>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            fullkeys.add(keys.get(i).fullkey);
+            AtomicLong writing = inflight.get(keys.get(i));
+            if (writing == null) {
+                AtomicLong created = new AtomicLong();
+                writing = inflight.putIfAbsent(keys.get(i), created);
+                if (writing == null) {
+                    writing = created;
+                }
+            }
+            writing.addAndGet(deltas.get(i));
+        }
+        try {
+            pipeline.execute(fullkeys, new ClusterPipeline.Operation<Long>() {
+                @Override
+                public Response<Long> pipelined(Pipeline pipeline, int index) {
+                    CounterKey key = keys.get(index);
+                    byte[] rawkey = SafeEncoder.encode(key.fullkey);
+                    if (key.field == null) {
+                        return pipeline.incrBy(rawkey, deltas.get(index));
+                    }
+                    return pipeline.hincrBy(rawkey, SafeEncoder.encode(key.field), deltas.get(index));
+                }
+
+                @Override
+                public Long direct(final int index) {
+                    final CounterKey key = keys.get(index);
+                    return executor.execute(key.fullkey, new ClusterNodeExecutor.NodeCommand<Long>() {
+                        @Override
+                        public Long execute(Jedis connection) {
+                            if (key.field == null) {
+                                return connection.incrBy(SafeEncoder.encode(key.fullkey), deltas.get(index));
+                            }
+                            return connection.hincrBy(SafeEncoder.encode(key.fullkey),
+                                    SafeEncoder.encode(key.field), deltas.get(index));
+                        }
+                    });
+                }
+            });
+            flushed.incrementAndGet();
+            commands.addAndGet(keys.size());
+        } catch (ClusterPipelineException e) {
+            // 只处理失败的下标，其余增量已写入；结果未知（PipelineOutcomeUnknownException）的增量可能已写入，放弃以免重复计数
+            int retried = 0;
+            for (Map.Entry<Integer, RuntimeException> error : e.getErrors().entrySet()) {
+                if (retriable(error.getValue())) {
+                    retried++;
+                    add(keys.get(error.getKey()), deltas.get(error.getKey()));
+                }
+            }
+            flushed.incrementAndGet();
+            commands.addAndGet(keys.size() - e.getErrors().size());
+            logger.warn("redis counter flush error, " + retried + " counters will retry, "
+                    + (e.getErrors().size() - retried) + " counters dropped", e);
+        } catch (JedisConnectionException | JedisClusterMaxRedirectionsException e) {
+            // 未开始执行（如熔断），全部放回
+            logger.warn("redis counter flush error, " + keys.size() + " counters will retry", e);
+            for (int i = 0; i < keys.size(); i++) {
+                add(keys.get(i), deltas.get(i));
+            }
+        } catch (RuntimeException e) {
+            // 类型错误等重试也不会成功的错误，放弃本批增量
+            logger.error("redis counter flush error, " + keys.size() + " counters dropped", e);
+        } finally {
+            for (int i = 0; i < keys.size(); i++) {
+                AtomicLong writing = inflight.get(keys.get(i));
+                if (writing != null && writing.addAndGet(-deltas.get(i)) == 0) {
+                    inflight.remove(keys.get(i), writing);
+                }
+            }
+        }
+    }
+
+    /**
+     * 停止定时写入并写入剩余增量
+     */
+    public void shutdown() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(flushMillis + 1000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    /**
+     * 本地尚未写入的计数器个数
+     *
+     * @return
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    public long getFlushCount() {
+        return flushed.get();
+    }
+
+    public long getCommandCount() {
+        return commands.get();
+    }
+
+    private void add(CounterKey key, long delta) {
+        LongAdder adder = pending.get(key);
+        if (adder == null) {
+            LongAdder created = new LongAdder();
+            adder = pending.putIfAbsent(key, created);
+            if (adder == null) {
+                adder = created;
+            }
+        }
+        adder.add(delta);
+        if (flushEvents > 0 && events.incrementAndGet() >= flushEvents && flushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushScheduled.set(false);
+                        flushQuietly();
+                    }
+                });
+            } catch (RuntimeException e) {
+                // 已关闭，由 shutdown 写入
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * 连接失败可重试，类型错误等重试也不会成功
+     */
+    private static boolean retriable(RuntimeException e) {
+        return e instanceof JedisConnectionException || e instanceof JedisClusterMaxRedirectionsException;
+    }
+
+    /**
+     * 取出计数器当前增量，不重置计数器以免丢失并发累加
+     *
+     * @return 是否有增量
+     */
+    private static boolean drain(CounterKey key, LongAdder adder, List<CounterKey> keys, List<Long> deltas) {
+        long delta = adder.sum();
+        if (delta == 0) {
+            return false;
+        }
+        adder.add(-delta);
+        keys.add(key);
+        deltas.add(delta);
+        return true;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("redis counter flush error", e);
+        }
+    }
+
+    /**
+     * 计数器：key 或 key + field
+     */
+    private static class CounterKey {
+        private final String fullkey;
+        private final String field;
+
+        CounterKey(String fullkey, String field) {
+            this.fullkey = fullkey;
+            this.field = field;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CounterKey)) {
+                return false;
+            }
+            CounterKey other = (CounterKey) o;
+            return fullkey.equals(other.fullkey) && (field == null ? other.field == null : field.equals(other.field));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * fullkey.hashCode() + (field == null ? 0 : field.hashCode());
+        }
+    }
+}
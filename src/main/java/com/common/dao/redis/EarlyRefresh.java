@@ -0,0 +1,58 @@
+package com.common.dao.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @Description: 概率提前刷新（XFetch）
+ * 				   记录每个key最近一次加载耗时 delta，读取时若 -delta * beta * ln(random) >= 剩余过期时间 则提前刷新
+ * 				   离过期越近、加载越慢的key越容易被提前刷新，且同一时刻只有少数请求会触发
+ */
+public class EarlyRefresh {
+
+    private final double beta;
+
+    private final Cache<String, Long> costs;
+
+    /**
+     * @param beta 大于1更积极，小于1更保守，小于等于0不提前刷新
+     * @param maxKeys 记录加载耗时的最大key数
+     */
+    public EarlyRefresh(double beta, long maxKeys) {
+        this.beta = beta;
+        this.costs = Caffeine.newBuilder().maximumSize(maxKeys).build();
+    }
+
+    /**
+     * 记录加载耗时
+     *
+     * @param fullkey
+     * @param costMillis
+     */
+    public void record(String fullkey, long costMillis) {
+        if (beta > 0) {
+            costs.put(fullkey, Math.max(costMillis, 1L));
+        }
+    }
+
+    /**
+     * 是否需要提前刷新
+     *
+     * @param fullkey
+     * @param pttlMillis redis剩余过期毫秒数
+     * @return
+     */
+    public boolean shouldRefresh(String fullkey, long pttlMillis) {
+        if (beta <= 0 || pttlMillis < 0) {
+            return false;
+        }
+        Long delta = costs.getIfPresent(fullkey);
+        if (delta == null) {
+            return false;
+        }
+        double random = 1D - ThreadLocalRandom.current().nextDouble();
+        return -delta * beta * Math.log(random) >= pttlMillis;
+    }
+}
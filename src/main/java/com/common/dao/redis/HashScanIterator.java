@@ -0,0 +1,102 @@
+package com.common.dao.redis;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.util.SafeEncoder;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * @Description: map 分页扫描迭代器（HSCAN）
+ * 				   按游标逐页读取，每次只持有一页原始数据，value在 next() 时才反序列化
+ * 				   扫描期间map被修改时，同一field可能返回多次，调用方需自行容忍
+ */
+public class HashScanIterator<T> implements Iterator<Map.Entry<String, T>> {
+
+    private final ClusterNodeExecutor executor;
+
+    private final String fullkey;
+
+    private final byte[] rawkey;
+
+    private final ScanParams params;
+
+    private final Function<byte[], T> decoder;
+
+    private byte[] cursor = ScanParams.SCAN_POINTER_START_BINARY;
+
+    private boolean finished = false;
+
+    private Iterator<Map.Entry<byte[], byte[]>> current = Collections.<Map.Entry<byte[], byte[]>>emptyList().iterator();
+
+    /**
+     * @param executor
+     * @param fullkey
+     * @param pattern field 匹配模式，为null时不过滤
+     * @param count 每页建议条数
+     * @param decoder value 反序列化
+     */
+    public HashScanIterator(ClusterNodeExecutor executor, String fullkey, String pattern, int count,
+                            Function<byte[], T> decoder) {
+        this.executor = executor;
+        this.fullkey = fullkey;
+        this.rawkey = SafeEncoder.encode(fullkey);
+        this.decoder = decoder;
+        this.params = new ScanParams().count(count);
+        if (pattern != null) {
+            params.match(pattern);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (finished) {
+                return false;
+            }
+            fetch();
+        }
+        return true;
+    }
+
+    @Override
+    public Map.Entry<String, T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Map.Entry<byte[], byte[]> entry = current.next();
+        return new AbstractMap.SimpleImmutableEntry<String, T>(SafeEncoder.encode(entry.getKey()),
+                decoder.apply(entry.getValue()));
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove");
+    }
+
+    /**
+     * 读取下一页
+     */
+    private void fetch() {
+        final byte[] from = cursor;
+        ScanResult<Map.Entry<byte[], byte[]>> page = executor.execute(fullkey,
+                new ClusterNodeExecutor.NodeCommand<ScanResult<Map.Entry<byte[], byte[]>>>() {
+                    @Override
+                    public ScanResult<Map.Entry<byte[], byte[]>> execute(Jedis connection) {
+                        return connection.hscan(rawkey, from, params);
+                    }
+                });
+        cursor = page.getCursorAsBytes();
+        finished = Arrays.equals(cursor, ScanParams.SCAN_POINTER_START_BINARY);
+        List<Map.Entry<byte[], byte[]>> result = page.getResult();
+        current = result.iterator();
+    }
+}
@@ -0,0 +1,221 @@
+package com.common.dao.redis;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 本地缓存跨JVM失效
+ * 				   本节点写/删/设置过期时把key放入待发送集合，每隔 intervalMillis 合并去重后发布一条消息
+ * 				   其他节点收到后失效对应的本地缓存；每次(重新)订阅成功时清空整个本地缓存，
+ * 				   因为断线期间的消息已丢失
+ * 				   消息格式：{"s":发送方id,"k":[key...]}，"a":true 表示清空
+ */
+public class InvalidationBus {
+    protected transient final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * 单条消息最多携带的key数
+     */
+    private static final int MAX_KEYS_PER_MESSAGE = 500;
+
+    private final NearCache nearCache;
+
+    private final InvalidationTransport transport;
+
+    private final String channel;
+
+    private final String senderId = UUID.randomUUID().toString();
+
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean pendingAll = false;
+
+    private volatile boolean running = false;
+
+    private final long intervalMillis;
+
+    private ScheduledExecutorService scheduler;
+
+    private Thread subscriber;
+
+    /**
+     * @param nearCache 本地缓存
+     * @param transport 消息通道
+     * @param channel 频道，每个域一个
+     * @param intervalMillis 合并发送间隔
+     */
+    public InvalidationBus(NearCache nearCache, InvalidationTransport transport, String channel, long intervalMillis) {
+        this.nearCache = nearCache;
+        this.transport = transport;
+        this.channel = channel;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * 启动发送与订阅线程
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("redis-invalidate-pub"));
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+
+        subscriber = new NamedThreadFactory("redis-invalidate-sub").newThread(new Runnable() {
+            @Override
+            public void run() {
+                subscribeLoop();
+            }
+        });
+        subscriber.start();
+    }
+
+    /**
+     * 停止，发送剩余的失效消息
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        transport.unsubscribe();
+        subscriber.interrupt();
+    }
+
+    /**
+     * 通知其他节点失效key
+     *
+     * @param fullkey
+     */
+    public void publish(String fullkey) {
+        pending.add(fullkey);
+    }
+
+    /**
+     * 通知其他节点清空本地缓存
+     */
+    public void publishAll() {
+        pendingAll = true;
+    }
+
+    /**
+     * 发送待发送的失效消息
+     */
+    public void flush() {
+        try {
+            if (pendingAll) {
+                pendingAll = false;
+                Map<String, Object> message = new HashMap<String, Object>();
+                message.put("s", senderId);
+                message.put("a", true);
+                transport.publish(channel, JSON.toJSONString(message));
+            }
+            while (!pending.isEmpty()) {
+                List<String> keys = new ArrayList<String>();
+                for (String key : pending) {
+                    if (pending.remove(key)) {
+                        keys.add(key);
+                    }
+                    if (keys.size() >= MAX_KEYS_PER_MESSAGE) {
+                        break;
+                    }
+                }
+                Map<String, Object> message = new HashMap<String, Object>();
+                message.put("s", senderId);
+                message.put("k", keys);
+                transport.publish(channel, JSON.toJSONString(message));
+            }
+        } catch (Exception e) {
+            // 发送失败时其他节点的本地缓存最迟在 ttl 后过期
+            logger.error("redis invalidation publish error, channel:" + channel, e);
+        }
+    }
+
+    /**
+     * 处理收到的消息
+     *
+     * @param text
+     */
+    void onMessage(String text) {
+        JSONObject message = JSON.parseObject(text);
+        if (senderId.equals(message.getString("s"))) {
+            return;
+        }
+        if (Boolean.TRUE.equals(message.getBoolean("a"))) {
+            nearCache.invalidateAll();
+            return;
+        }
+        for (Object key : message.getJSONArray("k")) {
+            nearCache.invalidate(String.valueOf(key));
+        }
+    }
+
+    private void subscribeLoop() {
+        long backoff = 100;
+        while (running) {
+            try {
+                transport.subscribe(channel, new InvalidationTransport.Listener() {
+                    @Override
+                    public void onSubscribed() {
+                        // 断线期间可能漏掉消息，重新订阅后清空本地缓存
+                        nearCache.invalidateAll();
+                        logger.info("redis invalidation subscribed, channel:" + channel);
+                    }
+
+                    @Override
+                    public void onMessage(String message) {
+                        try {
+                            InvalidationBus.this.onMessage(message);
+                        } catch (Exception e) {
+                            logger.warn("redis invalidation bad message:" + message, e);
+                        }
+                    }
+                });
+                backoff = 100;
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                logger.warn("redis invalidation subscribe error, channel:" + channel, e);
+                // 订阅断开期间无法收到失效消息，清空本地缓存
+                nearCache.invalidateAll();
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, 5000);
+            }
+        }
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+}
@@ -0,0 +1,46 @@
+package com.common.dao.redis;
+
+/**
+ * @Description: 本地缓存失效消息的传输通道（redis pub/sub 或测试用的本地实现）
+ */
+public interface InvalidationTransport {
+
+    /**
+     * 订阅回调
+     */
+    interface Listener {
+
+        /**
+         * 订阅成功（包括断线重连后的重新订阅）
+         */
+        void onSubscribed();
+
+        /**
+         * 收到消息
+         *
+         * @param message
+         */
+        void onMessage(String message);
+    }
+
+    /**
+     * 发布消息
+     *
+     * @param channel
+     * @param message
+     */
+    void publish(String channel, String message);
+
+    /**
+     * 订阅，阻塞直到 unsubscribe() 或连接断开（抛出异常）
+     *
+     * @param channel
+     * @param listener
+     */
+    void subscribe(String channel, Listener listener);
+
+    /**
+     * 结束当前订阅
+     */
+    void unsubscribe();
+}
@@ -0,0 +1,98 @@
+package com.common.dao.redis;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Description: 基于 redis pub/sub 的失效消息通道
+ * 				   集群模式下 PUBLISH 会广播到所有节点，因此发布和订阅任选一个节点即可
+ * 				   订阅使用独立的长连接（读超时为0），不占用连接池
+ */
+public class JedisInvalidationTransport implements InvalidationTransport {
+
+    private final ClusterSlotRouter router;
+
+    private volatile JedisPubSub current;
+
+    private int nodeIndex = 0;
+
+    public JedisInvalidationTransport(ClusterSlotRouter router) {
+        this.router = router;
+    }
+
+    @Override
+    public void publish(String channel, String message) {
+        JedisConnectionException last = null;
+        for (Map.Entry<String, JedisPool> entry : nodes()) {
+            Jedis connection = null;
+            try {
+                connection = entry.getValue().getResource();
+                connection.publish(channel, message);
+                return;
+            } catch (JedisConnectionException e) {
+                last = e;
+            } finally {
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        }
+        throw last != null ? last : new JedisConnectionException("no reachable node for publish");
+    }
+
+    @Override
+    public void subscribe(String channel, final Listener listener) {
+        List<String> nodes = new ArrayList<String>(router.getClusterNodes().keySet());
+        if (nodes.isEmpty()) {
+            throw new JedisConnectionException("no reachable node for subscribe");
+        }
+        // 每次重连换一个节点，避免一直连接已下线的节点
+        Collections.sort(nodes);
+        String node = nodes.get(nodeIndex++ % nodes.size());
+        int split = node.lastIndexOf(':');
+        HostAndPort hostAndPort = new HostAndPort(node.substring(0, split), Integer.parseInt(node.substring(split + 1)));
+
+        JedisPubSub pubSub = new JedisPubSub() {
+            @Override
+            public void onSubscribe(String channel, int subscribedChannels) {
+                listener.onSubscribed();
+            }
+
+            @Override
+            public void onMessage(String channel, String message) {
+                listener.onMessage(message);
+            }
+        };
+        Jedis connection = new Jedis(hostAndPort.getHost(), hostAndPort.getPort(), 0);
+        try {
+            current = pubSub;
+            connection.subscribe(pubSub, channel);
+        } finally {
+            current = null;
+            connection.close();
+        }
+    }
+
+    @Override
+    public void unsubscribe() {
+        JedisPubSub pubSub = current;
+        if (pubSub != null && pubSub.isSubscribed()) {
+            pubSub.unsubscribe();
+        }
+    }
+
+    private List<Map.Entry<String, JedisPool>> nodes() {
+        List<Map.Entry<String, JedisPool>> nodes = new ArrayList<Map.Entry<String, JedisPool>>(
+                router.getClusterNodes().entrySet());
+        Collections.shuffle(nodes);
+        return nodes;
+    }
+}
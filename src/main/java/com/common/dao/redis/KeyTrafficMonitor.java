@@ -0,0 +1,398 @@
+package com.common.dao.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 热点key、大key统计
+ * 				   按 1/sampleRate 抽样访问，用 space-saving 算法估计访问最多的key；
+ * 				   计数器按key哈希分为 STRIPES 段，每段各自加锁并保留 topK 个计数器（最小堆，替换最小计数为 O(log topK)），
+ * 				   同一key总在同一段，估计值误差不超过该段周期内抽样数 / topK；查询时合并各段取前 topK 个
+ * 				   每个周期结束时输出日志并把计数减半，反映近期流量
+ * 				   值大小达到 bigKeyThreshold 的key不抽样，保留最大的 topK 个
+ * 				   可选把热点key放入本地缓存（promoted cache），未启用本地缓存时也能挡住热点读；
+ * 				   promoted cache 没有跨进程失效通知（InvalidationBus 只随 near cache 创建），
+ * 				   本进程写入、删除时会失效，其他进程或客户端修改后最长 promoteTtlMillis 内仍读到旧值
+ */
+public class KeyTrafficMonitor {
+    protected transient final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * 统计结果
+     */
+    public static class KeyStat {
+        private final String key;
+        private final long value;
+        private final long error;
+
+        KeyStat(String key, long value, long error) {
+            this.key = key;
+            this.value = value;
+            this.error = error;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * 热点key：估计访问次数；大key：最大字节数
+         *
+         * @return
+         */
+        public long getValue() {
+            return value;
+        }
+
+        /**
+         * 估计访问次数可能偏大的上限
+         *
+         * @return
+         */
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    private static final Comparator<KeyStat> DESC = new Comparator<KeyStat>() {
+        @Override
+        public int compare(KeyStat a, KeyStat b) {
+            return a.value < b.value ? 1 : (a.value == b.value ? 0 : -1);
+        }
+    };
+
+    private final String name;
+
+    private final int sampleRate;
+
+    private final int topK;
+
+    private final int bigKeyThreshold;
+
+    /**
+     * 计数器分段数，2的幂
+     */
+    private static final int STRIPES = 16;
+
+    /**
+     * space-saving 计数器，按key哈希分段
+     */
+    private final Stripe[] stripes;
+
+    /**
+     * 大key：key -> 最大字节数
+     */
+    private final Map<String, Long> bigKeys = new HashMap<String, Long>();
+
+    /**
+     * 热点key本地缓存，不提升时为null
+     */
+    private final NearCache promotedCache;
+
+    /**
+     * 估计访问次数达到该值的key视为热点并提升
+     */
+    private final long promoteMinCount;
+
+    private volatile Set<String> hotKeys = Collections.emptySet();
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param name 日志中的名称（操作域）
+     * @param sampleRate 每 sampleRate 次访问抽样一次
+     * @param topK 保留的热点key、大key个数
+     * @param bigKeyThreshold 大key字节数
+     * @param promoteTtlMillis 热点key本地缓存毫秒数，0 表示不提升
+     * @param promoteMinCount 周期内估计访问次数达到该值才提升
+     */
+    public KeyTrafficMonitor(String name, int sampleRate, int topK, int bigKeyThreshold,
+                             long promoteTtlMillis, long promoteMinCount) {
+        this.name = name;
+        this.sampleRate = Math.max(sampleRate, 1);
+        this.topK = topK;
+        this.bigKeyThreshold = bigKeyThreshold;
+        this.promoteMinCount = promoteMinCount;
+        this.promotedCache = promoteTtlMillis > 0 ? new NearCache(topK, 0, promoteTtlMillis) : null;
+        this.stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(topK);
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("redis-keymonitor"));
+    }
+
+    /**
+     * 启动周期统计
+     *
+     * @param periodMillis
+     */
+    public void start(long periodMillis) {
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    rotate();
+                } catch (Exception e) {
+                    logger.error("redis key monitor error", e);
+                }
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param fullkey
+     * @param bytes 值的字节数，未知时为0
+     */
+    public void record(String fullkey, int bytes) {
+        if (bytes >= bigKeyThreshold && bigKeyThreshold > 0) {
+            recordBig(fullkey, bytes);
+        }
+        if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return;
+        }
+        int hash = fullkey.hashCode();
+        stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)].record(fullkey);
+    }
+
+    /**
+     * key 是否为热点（按上个周期的统计）
+     *
+     * @param fullkey
+     * @return
+     */
+    public boolean isHot(String fullkey) {
+        return hotKeys.contains(fullkey);
+    }
+
+    /**
+     * 热点key本地缓存，不提升时为null
+     *
+     * @return
+     */
+    public NearCache getPromotedCache() {
+        return promotedCache;
+    }
+
+    /**
+     * 当前热点key，按估计访问次数从大到小
+     *
+     * @return
+     */
+    public List<KeyStat> getHotKeys() {
+        List<KeyStat> result = new ArrayList<KeyStat>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (int i = 0; i < stripe.size; i++) {
+                    Counter counter = stripe.heap[i];
+                    result.add(new KeyStat(counter.key, counter.count * sampleRate, counter.error * sampleRate));
+                }
+            }
+        }
+        Collections.sort(result, DESC);
+        return result.size() > topK ? new ArrayList<KeyStat>(result.subList(0, topK)) : result;
+    }
+
+    /**
+     * 当前大key，按字节数从大到小
+     *
+     * @return
+     */
+    public List<KeyStat> getBigKeys() {
+        List<KeyStat> result = new ArrayList<KeyStat>();
+        synchronized (bigKeys) {
+            for (Map.Entry<String, Long> entry : bigKeys.entrySet()) {
+                result.add(new KeyStat(entry.getKey(), entry.getValue(), 0));
+            }
+        }
+        Collections.sort(result, DESC);
+        return result;
+    }
+
+    /**
+     * 周期结束：计算热点key、输出日志、计数减半
+     */
+    void rotate() {
+        List<KeyStat> hot = getHotKeys();
+        Set<String> promoted = new HashSet<String>();
+        if (promotedCache != null) {
+            for (KeyStat stat : hot) {
+                // 去掉误差后仍达到阈值才提升，避免刚进入的冷key被误判
+                if (stat.value - stat.error >= promoteMinCount) {
+                    promoted.add(stat.key);
+                }
+            }
+        }
+        hotKeys = promoted;
+        if (!hot.isEmpty()) {
+            logger.info("redis hot keys, domain:" + name + ", promoted:" + promoted.size()
+                    + ", top:" + hot.subList(0, Math.min(10, hot.size())));
+        }
+        List<KeyStat> big = getBigKeys();
+        if (!big.isEmpty()) {
+            logger.warn("redis big keys, domain:" + name + ", top:" + big.subList(0, Math.min(10, big.size())));
+        }
+        for (Stripe stripe : stripes) {
+            stripe.decay();
+        }
+    }
+
+    private void recordBig(String fullkey, long bytes) {
+        synchronized (bigKeys) {
+            Long size = bigKeys.get(fullkey);
+            if (size != null) {
+                if (bytes > size) {
+                    bigKeys.put(fullkey, bytes);
+                }
+                return;
+            }
+            if (bigKeys.size() >= topK) {
+                String minKey = null;
+                long min = Long.MAX_VALUE;
+                for (Map.Entry<String, Long> entry : bigKeys.entrySet()) {
+                    if (entry.getValue() < min) {
+                        minKey = entry.getKey();
+                        min = entry.getValue();
+                    }
+                }
+                if (bytes <= min) {
+                    return;
+                }
+                bigKeys.remove(minKey);
+            }
+            bigKeys.put(fullkey, bytes);
+        }
+    }
+
+    /**
+     * 单个计数器
+     */
+    private static class Counter {
+        private String key;
+        private long count;
+        private long error;
+        private int index;
+    }
+
+    /**
+     * 一段 space-saving 计数器：key索引 + 按计数的最小堆
+     */
+    private static class Stripe {
+        private final Map<String, Counter> counters = new HashMap<String, Counter>();
+        private final Counter[] heap;
+        private int size = 0;
+
+        Stripe(int capacity) {
+            this.heap = new Counter[Math.max(capacity, 1)];
+        }
+
+        synchronized void record(String fullkey) {
+            Counter counter = counters.get(fullkey);
+            if (counter != null) {
+                counter.count++;
+                siftDown(counter.index);
+                return;
+            }
+            if (size < heap.length) {
+                counter = new Counter();
+                counter.key = fullkey;
+                counter.count = 1;
+                counter.index = size;
+                heap[size++] = counter;
+                counters.put(fullkey, counter);
+                siftUp(counter.index);
+                return;
+            }
+            // 替换计数最小的key，新key继承其计数作为误差上限
+            counter = heap[0];
+            counters.remove(counter.key);
+            counter.key = fullkey;
+            counter.error = counter.count;
+            counter.count++;
+            counters.put(fullkey, counter);
+            siftDown(0);
+        }
+
+        /**
+         * 计数减半，去掉归零的计数器；减半不改变大小顺序，只需在移除后重建堆
+         */
+        synchronized void decay() {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                Counter counter = heap[i];
+                counter.count >>= 1;
+                counter.error >>= 1;
+                if (counter.count == 0) {
+                    counters.remove(counter.key);
+                } else {
+                    counter.index = kept;
+                    heap[kept++] = counter;
+                }
+            }
+            for (int i = kept; i < size; i++) {
+                heap[i] = null;
+            }
+            size = kept;
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent].count <= heap[i].count) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) {
+                    return;
+                }
+                int min = left + 1 < size && heap[left + 1].count < heap[left].count ? left + 1 : left;
+                if (heap[i].count <= heap[min].count) {
+                    return;
+                }
+                swap(i, min);
+                i = min;
+            }
+        }
+
+        private void swap(int a, int b) {
+            Counter counter = heap[a];
+            heap[a] = heap[b];
+            heap[b] = counter;
+            heap[a].index = a;
+            heap[b].index = b;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.common.dao.redis;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @Description: 进程内布隆过滤器，判断不需要网络往返
+ * 				   只包含本进程写入及重建时扫描到的key，其他进程写入的key在下次重建前会被判为不存在
+ */
+public class LocalBloomFilter extends BloomFilter {
+
+    private final AtomicLongArray words;
+
+    public LocalBloomFilter(long expectedKeys, double fpp) {
+        this(optimalNumBits(expectedKeys, fpp), expectedKeys);
+    }
+
+    private LocalBloomFilter(long numBits, long expectedKeys) {
+        super(numBits, optimalNumHashes(expectedKeys, numBits));
+        if (numBits > (long) Integer.MAX_VALUE * 64) {
+            throw new IllegalArgumentException("bloom filter too large: " + numBits + " bits");
+        }
+        this.words = new AtomicLongArray((int) ((numBits + 63) / 64));
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < words.length(); i++) {
+            words.set(i, 0L);
+        }
+    }
+
+    @Override
+    protected boolean test(long[] indexes) {
+        for (long index : indexes) {
+            if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void set(long[] indexes) {
+        for (long index : indexes) {
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long current;
+            while (((current = words.get(word)) & mask) == 0) {
+                if (words.compareAndSet(word, current, current | mask)) {
+                    break;
+                }
+            }
+        }
+    }
+}
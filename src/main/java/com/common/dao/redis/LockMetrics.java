@@ -0,0 +1,106 @@
+package com.common.dao.redis;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description: 分布式锁统计：加锁次数、竞争、等待时间、续期与租约丢失
+ */
+public class LockMetrics {
+
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong contended = new AtomicLong();
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong renewals = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+
+    void attempt() {
+        attempts.incrementAndGet();
+    }
+
+    /**
+     * 一次 tryLock 结束
+     *
+     * @param success 是否拿到锁
+     * @param tries 尝试次数，大于1表示发生竞争
+     * @param nanos 等待纳秒数
+     */
+    void finish(boolean success, int tries, long nanos) {
+        if (success) {
+            acquired.incrementAndGet();
+        } else {
+            timeouts.incrementAndGet();
+        }
+        if (tries > 1 || !success) {
+            contended.incrementAndGet();
+        }
+        waitNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxWaitNanos.get())) {
+            if (maxWaitNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+    }
+
+    void renewed() {
+        renewals.incrementAndGet();
+    }
+
+    void lost() {
+        lost.incrementAndGet();
+    }
+
+    public long getAcquired() {
+        return acquired.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getContended() {
+        return contended.get();
+    }
+
+    public long getAttempts() {
+        return attempts.get();
+    }
+
+    public long getWaitNanos() {
+        return waitNanos.get();
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    public long getRenewals() {
+        return renewals.get();
+    }
+
+    public long getLost() {
+        return lost.get();
+    }
+
+    /**
+     * 平均每次 tryLock 等待毫秒数
+     *
+     * @return
+     */
+    public double getAvgWaitMillis() {
+        long total = acquired.get() + timeouts.get();
+        return total == 0 ? 0D : waitNanos.get() / 1000000D / total;
+    }
+
+    @Override
+    public String toString() {
+        return "acquired=" + acquired.get() + ", timeouts=" + timeouts.get()
+                + ", contended=" + contended.get() + ", attempts=" + attempts.get()
+                + ", avgWaitMs=" + String.format("%.3f", getAvgWaitMillis())
+                + ", maxWaitMs=" + maxWaitNanos.get() / 1000000
+                + ", renewals=" + renewals.get() + ", lost=" + lost.get();
+    }
+}
@@ -0,0 +1,181 @@
+package com.common.dao.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Weigher;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @Description: 本地缓存（一级缓存），保存已反序列化的对象
+ * 				   淘汰策略为 W-TinyLFU(caffeine)，按条数或按值的存储字节数限制大小
+ * 				   每条的存活时间取 ttl 与redis剩余过期时间中的较小值
+ * 				   写入前取版本戳，期间key被失效时放弃写入，避免并发写删后缓存旧值
+ */
+public class NearCache {
+
+    private static final int STRIPES = 1024;
+
+    /**
+     * 缓存对象
+     */
+    public static class Entry {
+        private final Object value;
+        private final Type type;
+        private final int weight;
+        private final long ttlNanos;
+
+        Entry(Object value, Type type, int weight, long ttlNanos) {
+            this.value = value;
+            this.type = type;
+            this.weight = weight;
+            this.ttlNanos = ttlNanos;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public Type getType() {
+            return type;
+        }
+    }
+
+    private final Cache<String, Entry> cache;
+
+    private final long ttlMillis;
+
+    /**
+     * 按key分段的失效版本号
+     */
+    private final AtomicLongArray stamps = new AtomicLongArray(STRIPES);
+
+    /**
+     * @param maxEntries 最大条数，maxWeight 大于0时忽略
+     * @param maxWeight 最大存储字节数，0 表示按条数限制
+     * @param ttlMillis 最长存活时间
+     */
+    public NearCache(long maxEntries, long maxWeight, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        Caffeine<String, Entry> builder = Caffeine.newBuilder().recordStats().expireAfter(new Expiry<String, Entry>() {
+            @Override
+            public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                return entry.ttlNanos;
+            }
+
+            @Override
+            public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                return entry.ttlNanos;
+            }
+
+            @Override
+            public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        });
+        if (maxWeight > 0) {
+            builder.maximumWeight(maxWeight).weigher(new Weigher<String, Entry>() {
+                @Override
+                public int weigh(String key, Entry entry) {
+                    return entry.weight;
+                }
+            });
+        } else {
+            builder.maximumSize(maxEntries);
+        }
+        this.cache = builder.build();
+    }
+
+    /**
+     * 读取，类型不一致时视为未命中
+     *
+     * @param fullkey
+     * @param type
+     * @return
+     */
+    public Entry get(String fullkey, Type type) {
+        Entry entry = cache.getIfPresent(fullkey);
+        if (entry == null || !entry.type.equals(type)) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * 读取redis之前取版本戳
+     *
+     * @param fullkey
+     * @return
+     */
+    public long stamp(String fullkey) {
+        return stamps.get(stripe(fullkey));
+    }
+
+    /**
+     * 写入，版本戳变化（期间被失效）时放弃
+     *
+     * @param fullkey
+     * @param stamp 读取redis之前取得的版本戳
+     * @param value 为null时不缓存
+     * @param type
+     * @param weight 值的存储字节数
+     * @param redisTtlMillis redis剩余过期毫秒数，小于0表示未设置过期
+     */
+    public void put(String fullkey, long stamp, Object value, Type type, int weight, long redisTtlMillis) {
+        if (value == null) {
+            return;
+        }
+        long ttl = ttlMillis;
+        if (redisTtlMillis >= 0) {
+            ttl = Math.min(ttl, redisTtlMillis);
+        }
+        if (ttl <= 0) {
+            return;
+        }
+        int stripe = stripe(fullkey);
+        if (stamps.get(stripe) != stamp) {
+            return;
+        }
+        cache.put(fullkey, new Entry(value, type, Math.max(weight, 1), TimeUnit.MILLISECONDS.toNanos(ttl)));
+        if (stamps.get(stripe) != stamp) {
+            cache.invalidate(fullkey);
+        }
+    }
+
+    /**
+     * 失效
+     *
+     * @param fullkey
+     */
+    public void invalidate(String fullkey) {
+        stamps.incrementAndGet(stripe(fullkey));
+        cache.invalidate(fullkey);
+    }
+
+    /**
+     * 清空
+     */
+    public void invalidateAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            stamps.incrementAndGet(i);
+        }
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private static int stripe(String fullkey) {
+        int h = fullkey.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+}
@@ -0,0 +1,23 @@
+package com.common.dao.redis;
+
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * @Description: pipeline 已发送后连接断开，节点是否已执行未知
+ * 				   不继承 JedisConnectionException：非幂等命令（INCRBY 等）不能按连接失败直接重试，由调用方决定
+ */
+public class PipelineOutcomeUnknownException extends JedisException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String node;
+
+    public PipelineOutcomeUnknownException(String node, Throwable cause) {
+        super("redis pipeline outcome unknown, node:" + node, cause);
+        this.node = node;
+    }
+
+    public String getNode() {
+        return node;
+    }
+}
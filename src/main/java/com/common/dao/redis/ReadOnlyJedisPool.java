@@ -0,0 +1,122 @@
+package com.common.dao.redis;
+
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.Pool;
+import redis.clients.util.SafeEncoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * @Description: 从节点连接池
+ * 				   连接建立后立即发送 READONLY，之后该连接上的读命令由从节点直接回复，不再 MOVED 到主节点
+ * 				   Jedis(2.7.3) 没有 READONLY 命令，直接按 RESP 格式写入socket
+ * 				   与 JedisCluster 的连接池分开，避免只读连接被集群写命令使用
+ */
+public class ReadOnlyJedisPool extends Pool<Jedis> {
+
+    private static final byte[] READONLY = SafeEncoder.encode("*1\r\n$8\r\nREADONLY\r\n");
+
+    public ReadOnlyJedisPool(GenericObjectPoolConfig poolConfig, String host, int port, int timeout) {
+        super(poolConfig, new ReadOnlyFactory(host, port, timeout));
+    }
+
+    @Override
+    public Jedis getResource() {
+        Jedis connection = super.getResource();
+        connection.setDataSource(this);
+        return connection;
+    }
+
+    @Override
+    public void returnResource(Jedis resource) {
+        if (resource != null) {
+            resource.resetState();
+            super.returnResource(resource);
+        }
+    }
+
+    @Override
+    public void returnBrokenResource(Jedis resource) {
+        if (resource != null) {
+            returnBrokenResourceObject(resource);
+        }
+    }
+
+    /**
+     * 建立连接并切换为只读
+     */
+    private static class ReadOnlyFactory implements PooledObjectFactory<Jedis> {
+        private final String host;
+        private final int port;
+        private final int timeout;
+
+        ReadOnlyFactory(String host, int port, int timeout) {
+            this.host = host;
+            this.port = port;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public PooledObject<Jedis> makeObject() throws Exception {
+            Jedis connection = new Jedis(host, port, timeout);
+            try {
+                connection.connect();
+                OutputStream out = connection.getClient().getSocket().getOutputStream();
+                out.write(READONLY);
+                out.flush();
+                String reply = connection.getClient().getStatusCodeReply();
+                if (!"OK".equals(reply)) {
+                    throw new JedisDataException("READONLY failed: " + reply);
+                }
+            } catch (IOException e) {
+                connection.close();
+                throw new JedisConnectionException(e);
+            } catch (RuntimeException e) {
+                connection.close();
+                throw e;
+            }
+            return new DefaultPooledObject<Jedis>(connection);
+        }
+
+        @Override
+        public void destroyObject(PooledObject<Jedis> pooled) throws Exception {
+            Jedis connection = pooled.getObject();
+            if (connection.isConnected()) {
+                try {
+                    try {
+                        connection.quit();
+                    } catch (Exception e) {
+                        // 断开即可
+                    }
+                    connection.disconnect();
+                } catch (Exception e) {
+                    // 连接已断开
+                }
+            }
+        }
+
+        @Override
+        public boolean validateObject(PooledObject<Jedis> pooled) {
+            try {
+                return pooled.getObject().isConnected() && "PONG".equals(pooled.getObject().ping());
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void activateObject(PooledObject<Jedis> pooled) throws Exception {
+        }
+
+        @Override
+        public void passivateObject(PooledObject<Jedis> pooled) throws Exception {
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.common.dao.redis;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * @Description: 保存在redis位图中的布隆过滤器，多个进程共享
+ * 				   每次判断或加入为一次pipeline（k 个 GETBIT / SETBIT），位图最大 2^32 位
+ * 				   所有进程必须使用相同的位数与哈希次数
+ * 				   指定 stagingKey 时，单个加入通过lua同时写入正在重建的位图（存在时），
+ * 				   其他进程重建期间本进程写入的key不会丢失；stagingKey 须与位图在同一槽位
+ */
+public class RedisBloomFilter extends BloomFilter {
+
+    /**
+     * 批量加入时单次pipeline最多的key数
+     */
+    private static final int BATCH = 500;
+
+    private static final String ADD = "lua/bloom_add.lua";
+
+    private final ClusterNodeExecutor executor;
+
+    private final ScriptRegistry scripts;
+
+    private final String bitmapKey;
+
+    private final String stagingKey;
+
+    /**
+     * @param scripts
+     * @param bitmapKey 位图key
+     * @param stagingKey 重建中的位图key，为null时只写 bitmapKey
+     * @param numBits
+     * @param numHashes
+     */
+    public RedisBloomFilter(ScriptRegistry scripts, String bitmapKey, String stagingKey, long numBits, int numHashes) {
+        super(numBits, numHashes);
+        if (numBits > (1L << 32)) {
+            throw new IllegalArgumentException("redis bitmap too large: " + numBits + " bits");
+        }
+        this.scripts = scripts;
+        this.executor = scripts.getExecutor();
+        this.bitmapKey = bitmapKey;
+        this.stagingKey = stagingKey;
+    }
+
+    public String getBitmapKey() {
+        return bitmapKey;
+    }
+
+    /**
+     * 位图是否已存在
+     *
+     * @return
+     */
+    public boolean exists() {
+        final byte[] rawkey = SafeEncoder.encode(bitmapKey);
+        return executor.execute(bitmapKey, new ClusterNodeExecutor.NodeCommand<Boolean>() {
+            @Override
+            public Boolean execute(Jedis connection) {
+                return connection.exists(rawkey);
+            }
+        });
+    }
+
+    /**
+     * 把位图改名为 target（必须在同一槽位），返回指向 target、以本位图key为 stagingKey 的过滤器
+     *
+     * @param target
+     * @return
+     */
+    public RedisBloomFilter renameTo(final String target) {
+        final byte[] rawkey = SafeEncoder.encode(bitmapKey);
+        final byte[] rawtarget = SafeEncoder.encode(target);
+        executor.execute(bitmapKey, new ClusterNodeExecutor.NodeCommand<String>() {
+            @Override
+            public String execute(Jedis connection) {
+                return connection.rename(rawkey, rawtarget);
+            }
+        });
+        return new RedisBloomFilter(scripts, target, bitmapKey, numBits, numHashes);
+    }
+
+    @Override
+    public void putAll(Collection<String> keys) {
+        final List<long[]> batch = new ArrayList<long[]>(BATCH);
+        for (String key : keys) {
+            batch.add(indexes(key));
+            if (batch.size() >= BATCH) {
+                setAll(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            setAll(batch);
+        }
+    }
+
+    /**
+     * 清空并按位数预先分配位图，分配后 bloom_add 即可识别为正在重建
+     */
+    public void reset() {
+        final byte[] rawkey = SafeEncoder.encode(bitmapKey);
+        executor.execute(bitmapKey, new ClusterNodeExecutor.NodeCommand<Boolean>() {
+            @Override
+            public Boolean execute(Jedis connection) {
+                connection.del(rawkey);
+                return connection.setbit(rawkey, numBits - 1, false);
+            }
+        });
+    }
+
+    @Override
+    public void clear() {
+        final byte[] rawkey = SafeEncoder.encode(bitmapKey);
+        executor.execute(bitmapKey, new ClusterNodeExecutor.NodeCommand<Long>() {
+            @Override
+            public Long execute(Jedis connection) {
+                return connection.del(rawkey);
+            }
+        });
+    }
+
+    @Override
+    protected boolean test(final long[] indexes) {
+        final byte[] rawkey = SafeEncoder.encode(bitmapKey);
+        return executor.execute(bitmapKey, new ClusterNodeExecutor.NodeCommand<Boolean>() {
+            @Override
+            public Boolean execute(Jedis connection) {
+                Pipeline pipeline = connection.pipelined();
+                List<Response<Boolean>> bits = new ArrayList<Response<Boolean>>(indexes.length);
+                for (long index : indexes) {
+                    bits.add(pipeline.getbit(rawkey, index));
+                }
+                pipeline.sync();
+                boolean all = true;
+                for (Response<Boolean> bit : bits) {
+                    // 逐个取结果，MOVED 等错误在此抛出由执行器重试
+                    all &= bit.get();
+                }
+                return all;
+            }
+        });
+    }
+
+    @Override
+    protected void set(long[] indexes) {
+        if (stagingKey == null) {
+            List<long[]> batch = new ArrayList<long[]>(1);
+            batch.add(indexes);
+            setAll(batch);
+            return;
+        }
+        List<Object> offsets = new ArrayList<Object>(indexes.length);
+        for (long index : indexes) {
+            offsets.add(index);
+        }
+        scripts.eval(scripts.load(ADD), Arrays.asList(bitmapKey, stagingKey), offsets);
+    }
+
+    private void setAll(final List<long[]> batch) {
+        final String key = bitmapKey;
+        executor.execute(bitmapKey, new ClusterNodeExecutor.NodeCommand<Void>() {
+            @Override
+            public Void execute(Jedis connection) {
+                Pipeline pipeline = connection.pipelined();
+                List<Response<Boolean>> replies = new ArrayList<Response<Boolean>>();
+                for (long[] indexes : batch) {
+                    for (long index : indexes) {
+                        replies.add(pipeline.setbit(key, index, true));
+                    }
+                }
+                pipeline.sync();
+                for (Response<Boolean> reply : replies) {
+                    reply.get();
+                }
+                return null;
+            }
+        });
+    }
+}
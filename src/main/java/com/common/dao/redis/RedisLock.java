@@ -0,0 +1,221 @@
+package com.common.dao.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: redis分布式锁
+ * 				   加锁通过 SET NX PX，同时 INCR 栅栏计数器得到单调递增的令牌，
+ * 				   下游写入时带上令牌并拒绝比已见令牌小的请求，可防止租约过期后旧持有者的写入
+ * 				   持有期间按租期的1/3自动续期，续期失败（锁已过期被他人持有）时租约标记为失效
+ * 				   解锁通过lua比较持有者后删除，不会误删他人的锁
+ * 				   锁key为 域:lock:{name}，栅栏计数器为 域:lock:{name}:fence，二者在同一槽位
+ */
+public class RedisLock {
+    protected transient final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final String ACQUIRE = "lua/lock_acquire.lua";
+    private static final String RENEW = "lua/lock_renew.lua";
+    private static final String RELEASE = "lua/compare_and_delete.lua";
+
+    /**
+     * 重试间隔下限、上限毫秒数
+     */
+    private static final long MIN_BACKOFF = 5;
+    private static final long MAX_BACKOFF = 200;
+
+    private final ScriptRegistry scripts;
+
+    private final ScheduledExecutorService renewer;
+
+    private final LockMetrics metrics;
+
+    private final String lockKey;
+
+    private final String fenceKey;
+
+    private final long leaseMillis;
+
+    /**
+     * @param scripts
+     * @param renewer 续期线程池，为null时不自动续期
+     * @param metrics
+     * @param domain 操作域
+     * @param name 锁名
+     * @param leaseMillis 租期毫秒数
+     */
+    public RedisLock(ScriptRegistry scripts, ScheduledExecutorService renewer, LockMetrics metrics,
+                     String domain, String name, long leaseMillis) {
+        this.scripts = scripts;
+        this.renewer = renewer;
+        this.metrics = metrics;
+        this.lockKey = domain + ":lock:{" + name + "}";
+        this.fenceKey = lockKey + ":fence";
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * 尝试加锁一次
+     *
+     * @return 租约，未拿到锁返回null
+     */
+    public Lease tryLock() {
+        long start = System.nanoTime();
+        Lease lease = acquire();
+        metrics.finish(lease != null, 1, System.nanoTime() - start);
+        return lease;
+    }
+
+    /**
+     * 在超时时间内加锁，失败后按指数退避（带随机抖动）重试
+     *
+     * @param timeout
+     * @param unit
+     * @return 租约，超时返回null
+     * @throws InterruptedException
+     */
+    public Lease tryLock(long timeout, TimeUnit unit) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(timeout);
+        long backoff = MIN_BACKOFF;
+        int tries = 0;
+        while (true) {
+            tries++;
+            Lease lease = acquire();
+            long now = System.nanoTime();
+            if (lease != null || now >= deadline) {
+                metrics.finish(lease != null, tries, now - start);
+                return lease;
+            }
+            long sleep = Math.min(ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1),
+                    TimeUnit.NANOSECONDS.toMillis(deadline - now) + 1);
+            Thread.sleep(sleep);
+            backoff = Math.min(backoff * 2, MAX_BACKOFF);
+        }
+    }
+
+    public String getLockKey() {
+        return lockKey;
+    }
+
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    private Lease acquire() {
+        metrics.attempt();
+        long start = System.currentTimeMillis();
+        String owner = UUID.randomUUID().toString();
+        Long token = scripts.eval(scripts.load(ACQUIRE), Arrays.asList(lockKey, fenceKey),
+                Arrays.asList(owner, leaseMillis), Long.class);
+        if (token == null || token == 0) {
+            return null;
+        }
+        Lease lease = new Lease(owner, token, start + leaseMillis);
+        if (renewer != null) {
+            long period = Math.max(leaseMillis / 3, 1);
+            lease.renewal = renewer.scheduleAtFixedRate(lease, period, period, TimeUnit.MILLISECONDS);
+        }
+        return lease;
+    }
+
+    /**
+     * 租约，持有期间自动续期，用完调用 unlock 或 close
+     */
+    public class Lease implements Closeable, Runnable {
+        private final String owner;
+        private final long token;
+        private volatile boolean valid = true;
+        private volatile long expiresAt;
+        private volatile ScheduledFuture<?> renewal;
+
+        Lease(String owner, long token, long expiresAt) {
+            this.owner = owner;
+            this.token = token;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * 栅栏令牌，同一把锁每次加锁单调递增
+         *
+         * @return
+         */
+        public long getToken() {
+            return token;
+        }
+
+        /**
+         * 租约是否仍有效，续期失败或超过租期未能续期时为false
+         *
+         * @return
+         */
+        public boolean isValid() {
+            return valid && System.currentTimeMillis() < expiresAt;
+        }
+
+        /**
+         * 解锁
+         *
+         * @return 是否由本租约删除（租约已过期时为false）
+         */
+        public boolean unlock() {
+            cancel();
+            if (!valid) {
+                return false;
+            }
+            valid = false;
+            Boolean deleted = scripts.eval(scripts.load(RELEASE), Collections.singletonList(lockKey),
+                    Collections.singletonList(owner), Boolean.class);
+            return deleted;
+        }
+
+        @Override
+        public void close() {
+            unlock();
+        }
+
+        /**
+         * 续期
+         */
+        @Override
+        public void run() {
+            if (!valid) {
+                cancel();
+                return;
+            }
+            try {
+                long start = System.currentTimeMillis();
+                Boolean renewed = scripts.eval(scripts.load(RENEW), Collections.singletonList(lockKey),
+                        Arrays.asList(owner, leaseMillis), Boolean.class);
+                if (renewed) {
+                    expiresAt = start + leaseMillis;
+                    metrics.renewed();
+                    return;
+                }
+                valid = false;
+                metrics.lost();
+                logger.warn("redis lock lease lost, key:" + lockKey + ", token:" + token);
+                cancel();
+            } catch (Exception e) {
+                // 网络抖动时等下次续期，租期内仍有效
+                logger.warn("redis lock renew error, key:" + lockKey, e);
+            }
+        }
+
+        private void cancel() {
+            ScheduledFuture<?> future = renewal;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.common.dao.redis;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description: 集群限流
+ * 				   令牌桶、滑动窗口两种算法，均以lua脚本在redis中原子执行，所有JVM共享同一个上限
+ * 				   每次向redis批量申请 leaseBatch 个许可缓存在本地，本地许可足够时无需访问redis，
+ * 				   不足时同一实例同一时刻只有一个线程访问redis，其余线程共享其结果；
+ * 				   本地许可超过 leaseMillis 未用完即作废，避免过期许可在之后集中放行
+ * 				   同一限流器应复用同一实例，每个实例各自持有本地许可
+ */
+public class RedisRateLimiter {
+
+    private static final String TOKEN_BUCKET = "lua/ratelimit_token_bucket.lua";
+    private static final String SLIDING_WINDOW = "lua/ratelimit_sliding_window.lua";
+
+    private final ScriptRegistry scripts;
+
+    private final String script;
+
+    private final String fullkey;
+
+    /**
+     * 脚本参数前两项（速率/容量 或 窗口/上限）
+     */
+    private final List<Object> params;
+
+    private final int leaseBatch;
+
+    private final long leaseMillis;
+
+    /**
+     * 本地剩余许可
+     */
+    private long leased = 0;
+
+    /**
+     * 本地许可作废时间
+     */
+    private long leaseDeadline = 0;
+
+    /**
+     * 进行中的redis申请，为null时没有线程在申请
+     */
+    private CompletableFuture<Long> refilling;
+
+    private final AtomicLong localHits = new AtomicLong();
+    private final AtomicLong remoteCalls = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private RedisRateLimiter(ScriptRegistry scripts, String script, String fullkey, List<Object> params,
+                             int leaseBatch, long leaseMillis) {
+        this.scripts = scripts;
+        this.script = script;
+        this.fullkey = fullkey;
+        this.params = params;
+        this.leaseBatch = Math.max(leaseBatch, 1);
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * 令牌桶限流
+     *
+     * @param scripts
+     * @param fullkey
+     * @param permitsPerSecond 每秒生成许可数
+     * @param capacity 桶容量（允许的突发量）
+     * @param leaseBatch 每次向redis申请的许可数，1 表示每次都访问redis
+     * @return
+     */
+    public static RedisRateLimiter tokenBucket(ScriptRegistry scripts, String fullkey, double permitsPerSecond,
+                                               long capacity, int leaseBatch) {
+        // 本地许可的有效期取生成一批许可所需时间，最短10毫秒、最长1秒
+        long leaseMillis = Math.max(10L, Math.min(1000L, (long) (leaseBatch * 1000D / permitsPerSecond)));
+        return new RedisRateLimiter(scripts, TOKEN_BUCKET, fullkey,
+                Arrays.<Object>asList(permitsPerSecond, capacity), leaseBatch, leaseMillis);
+    }
+
+    /**
+     * 滑动窗口限流
+     *
+     * @param scripts
+     * @param fullkey
+     * @param limit 窗口内许可上限
+     * @param windowMillis 窗口毫秒数
+     * @param leaseBatch 每次向redis申请的许可数，1 表示每次都访问redis
+     * @return
+     */
+    public static RedisRateLimiter slidingWindow(ScriptRegistry scripts, String fullkey, long limit,
+                                                 long windowMillis, int leaseBatch) {
+        long leaseMillis = Math.max(10L, windowMillis / 10);
+        return new RedisRateLimiter(scripts, SLIDING_WINDOW, fullkey,
+                Arrays.<Object>asList(windowMillis, limit), leaseBatch, leaseMillis);
+    }
+
+    /**
+     * 获取一个许可
+     *
+     * @return 是否放行
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * 获取多个许可，不足时不消耗任何许可
+     * 本地许可不足时只有一个线程访问redis补充，其余线程等待其结果后重新尝试，访问redis期间不持有锁
+     *
+     * @param permits
+     * @return 是否放行
+     */
+    public boolean tryAcquire(int permits) {
+        boolean remote = false;
+        while (true) {
+            CompletableFuture<Long> refill;
+            boolean leader = false;
+            synchronized (this) {
+                if (take(permits)) {
+                    if (!remote) {
+                        localHits.incrementAndGet();
+                    }
+                    return true;
+                }
+                refill = refilling;
+                if (refill == null) {
+                    refill = new CompletableFuture<Long>();
+                    refilling = refill;
+                    leader = true;
+                }
+            }
+            remote = true;
+            long granted = leader ? refill(permits, refill) : await(refill);
+            if (granted <= 0) {
+                // redis 中也没有可用许可
+                rejected.incrementAndGet();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 取本地许可，调用方持有锁
+     */
+    private boolean take(int permits) {
+        if (System.currentTimeMillis() >= leaseDeadline) {
+            leased = 0;
+        }
+        if (leased >= permits) {
+            leased -= permits;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 向redis申请许可并放入本地，完成后通知等待的线程
+     *
+     * @return 发放的许可数
+     */
+    private long refill(int permits, CompletableFuture<Long> future) {
+        try {
+            long request;
+            synchronized (this) {
+                request = Math.max(leaseBatch, permits - leased);
+            }
+            remoteCalls.incrementAndGet();
+            Long reply = scripts.eval(scripts.load(script), Collections.singletonList(fullkey),
+                    Arrays.asList(params.get(0), params.get(1), request), Long.class);
+            long granted = reply == null ? 0 : reply;
+            synchronized (this) {
+                if (granted > 0) {
+                    long now = System.currentTimeMillis();
+                    if (now >= leaseDeadline) {
+                        leased = 0;
+                    }
+                    if (leased == 0) {
+                        leaseDeadline = now + leaseMillis;
+                    }
+                    leased += granted;
+                }
+                refilling = null;
+            }
+            future.complete(granted);
+            return granted;
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                refilling = null;
+            }
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static long await(CompletableFuture<Long> refill) {
+        try {
+            return refill.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public String getKey() {
+        return fullkey;
+    }
+
+    public long getLocalHits() {
+        return localHits.get();
+    }
+
+    public long getRemoteCalls() {
+        return remoteCalls.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return fullkey + ": localHits=" + localHits.get() + ", remoteCalls=" + remoteCalls.get()
+                + ", rejected=" + rejected.get();
+    }
+}
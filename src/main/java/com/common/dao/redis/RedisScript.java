@@ -0,0 +1,53 @@
+package com.common.dao.redis;
+
+import com.common.util.CodecUtils;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * @Description: lua脚本，创建时计算SHA1，执行时优先 EVALSHA
+ */
+public class RedisScript {
+
+    private final String name;
+
+    private final String source;
+
+    private final byte[] rawSource;
+
+    private final String sha1;
+
+    private final byte[] rawSha1;
+
+    public RedisScript(String name, String source) {
+        this.name = name;
+        this.source = source;
+        this.rawSource = SafeEncoder.encode(source);
+        this.sha1 = CodecUtils.byte2hex(CodecUtils.encryptSHA(rawSource));
+        this.rawSha1 = SafeEncoder.encode(sha1);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getSha1() {
+        return sha1;
+    }
+
+    byte[] getRawSource() {
+        return rawSource;
+    }
+
+    byte[] getRawSha1() {
+        return rawSha1;
+    }
+
+    @Override
+    public String toString() {
+        return name + "(" + sha1 + ")";
+    }
+}
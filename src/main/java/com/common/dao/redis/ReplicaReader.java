@@ -0,0 +1,425 @@
+package com.common.dao.redis;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.util.Pool;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description: 从节点读
+ * 				   replica：在可用从节点中随机选择，没有可用从节点时读主节点；
+ * 				   nearest：在主节点与可用从节点中选择探测延迟最低的节点
+ * 				   后台定时 PING 各节点得到延迟，并从主节点 INFO replication 得到 master_repl_offset 与各从节点 offset；
+ * 				   每次探测记录主节点 offset 的时间点，从节点的数据落后时间按“主节点 offset 不超过从节点 offset 的最近一次探测”估算，
+ * 				   精度为探测间隔，且从节点 offset 来自其每秒一次的 REPLCONF ACK，估算值偏大（保守）
+ * 				   （INFO 中的 lag= 是距上次 ACK 的秒数，不表示数据落后多少，不使用）
+ * 				   落后超过容忍值、状态不是 online 或探测失败的从节点不参与读，首次探测完成前全部读主节点
+ * 				   从节点读失败（连接失败、MOVED）时改为在主节点执行，连接失败的从节点直到下次探测成功前不再使用
+ * 				   执行器配置熔断时从节点也按节点熔断，熔断中的从节点直接读主节点；
+ * 				   主节点也失败时异常抛给调用方，由调用方按降级数据（stale）处理
+ * 				   注意：从节点数据可能落后于主节点，写入后立即读取可能读到旧值
+ */
+public class ReplicaReader {
+    protected transient final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * 延迟的指数滑动平均系数
+     */
+    private static final double ALPHA = 0.3;
+
+    private final ClusterSlotRouter router;
+
+    private final ClusterNodeExecutor executor;
+
+    private final boolean nearest;
+
+    private final long maxLagMillis;
+
+    private final GenericObjectPoolConfig poolConfig;
+
+    private final int timeout;
+
+    private final ConcurrentHashMap<String, ReadOnlyJedisPool> pools = new ConcurrentHashMap<String, ReadOnlyJedisPool>();
+
+    private final ConcurrentHashMap<String, NodeState> states = new ConcurrentHashMap<String, NodeState>();
+
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong replicaReads = new AtomicLong();
+
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    /**
+     * @param router
+     * @param executor 主节点执行
+     * @param nearest true 按延迟选择节点，false 优先从节点
+     * @param maxLagMillis 可容忍的从节点数据落后毫秒数（按复制 offset 估算），小于0时不检查
+     * @param poolConfig 从节点连接池配置
+     * @param timeout 从节点连接超时毫秒数
+     * @param probeMillis 探测间隔毫秒数
+     */
+    public ReplicaReader(ClusterSlotRouter router, ClusterNodeExecutor executor, boolean nearest, long maxLagMillis,
+                         GenericObjectPoolConfig poolConfig, int timeout, long probeMillis) {
+        this.router = router;
+        this.executor = executor;
+        this.nearest = nearest;
+        this.maxLagMillis = maxLagMillis;
+        this.poolConfig = poolConfig;
+        this.timeout = timeout;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("redis-replica"));
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    probe();
+                } catch (Exception e) {
+                    logger.warn("redis replica probe error", e);
+                }
+            }
+        }, 0, probeMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 在选中的节点上执行读命令
+     *
+     * @param fullkey 命令操作的完整key
+     * @param command 只读命令
+     * @return
+     */
+    public <T> T read(String fullkey, ClusterNodeExecutor.NodeCommand<T> command) {
+        String master = router.masterOf(fullkey);
+        String node = master == null ? null : select(master);
+        if (node == null || node.equals(master)) {
+            return executor.execute(fullkey, command);
+        }
+        CircuitBreakers breakers = executor.getBreakers();
+        CircuitBreaker breaker = breakers == null ? null : breakers.get(node);
+        CircuitBreaker.Permit permit = breaker == null ? null : breaker.tryAcquire();
+        if (permit == CircuitBreaker.Permit.REJECTED) {
+            return executor.execute(fullkey, command);
+        }
+        boolean failed = false;
+        long start = System.nanoTime();
+        Jedis connection = null;
+        try {
+            connection = pool(node).getResource();
+            T result = command.execute(connection);
+            replicaReads.incrementAndGet();
+            return result;
+        } catch (JedisMovedDataException e) {
+            // 主从切换或槽位迁移后从节点不再负责该槽位
+            router.refresh();
+        } catch (JedisConnectionException e) {
+            logger.warn("redis replica read error, node:" + node, e);
+            failed = true;
+            state(node).available = false;
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            if (breaker != null) {
+                breaker.onResult(permit, System.nanoTime() - start, failed);
+            }
+        }
+        fallbacks.incrementAndGet();
+        return executor.execute(fullkey, command);
+    }
+
+    /**
+     * 得到扫描主节点分片时使用的连接池
+     * 扫描过程中游标必须始终在同一节点上，调用方每次扫描只取一次
+     *
+     * @param master
+     * @return 主节点未知时返回null
+     */
+    public Pool<Jedis> scanPool(String master) {
+        String node = select(master);
+        if (node == null || node.equals(master)) {
+            return router.pool(master);
+        }
+        return pool(node);
+    }
+
+    /**
+     * 从节点上执行的读次数
+     *
+     * @return
+     */
+    public long getReplicaReads() {
+        return replicaReads.get();
+    }
+
+    /**
+     * 从节点读失败后改为读主节点的次数
+     *
+     * @return
+     */
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+
+    /**
+     * 各节点探测延迟(微秒)，不可用的节点为 -1
+     *
+     * @return
+     */
+    public Map<String, Long> latencies() {
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (Map.Entry<String, NodeState> entry : states.entrySet()) {
+            NodeState state = entry.getValue();
+            result.put(entry.getKey(), state.available ? TimeUnit.NANOSECONDS.toMicros(state.latencyNanos) : -1L);
+        }
+        return result;
+    }
+
+    /**
+     * 停止探测并关闭从节点连接池
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        for (ReadOnlyJedisPool pool : pools.values()) {
+            pool.destroy();
+        }
+        pools.clear();
+    }
+
+    /**
+     * 选择读节点
+     */
+    private String select(String master) {
+        List<String> candidates = new ArrayList<String>();
+        for (String replica : router.replicasOf(master)) {
+            NodeState state = states.get(replica);
+            if (state != null && state.usable(maxLagMillis)) {
+                candidates.add(replica);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return master;
+        }
+        if (!nearest) {
+            return candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+        }
+        String best = master;
+        NodeState masterState = states.get(master);
+        long bestLatency = masterState != null && masterState.available ? masterState.latencyNanos : Long.MAX_VALUE;
+        for (String replica : candidates) {
+            long latency = states.get(replica).latencyNanos;
+            if (latency < bestLatency) {
+                best = replica;
+                bestLatency = latency;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 探测所有节点的延迟与从节点复制延迟
+     */
+    private void probe() {
+        long now = System.currentTimeMillis();
+        for (String master : router.masters()) {
+            Replication replication = null;
+            JedisPool masterPool = router.pool(master);
+            if (masterPool != null) {
+                Jedis connection = null;
+                try {
+                    connection = masterPool.getResource();
+                    long start = System.nanoTime();
+                    connection.ping();
+                    state(master).sample(System.nanoTime() - start);
+                    replication = parseReplication(connection.info("replication"));
+                } catch (Exception e) {
+                    state(master).available = false;
+                    logger.warn("redis replica probe error, master:" + master, e);
+                } finally {
+                    if (connection != null) {
+                        connection.close();
+                    }
+                }
+            }
+            OffsetHistory history = state(master).history;
+            if (replication != null) {
+                history.add(now, replication.masterOffset, maxLagMillis);
+            }
+            for (String replica : router.replicasOf(master)) {
+                NodeState state = state(replica);
+                Long offset = replication == null ? null : replication.offsets.get(replica);
+                state.lagMillis = offset == null ? Long.MAX_VALUE : history.staleness(offset, now);
+                Jedis connection = null;
+                try {
+                    connection = pool(replica).getResource();
+                    long start = System.nanoTime();
+                    connection.ping();
+                    state.sample(System.nanoTime() - start);
+                } catch (Exception e) {
+                    state.available = false;
+                    logger.debug("redis replica probe error, node:" + replica, e);
+                } finally {
+                    if (connection != null) {
+                        connection.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 解析主节点 INFO replication：
+     * master_repl_offset:1300
+     * slave0:ip=10.0.0.2,port=7001,state=online,offset=1234,lag=0
+     *
+     * @param info
+     * @return 主节点 offset 与 host:port -> 从节点 offset，状态不是 online 的从节点不包含在内
+     */
+    static Replication parseReplication(String info) {
+        Replication replication = new Replication();
+        for (String line : info.split("\r?\n")) {
+            if (line.startsWith("master_repl_offset:")) {
+                replication.masterOffset = Long.parseLong(line.substring("master_repl_offset:".length()).trim());
+                continue;
+            }
+            if (!line.startsWith("slave") || line.indexOf(':') < 0) {
+                continue;
+            }
+            Map<String, String> fields = new HashMap<String, String>();
+            for (String pair : line.substring(line.indexOf(':') + 1).split(",")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    fields.put(pair.substring(0, eq), pair.substring(eq + 1).trim());
+                }
+            }
+            if (!fields.containsKey("ip") || !fields.containsKey("port")) {
+                continue;
+            }
+            if ("online".equals(fields.get("state")) && fields.containsKey("offset")) {
+                replication.offsets.put(fields.get("ip") + ":" + fields.get("port"), Long.parseLong(fields.get("offset")));
+            }
+        }
+        return replication;
+    }
+
+    private ReadOnlyJedisPool pool(String node) {
+        ReadOnlyJedisPool pool = pools.get(node);
+        if (pool == null) {
+            int colon = node.lastIndexOf(':');
+            ReadOnlyJedisPool created = new ReadOnlyJedisPool(poolConfig, node.substring(0, colon),
+                    Integer.parseInt(node.substring(colon + 1)), timeout);
+            pool = pools.putIfAbsent(node, created);
+            if (pool == null) {
+                pool = created;
+            } else {
+                created.destroy();
+            }
+        }
+        return pool;
+    }
+
+    private NodeState state(String node) {
+        NodeState state = states.get(node);
+        if (state == null) {
+            NodeState created = new NodeState();
+            state = states.putIfAbsent(node, created);
+            if (state == null) {
+                state = created;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * 主节点 INFO replication 中的复制 offset
+     */
+    static class Replication {
+        long masterOffset = -1;
+        final Map<String, Long> offsets = new HashMap<String, Long>();
+    }
+
+    /**
+     * 主节点各次探测时的 offset，用于把从节点 offset 换算为落后的时间
+     * 只由探测线程访问
+     */
+    static class OffsetHistory {
+        private final ArrayDeque<long[]> samples = new ArrayDeque<long[]>();
+
+        /**
+         * 记录一次探测，只保留估算 maxLagMillis 所需的记录：容忍窗口内的全部记录及窗口前的最后一条
+         *
+         * @param millis 探测时间
+         * @param masterOffset 主节点 offset，未知时为负数
+         * @param maxLagMillis
+         */
+        void add(long millis, long masterOffset, long maxLagMillis) {
+            if (masterOffset < 0) {
+                return;
+            }
+            samples.addLast(new long[]{millis, masterOffset});
+            long horizon = millis - Math.max(0, maxLagMillis);
+            while (samples.size() > 1) {
+                Iterator<long[]> it = samples.iterator();
+                it.next();
+                if (it.next()[0] > horizon) {
+                    break;
+                }
+                samples.removeFirst();
+            }
+        }
+
+        /**
+         * 估算从节点数据落后的毫秒数
+         *
+         * @param replicaOffset 从节点 offset
+         * @param now
+         * @return 不低于最近一次探测的主节点 offset 时为0；早于所有记录时为 Long.MAX_VALUE
+         */
+        long staleness(long replicaOffset, long now) {
+            Iterator<long[]> it = samples.descendingIterator();
+            boolean latest = true;
+            while (it.hasNext()) {
+                long[] sample = it.next();
+                if (sample[1] <= replicaOffset) {
+                    // 从节点至少有该次探测前的全部写入
+                    return latest ? 0 : now - sample[0];
+                }
+                latest = false;
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * 节点探测结果
+     */
+    private static class NodeState {
+        private volatile boolean available = false;
+        private volatile long latencyNanos = Long.MAX_VALUE;
+        private volatile long lagMillis = Long.MAX_VALUE;
+        private final OffsetHistory history = new OffsetHistory();
+
+        void sample(long nanos) {
+            latencyNanos = latencyNanos == Long.MAX_VALUE ? nanos : (long) (ALPHA * nanos + (1 - ALPHA) * latencyNanos);
+            available = true;
+        }
+
+        boolean usable(long maxLagMillis) {
+            return available && (maxLagMillis < 0 || lagMillis <= maxLagMillis);
+        }
+    }
+}
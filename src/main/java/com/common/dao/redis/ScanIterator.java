@@ -0,0 +1,135 @@
+package com.common.dao.redis;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 扫描结果迭代器
+ * 				   多个节点的扫描线程向有界队列投递key页，调用线程按需取出
+ * 				   队列满时扫描线程等待，内存占用与节点数、页大小成正比
+ * 				   调用方超过 abandonMillis 未取数据且队列已满时视为放弃遍历（未调用 close），扫描线程停止
+ */
+public class ScanIterator implements Iterator<String>, Closeable {
+
+    /**
+     * 节点扫描结束标记
+     */
+    private static final List<String> END = Collections.emptyList();
+
+    /**
+     * 默认放弃遍历的判定时间
+     */
+    static final long DEFAULT_ABANDON_MILLIS = 60000;
+
+    private final BlockingQueue<List<String>> queue;
+
+    private int running;
+
+    private volatile boolean closed = false;
+
+    private final long abandonMillis;
+
+    /**
+     * 调用方最后一次取数据的时间
+     */
+    private volatile long lastTaken = System.currentTimeMillis();
+
+    private Iterator<String> current = Collections.<String>emptyList().iterator();
+
+    /**
+     * @param producers 扫描节点数
+     * @param capacity 队列中最多缓存的页数
+     */
+    ScanIterator(int producers, int capacity) {
+        this(producers, capacity, DEFAULT_ABANDON_MILLIS);
+    }
+
+    /**
+     * @param producers 扫描节点数
+     * @param capacity 队列中最多缓存的页数
+     * @param abandonMillis 调用方超过该时长未取数据时关闭
+     */
+    ScanIterator(int producers, int capacity, long abandonMillis) {
+        this.running = producers;
+        this.abandonMillis = abandonMillis;
+        this.queue = new ArrayBlockingQueue<List<String>>(Math.max(capacity, producers + 1));
+    }
+
+    /**
+     * 投递一页key，迭代器关闭或被放弃后返回false
+     */
+    boolean offer(List<String> keys) {
+        try {
+            while (!closed) {
+                if (queue.offer(keys, 100, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+                if (System.currentTimeMillis() - lastTaken > abandonMillis) {
+                    close();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * 节点扫描结束
+     */
+    void finish() {
+        offer(END);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (running == 0 || closed) {
+                return false;
+            }
+            List<String> page;
+            try {
+                page = queue.take();
+                lastTaken = System.currentTimeMillis();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                return false;
+            }
+            if (page == END) {
+                running--;
+            } else {
+                current = page.iterator();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 提前结束遍历，通知扫描线程停止
+     */
+    @Override
+    public void close() {
+        closed = true;
+        queue.clear();
+    }
+}
@@ -0,0 +1,229 @@
+package com.common.dao.redis;
+
+import com.common.dao.redis.codec.RedisValueSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Description: lua脚本注册与执行
+ * 				   脚本从classpath加载并缓存SHA1，执行时发送 EVALSHA，节点返回 NOSCRIPT 时 SCRIPT LOAD 后重试
+ * 				   脚本的所有key必须在同一槽位（可用 {hashtag}），在该槽位的主节点上执行
+ * 				   返回值按调用方给出的类型转换：整数、字符串、布尔、byte[]、List，其余类型按存储格式反序列化
+ */
+public class ScriptRegistry {
+    protected transient final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ClusterNodeExecutor executor;
+
+    private final RedisValueSerializer serializer;
+
+    private final ConcurrentHashMap<String, RedisScript> scripts = new ConcurrentHashMap<String, RedisScript>();
+
+    public ScriptRegistry(ClusterNodeExecutor executor, RedisValueSerializer serializer) {
+        this.executor = executor;
+        this.serializer = serializer;
+    }
+
+    public ClusterNodeExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * 注册脚本，同名脚本已存在时返回已有的
+     *
+     * @param name
+     * @param source
+     * @return
+     */
+    public RedisScript register(String name, String source) {
+        RedisScript script = new RedisScript(name, source);
+        RedisScript existing = scripts.putIfAbsent(name, script);
+        return existing == null ? script : existing;
+    }
+
+    /**
+     * 从classpath加载脚本，以资源路径为名缓存
+     *
+     * @param resource 例如 lua/compare_and_delete.lua
+     * @return
+     */
+    public RedisScript load(String resource) {
+        RedisScript script = scripts.get(resource);
+        if (script != null) {
+            return script;
+        }
+        InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            in = ScriptRegistry.class.getClassLoader().getResourceAsStream(resource);
+        }
+        if (in == null) {
+            throw new IllegalArgumentException("redis script not found: " + resource);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return register(resource, SafeEncoder.encode(out.toByteArray()));
+        } catch (IOException e) {
+            throw new IllegalStateException("redis script read error: " + resource, e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                logger.warn("redis script close error: " + resource, e);
+            }
+        }
+    }
+
+    /**
+     * 得到已注册的脚本，不存在返回null
+     *
+     * @param name
+     * @return
+     */
+    public RedisScript get(String name) {
+        return scripts.get(name);
+    }
+
+    /**
+     * 执行脚本，返回原始结果
+     *
+     * @param script
+     * @param fullkeys 完整key，必须在同一槽位
+     * @param args 参数：byte[] 原样发送，String/数字/布尔 按字符串发送，其余对象按存储格式序列化
+     * @return
+     */
+    public Object eval(final RedisScript script, List<String> fullkeys, List<?> args) {
+        if (fullkeys == null) {
+            fullkeys = Collections.emptyList();
+        }
+        String route = fullkeys.isEmpty() ? "" : fullkeys.get(0);
+        int slot = executor.getRouter().slot(route);
+        final List<byte[]> rawkeys = new ArrayList<byte[]>(fullkeys.size());
+        for (String fullkey : fullkeys) {
+            if (executor.getRouter().slot(fullkey) != slot) {
+                throw new IllegalArgumentException("redis script keys must be in the same slot: " + fullkeys);
+            }
+            rawkeys.add(SafeEncoder.encode(fullkey));
+        }
+        final List<byte[]> rawargs = new ArrayList<byte[]>(args == null ? 0 : args.size());
+        if (args != null) {
+            for (Object arg : args) {
+                rawargs.add(toArg(arg));
+            }
+        }
+        return executor.execute(route, new ClusterNodeExecutor.NodeCommand<Object>() {
+            @Override
+            public Object execute(Jedis connection) {
+                try {
+                    return connection.evalsha(script.getRawSha1(), rawkeys, rawargs);
+                } catch (JedisDataException e) {
+                    if (e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT")) {
+                        throw e;
+                    }
+                    // 节点重启、故障转移或 SCRIPT FLUSH 后脚本缓存丢失
+                    logger.info("redis script reload: " + script);
+                    connection.scriptLoad(script.getRawSource());
+                    return connection.evalsha(script.getRawSha1(), rawkeys, rawargs);
+                }
+            }
+        });
+    }
+
+    /**
+     * 执行脚本并转换结果类型
+     *
+     * @param script
+     * @param fullkeys
+     * @param args
+     * @param type
+     * @return
+     */
+    public <T> T eval(RedisScript script, List<String> fullkeys, List<?> args, Type type) {
+        return convert(eval(script, fullkeys, args), type);
+    }
+
+    /**
+     * 转换脚本返回值
+     *
+     * @param reply 整数为Long，字符串为byte[]，数组为List，nil为null
+     * @param type
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T convert(Object reply, Type type) {
+        if (reply == null || type == null || type == Object.class) {
+            return (T) reply;
+        }
+        if (type == Long.class || type == long.class) {
+            return (T) toLong(reply);
+        }
+        if (type == Integer.class || type == int.class) {
+            return (T) Integer.valueOf(toLong(reply).intValue());
+        }
+        if (type == Boolean.class || type == boolean.class) {
+            if (reply instanceof Long) {
+                return (T) Boolean.valueOf((Long) reply != 0);
+            }
+            return (T) Boolean.TRUE;
+        }
+        if (type == String.class) {
+            return (T) (reply instanceof byte[] ? SafeEncoder.encode((byte[]) reply) : String.valueOf(reply));
+        }
+        if (type == byte[].class) {
+            return (T) (reply instanceof byte[] ? reply : SafeEncoder.encode(String.valueOf(reply)));
+        }
+        if (reply instanceof List) {
+            Type element = Object.class;
+            if (type instanceof ParameterizedType) {
+                element = ((ParameterizedType) type).getActualTypeArguments()[0];
+            }
+            List<Object> items = (List<Object>) reply;
+            List<Object> result = new ArrayList<Object>(items.size());
+            for (Object item : items) {
+                result.add(convert(item, element));
+            }
+            return (T) result;
+        }
+        if (reply instanceof byte[]) {
+            return serializer.deserialize((byte[]) reply, type);
+        }
+        throw new IllegalArgumentException("redis script reply " + reply.getClass().getName() + " can not convert to " + type);
+    }
+
+    private byte[] toArg(Object arg) {
+        if (arg instanceof byte[]) {
+            return (byte[]) arg;
+        }
+        if (arg == null) {
+            return new byte[0];
+        }
+        if (arg instanceof String || arg instanceof Number || arg instanceof Boolean) {
+            return SafeEncoder.encode(String.valueOf(arg));
+        }
+        return serializer.serialize(arg);
+    }
+
+    private static Long toLong(Object reply) {
+        if (reply instanceof Long) {
+            return (Long) reply;
+        }
+        return Long.valueOf(SafeEncoder.encode((byte[]) reply));
+    }
+}
@@ -0,0 +1,97 @@
+package com.common.dao.redis;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * @Description: 同一key同一时刻只执行一次加载，其余并发调用等待并共享结果（包括异常）
+ */
+public class SingleFlight {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inflight =
+            new ConcurrentHashMap<String, CompletableFuture<Object>>();
+
+    /**
+     * 执行加载，已有相同key在执行时等待其结果
+     *
+     * @param key
+     * @param loader
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Callable<T> loader) throws Exception {
+        CompletableFuture<Object> future = new CompletableFuture<Object>();
+        CompletableFuture<Object> existing = inflight.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+        }
+        try {
+            T value = loader.call();
+            future.complete(value);
+            return value;
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            throw e;
+        } catch (Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, future);
+        }
+    }
+
+    /**
+     * 后台执行加载，已有相同key在执行或线程池已满时直接返回false
+     *
+     * @param key
+     * @param loader
+     * @param executor
+     * @return 是否提交
+     */
+    public boolean executeAsync(final String key, final Callable<?> loader, Executor executor) {
+        final CompletableFuture<Object> future = new CompletableFuture<Object>();
+        if (inflight.putIfAbsent(key, future) != null) {
+            return false;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        future.complete(loader.call());
+                    } catch (Throwable e) {
+                        future.completeExceptionally(e);
+                    } finally {
+                        inflight.remove(key, future);
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            inflight.remove(key, future);
+            future.complete(null);
+            return false;
+        }
+    }
+
+    /**
+     * 正在执行的加载数
+     *
+     * @return
+     */
+    public int size() {
+        return inflight.size();
+    }
+}
@@ -0,0 +1,83 @@
+package com.common.dao.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Weigher;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description: 最后一次从redis读到的值（编码后的字节），节点不可用时作为降级数据返回
+ * 				   与本地缓存不同，正常情况下从不读取，只在读命令连接失败或熔断时使用
+ * 				   本进程写/删时失效；其他进程的写入不通知，降级期间可能返回比实际更旧的值
+ */
+public class StaleCache {
+
+    /**
+     * 最后一次读取时key不存在，与保存的空值区分
+     */
+    public static final Object ABSENT = new Object();
+
+    private final Cache<String, Object> cache;
+
+    private final AtomicLong served = new AtomicLong();
+
+    /**
+     * @param maxBytes 最多保存的字节数
+     * @param ttlMillis 最后一次读取后保留的毫秒数
+     */
+    public StaleCache(long maxBytes, long ttlMillis) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher(new Weigher<String, Object>() {
+                    @Override
+                    public int weigh(String key, Object data) {
+                        return key.length() + (data == ABSENT ? 0 : ((byte[]) data).length);
+                    }
+                })
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 记录读到的值
+     *
+     * @param fullkey
+     * @param data 为null表示key不存在
+     */
+    public void put(String fullkey, byte[] data) {
+        cache.put(fullkey, data == null ? ABSENT : data);
+    }
+
+    /**
+     * 降级读取
+     *
+     * @param fullkey
+     * @return 未保存时返回null，key不存在时返回 ABSENT，否则为 byte[]
+     */
+    public Object get(String fullkey) {
+        Object data = cache.getIfPresent(fullkey);
+        if (data != null) {
+            served.incrementAndGet();
+        }
+        return data;
+    }
+
+    public void invalidate(String fullkey) {
+        cache.invalidate(fullkey);
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * 已返回的降级次数
+     *
+     * @return
+     */
+    public long getServed() {
+        return served.get();
+    }
+}
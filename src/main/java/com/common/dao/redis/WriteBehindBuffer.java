@@ -0,0 +1,698 @@
+package com.common.dao.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisClusterMaxRedirectionsException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description: 延迟写入缓冲
+ * 				   SET / HSET 先放入进程内缓冲，同一 key(+field) 的多次写入只保留最后一次；
+ * 				   每隔 flushMillis 或缓冲条数达到 flushEntries 时，按节点pipeline批量写入redis
+ * 				   缓冲条数（含正在写入）达到 maxEntries 时新key的写入等待本次写入完成，超过 maxBlockMillis 抛出 RejectedExecutionException，
+ * 				   redis不可用时写入方因此被限流，而不是无限占用内存
+ * 				   连接失败时未被新值覆盖的写入放回缓冲下次再写；类型错误等无法重试成功的错误放弃该批写入
+ * 				   读取时优先返回缓冲中（含正在写入）的值；与直接写入混用同一 key 时不保证先后顺序
+ * 				   缓冲按 key 索引，同一 key 的 SET 与各 field 的 HSET 在一个 KeyWrites 中，删除 key 时整体丢弃；
+ * 				   删除时正在写入的值不再被读取，本次写入完成后对值仍等于写入值的 key / field 补发比较删除，
+ * 				   避免与删除并发的写入使key复活，删除之后同步写入的新值不受影响
+ */
+public class WriteBehindBuffer {
+    protected transient final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final String COMPARE_AND_DELETE = "lua/compare_and_delete.lua";
+
+    private static final String COMPARE_AND_HDEL = "lua/compare_and_hdel.lua";
+
+    private final ClusterPipeline pipeline;
+
+    private final ClusterNodeExecutor executor;
+
+    private final ScriptRegistry scripts;
+
+    private final long flushMillis;
+
+    private final int flushEntries;
+
+    private final int maxEntries;
+
+    private final long maxBlockMillis;
+
+    /**
+     * fullkey -> 尚未写入的值
+     */
+    private final ConcurrentHashMap<String, KeyWrites> pending = new ConcurrentHashMap<String, KeyWrites>();
+
+    /**
+     * fullkey -> 正在写入redis的值，只在 flush 期间非空
+     */
+    private final ConcurrentHashMap<String, KeyWrites> inflight = new ConcurrentHashMap<String, KeyWrites>();
+
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final AtomicInteger inflightCount = new AtomicInteger();
+
+    /**
+     * 等待缓冲空间的写入线程
+     */
+    private final Object space = new Object();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    private final ScheduledExecutorService scheduler;
+
+    private volatile boolean closed = false;
+
+    private final AtomicLong writes = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong flushed = new AtomicLong();
+
+    private final AtomicLong commands = new AtomicLong();
+
+    /**
+     * @param pipeline
+     * @param scripts 比较删除脚本，也提供单key执行器
+     * @param flushMillis 定时写入间隔毫秒数
+     * @param flushEntries 缓冲条数达到该值时立即写入，0 表示只定时写入
+     * @param maxEntries 缓冲最大条数（近似值，并发写入时可能略微超出）
+     * @param maxBlockMillis 缓冲已满时写入最多等待的毫秒数
+     */
+    public WriteBehindBuffer(ClusterPipeline pipeline, ScriptRegistry scripts, long flushMillis,
+                             int flushEntries, int maxEntries, long maxBlockMillis) {
+        this.pipeline = pipeline;
+        this.scripts = scripts;
+        this.executor = scripts.getExecutor();
+        this.flushMillis = flushMillis;
+        this.flushEntries = flushEntries;
+        this.maxEntries = maxEntries;
+        this.maxBlockMillis = maxBlockMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("redis-write-behind"));
+    }
+
+    /**
+     * 启动定时写入
+     */
+    public void start() {
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushQuietly();
+            }
+        }, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 缓冲 SET
+     *
+     * @param fullkey
+     * @param data
+     * @param ttl 过期秒数，0 不设置过期
+     */
+    public void set(String fullkey, byte[] data, int ttl) {
+        put(fullkey, null, new Write(data, ttl));
+    }
+
+    /**
+     * 缓冲 HSET
+     *
+     * @param fullkey
+     * @param field
+     * @param data
+     * @param ttl 整个map的过期秒数，0 不设置过期
+     */
+    public void hset(String fullkey, String field, byte[] data, int ttl) {
+        put(fullkey, field, new Write(data, ttl));
+    }
+
+    /**
+     * 本地尚未写入redis（含正在写入）的值
+     *
+     * @param fullkey
+     * @param field 为null时表示 SET 的值
+     * @return 没有时返回null
+     */
+    public byte[] get(String fullkey, String field) {
+        KeyWrites buffered = pending.get(fullkey);
+        if (buffered != null) {
+            synchronized (buffered) {
+                // 已取出写入时在 inflight 中
+                Write write = buffered.retired ? null : buffered.get(field);
+                if (write != null) {
+                    return write.data;
+                }
+            }
+        }
+        buffered = inflight.get(fullkey);
+        if (buffered != null) {
+            synchronized (buffered) {
+                Write write = buffered.deleted(field) ? null : buffered.get(field);
+                if (write != null) {
+                    return write.data;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 丢弃key的所有缓冲写入（删除key时在发送 DEL 前调用）
+     *
+     * @param fullkey
+     */
+    public void discard(String fullkey) {
+        // 先标记正在写入的值，之后放回重试的写入不会越过删除
+        KeyWrites sending = inflight.get(fullkey);
+        if (sending != null) {
+            synchronized (sending) {
+                sending.deleted = true;
+            }
+        }
+        KeyWrites buffered = pending.remove(fullkey);
+        if (buffered != null) {
+            synchronized (buffered) {
+                if (!buffered.retired) {
+                    buffered.retired = true;
+                    pendingCount.addAndGet(-buffered.size());
+                }
+            }
+            signalSpace();
+        }
+    }
+
+    /**
+     * 丢弃map中field的缓冲写入（删除field时在发送 HDEL 前调用）
+     *
+     * @param fullkey
+     * @param field
+     */
+    public void discard(String fullkey, String field) {
+        KeyWrites sending = inflight.get(fullkey);
+        if (sending != null) {
+            synchronized (sending) {
+                sending.deleteField(field);
+            }
+        }
+        KeyWrites buffered = pending.get(fullkey);
+        if (buffered == null) {
+            return;
+        }
+        synchronized (buffered) {
+            if (buffered.retired || buffered.remove(field) == null) {
+                return;
+            }
+            pendingCount.decrementAndGet();
+            if (buffered.size() == 0) {
+                buffered.retired = true;
+                pending.remove(fullkey, buffered);
+            }
+        }
+        signalSpace();
+    }
+
+    /**
+     * 立即把缓冲写入redis
+     */
+    public synchronized void flush() {
+        final List<WriteKey> keys = new ArrayList<WriteKey>();
+        final List<Write> values = new ArrayList<Write>();
+        for (Map.Entry<String, KeyWrites> entry : pending.entrySet()) {
+            KeyWrites buffered = entry.getValue();
+            synchronized (buffered) {
+                if (buffered.retired) {
+                    continue;
+                }
+                buffered.retired = true;
+                // 先登记为正在写入，读取不会在两者之间落空
+                inflight.put(entry.getKey(), buffered);
+                pending.remove(entry.getKey(), buffered);
+                pendingCount.addAndGet(-buffered.size());
+                inflightCount.addAndGet(buffered.size());
+                if (buffered.value != null) {
+                    keys.add(new WriteKey(entry.getKey(), null));
+                    values.add(buffered.value);
+                }
+                if (buffered.fields != null) {
+                    for (Map.Entry<String, Write> field : buffered.fields.entrySet()) {
+                        keys.add(new WriteKey(entry.getKey(), field.getKey()));
+                        values.add(field.getValue());
+                    }
+                }
+            }
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        List<String> fullkeys = new ArrayList<String>(keys.size());
+        for (WriteKey key : keys) {
+            fullkeys.add(key.fullkey);
+        }
+        try {
+            pipeline.execute(fullkeys, new ClusterPipeline.Operation<Object>() {
+                @Override
+                public Response<Object> pipelined(Pipeline pipeline, int index) {
+                    return write(pipeline, keys.get(index), values.get(index));
+                }
+
+                @Override
+                public Object direct(int index) {
+                    final WriteKey key = keys.get(index);
+                    final Write write = values.get(index);
+                    return executor.execute(key.fullkey, new ClusterNodeExecutor.NodeCommand<Object>() {
+                        @Override
+                        public Object execute(Jedis connection) {
+                            Pipeline pipeline = connection.pipelined();
+                            Response<Object> reply = write(pipeline, key, write);
+                            pipeline.sync();
+                            return reply.get();
+                        }
+                    });
+                }
+            });
+            flushed.incrementAndGet();
+            commands.addAndGet(keys.size());
+        } catch (ClusterPipelineException e) {
+            // 只处理失败的下标，其余已写入
+            int retried = 0;
+            for (Map.Entry<Integer, RuntimeException> error : e.getErrors().entrySet()) {
+                if (retriable(error.getValue()) && requeue(keys.get(error.getKey()), values.get(error.getKey()))) {
+                    retried++;
+                }
+            }
+            flushed.incrementAndGet();
+            commands.addAndGet(keys.size() - e.getErrors().size());
+            logger.warn("redis write-behind flush error, " + retried + " writes will retry, "
+                    + (e.getErrors().size() - retried) + " writes dropped", e);
+        } catch (JedisConnectionException | JedisClusterMaxRedirectionsException e) {
+            logger.warn("redis write-behind flush error, " + keys.size() + " writes will retry", e);
+            for (int i = 0; i < keys.size(); i++) {
+                requeue(keys.get(i), values.get(i));
+            }
+        } catch (RuntimeException e) {
+            logger.error("redis write-behind flush error, " + keys.size() + " writes dropped", e);
+        } finally {
+            complete();
+            signalSpace();
+        }
+    }
+
+    /**
+     * 停止定时写入并同步写入剩余缓冲，之后的写入抛出 RejectedExecutionException
+     */
+    public void shutdown() {
+        closed = true;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(flushMillis + 1000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+        if (pendingCount.get() > 0) {
+            logger.error("redis write-behind shutdown, " + pendingCount.get() + " writes not flushed");
+        }
+        signalSpace();
+    }
+
+    /**
+     * 缓冲中尚未写入的条数
+     *
+     * @return
+     */
+    public int size() {
+        return pendingCount.get();
+    }
+
+    public long getWriteCount() {
+        return writes.get();
+    }
+
+    /**
+     * 被后续写入覆盖、无需写入redis的次数
+     *
+     * @return
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getFlushCount() {
+        return flushed.get();
+    }
+
+    public long getCommandCount() {
+        return commands.get();
+    }
+
+    private void put(String fullkey, String field, Write write) {
+        if (closed) {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("redis write-behind buffer closed");
+        }
+        if (full(fullkey, field)) {
+            awaitSpace(fullkey, field);
+        }
+        writes.incrementAndGet();
+        while (true) {
+            KeyWrites buffered = pendingOf(fullkey);
+            synchronized (buffered) {
+                if (buffered.retired) {
+                    // 已被取出写入或丢弃，放入新的 KeyWrites
+                    continue;
+                }
+                if (buffered.put(field, write) != null) {
+                    coalesced.incrementAndGet();
+                } else {
+                    pendingCount.incrementAndGet();
+                }
+                break;
+            }
+        }
+        if (flushEntries > 0 && pendingCount.get() >= flushEntries) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * 写入失败可重试时放回缓冲，期间有新值或已删除时不放回
+     * 持有正在写入的 KeyWrites 的锁，discard 先标记删除再清除缓冲，放回的写入不会越过删除
+     *
+     * @return 是否放回
+     */
+    private boolean requeue(WriteKey key, Write write) {
+        KeyWrites sending = inflight.get(key.fullkey);
+        synchronized (sending) {
+            if (sending.deleted(key.field)) {
+                return false;
+            }
+            while (true) {
+                KeyWrites buffered = pendingOf(key.fullkey);
+                synchronized (buffered) {
+                    if (buffered.retired) {
+                        continue;
+                    }
+                    if (buffered.get(key.field) != null) {
+                        return false;
+                    }
+                    buffered.put(key.field, write);
+                    pendingCount.incrementAndGet();
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * 本次写入结束：移出 inflight，写入期间被删除的 key / field 在值仍等于本次写入的值时补发删除
+     */
+    private void complete() {
+        for (Iterator<Map.Entry<String, KeyWrites>> it = inflight.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, KeyWrites> entry = it.next();
+            String fullkey = entry.getKey();
+            KeyWrites sent = entry.getValue();
+            Write value = null;
+            Map<String, Write> fields = new HashMap<String, Write>();
+            synchronized (sent) {
+                it.remove();
+                inflightCount.addAndGet(-sent.size());
+                if (sent.deleted) {
+                    value = sent.value;
+                }
+                if (sent.fields != null) {
+                    for (Map.Entry<String, Write> field : sent.fields.entrySet()) {
+                        if (sent.deleted(field.getKey())) {
+                            fields.put(field.getKey(), field.getValue());
+                        }
+                    }
+                }
+            }
+            try {
+                if (value != null) {
+                    scripts.eval(scripts.load(COMPARE_AND_DELETE), Collections.singletonList(fullkey),
+                            Collections.singletonList(value.data));
+                }
+                for (Map.Entry<String, Write> field : fields.entrySet()) {
+                    scripts.eval(scripts.load(COMPARE_AND_HDEL), Collections.singletonList(fullkey),
+                            Arrays.asList(SafeEncoder.encode(field.getKey()), field.getValue().data));
+                }
+            } catch (RuntimeException e) {
+                logger.warn("redis write-behind delete fence error, key:" + fullkey, e);
+            }
+        }
+    }
+
+    /**
+     * 得到key当前的缓冲，没有时创建
+     */
+    private KeyWrites pendingOf(String fullkey) {
+        KeyWrites buffered = pending.get(fullkey);
+        if (buffered == null) {
+            KeyWrites created = new KeyWrites();
+            buffered = pending.putIfAbsent(fullkey, created);
+            if (buffered == null) {
+                buffered = created;
+            }
+        }
+        return buffered;
+    }
+
+    /**
+     * 缓冲已满时触发写入并等待，超时抛出 RejectedExecutionException
+     */
+    private void awaitSpace(String fullkey, String field) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxBlockMillis);
+        synchronized (space) {
+            while (full(fullkey, field)) {
+                scheduleFlush();
+                long remaining = deadline - System.nanoTime();
+                if (closed || remaining <= 0) {
+                    rejected.incrementAndGet();
+                    throw new RejectedExecutionException("redis write-behind buffer full");
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(space, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    rejected.incrementAndGet();
+                    throw new RejectedExecutionException("redis write-behind interrupted", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 缓冲已满且不是覆盖已缓冲的写入
+     */
+    private boolean full(String fullkey, String field) {
+        if (pendingCount.get() + inflightCount.get() < maxEntries) {
+            return false;
+        }
+        KeyWrites buffered = pending.get(fullkey);
+        if (buffered == null) {
+            return true;
+        }
+        synchronized (buffered) {
+            return buffered.retired || buffered.get(field) == null;
+        }
+    }
+
+    /**
+     * 连接失败、重定向次数超限可重试，错误回复重试也不会成功
+     * SET / HSET 重复执行结果相同，结果未知时也重试
+     */
+    private static boolean retriable(RuntimeException e) {
+        return e instanceof JedisConnectionException || e instanceof JedisClusterMaxRedirectionsException
+                || e instanceof PipelineOutcomeUnknownException;
+    }
+
+    private void signalSpace() {
+        synchronized (space) {
+            space.notifyAll();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushScheduled.set(false);
+                        flushQuietly();
+                    }
+                });
+            } catch (RuntimeException e) {
+                // 已关闭，由 shutdown 写入
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("redis write-behind flush error", e);
+        }
+    }
+
+    /**
+     * 在pipeline中发送写入命令，HSET 带过期时间时同时发送 EXPIRE
+     *
+     * @return SET / HSET 的回复
+     */
+    @SuppressWarnings("unchecked")
+    private static Response<Object> write(Pipeline pipeline, WriteKey key, Write write) {
+        byte[] rawkey = SafeEncoder.encode(key.fullkey);
+        Response<?> reply;
+        if (key.field == null) {
+            reply = write.ttl > 0 ? pipeline.setex(rawkey, write.ttl, write.data) : pipeline.set(rawkey, write.data);
+        } else {
+            reply = pipeline.hset(rawkey, SafeEncoder.encode(key.field), write.data);
+            if (write.ttl > 0) {
+                pipeline.expire(rawkey, write.ttl);
+            }
+        }
+        return (Response<Object>) reply;
+    }
+
+    /**
+     * 写入目标：key 或 key + field
+     */
+    private static class WriteKey {
+        private final String fullkey;
+        private final String field;
+
+        WriteKey(String fullkey, String field) {
+            this.fullkey = fullkey;
+            this.field = field;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof WriteKey)) {
+                return false;
+            }
+            WriteKey other = (WriteKey) o;
+            return fullkey.equals(other.fullkey) && (field == null ? other.field == null : field.equals(other.field));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * fullkey.hashCode() + (field == null ? 0 : field.hashCode());
+        }
+    }
+
+    /**
+     * 一个key的缓冲写入：SET 的值与 HSET 各 field 的值
+     * 同一 key 的写入、丢弃、取出都在该对象上同步
+     */
+    private static class KeyWrites {
+        private Write value;
+        private Map<String, Write> fields;
+        /**
+         * 已被取出写入或丢弃，之后的写入放入新的 KeyWrites
+         */
+        private boolean retired;
+        /**
+         * 正在写入期间 key 被删除
+         */
+        private boolean deleted;
+        /**
+         * 正在写入期间被删除的 field
+         */
+        private Set<String> deletedFields;
+
+        Write get(String field) {
+            if (field == null) {
+                return value;
+            }
+            return fields == null ? null : fields.get(field);
+        }
+
+        /**
+         * @return 被覆盖的值
+         */
+        Write put(String field, Write write) {
+            if (field == null) {
+                Write old = value;
+                value = write;
+                return old;
+            }
+            if (fields == null) {
+                fields = new HashMap<String, Write>();
+            }
+            return fields.put(field, write);
+        }
+
+        Write remove(String field) {
+            if (field == null) {
+                Write old = value;
+                value = null;
+                return old;
+            }
+            return fields == null ? null : fields.remove(field);
+        }
+
+        void deleteField(String field) {
+            if (deletedFields == null) {
+                deletedFields = new HashSet<String>();
+            }
+            deletedFields.add(field);
+        }
+
+        boolean deleted(String field) {
+            return deleted || (field != null && deletedFields != null && deletedFields.contains(field));
+        }
+
+        int size() {
+            return (value == null ? 0 : 1) + (fields == null ? 0 : fields.size());
+        }
+    }
+
+    /**
+     * 待写入的值
+     */
+    private static class Write {
+        private final byte[] data;
+        private final int ttl;
+
+        Write(byte[] data, int ttl) {
+            this.data = data;
+            this.ttl = ttl;
+        }
+    }
+}
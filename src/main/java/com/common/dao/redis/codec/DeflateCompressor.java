@@ -0,0 +1,202 @@
+package com.common.dao.redis.codec;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * @Description: 大值压缩（Deflate）
+ * 				   压缩后格式：[MARKER][原始长度 4字节][deflate数据]，原始数据为带版本头的编码结果
+ * 				   MARKER 占用版本号 0x1F，不会与编解码器版本及json文本首字节冲突
+ * 				   压缩后不小于原数据时保持原样写入
+ */
+public class DeflateCompressor {
+
+    public static final byte MARKER = 0x1F;
+
+    private static final int HEADER = 5;
+
+    /**
+     * redis字符串值的长度上限 512MB
+     */
+    private static final int MAX_LENGTH = 512 * 1024 * 1024;
+
+    /**
+     * deflate 的理论最大压缩比
+     */
+    private static final int MAX_RATIO = 1032;
+
+    /**
+     * 超过该字节数才压缩
+     */
+    private final int threshold;
+
+    private final int level;
+
+    private final AtomicLong compressed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong compressNanos = new AtomicLong();
+    private final AtomicLong decompressed = new AtomicLong();
+    private final AtomicLong decompressNanos = new AtomicLong();
+
+    /**
+     * @param threshold 超过该字节数才压缩，小于等于0时不压缩（仍可解压）
+     * @param level 压缩级别 1~9
+     */
+    public DeflateCompressor(int threshold, int level) {
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    /**
+     * 按阈值压缩
+     *
+     * @param data
+     * @return
+     */
+    public byte[] compress(byte[] data) {
+        if (threshold <= 0 || data.length <= threshold) {
+            return data;
+        }
+        long start = System.nanoTime();
+        Deflater deflater = new Deflater(level, true);
+        byte[] out;
+        int length;
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            out = new byte[data.length];
+            length = HEADER;
+            while (!deflater.finished() && length < out.length) {
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            if (!deflater.finished()) {
+                // 压缩后不小于原数据
+                skipped.incrementAndGet();
+                compressNanos.addAndGet(System.nanoTime() - start);
+                return data;
+            }
+        } finally {
+            deflater.end();
+        }
+        out[0] = MARKER;
+        out[1] = (byte) (data.length >>> 24);
+        out[2] = (byte) (data.length >>> 16);
+        out[3] = (byte) (data.length >>> 8);
+        out[4] = (byte) data.length;
+        byte[] result = new byte[length];
+        System.arraycopy(out, 0, result, 0, length);
+
+        compressed.incrementAndGet();
+        rawBytes.addAndGet(data.length);
+        compressedBytes.addAndGet(length);
+        compressNanos.addAndGet(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * 是否为压缩数据
+     *
+     * @param data
+     * @return
+     */
+    public static boolean isCompressed(byte[] data) {
+        return data != null && data.length >= HEADER && data[0] == MARKER;
+    }
+
+    /**
+     * 解压，非压缩数据原样返回
+     * 首字节为 MARKER 但头部长度不合理（负数、超过512MB或超过deflate最大压缩比）或解压失败时视为非压缩数据，
+     * 如 setB 直接写入的以 0x1F 开头的原始字节
+     *
+     * @param data
+     * @return
+     */
+    public byte[] decompress(byte[] data) {
+        if (!isCompressed(data)) {
+            return data;
+        }
+        long start = System.nanoTime();
+        int length = ((data[1] & 0xFF) << 24) | ((data[2] & 0xFF) << 16) | ((data[3] & 0xFF) << 8) | (data[4] & 0xFF);
+        if (length < 0 || length > MAX_LENGTH || length > (long) (data.length - HEADER) * MAX_RATIO) {
+            return data;
+        }
+        byte[] out = new byte[length];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data, HEADER, data.length - HEADER);
+            int read = 0;
+            while (read < length) {
+                int n = inflater.inflate(out, read, length - read);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                read += n;
+            }
+            if (read != length) {
+                return data;
+            }
+        } catch (DataFormatException e) {
+            return data;
+        } finally {
+            inflater.end();
+        }
+        decompressed.incrementAndGet();
+        decompressNanos.addAndGet(System.nanoTime() - start);
+        return out;
+    }
+
+    /**
+     * 压缩比（压缩后/压缩前），未压缩过时为1
+     *
+     * @return
+     */
+    public double getRatio() {
+        long raw = rawBytes.get();
+        return raw == 0 ? 1D : (double) compressedBytes.get() / raw;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public long getCompressedCount() {
+        return compressed.get();
+    }
+
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    public long getRawBytes() {
+        return rawBytes.get();
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    public long getCompressNanos() {
+        return compressNanos.get();
+    }
+
+    public long getDecompressedCount() {
+        return decompressed.get();
+    }
+
+    public long getDecompressNanos() {
+        return decompressNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return "compressed=" + compressed.get() + ", skipped=" + skipped.get()
+                + ", ratio=" + String.format("%.3f", getRatio())
+                + ", compressMs=" + compressNanos.get() / 1000000
+                + ", decompressed=" + decompressed.get()
+                + ", decompressMs=" + decompressNanos.get() / 1000000;
+    }
+}
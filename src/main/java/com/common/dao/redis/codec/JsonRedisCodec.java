@@ -0,0 +1,31 @@
+package com.common.dao.redis.codec;
+
+import com.alibaba.fastjson.JSON;
+
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+
+/**
+ * @Description: fastjson 文本编解码，与原 RedisHelper 写入的格式一致，无版本头
+ */
+public class JsonRedisCodec implements RedisCodec {
+
+    public static final byte VERSION = 0;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Override
+    public byte version() {
+        return VERSION;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSON.toJSONBytes(value);
+    }
+
+    @Override
+    public <T> T decode(byte[] data, int offset, Type type) {
+        return JSON.parseObject(new String(data, offset, data.length - offset, UTF8), type);
+    }
+}
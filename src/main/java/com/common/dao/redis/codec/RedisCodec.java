@@ -0,0 +1,39 @@
+package com.common.dao.redis.codec;
+
+import java.lang.reflect.Type;
+
+/**
+ * @Description: redis值编解码
+ * 				   写入时值的首字节为 version()，读取时按首字节选择对应的编解码器
+ * 				   version() 为 0 表示不写版本头（原json文本格式）
+ * 				   自定义编解码器的版本号应在 0x01 ~ 0x1E 之间，0x09、0x0A、0x0D 可能是json文本开头的空白字符，0x1F 为压缩标记，均不可使用
+ * 				   setB(String, String) 写入的原始字符串首字节不受限制，首字节恰好是已注册版本号时，
+ * 				   解码失败后按json重试，未注册的版本号直接按json读取
+ */
+public interface RedisCodec {
+
+    /**
+     * 格式版本号
+     *
+     * @return
+     */
+    byte version();
+
+    /**
+     * 对象编码，不含版本头
+     *
+     * @param value
+     * @return
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 解码，不含版本头
+     *
+     * @param data
+     * @param offset 数据起始位置
+     * @param type
+     * @return
+     */
+    <T> T decode(byte[] data, int offset, Type type);
+}
@@ -0,0 +1,107 @@
+package com.common.dao.redis.codec;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * @Description: redis值序列化
+ * 				   写入使用配置的编解码器并加版本头，读取按首字节识别编解码器，
+ * 				   无版本头或版本号未注册的值按原json格式读取，因此切换编解码器期间新旧数据都能读
+ * 				   超过阈值的值压缩后写入，读取时按压缩标记自动解压
+ */
+public class RedisValueSerializer {
+
+    private final RedisCodec[] codecs = new RedisCodec[0x20];
+
+    private final RedisCodec writer;
+
+    private final DeflateCompressor compressor;
+
+    public RedisValueSerializer(RedisCodec writer, List<RedisCodec> readers) {
+        this(writer, readers, new DeflateCompressor(0, 1));
+    }
+
+    public RedisValueSerializer(RedisCodec writer, List<RedisCodec> readers, DeflateCompressor compressor) {
+        this.writer = writer;
+        this.compressor = compressor;
+        register(new JsonRedisCodec());
+        register(new SmileRedisCodec());
+        if (readers != null) {
+            for (RedisCodec codec : readers) {
+                register(codec);
+            }
+        }
+        register(writer);
+    }
+
+    private void register(RedisCodec codec) {
+        byte version = codec.version();
+        if (version < 0 || version >= codecs.length || reserved(version)) {
+            throw new IllegalArgumentException("redis codec version out of range: " + version);
+        }
+        codecs[version] = codec;
+    }
+
+    /**
+     * json文本开头可能出现的空白字符及压缩标记不能作为版本号
+     */
+    private static boolean reserved(byte version) {
+        return version == '\t' || version == '\n' || version == '\r' || version == DeflateCompressor.MARKER;
+    }
+
+    /**
+     * 对象转存储字节
+     *
+     * @param value
+     * @return
+     */
+    public byte[] serialize(Object value) {
+        byte[] body = writer.encode(value);
+        if (writer.version() == JsonRedisCodec.VERSION) {
+            return compressor.compress(body);
+        }
+        byte[] data = new byte[body.length + 1];
+        data[0] = writer.version();
+        System.arraycopy(body, 0, data, 1, body.length);
+        return compressor.compress(data);
+    }
+
+    /**
+     * 存储字节转对象
+     *
+     * @param data 为null时返回null
+     * @param type
+     * @return
+     */
+    public <T> T deserialize(byte[] data, Type type) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        data = compressor.decompress(data);
+        byte version = data[0];
+        RedisCodec json = codecs[JsonRedisCodec.VERSION];
+        RedisCodec codec = version > 0 && version < codecs.length ? codecs[version] : null;
+        if (codec == null) {
+            // 无版本头或版本号未注册，按json读取
+            return json.decode(data, 0, type);
+        }
+        try {
+            return codec.decode(data, 1, type);
+        } catch (RuntimeException e) {
+            // 首字节恰好与版本号相同的原始字符串
+            try {
+                return json.decode(data, 0, type);
+            } catch (RuntimeException ignore) {
+                throw e;
+            }
+        }
+    }
+
+    public RedisCodec getWriter() {
+        return writer;
+    }
+
+    public DeflateCompressor getCompressor() {
+        return compressor;
+    }
+}
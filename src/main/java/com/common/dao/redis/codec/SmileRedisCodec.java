@@ -0,0 +1,47 @@
+package com.common.dao.redis.codec;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * @Description: 二进制编解码（jackson smile）
+ * 				   字段名/短字符串共享引用、数字变长编码，体积和编解码耗时都小于json文本
+ */
+public class SmileRedisCodec implements RedisCodec {
+
+    public static final byte VERSION = 0x01;
+
+    private final ObjectMapper mapper;
+
+    public SmileRedisCodec() {
+        mapper = new ObjectMapper(new SmileFactory());
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    @Override
+    public byte version() {
+        return VERSION;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        try {
+            return mapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("redis smile encode error", e);
+        }
+    }
+
+    @Override
+    public <T> T decode(byte[] data, int offset, Type type) {
+        try {
+            return mapper.readValue(data, offset, data.length - offset, mapper.getTypeFactory().constructType(type));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("redis smile decode error", e);
+        }
+    }
+}
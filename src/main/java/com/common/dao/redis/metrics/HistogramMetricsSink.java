@@ -0,0 +1,125 @@
+package com.common.dao.redis.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Description: 进程内直方图汇总
+ * 				   每个操作分别记录网络耗时、序列化耗时（微秒）与值大小（字节）
+ * 				   每次收到连接池状态（即每个上报周期）时输出日志，resetOnReport 时随后清零
+ */
+public class HistogramMetricsSink implements MetricsSink {
+    protected transient final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * 单个操作的指标
+     */
+    public static class CommandStats {
+        private final LatencyHistogram network = new LatencyHistogram();
+        private final LatencyHistogram codec = new LatencyHistogram();
+        private final LatencyHistogram bytes = new LatencyHistogram();
+
+        /**
+         * 网络耗时（微秒）
+         */
+        public LatencyHistogram getNetwork() {
+            return network;
+        }
+
+        /**
+         * 序列化耗时（微秒）
+         */
+        public LatencyHistogram getCodec() {
+            return codec;
+        }
+
+        /**
+         * 值大小（字节）
+         */
+        public LatencyHistogram getBytes() {
+            return bytes;
+        }
+
+        void reset() {
+            network.reset();
+            codec.reset();
+            bytes.reset();
+        }
+
+        @Override
+        public String toString() {
+            return "networkUs[" + network + "], codecUs[" + codec + "], bytes[" + bytes + "]";
+        }
+    }
+
+    private final ConcurrentHashMap<String, CommandStats> commands = new ConcurrentHashMap<String, CommandStats>();
+
+    private volatile List<PoolStats> pools = Collections.emptyList();
+
+    private boolean resetOnReport = true;
+
+    @Override
+    public void recordCommand(String command, long networkNanos, long codecNanos, int bytes) {
+        CommandStats stats = commands.get(command);
+        if (stats == null) {
+            CommandStats created = new CommandStats();
+            stats = commands.putIfAbsent(command, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        stats.network.record(networkNanos / 1000);
+        stats.codec.record(codecNanos / 1000);
+        stats.bytes.record(bytes);
+    }
+
+    @Override
+    public void recordPools(List<PoolStats> pools) {
+        this.pools = pools;
+        if (logger.isInfoEnabled()) {
+            for (Map.Entry<String, CommandStats> entry : getCommands().entrySet()) {
+                if (entry.getValue().network.getCount() > 0) {
+                    logger.info("redis command " + entry.getKey() + ": " + entry.getValue());
+                }
+            }
+            logger.info("redis pools: " + pools);
+        }
+        if (resetOnReport) {
+            for (CommandStats stats : commands.values()) {
+                stats.reset();
+            }
+        }
+    }
+
+    /**
+     * 各操作指标，按操作名排序
+     *
+     * @return
+     */
+    public Map<String, CommandStats> getCommands() {
+        return new TreeMap<String, CommandStats>(commands);
+    }
+
+    /**
+     * 最近一次上报的连接池状态
+     *
+     * @return
+     */
+    public List<PoolStats> getPools() {
+        return pools;
+    }
+
+    public boolean isResetOnReport() {
+        return resetOnReport;
+    }
+
+    public void setResetOnReport(boolean resetOnReport) {
+        this.resetOnReport = resetOnReport;
+    }
+}
@@ -0,0 +1,128 @@
+package com.common.dao.redis.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @Description: 无锁对数-线性直方图（HdrHistogram 思路）
+ * 				   按2的幂分段，每段再等分为 SUB_BUCKETS 个桶，相对误差不超过 1/SUB_BUCKETS（约3%）
+ * 				   记录只有一次数组下标计算和一次原子加，适合在每个命令上调用
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * 可记录的最大值为 2^MAX_BITS - 1，超出的计入最后一个桶
+     */
+    private static final int MAX_BITS = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_BITS - SUB_BITS + 1) * SUB_BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一个值，小于0按0记录
+     *
+     * @param value
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0D : (double) sum.get() / n;
+    }
+
+    /**
+     * 百分位值（桶上界）
+     *
+     * @param percentile 0 - 100
+     * @return
+     */
+    public long getPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100D));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * 清零，与并发记录之间不保证原子
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + ", mean=" + String.format("%.1f", getMean())
+                + ", p50=" + getPercentile(50) + ", p99=" + getPercentile(99)
+                + ", p999=" + getPercentile(99.9) + ", max=" + getMax();
+    }
+
+    /**
+     * 第0行为 0 - 31 的精确值，第 r 行为 [32 << (r-1), 64 << (r-1)) 均分的32个桶
+     */
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int bits = 64 - Long.numberOfLeadingZeros(value);
+        if (bits > MAX_BITS) {
+            return (MAX_BITS - SUB_BITS + 1) * SUB_BUCKETS - 1;
+        }
+        int shift = bits - SUB_BITS - 1;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int index) {
+        int row = index / SUB_BUCKETS;
+        int sub = index % SUB_BUCKETS;
+        if (row == 0) {
+            return sub;
+        }
+        return ((long) (SUB_BUCKETS + sub + 1) << (row - 1)) - 1;
+    }
+}
@@ -0,0 +1,29 @@
+package com.common.dao.redis.metrics;
+
+import java.util.List;
+
+/**
+ * @Description: redis操作指标输出
+ * 				   默认实现 HistogramMetricsSink 在进程内汇总并定期写日志，
+ * 				   需要接入其他监控系统时实现本接口并配置到 RedisHelper.metricsSink
+ * 				   recordCommand 在业务线程中调用，实现必须足够轻量且线程安全
+ */
+public interface MetricsSink {
+
+    /**
+     * 记录一次操作
+     *
+     * @param command 操作名，如 get、hget、set、mget
+     * @param networkNanos 网络（含连接池等待与redis执行）耗时纳秒数
+     * @param codecNanos 序列化/反序列化耗时纳秒数
+     * @param bytes 值的字节数，未知时为0
+     */
+    void recordCommand(String command, long networkNanos, long codecNanos, int bytes);
+
+    /**
+     * 定期上报各节点连接池状态
+     *
+     * @param pools
+     */
+    void recordPools(List<PoolStats> pools);
+}
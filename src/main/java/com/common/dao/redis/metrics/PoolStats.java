@@ -0,0 +1,76 @@
+package com.common.dao.redis.metrics;
+
+import redis.clients.jedis.JedisPool;
+
+/**
+ * @Description: 节点连接池状态快照
+ */
+public class PoolStats {
+
+    private final String node;
+    private final int active;
+    private final int idle;
+    private final int waiters;
+    private final long meanBorrowWaitMillis;
+    private final long maxBorrowWaitMillis;
+
+    public PoolStats(String node, int active, int idle, int waiters, long meanBorrowWaitMillis, long maxBorrowWaitMillis) {
+        this.node = node;
+        this.active = active;
+        this.idle = idle;
+        this.waiters = waiters;
+        this.meanBorrowWaitMillis = meanBorrowWaitMillis;
+        this.maxBorrowWaitMillis = maxBorrowWaitMillis;
+    }
+
+    /**
+     * 读取连接池当前状态
+     *
+     * @param node
+     * @param pool
+     * @return
+     */
+    public static PoolStats of(String node, JedisPool pool) {
+        return new PoolStats(node, pool.getNumActive(), pool.getNumIdle(), pool.getNumWaiters(),
+                pool.getMeanBorrowWaitTimeMillis(), pool.getMaxBorrowWaitTimeMillis());
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    /**
+     * 借出中的连接数
+     */
+    public int getActive() {
+        return active;
+    }
+
+    /**
+     * 空闲连接数
+     */
+    public int getIdle() {
+        return idle;
+    }
+
+    /**
+     * 等待借连接的线程数
+     */
+    public int getWaiters() {
+        return waiters;
+    }
+
+    public long getMeanBorrowWaitMillis() {
+        return meanBorrowWaitMillis;
+    }
+
+    public long getMaxBorrowWaitMillis() {
+        return maxBorrowWaitMillis;
+    }
+
+    @Override
+    public String toString() {
+        return node + "{active=" + active + ", idle=" + idle + ", waiters=" + waiters
+                + ", meanWaitMs=" + meanBorrowWaitMillis + ", maxWaitMs=" + maxBorrowWaitMillis + "}";
+    }
+}
@@ -0,0 +1,10 @@
+-- 在布隆过滤器位图 KEYS[1] 中置位 ARGV，正在重建（KEYS[2] 存在）时同时写入重建中的位图
+for i = 1, #ARGV do
+    redis.call('SETBIT', KEYS[1], ARGV[i], 1)
+end
+if redis.call('EXISTS', KEYS[2]) == 1 then
+    for i = 1, #ARGV do
+        redis.call('SETBIT', KEYS[2], ARGV[i], 1)
+    end
+end
+return 1
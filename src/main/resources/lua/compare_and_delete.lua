@@ -0,0 +1,5 @@
+-- 值等于 ARGV[1] 时删除 KEYS[1]，返回删除个数
+if redis.call('get', KEYS[1]) == ARGV[1] then
+    return redis.call('del', KEYS[1])
+end
+return 0
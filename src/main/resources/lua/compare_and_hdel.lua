@@ -0,0 +1,5 @@
+-- KEYS[1] 中 field ARGV[1] 的值等于 ARGV[2] 时删除该 field，返回删除个数
+if redis.call('hget', KEYS[1], ARGV[1]) == ARGV[2] then
+    return redis.call('hdel', KEYS[1], ARGV[1])
+end
+return 0
@@ -0,0 +1,10 @@
+-- 值等于 ARGV[1] 时写入 ARGV[2]，ARGV[3] 大于0时同时设置过期秒数，返回是否写入
+if redis.call('get', KEYS[1]) == ARGV[1] then
+    if tonumber(ARGV[3]) > 0 then
+        redis.call('setex', KEYS[1], ARGV[3], ARGV[2])
+    else
+        redis.call('set', KEYS[1], ARGV[2])
+    end
+    return 1
+end
+return 0
@@ -0,0 +1,7 @@
+-- KEYS[1] 锁，KEYS[2] 栅栏计数器（同一槽位）
+-- ARGV[1] 持有者标识，ARGV[2] 租期毫秒
+-- 加锁成功返回递增的栅栏令牌，失败返回0
+if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then
+    return redis.call('incr', KEYS[2])
+end
+return 0
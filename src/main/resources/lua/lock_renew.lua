@@ -0,0 +1,5 @@
+-- 仍由 ARGV[1] 持有时把 KEYS[1] 的租期延长为 ARGV[2] 毫秒，返回是否续期
+if redis.call('get', KEYS[1]) == ARGV[1] then
+    return redis.call('pexpire', KEYS[1], ARGV[2])
+end
+return 0
@@ -0,0 +1,30 @@
+-- 滑动窗口计数，KEYS[1] 为 hash {窗口序号 -> 计数}
+-- 当前用量 = 上一窗口计数 * 上一窗口在滑动窗口内的占比 + 当前窗口计数
+-- ARGV[1] 窗口毫秒数，ARGV[2] 窗口内上限，ARGV[3] 申请数
+-- 返回实际发放数（可能少于申请数）
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+local window = tonumber(ARGV[1])
+local limit = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local current = math.floor(now / window)
+local elapsed = (now % window) / window
+local curr = tonumber(redis.call('HGET', KEYS[1], tostring(current))) or 0
+local prev = tonumber(redis.call('HGET', KEYS[1], tostring(current - 1))) or 0
+local used = prev * (1 - elapsed) + curr
+
+local granted = math.max(0, math.min(requested, math.floor(limit - used)))
+if granted > 0 then
+    redis.call('HINCRBY', KEYS[1], tostring(current), granted)
+end
+for _, field in ipairs(redis.call('HKEYS', KEYS[1])) do
+    if tonumber(field) < current - 1 then
+        redis.call('HDEL', KEYS[1], field)
+    end
+end
+redis.call('PEXPIRE', KEYS[1], window * 2)
+return granted
@@ -0,0 +1,542 @@
+package com.common.dao;
+
+import com.common.dao.redis.CircuitBreaker;
+import com.common.dao.redis.CircuitBreakers;
+import com.common.dao.redis.CircuitOpenException;
+import com.common.dao.redis.ClusterScanner;
+import com.common.dao.redis.RedisLock;
+import com.common.dao.redis.metrics.MetricsSink;
+import com.common.dao.redis.metrics.PoolStats;
+import com.common.dao.redis.server.BuiltinScripts;
+import com.common.dao.redis.server.EmbeddedRedisCluster;
+import com.common.dao.redis.server.EmbeddedRedisNode;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RedisHelper 在进程内集群上的端到端测试，不依赖外部redis
+ * lua脚本由 BuiltinScripts 中的Java实现代替执行，这里不验证 .lua 文件本身的语义
+ */
+public class RedisHelperEmbeddedTest {
+
+    private EmbeddedRedisCluster cluster;
+
+    private JedisCluster jedisCluster;
+
+    private RedisHelper redisHelper;
+
+    @Before
+    public void setup() throws Exception {
+        cluster = new EmbeddedRedisCluster(3).start();
+        BuiltinScripts.registerAll(cluster);
+        jedisCluster = cluster.newJedisCluster(new GenericObjectPoolConfig());
+        redisHelper = new RedisHelper();
+        redisHelper.setDomain("test");
+        redisHelper.setJedisCluster(jedisCluster);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        redisHelper.destroy();
+        jedisCluster.close();
+        cluster.close();
+    }
+
+    @Test
+    public void stringsAndHashes() {
+        redisHelper.set("user:1", "tom");
+        Assert.assertEquals("tom", redisHelper.get("user:1", String.class));
+        redisHelper.set("user:2", 42, 100);
+        Assert.assertEquals(Integer.valueOf(42), redisHelper.get("user:2", Integer.class));
+        Assert.assertTrue(jedisCluster.ttl("test:user:2") > 90);
+
+        Map<String, Object> fields = new HashMap<String, Object>();
+        fields.put("a", 1);
+        fields.put("b", 2);
+        redisHelper.hmset("h", fields);
+        Assert.assertEquals(Arrays.asList(1, null, 2), redisHelper.hmget("h", Arrays.asList("a", "x", "b"), Integer.class));
+
+        Map<String, Object> values = new HashMap<String, Object>();
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < 100; i++) {
+            values.put("m" + i, i);
+            keys.add("m" + i);
+        }
+        redisHelper.mset(values);
+        List<Integer> loaded = redisHelper.mget(keys, Integer.class);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(Integer.valueOf(i), loaded.get(i));
+        }
+        int scanned = 0;
+        for (Iterator<String> it = redisHelper.scan("m*", 10); it.hasNext(); it.next()) {
+            scanned++;
+        }
+        Assert.assertEquals(100, scanned);
+    }
+
+    @Test
+    public void hdelRemovesOnlyThatField() {
+        redisHelper.hset("hd", "a", 1);
+        redisHelper.hset("hd", "b", 2);
+        redisHelper.hset("hd", "c", 3);
+        Assert.assertEquals(Long.valueOf(1), redisHelper.hdel("hd", "b"));
+        Assert.assertNull(redisHelper.hget("hd", "b", Integer.class));
+        Assert.assertEquals(Integer.valueOf(1), redisHelper.hget("hd", "a", Integer.class));
+        Assert.assertEquals(Integer.valueOf(3), redisHelper.hget("hd", "c", Integer.class));
+        Assert.assertEquals(Long.valueOf(2), jedisCluster.hlen("test:hd"));
+        // 已删除的field再删除返回0
+        Assert.assertEquals(Long.valueOf(0), redisHelper.hdel("hd", "b"));
+    }
+
+    @Test
+    public void hscanPagesAndFiltersFields() {
+        Map<String, Object> fields = new HashMap<String, Object>();
+        for (int i = 0; i < 100; i++) {
+            fields.put("f" + i, i);
+        }
+        for (int i = 0; i < 20; i++) {
+            fields.put("g" + i, -i);
+        }
+        redisHelper.hmset("hs", fields);
+
+        EmbeddedRedisNode master = cluster.masterOf("test:hs");
+        long before = master.getCommandCount();
+        Map<String, Integer> all = new HashMap<String, Integer>();
+        Iterator<Map.Entry<String, Integer>> pages = redisHelper.hscan("hs", null, 10, Integer.class);
+        while (pages.hasNext()) {
+            Map.Entry<String, Integer> entry = pages.next();
+            all.put(entry.getKey(), entry.getValue());
+        }
+        Assert.assertEquals(fields, new HashMap<String, Object>(all));
+        // 每页最多10个field，120个field至少12页
+        Assert.assertTrue(master.getCommandCount() - before >= 12);
+
+        // 只返回匹配的field，不匹配的页为空时继续翻页
+        Map<String, Integer> matched = new HashMap<String, Integer>();
+        Iterator<Map.Entry<String, Integer>> filtered = redisHelper.hscan("hs", "f1*", 10, Integer.class);
+        while (filtered.hasNext()) {
+            Map.Entry<String, Integer> entry = filtered.next();
+            matched.put(entry.getKey(), entry.getValue());
+        }
+        Assert.assertEquals(11, matched.size());
+        Assert.assertEquals(Integer.valueOf(1), matched.get("f1"));
+        for (int i = 10; i < 20; i++) {
+            Assert.assertEquals(Integer.valueOf(i), matched.get("f" + i));
+        }
+        Assert.assertFalse(redisHelper.hscan("missing", null, 10, Integer.class).hasNext());
+    }
+
+    @Test
+    public void savedRoundTripsCountOnlyHits() {
+        redisHelper.set("rt", "v");
+        redisHelper.hset("rth", "f", 1);
+        Assert.assertEquals(0, redisHelper.getSavedRoundTrips());
+
+        // 命中时原实现为 EXISTS + GET，节省一次；未命中时原实现也只有一次 EXISTS
+        Assert.assertEquals("v", redisHelper.get("rt", String.class));
+        Assert.assertEquals(1, redisHelper.getSavedRoundTrips());
+        Assert.assertNull(redisHelper.get("rt:missing", String.class));
+        Assert.assertEquals(1, redisHelper.getSavedRoundTrips());
+        Assert.assertEquals(Integer.valueOf(1), redisHelper.hget("rth", "f", Integer.class));
+        Assert.assertEquals(2, redisHelper.getSavedRoundTrips());
+        Assert.assertNull(redisHelper.hget("rth", "missing", Integer.class));
+        Assert.assertNull(redisHelper.hget("rth:missing", "f", Integer.class));
+        Assert.assertEquals(2, redisHelper.getSavedRoundTrips());
+
+        // 本地缓存命中时不访问redis，不计入
+        RedisHelper near = new RedisHelper();
+        near.setDomain("test");
+        near.setJedisCluster(jedisCluster);
+        near.setNearCacheEnabled(true);
+        near.setNearCacheBroadcast(false);
+        try {
+            Assert.assertEquals("v", near.get("rt", String.class));
+            Assert.assertEquals(1, near.getSavedRoundTrips());
+            Assert.assertEquals("v", near.get("rt", String.class));
+            Assert.assertEquals("v", near.get("rt", String.class));
+            Assert.assertEquals(1, near.getSavedRoundTrips());
+        } finally {
+            near.destroy();
+        }
+    }
+
+    @Test
+    public void nearCacheInvalidatedByOtherHelper() throws Exception {
+        RedisHelper reader = new RedisHelper();
+        reader.setDomain("test");
+        reader.setJedisCluster(jedisCluster);
+        reader.setNearCacheEnabled(true);
+        // 写入方只写不读，也要广播失效
+        RedisHelper writer = new RedisHelper();
+        writer.setDomain("test");
+        writer.setJedisCluster(jedisCluster);
+        writer.setNearCacheEnabled(true);
+        try {
+            awaitSubscribed(reader, writer);
+            // 初始值不经过 RedisHelper 写入，避免其失效消息晚于读取到达
+            jedisCluster.set("test:nc", "\"v1\"");
+            Assert.assertEquals("v1", reader.get("nc", String.class));
+            // 本地缓存命中，不再访问redis
+            jedisCluster.set("test:nc", "\"direct\"");
+            Assert.assertEquals("v1", reader.get("nc", String.class));
+
+            writer.set("nc", "v2");
+            Assert.assertEquals("v2", awaitValue(reader, "nc", "v2"));
+            writer.del("nc");
+            Assert.assertNull(awaitValue(reader, "nc", null));
+        } finally {
+            writer.destroy();
+            reader.destroy();
+        }
+    }
+
+    /**
+     * 等待读取方订阅失效消息：订阅完成前本地缓存一直返回旧值
+     */
+    private void awaitSubscribed(RedisHelper reader, RedisHelper writer) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            writer.set("nc:probe", i);
+            reader.get("nc:probe", Integer.class);
+            writer.set("nc:probe", -1);
+            Thread.sleep(20);
+            if (Integer.valueOf(-1).equals(reader.get("nc:probe", Integer.class))) {
+                return;
+            }
+        }
+        Assert.fail("near cache invalidation not subscribed");
+    }
+
+    /**
+     * 等待本地缓存收到失效消息后读到新值
+     */
+    private String awaitValue(RedisHelper helper, String key, String expected) throws InterruptedException {
+        String value = helper.get(key, String.class);
+        for (int i = 0; i < 200 && !(expected == null ? value == null : expected.equals(value)); i++) {
+            Thread.sleep(10);
+            value = helper.get(key, String.class);
+        }
+        return value;
+    }
+
+    @Test
+    public void clearRemovesOnlyDomainKeys() {
+        for (int i = 0; i < 50; i++) {
+            redisHelper.set("c" + i, i);
+        }
+        jedisCluster.set("other:c0", "v");
+        Assert.assertEquals(Integer.valueOf(50), redisHelper.clear());
+        for (int i = 0; i < 50; i++) {
+            Assert.assertFalse(jedisCluster.exists("test:c" + i));
+        }
+        Assert.assertNull(redisHelper.get("c0", Integer.class));
+        Assert.assertTrue(jedisCluster.exists("other:c0"));
+
+        redisHelper.set("c0", 0);
+        Assert.assertEquals(1L, redisHelper.purge(null));
+    }
+
+    @Test
+    public void purgeAndBloomScanMastersOnly() throws Exception {
+        EmbeddedRedisCluster replicated = new EmbeddedRedisCluster(3, 1).start();
+        JedisCluster client = replicated.newJedisCluster(new GenericObjectPoolConfig());
+        RedisHelper helper = new RedisHelper();
+        helper.setDomain("rp");
+        helper.setJedisCluster(client);
+        helper.setReadFrom(RedisHelper.READ_REPLICA);
+        helper.setReplicaProbeMillis(60000);
+        try {
+            for (int i = 0; i < 50; i++) {
+                client.set("rp:k" + i, "v");
+            }
+            Assert.assertNotSame(helper.getClusterScanner(), helper.getMasterScanner());
+            // 等待首次探测结束后，只扫描主节点不访问从节点
+            Thread.sleep(300);
+            Map<EmbeddedRedisNode, Long> before = new HashMap<EmbeddedRedisNode, Long>();
+            for (EmbeddedRedisNode master : replicated.getMasters()) {
+                for (EmbeddedRedisNode replica : replicated.getReplicas(master)) {
+                    before.put(replica, replica.getCommandCount());
+                }
+            }
+            final AtomicInteger scanned = new AtomicInteger();
+            helper.getMasterScanner().scan("rp:*", 10, new ClusterScanner.KeyBatchCallback() {
+                @Override
+                public boolean onKeys(String node, List<String> keys) {
+                    scanned.addAndGet(keys.size());
+                    return true;
+                }
+            });
+            Assert.assertEquals(50, scanned.get());
+            for (Map.Entry<EmbeddedRedisNode, Long> entry : before.entrySet()) {
+                Assert.assertEquals(entry.getValue().longValue(), entry.getKey().getCommandCount());
+            }
+        } finally {
+            helper.destroy();
+            client.close();
+            replicated.close();
+        }
+    }
+
+    @Test
+    public void zeroTtlNeverExpires() {
+        Assert.assertEquals("OK", redisHelper.set("ttl:1", "v", 0));
+        Assert.assertEquals("OK", redisHelper.setB("test:ttl:2", "v", 0));
+        Assert.assertEquals(Long.valueOf(1), redisHelper.hset("ttl:3", "f", 1, 0));
+        Assert.assertEquals(Long.valueOf(-1), jedisCluster.ttl("test:ttl:1"));
+        Assert.assertEquals(Long.valueOf(-1), jedisCluster.ttl("test:ttl:2"));
+        Assert.assertEquals(Long.valueOf(-1), jedisCluster.ttl("test:ttl:3"));
+        Assert.assertEquals("v", redisHelper.get("ttl:1", String.class));
+    }
+
+    @Test
+    public void ttlJitterStaysWithinBounds() {
+        redisHelper.setTtlJitterPercent(20);
+        Map<String, Object> values = new HashMap<String, Object>();
+        for (int i = 0; i < 50; i++) {
+            redisHelper.set("jit:s" + i, "v", 100);
+            redisHelper.hset("jit:h" + i, "f", 1, 100);
+            values.put("jit:m" + i, i);
+        }
+        redisHelper.mset(values, 100);
+        Set<Long> seen = new HashSet<Long>();
+        for (int i = 0; i < 50; i++) {
+            for (String key : Arrays.asList("test:jit:s" + i, "test:jit:h" + i, "test:jit:m" + i)) {
+                long ttl = jedisCluster.ttl(key);
+                // 100 秒加最多 20% 偏移，读取时可能已过去1秒
+                Assert.assertTrue(key + " ttl:" + ttl, ttl >= 99 && ttl <= 120);
+                seen.add(ttl);
+            }
+        }
+        Assert.assertTrue(seen.size() > 1);
+
+        // 不过期的key不加偏移
+        Map<String, Object> forever = new HashMap<String, Object>();
+        forever.put("jit:m", 0);
+        redisHelper.mset(forever, 0);
+        redisHelper.set("jit:s", "v", 0);
+        redisHelper.hset("jit:h", "f", 1, 0);
+        Assert.assertEquals(Long.valueOf(-1), jedisCluster.ttl("test:jit:s"));
+        Assert.assertEquals(Long.valueOf(-1), jedisCluster.ttl("test:jit:h"));
+        Assert.assertEquals(Long.valueOf(-1), jedisCluster.ttl("test:jit:m"));
+    }
+
+    @Test
+    public void metricsIncludeScanAndIgnorePropertyOrder() throws Exception {
+        final Map<String, AtomicInteger> commands = new ConcurrentHashMap<String, AtomicInteger>();
+        final AtomicInteger reports = new AtomicInteger();
+        redisHelper.setMetricsSink(new MetricsSink() {
+            @Override
+            public void recordCommand(String command, long networkNanos, long codecNanos, int bytes) {
+                commands.putIfAbsent(command, new AtomicInteger());
+                commands.get(command).incrementAndGet();
+            }
+
+            @Override
+            public void recordPools(List<PoolStats> pools) {
+                reports.incrementAndGet();
+            }
+        });
+        // 上报间隔在 metricsSink 之后设置也生效
+        redisHelper.setMetricsReportMillis(20);
+
+        redisHelper.set("metric:1", "v");
+        Assert.assertEquals("v", redisHelper.get("metric:1", String.class));
+        int scanned = 0;
+        for (Iterator<String> it = redisHelper.scan("metric:*", 10); it.hasNext(); it.next()) {
+            scanned++;
+        }
+        Assert.assertEquals(1, scanned);
+        Assert.assertEquals(1, commands.get("set").get());
+        Assert.assertEquals(1, commands.get("get").get());
+        Assert.assertTrue(commands.get("scan").get() >= cluster.getMasters().size());
+        for (int i = 0; i < 100 && reports.get() == 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(reports.get() > 0);
+    }
+
+    @Test
+    public void localBloomDoesNotHideOtherWriters() throws Exception {
+        redisHelper.setBloomMode(RedisHelper.BLOOM_LOCAL);
+        redisHelper.getBloomGuard().setStagingGraceMillis(0);
+        for (int i = 0; i < 100 && !redisHelper.getBloomGuard().isReady(); i++) {
+            Thread.sleep(20);
+        }
+        Assert.assertTrue(redisHelper.getBloomGuard().isReady());
+        // 其他进程写入的key不在本进程的过滤器中
+        jedisCluster.set("test:bloom:other", "\"v\"");
+        Assert.assertEquals("v", redisHelper.get("bloom:other", String.class));
+    }
+
+    @Test
+    public void getOrLoadAndCompareAndDelete() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        Callable<String> loader = new Callable<String>() {
+            @Override
+            public String call() {
+                loads.incrementAndGet();
+                return "loaded";
+            }
+        };
+        Assert.assertEquals("loaded", redisHelper.getOrLoad("lazy", String.class, 60, loader));
+        Assert.assertEquals("loaded", redisHelper.getOrLoad("lazy", String.class, 60, loader));
+        Assert.assertEquals(1, loads.get());
+
+        Assert.assertFalse(redisHelper.compareAndDelete("lazy", "other"));
+        Assert.assertTrue(redisHelper.compareAndDelete("lazy", "loaded"));
+        Assert.assertNull(redisHelper.get("lazy", String.class));
+    }
+
+    @Test
+    public void lockTokensIncrease() {
+        RedisLock lock = redisHelper.getLock("job", 10000);
+        RedisLock.Lease first = lock.tryLock();
+        Assert.assertNotNull(first);
+        Assert.assertNull(lock.tryLock());
+        Assert.assertTrue(first.unlock());
+        RedisLock.Lease second = lock.tryLock();
+        Assert.assertNotNull(second);
+        Assert.assertTrue(second.getToken() > first.getToken());
+        second.close();
+    }
+
+    @Test
+    public void circuitOpensAndServesStale() {
+        CircuitBreakers breakers = new CircuitBreakers();
+        breakers.setMinimumCalls(2);
+        breakers.setOpenMillis(60000);
+        redisHelper.setCircuitBreakers(breakers);
+        redisHelper.setStaleMaxBytes(1024 * 1024);
+
+        redisHelper.set("cb:1", "old");
+        Assert.assertEquals("old", redisHelper.get("cb:1", String.class));
+        EmbeddedRedisNode master = cluster.masterOf("test:cb:1");
+        String node = master.getHost() + ":" + master.getPort();
+        master.stop();
+
+        // 连接失败时返回最后一次读到的值，并触发熔断
+        Assert.assertEquals("old", redisHelper.get("cb:1", String.class));
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breakers.get(node).getState());
+        Assert.assertEquals("old", redisHelper.get("cb:1", String.class));
+
+        // 没有降级数据的key直接失败，不再连接节点
+        String other = null;
+        for (int i = 0; other == null; i++) {
+            if (cluster.masterOf("test:cb:x" + i) == master) {
+                other = "cb:x" + i;
+            }
+        }
+        try {
+            redisHelper.get(other, String.class);
+            Assert.fail();
+        } catch (CircuitOpenException e) {
+            Assert.assertEquals(node, e.getNode());
+        } catch (JedisConnectionException e) {
+            Assert.fail("expected fail fast: " + e);
+        }
+    }
+
+    @Test
+    public void writeBehindVisibleToAllReads() throws Exception {
+        redisHelper.setWriteBehindFlushMillis(60000);
+        redisHelper.setWriteBehindFlushEntries(0);
+        redisHelper.set("wbr:1", "old");
+        redisHelper.setBehind("wbr:1", "new", 0);
+        redisHelper.hsetBehind("wbr:h", "f", "v", 0);
+
+        Assert.assertEquals(Arrays.asList("new", null), redisHelper.mget(Arrays.asList("wbr:1", "wbr:2"), String.class));
+        Assert.assertEquals("new", redisHelper.getAsync("wbr:1", String.class).get());
+        Assert.assertEquals(Arrays.asList("v", null), redisHelper.hmget("wbr:h", Arrays.asList("f", "g"), String.class));
+        Assert.assertEquals("new", redisHelper.getOrLoad("wbr:1", String.class, 60, new Callable<String>() {
+            @Override
+            public String call() {
+                return "loaded";
+            }
+        }));
+
+        redisHelper.mdel(Arrays.asList("wbr:1"));
+        Assert.assertNull(redisHelper.get("wbr:1", String.class));
+        redisHelper.flushWrites();
+        Assert.assertNull(jedisCluster.get("test:wbr:1"));
+    }
+
+    @Test
+    public void syncWriteReplacesWriteBehind() {
+        redisHelper.setWriteBehindFlushMillis(60000);
+        redisHelper.setWriteBehindFlushEntries(0);
+        redisHelper.setBehind("wbs:k", "a", 0);
+        redisHelper.set("wbs:k", "b");
+        Assert.assertEquals("b", redisHelper.get("wbs:k", String.class));
+
+        redisHelper.hsetBehind("wbs:h", "f", "a", 0);
+        redisHelper.hsetBehind("wbs:h", "g", "a", 0);
+        redisHelper.hset("wbs:h", "f", "b");
+        Assert.assertEquals("b", redisHelper.hget("wbs:h", "f", String.class));
+
+        redisHelper.flushWrites();
+        Assert.assertEquals("b", redisHelper.get("wbs:k", String.class));
+        Assert.assertEquals("\"b\"", jedisCluster.get("test:wbs:k"));
+        Assert.assertEquals("\"b\"", jedisCluster.hget("test:wbs:h", "f"));
+        Assert.assertEquals("\"a\"", jedisCluster.hget("test:wbs:h", "g"));
+    }
+
+    @Test
+    public void writeBehindCoalescesAndFlushesOnShutdown() {
+        redisHelper.setWriteBehindFlushMillis(60000);
+        redisHelper.setWriteBehindFlushEntries(0);
+        for (int i = 0; i < 100; i++) {
+            redisHelper.hsetBehind("wb", "f", i, 0);
+        }
+        // 写入前读取返回缓冲中的值
+        Assert.assertNull(jedisCluster.hget("test:wb", "f"));
+        Assert.assertEquals(Integer.valueOf(99), redisHelper.hget("wb", "f", Integer.class));
+
+        redisHelper.flushWrites();
+        Assert.assertEquals("99", jedisCluster.hget("test:wb", "f"));
+        Assert.assertEquals(99, redisHelper.getWriteBehindBuffer().getCoalescedCount());
+        Assert.assertEquals(1, redisHelper.getWriteBehindBuffer().getCommandCount());
+
+        redisHelper.setBehind("wb:last", "v", 100);
+        redisHelper.destroy();
+        Assert.assertEquals("\"v\"", jedisCluster.get("test:wb:last"));
+        Assert.assertTrue(jedisCluster.ttl("test:wb:last") > 90);
+    }
+
+    @Test
+    public void writeBehindRejectsWhenFull() {
+        redisHelper.setWriteBehindFlushMillis(60000);
+        redisHelper.setWriteBehindFlushEntries(0);
+        redisHelper.setWriteBehindMaxEntries(2);
+        redisHelper.setWriteBehindMaxBlockMillis(50);
+        redisHelper.hsetBehind("full", "a", 1, 0);
+        redisHelper.hsetBehind("full", "b", 2, 0);
+        // 已缓冲的field可以覆盖
+        redisHelper.hsetBehind("full", "a", 3, 0);
+        for (EmbeddedRedisNode master : cluster.getMasters()) {
+            master.stop();
+        }
+        try {
+            redisHelper.hsetBehind("full", "c", 4, 0);
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+            Assert.assertEquals(1, redisHelper.getWriteBehindBuffer().getRejectedCount());
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.common.dao.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 运行基准测试，由 benchmark profile 的 exec:exec 调用
+ * 				   每个线程数跑两轮：吞吐量(ops/s)附带gc分析(gc.alloc.rate.norm 即每次操作分配字节数)，
+ * 				   以及采样延迟(us，含p50/p90/p99/p99.9)；结果以json写入 benchmark.output 目录
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = System.getProperty("benchmark.include", ".*");
+        String output = System.getProperty("benchmark.output", "target/jmh");
+        new File(output).mkdirs();
+        for (String value : System.getProperty("benchmark.threads", "1,4,16").split(",")) {
+            int threads = Integer.parseInt(value.trim());
+            new Runner(new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .mode(Mode.Throughput)
+                    .timeUnit(TimeUnit.SECONDS)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(output + "/throughput-" + threads + "t.json")
+                    .build()).run();
+            new Runner(new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .mode(Mode.SampleTime)
+                    .timeUnit(TimeUnit.MICROSECONDS)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(output + "/latency-" + threads + "t.json")
+                    .build()).run();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.common.dao.benchmark;
+
+import com.common.dao.redis.codec.DeflateCompressor;
+import com.common.dao.redis.codec.JsonRedisCodec;
+import com.common.dao.redis.codec.RedisCodec;
+import com.common.dao.redis.codec.RedisValueSerializer;
+import com.common.dao.redis.codec.SmileRedisCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @Description: 不经过网络的本地开销：值编解码与key拼接
+ * 				   与 RedisHelperBenchmark 对比可区分编解码、拼key与集群命令分发各自的耗时
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CodecBenchmark {
+
+    private static final int KEYS = 1024;
+
+    @Param({"16", "256", "4096", "65536"})
+    public int payloadSize;
+
+    @Param({"json", "smile"})
+    public String codec;
+
+    private RedisValueSerializer serializer;
+
+    private Payload payload;
+
+    private byte[] encoded;
+
+    private final String domain = "bench";
+
+    private final String[] keys = new String[KEYS];
+
+    @Setup
+    public void setup() {
+        RedisCodec writer = "smile".equals(codec) ? new SmileRedisCodec() : new JsonRedisCodec();
+        serializer = new RedisValueSerializer(writer, Arrays.<RedisCodec>asList(new JsonRedisCodec(), new SmileRedisCodec()),
+                new DeflateCompressor(0, 1));
+        payload = Payload.ofSize(payloadSize);
+        encoded = serializer.serialize(payload);
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "user:" + i;
+        }
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return serializer.serialize(payload);
+    }
+
+    @Benchmark
+    public Payload decode() {
+        return serializer.deserialize(encoded, Payload.class);
+    }
+
+    @Benchmark
+    public String fullKey() {
+        return domain + ":" + keys[ThreadLocalRandom.current().nextInt(KEYS)];
+    }
+}
@@ -0,0 +1,81 @@
+package com.common.dao.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @Description: 基准测试用的缓存对象，body 长度决定编码后的大致字节数
+ */
+public class Payload {
+
+    private long id;
+
+    private String name;
+
+    private double score;
+
+    private List<String> tags;
+
+    private String body;
+
+    /**
+     * 构造编码后约 size 字节的对象
+     *
+     * @param size
+     * @return
+     */
+    public static Payload ofSize(int size) {
+        Payload payload = new Payload();
+        payload.setId(1234567L);
+        payload.setName("benchmark");
+        payload.setScore(98.5);
+        payload.setTags(new ArrayList<String>(Arrays.asList("a", "b", "c")));
+        char[] body = new char[Math.max(0, size - 80)];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (char) ('a' + i % 26);
+        }
+        payload.setBody(new String(body));
+        return payload;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public void setScore(double score) {
+        this.score = score;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<String> tags) {
+        this.tags = tags;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+}
@@ -0,0 +1,127 @@
+package com.common.dao.benchmark;
+
+import com.common.dao.RedisHelper;
+import com.common.dao.redis.codec.JsonRedisCodec;
+import com.common.dao.redis.codec.SmileRedisCodec;
+import com.common.dao.redis.server.EmbeddedRedisCluster;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import redis.clients.jedis.JedisCluster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @Description: RedisHelper 读写路径，每次调用一个完整的 get/set/hget/hset/mget
+ * 				   连接进程内集群（3个主节点），测得的是客户端侧开销加本机回环往返，
+ * 				   rawGet 为不经过 RedisHelper 的 JedisCluster.get，作为命令分发的基线
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RedisHelperBenchmark {
+
+    private static final int KEYS = 256;
+
+    private static final int BATCH = 16;
+
+    @Param({"16", "256", "4096", "65536"})
+    public int payloadSize;
+
+    @Param({"json", "smile"})
+    public String codec;
+
+    private EmbeddedRedisCluster cluster;
+
+    private JedisCluster jedisCluster;
+
+    private RedisHelper redisHelper;
+
+    private Payload payload;
+
+    private final String[] keys = new String[KEYS];
+
+    private final String[] fields = new String[KEYS];
+
+    private final List<List<String>> batches = new ArrayList<List<String>>();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        cluster = new EmbeddedRedisCluster(3).start();
+        GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
+        poolConfig.setMaxTotal(128);
+        poolConfig.setMaxIdle(128);
+        jedisCluster = cluster.newJedisCluster(poolConfig);
+        redisHelper = new RedisHelper();
+        redisHelper.setDomain("bench");
+        redisHelper.setJedisCluster(jedisCluster);
+        redisHelper.setCodec("smile".equals(codec) ? new SmileRedisCodec() : new JsonRedisCodec());
+
+        payload = Payload.ofSize(payloadSize);
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "k" + i;
+            fields[i] = "f" + i;
+            redisHelper.set(keys[i], payload);
+            redisHelper.hset("h", fields[i], payload);
+        }
+        for (int i = 0; i + BATCH <= KEYS; i += BATCH) {
+            List<String> batch = new ArrayList<String>(BATCH);
+            for (int j = i; j < i + BATCH; j++) {
+                batch.add(keys[j]);
+            }
+            batches.add(batch);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        redisHelper.destroy();
+        jedisCluster.close();
+        cluster.close();
+    }
+
+    @Benchmark
+    public Payload get() {
+        return redisHelper.get(key(), Payload.class);
+    }
+
+    @Benchmark
+    public String set() {
+        return redisHelper.set(key(), payload);
+    }
+
+    @Benchmark
+    public Payload hget() {
+        return redisHelper.hget("h", fields[ThreadLocalRandom.current().nextInt(KEYS)], Payload.class);
+    }
+
+    @Benchmark
+    public Long hset() {
+        return redisHelper.hset("h", fields[ThreadLocalRandom.current().nextInt(KEYS)], payload);
+    }
+
+    @Benchmark
+    public List<Payload> mget() {
+        return redisHelper.mget(batches.get(ThreadLocalRandom.current().nextInt(batches.size())), Payload.class);
+    }
+
+    @Benchmark
+    public String rawGet() {
+        return jedisCluster.get("bench:" + key());
+    }
+
+    private String key() {
+        return keys[ThreadLocalRandom.current().nextInt(KEYS)];
+    }
+}
@@ -0,0 +1,166 @@
+package com.common.dao.redis;
+
+import com.common.dao.redis.server.EmbeddedRedisCluster;
+import com.common.dao.redis.server.EmbeddedRedisNode;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步命令：同一节点按提交顺序执行，排队超出上限时拒绝，熔断时不发送，发送后断开不重放
+ */
+public class AsyncPipelineTest {
+
+    private EmbeddedRedisCluster cluster;
+
+    private JedisCluster jedisCluster;
+
+    private AsyncPipeline pipeline;
+
+    @Before
+    public void setup() throws Exception {
+        cluster = new EmbeddedRedisCluster(3).start();
+        jedisCluster = cluster.newJedisCluster(new GenericObjectPoolConfig());
+        pipeline = new AsyncPipeline(new ClusterSlotRouter(jedisCluster), 2, 3, 16);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        pipeline.shutdown();
+        jedisCluster.close();
+        cluster.close();
+    }
+
+    @Test
+    public void commandsKeepSubmitOrder() throws Exception {
+        AsyncPipeline ordered = new AsyncPipeline(new ClusterSlotRouter(jedisCluster), 2, 1000, 16);
+        try {
+            List<CompletableFuture<Long>> futures = new ArrayList<CompletableFuture<Long>>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(ordered.submit("seq", incr("seq", null, null)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Assert.assertEquals(Long.valueOf(i + 1), futures.get(i).get(5, TimeUnit.SECONDS));
+            }
+            Assert.assertEquals("200", jedisCluster.get("seq"));
+        } finally {
+            ordered.shutdown();
+        }
+    }
+
+    @Test
+    public void rejectWhenQueueFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // 第一个命令占住节点的执行线程，之后的命令只能排队
+        CompletableFuture<Long> blocking = pipeline.submit("q", incr("q", started, release));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        List<CompletableFuture<Long>> queued = new ArrayList<CompletableFuture<Long>>();
+        for (int i = 0; i < 3; i++) {
+            queued.add(pipeline.submit("q", incr("q", null, null)));
+        }
+        CompletableFuture<Long> rejected = pipeline.submit("q", incr("q", null, null));
+        try {
+            rejected.get(1, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        release.countDown();
+        Assert.assertEquals(Long.valueOf(1), blocking.get(5, TimeUnit.SECONDS));
+        for (int i = 0; i < queued.size(); i++) {
+            Assert.assertEquals(Long.valueOf(i + 2), queued.get(i).get(5, TimeUnit.SECONDS));
+        }
+        // 队列空出后可以再次提交
+        Assert.assertEquals(Long.valueOf(5), pipeline.submit("q", incr("q", null, null)).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void breakerOpensAndSentBatchIsNotReplayed() throws Exception {
+        CircuitBreakers breakers = new CircuitBreakers();
+        breakers.setMinimumCalls(1);
+        breakers.setOpenMillis(60000);
+        AsyncPipeline guarded = new AsyncPipeline(new ClusterSlotRouter(jedisCluster), 2, 1000, 16, breakers);
+        EmbeddedRedisNode master = cluster.masterOf("br");
+        try {
+            Assert.assertEquals(Long.valueOf(1), guarded.submit("br", incr("br", null, null)).get(5, TimeUnit.SECONDS));
+            // INCR 已执行后的命令断开连接：结果未知，不再走 JedisCluster 重放
+            master.getFaults().disconnectRate(1).only("GET");
+            CompletableFuture<Long> lost = guarded.submit("br", incrThenGet("br"));
+            try {
+                lost.get(5, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof PipelineOutcomeUnknownException);
+            }
+            master.getFaults().reset();
+            Assert.assertEquals("2", jedisCluster.get("br"));
+            Assert.assertEquals(CircuitBreaker.State.OPEN, breakers.get(master.getAddress()).getState());
+
+            // 熔断中不发送
+            long commands = master.getCommandCount();
+            try {
+                guarded.submit("br", incr("br", null, null)).get(5, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof CircuitOpenException);
+            }
+            Assert.assertEquals(commands, master.getCommandCount());
+        } finally {
+            guarded.shutdown();
+        }
+    }
+
+    private AsyncPipeline.Command<Long> incrThenGet(final String key) {
+        return new AsyncPipeline.Command<Long>() {
+            @Override
+            public Response<Long> pipelined(Pipeline pipeline) {
+                Response<Long> response = pipeline.incr(key);
+                pipeline.get(key);
+                return response;
+            }
+
+            @Override
+            public Long direct() {
+                return jedisCluster.incr(key);
+            }
+        };
+    }
+
+    private AsyncPipeline.Command<Long> incr(final String key, final CountDownLatch started, final CountDownLatch release) {
+        return new AsyncPipeline.Command<Long>() {
+            @Override
+            public Response<Long> pipelined(Pipeline pipeline) {
+                if (started != null) {
+                    started.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return pipeline.incr(key);
+            }
+
+            @Override
+            public Long direct() {
+                return jedisCluster.incr(key);
+            }
+        };
+    }
+}
@@ -0,0 +1,123 @@
+package com.common.dao.redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 布隆过滤器防穿透：就绪前不拦截，重建期间写入的key不丢失，重建清除已删除的key
+ */
+public class BloomGuardTest {
+
+    private static BloomGuard.Factory localFactory() {
+        return new BloomGuard.Factory() {
+            @Override
+            public BloomFilter existing() {
+                return null;
+            }
+
+            @Override
+            public BloomFilter create() {
+                return new LocalBloomFilter(1000, 0.001);
+            }
+
+            @Override
+            public BloomFilter publish(BloomFilter staged) {
+                return staged;
+            }
+
+            @Override
+            public void abort(BloomFilter staged) {
+            }
+        };
+    }
+
+    private static BloomGuard.KeySource source(final List<String> keys) {
+        return new BloomGuard.KeySource() {
+            @Override
+            public void load(BloomFilter target) {
+                target.putAll(keys);
+            }
+        };
+    }
+
+    @Test
+    public void rebuildDropsRemovedKeys() {
+        BloomGuard guard = new BloomGuard(localFactory(), source(Arrays.asList("d:a", "d:b")));
+        guard.setStagingGraceMillis(0);
+        Assert.assertFalse(guard.isReady());
+        Assert.assertTrue(guard.mightContain("d:none"));
+
+        guard.rebuild();
+        Assert.assertTrue(guard.isReady());
+        Assert.assertTrue(guard.mightContain("d:a"));
+        Assert.assertFalse(guard.mightContain("d:none"));
+        guard.put("d:c");
+        Assert.assertTrue(guard.mightContain("d:c"));
+
+        // d:c 已不在数据源中
+        guard.rebuild();
+        Assert.assertFalse(guard.mightContain("d:c"));
+        Assert.assertTrue(guard.mightContain("d:b"));
+        guard.shutdown();
+    }
+
+    @Test
+    public void putDuringRebuildIsKept() throws Exception {
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final BloomGuard guard = new BloomGuard(localFactory(), new BloomGuard.KeySource() {
+            @Override
+            public void load(BloomFilter target) {
+                loading.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                target.putAll(Collections.singletonList("d:a"));
+            }
+        });
+        guard.setStagingGraceMillis(0);
+        Thread rebuild = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                guard.rebuild();
+            }
+        });
+        rebuild.start();
+        Assert.assertTrue(loading.await(5, TimeUnit.SECONDS));
+        guard.put("d:during");
+        release.countDown();
+        rebuild.join();
+
+        Assert.assertTrue(guard.mightContain("d:a"));
+        Assert.assertTrue(guard.mightContain("d:during"));
+        guard.shutdown();
+    }
+
+    @Test
+    public void putInGraceWindowIsKept() throws Exception {
+        // 等待期内写入的key进入新过滤器，即使扫描已经过该key
+        final BloomGuard guard = new BloomGuard(localFactory(), source(Collections.<String>emptyList()));
+        guard.setStagingGraceMillis(300);
+        Thread rebuild = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                guard.rebuild();
+            }
+        });
+        rebuild.start();
+        Thread.sleep(100);
+        guard.put("d:late");
+        rebuild.join();
+        Assert.assertTrue(guard.isReady());
+        Assert.assertTrue(guard.mightContain("d:late"));
+        guard.shutdown();
+    }
+}
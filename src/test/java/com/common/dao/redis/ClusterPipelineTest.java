@@ -0,0 +1,167 @@
+package com.common.dao.redis;
+
+import com.common.dao.redis.server.EmbeddedRedisCluster;
+import com.common.dao.redis.server.EmbeddedRedisNode;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量执行：单个key错误不重试其他key，所有节点的结果都被收集
+ */
+public class ClusterPipelineTest {
+
+    private EmbeddedRedisCluster cluster;
+
+    private JedisCluster jedisCluster;
+
+    private ClusterPipeline pipeline;
+
+    @Before
+    public void setup() throws Exception {
+        cluster = new EmbeddedRedisCluster(3).start();
+        jedisCluster = cluster.newJedisCluster(new GenericObjectPoolConfig());
+        pipeline = new ClusterPipeline(new ClusterSlotRouter(jedisCluster), 4);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        pipeline.shutdown();
+        jedisCluster.close();
+        cluster.close();
+    }
+
+    @Test
+    public void dataErrorDoesNotReapplyOtherKeys() {
+        final List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < 30; i++) {
+            keys.add("c" + i);
+        }
+        jedisCluster.hset("c7", "f", "1");
+        try {
+            pipeline.execute(keys, new ClusterPipeline.Operation<Long>() {
+                @Override
+                public Response<Long> pipelined(Pipeline pipeline, int index) {
+                    return pipeline.incrBy(SafeEncoder.encode(keys.get(index)), 5);
+                }
+
+                @Override
+                public Long direct(int index) {
+                    return jedisCluster.incrBy(keys.get(index), 5);
+                }
+            });
+            Assert.fail();
+        } catch (ClusterPipelineException e) {
+            Assert.assertEquals(1, e.getErrors().size());
+            Assert.assertTrue(e.getErrors().get(7) instanceof JedisDataException);
+            Assert.assertEquals(5L, e.getResults().get(0));
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            if (i != 7) {
+                Assert.assertEquals("5", jedisCluster.get(keys.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void disconnectAfterSendIsNotReplayed() {
+        final List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < 10; i++) {
+            keys.add("{u}" + i);
+        }
+        // 所有 INCRBY 已执行，最后的 GET 断开连接：结果未知，不能再逐个重试
+        cluster.getFaults().disconnectRate(1).only("GET");
+        try {
+            pipeline.execute(keys, new ClusterPipeline.Operation<Long>() {
+                @Override
+                public Response<Long> pipelined(Pipeline pipeline, int index) {
+                    byte[] rawkey = SafeEncoder.encode(keys.get(index));
+                    Response<Long> response = pipeline.incrBy(rawkey, 5);
+                    if (index == keys.size() - 1) {
+                        pipeline.get(rawkey);
+                    }
+                    return response;
+                }
+
+                @Override
+                public Long direct(int index) {
+                    return jedisCluster.incrBy(keys.get(index), 5);
+                }
+            });
+            Assert.fail();
+        } catch (ClusterPipelineException e) {
+            Assert.assertEquals(keys.size(), e.getErrors().size());
+            for (RuntimeException error : e.getErrors().values()) {
+                Assert.assertTrue(error instanceof PipelineOutcomeUnknownException);
+            }
+        } finally {
+            cluster.getFaults().reset();
+        }
+        for (String key : keys) {
+            Assert.assertEquals("5", jedisCluster.get(key));
+        }
+    }
+
+    @Test
+    public void openBreakerRecoversThroughPipelineProbe() throws Exception {
+        CircuitBreakers breakers = new CircuitBreakers();
+        breakers.setMinimumCalls(1);
+        breakers.setOpenMillis(200);
+        breakers.setProbeRatio(1);
+        breakers.setProbeSuccesses(1);
+        ClusterPipeline guarded = new ClusterPipeline(new ClusterSlotRouter(jedisCluster), 4, breakers);
+        EmbeddedRedisNode master = cluster.masterOf("p0");
+        String node = master.getAddress();
+        final List<String> keys = new ArrayList<String>();
+        for (int i = 0; keys.size() < 5; i++) {
+            if (cluster.masterOf("p" + i) == master) {
+                keys.add("p" + i);
+            }
+        }
+        ClusterPipeline.Operation<String> set = new ClusterPipeline.Operation<String>() {
+            @Override
+            public Response<String> pipelined(Pipeline pipeline, int index) {
+                return pipeline.set(keys.get(index), "v");
+            }
+
+            @Override
+            public String direct(int index) {
+                return jedisCluster.set(keys.get(index), "v");
+            }
+        };
+        try {
+            master.getFaults().disconnectRate(1);
+            try {
+                guarded.execute(keys, set);
+                Assert.fail();
+            } catch (ClusterPipelineException e) {
+                Assert.assertEquals(CircuitBreaker.State.OPEN, breakers.get(node).getState());
+            }
+            try {
+                guarded.execute(keys, set);
+                Assert.fail();
+            } catch (CircuitOpenException e) {
+                Assert.assertEquals(node, e.getNode());
+            }
+
+            // 只有批量流量时，openMillis 后批量命令作为探测执行并关闭熔断
+            master.getFaults().reset();
+            Thread.sleep(300);
+            guarded.execute(keys, set);
+            Assert.assertEquals(CircuitBreaker.State.CLOSED, breakers.get(node).getState());
+            Assert.assertEquals("v", jedisCluster.get(keys.get(0)));
+        } finally {
+            guarded.shutdown();
+        }
+    }
+}
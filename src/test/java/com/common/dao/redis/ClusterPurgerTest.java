@@ -0,0 +1,126 @@
+package com.common.dao.redis;
+
+import com.common.dao.redis.server.BuiltinScripts;
+import com.common.dao.redis.server.EmbeddedRedisCluster;
+import com.common.dao.redis.server.Keyspace;
+import com.common.dao.redis.server.RespError;
+import com.common.dao.redis.server.ScriptHandler;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量清除：删除个数、分批删除、UNLINK 不支持时改用 DEL、删除失败时抛出
+ */
+public class ClusterPurgerTest {
+
+    private EmbeddedRedisCluster cluster;
+
+    private JedisCluster jedisCluster;
+
+    private ClusterScanner scanner;
+
+    private ClusterPurger purger;
+
+    @Before
+    public void setup() throws Exception {
+        cluster = new EmbeddedRedisCluster(3).start();
+        BuiltinScripts.registerAll(cluster);
+        jedisCluster = cluster.newJedisCluster(new GenericObjectPoolConfig());
+        scanner = new ClusterScanner(new ClusterSlotRouter(jedisCluster), 3);
+        purger = new ClusterPurger(scanner);
+        purger.setBatchSize(20);
+        for (int i = 0; i < 200; i++) {
+            jedisCluster.set("purge:" + i, "v");
+        }
+        for (int i = 0; i < 30; i++) {
+            jedisCluster.set("keep:" + i, "v");
+        }
+    }
+
+    @After
+    public void teardown() throws Exception {
+        scanner.shutdown();
+        jedisCluster.close();
+        cluster.close();
+    }
+
+    @Test
+    public void purgeInBatchesWithUnlink() {
+        final AtomicInteger batches = new AtomicInteger();
+        final Map<String, Long> scanned = new ConcurrentHashMap<String, Long>();
+        long deleted = purger.purge("purge:*", new ClusterPurger.ProgressListener() {
+            @Override
+            public void onProgress(String node, long nodeScanned, long total) {
+                batches.incrementAndGet();
+                scanned.put(node, nodeScanned);
+            }
+        });
+
+        Assert.assertEquals(200, deleted);
+        Assert.assertTrue(purger.isUnlink());
+        // 每批最多20个key，200个key至少10批
+        Assert.assertTrue(batches.get() >= 10);
+        long total = 0;
+        for (Long count : scanned.values()) {
+            total += count;
+        }
+        Assert.assertEquals(200, total);
+        for (int i = 0; i < 200; i++) {
+            Assert.assertFalse(jedisCluster.exists("purge:" + i));
+        }
+        for (int i = 0; i < 30; i++) {
+            Assert.assertTrue(jedisCluster.exists("keep:" + i));
+        }
+    }
+
+    @Test
+    public void fallbackToDelWhenUnlinkUnknown() {
+        cluster.registerScript(ClusterPurger.UNLINK_SCRIPT, new ScriptHandler() {
+            @Override
+            public Object eval(Keyspace keyspace, List<byte[]> keys, List<byte[]> args) {
+                // redis 4.0 之前的回复
+                throw new RespError("ERR Error running script: @user_script:1: "
+                        + "@user_script: 1: Unknown Redis command called from Lua script");
+            }
+        });
+
+        Assert.assertEquals(200, purger.purge("purge:*", null));
+        Assert.assertFalse(purger.isUnlink());
+        for (int i = 0; i < 200; i++) {
+            Assert.assertFalse(jedisCluster.exists("purge:" + i));
+        }
+        Assert.assertTrue(jedisCluster.exists("keep:0"));
+    }
+
+    @Test
+    public void deleteErrorIsRethrown() {
+        final AtomicInteger calls = new AtomicInteger();
+        cluster.registerScript(ClusterPurger.UNLINK_SCRIPT, new ScriptHandler() {
+            @Override
+            public Object eval(Keyspace keyspace, List<byte[]> keys, List<byte[]> args) {
+                calls.incrementAndGet();
+                throw new RespError("ERR injected failure");
+            }
+        });
+
+        try {
+            purger.purge("purge:*", null);
+            Assert.fail();
+        } catch (JedisDataException e) {
+            Assert.assertTrue(e.getMessage().contains("injected"));
+        }
+        // 每个节点在第一批（最多20个key）出错后停止扫描，不会对全部200个key执行删除
+        Assert.assertTrue(calls.get() <= 60);
+        Assert.assertTrue(jedisCluster.exists("purge:0"));
+    }
+}
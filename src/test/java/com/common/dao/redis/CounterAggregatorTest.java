@@ -0,0 +1,147 @@
+package com.common.dao.redis;
+
+import com.common.dao.redis.server.EmbeddedRedisCluster;
+import com.common.dao.redis.server.EmbeddedRedisNode;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisCluster;
+
+/**
+ * 本地聚合计数：定时与按次数写入、关闭时写入、读取含本地增量、失败时按计数器放回或放弃
+ */
+public class CounterAggregatorTest {
+
+    private EmbeddedRedisCluster cluster;
+
+    private JedisCluster jedisCluster;
+
+    private ClusterSlotRouter router;
+
+    private ClusterPipeline pipeline;
+
+    private CounterAggregator aggregator;
+
+    @Before
+    public void setup() throws Exception {
+        cluster = new EmbeddedRedisCluster(3).start();
+        jedisCluster = cluster.newJedisCluster(new GenericObjectPoolConfig());
+        router = new ClusterSlotRouter(jedisCluster);
+        pipeline = new ClusterPipeline(router, 4);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        if (aggregator != null) {
+            aggregator.shutdown();
+        }
+        pipeline.shutdown();
+        jedisCluster.close();
+        cluster.close();
+    }
+
+    private CounterAggregator start(long flushMillis, long flushEvents) {
+        aggregator = new CounterAggregator(pipeline, new ClusterNodeExecutor(router), flushMillis, flushEvents);
+        aggregator.start();
+        return aggregator;
+    }
+
+    @Test
+    public void flushOnTimer() throws Exception {
+        start(50, 0);
+        for (int i = 0; i < 100; i++) {
+            aggregator.incr("cnt:timer", 1);
+            aggregator.hincr("cnt:timer:h", "f", 2);
+        }
+        awaitValue("cnt:timer", "100");
+        Assert.assertEquals("200", jedisCluster.hget("cnt:timer:h", "f"));
+        Assert.assertEquals(0, aggregator.pending("cnt:timer", null));
+        // 100次累加合并为很少的命令
+        Assert.assertTrue(aggregator.getCommandCount() <= 10);
+    }
+
+    @Test
+    public void flushOnEvents() throws Exception {
+        start(60000, 10);
+        for (int i = 0; i < 10; i++) {
+            aggregator.incr("cnt:events", 1);
+        }
+        awaitValue("cnt:events", "10");
+    }
+
+    @Test
+    public void flushOnShutdown() {
+        start(60000, 0);
+        aggregator.hincr("cnt:shutdown", "f", 7);
+        Assert.assertNull(jedisCluster.hget("cnt:shutdown", "f"));
+        aggregator.shutdown();
+        aggregator = null;
+        Assert.assertEquals("7", jedisCluster.hget("cnt:shutdown", "f"));
+    }
+
+    @Test
+    public void readIncludesPendingDelta() {
+        start(60000, 0);
+        jedisCluster.set("cnt:read", "5");
+        aggregator.incr("cnt:read", 3);
+        Assert.assertEquals(8, Long.parseLong(jedisCluster.get("cnt:read")) + aggregator.pending("cnt:read", null));
+        aggregator.flush();
+        Assert.assertEquals("8", jedisCluster.get("cnt:read"));
+        Assert.assertEquals(0, aggregator.pending("cnt:read", null));
+    }
+
+    @Test
+    public void requeueOnlyFailedCounters() throws Exception {
+        start(60000, 0);
+        EmbeddedRedisNode down = cluster.masterOf("cnt:down");
+        String healthy = upKey("cnt:up", down);
+        String hash = upKey("cnt:hash", down);
+        jedisCluster.hset(hash, "f", "1");
+        aggregator.incr("cnt:down", 4);
+        aggregator.incr(healthy, 2);
+        aggregator.incr(hash, 1);
+
+        down.stop();
+        aggregator.flush();
+        // 正常节点只写入一次，类型错误的计数器放弃，连接不上的放回本地
+        Assert.assertEquals("2", jedisCluster.get(healthy));
+        Assert.assertEquals(0, aggregator.pending(healthy, null));
+        Assert.assertEquals(0, aggregator.pending(hash, null));
+        Assert.assertEquals(4, aggregator.pending("cnt:down", null));
+
+        down.start();
+        aggregator.flush();
+        Assert.assertEquals("4", jedisCluster.get("cnt:down"));
+        Assert.assertEquals("2", jedisCluster.get(healthy));
+        Assert.assertEquals(0, aggregator.pending("cnt:down", null));
+
+        // 命令发出后断开：是否已执行未知，放弃而不是重复累加
+        aggregator.incr("cnt:down", 3);
+        down.getFaults().disconnectRate(1);
+        aggregator.flush();
+        Assert.assertEquals(0, aggregator.pending("cnt:down", null));
+        down.getFaults().reset();
+        aggregator.flush();
+        Assert.assertEquals("4", jedisCluster.get("cnt:down"));
+    }
+
+    private String upKey(String prefix, EmbeddedRedisNode down) {
+        for (int i = 0; ; i++) {
+            if (cluster.masterOf(prefix + i) != down) {
+                return prefix + i;
+            }
+        }
+    }
+
+    private void awaitValue(String key, String expected) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            if (expected.equals(jedisCluster.get(key))) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(expected, jedisCluster.get(key));
+    }
+}
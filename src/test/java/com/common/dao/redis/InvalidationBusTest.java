@@ -0,0 +1,109 @@
+package com.common.dao.redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地缓存跨JVM失效：合并发送、忽略自己的消息、重新订阅后清空
+ */
+public class InvalidationBusTest {
+
+    /**
+     * 进程内的 pub/sub，所有订阅者共享
+     */
+    static class LocalTransport implements InvalidationTransport {
+        final List<LinkedBlockingQueue<String>> subscribers = new CopyOnWriteArrayList<LinkedBlockingQueue<String>>();
+        final AtomicInteger published = new AtomicInteger();
+        volatile CountDownLatch subscribed = new CountDownLatch(2);
+
+        @Override
+        public void publish(String channel, String message) {
+            published.incrementAndGet();
+            for (LinkedBlockingQueue<String> queue : subscribers) {
+                queue.add(message);
+            }
+        }
+
+        @Override
+        public void subscribe(String channel, Listener listener) {
+            LinkedBlockingQueue<String> queue = new LinkedBlockingQueue<String>();
+            subscribers.add(queue);
+            listener.onSubscribed();
+            subscribed.countDown();
+            try {
+                while (true) {
+                    String message = queue.take();
+                    if ("__disconnect".equals(message)) {
+                        throw new IllegalStateException("disconnect");
+                    }
+                    listener.onMessage(message);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                subscribers.remove(queue);
+            }
+        }
+
+        @Override
+        public void unsubscribe() {
+        }
+
+        void disconnectAll() {
+            for (LinkedBlockingQueue<String> queue : subscribers) {
+                queue.add("__disconnect");
+            }
+        }
+    }
+
+    @Test
+    public void invalidateOtherNodes() throws Exception {
+        LocalTransport transport = new LocalTransport();
+        NearCache cacheA = new NearCache(100, 0, 60000);
+        NearCache cacheB = new NearCache(100, 0, 60000);
+        InvalidationBus busA = new InvalidationBus(cacheA, transport, "test", 5);
+        InvalidationBus busB = new InvalidationBus(cacheB, transport, "test", 5);
+        busA.start();
+        busB.start();
+        try {
+            Assert.assertTrue(transport.subscribed.await(2, TimeUnit.SECONDS));
+            cacheA.put("d:k", cacheA.stamp("d:k"), "a", String.class, 1, -1);
+            cacheB.put("d:k", cacheB.stamp("d:k"), "b", String.class, 1, -1);
+            cacheB.put("d:other", cacheB.stamp("d:other"), "o", String.class, 1, -1);
+
+            // 同一间隔内多次写合并为一条消息
+            for (int i = 0; i < 10; i++) {
+                busA.publish("d:k");
+            }
+            waitUntil(cacheB, "d:k");
+            Assert.assertEquals(1, transport.published.get());
+            Assert.assertNotNull(cacheB.get("d:other", String.class));
+            // 自己发出的消息不处理
+            Assert.assertNotNull(cacheA.get("d:k", String.class));
+
+            // 断线重连后清空
+            transport.subscribed = new CountDownLatch(2);
+            transport.disconnectAll();
+            Assert.assertTrue(transport.subscribed.await(2, TimeUnit.SECONDS));
+            Assert.assertNull(cacheB.get("d:other", String.class));
+        } finally {
+            busA.stop();
+            busB.stop();
+        }
+    }
+
+    private static void waitUntil(NearCache cache, String key) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (cache.get(key, String.class) != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertNull(cache.get(key, String.class));
+    }
+}
@@ -0,0 +1,77 @@
+package com.common.dao.redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * 热点key：少量key占多数流量时进入topK并被提升；大key按字节数保留最大的几个
+ */
+public class KeyTrafficMonitorTest {
+
+    @Test
+    public void hotKeysAndPromotion() {
+        KeyTrafficMonitor monitor = new KeyTrafficMonitor("test", 1, 10, 1000, 1000, 500);
+        for (int i = 0; i < 20000; i++) {
+            monitor.record("d:hot" + (i % 2), 10);
+            monitor.record("d:cold" + i, 10);
+        }
+        List<KeyTrafficMonitor.KeyStat> hot = monitor.getHotKeys();
+        Assert.assertTrue(hot.get(0).getKey().startsWith("d:hot"));
+        Assert.assertTrue(hot.get(1).getKey().startsWith("d:hot"));
+        Assert.assertTrue(hot.get(0).getValue() >= 10000);
+
+        monitor.rotate();
+        Assert.assertTrue(monitor.isHot("d:hot0"));
+        Assert.assertTrue(monitor.isHot("d:hot1"));
+        Assert.assertFalse(monitor.isHot("d:cold19999"));
+        Assert.assertNotNull(monitor.getPromotedCache());
+        monitor.shutdown();
+    }
+
+    @Test
+    public void topKAcrossStripesAndDecay() {
+        KeyTrafficMonitor monitor = new KeyTrafficMonitor("test", 1, 5, 0, 0, 0);
+        for (int round = 1; round <= 20; round++) {
+            for (int i = round - 1; i < 20; i++) {
+                // d:k{i} 共访问 i+1 次
+                monitor.record("d:k" + i, 0);
+            }
+        }
+        List<KeyTrafficMonitor.KeyStat> hot = monitor.getHotKeys();
+        Assert.assertEquals(5, hot.size());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals("d:k" + (19 - i), hot.get(i).getKey());
+            Assert.assertEquals(20 - i, hot.get(i).getValue());
+        }
+
+        monitor.rotate();
+        hot = monitor.getHotKeys();
+        Assert.assertEquals("d:k19", hot.get(0).getKey());
+        Assert.assertEquals(10, hot.get(0).getValue());
+        monitor.rotate();
+        monitor.rotate();
+        monitor.rotate();
+        monitor.rotate();
+        // 计数归零的key被移除
+        for (KeyTrafficMonitor.KeyStat stat : monitor.getHotKeys()) {
+            Assert.assertTrue(stat.getValue() > 0);
+        }
+        monitor.shutdown();
+    }
+
+    @Test
+    public void bigKeys() {
+        KeyTrafficMonitor monitor = new KeyTrafficMonitor("test", 100, 2, 1000, 0, 0);
+        monitor.record("d:small", 999);
+        monitor.record("d:a", 1000);
+        monitor.record("d:b", 5000);
+        monitor.record("d:c", 3000);
+        List<KeyTrafficMonitor.KeyStat> big = monitor.getBigKeys();
+        Assert.assertEquals(2, big.size());
+        Assert.assertEquals("d:b", big.get(0).getKey());
+        Assert.assertEquals("d:c", big.get(1).getKey());
+        monitor.shutdown();
+    }
+}
@@ -0,0 +1,44 @@
+package com.common.dao.redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 进程内布隆过滤器：已加入的key不会误判为不存在，误判率接近设定值
+ */
+public class LocalBloomFilterTest {
+
+    @Test
+    public void noFalseNegatives() {
+        LocalBloomFilter filter = new LocalBloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put("user:" + i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertTrue(filter.mightContain("user:" + i));
+        }
+    }
+
+    @Test
+    public void falsePositiveRateNearTarget() {
+        LocalBloomFilter filter = new LocalBloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put("user:" + i);
+        }
+        int positives = 0;
+        for (int i = 10000; i < 110000; i++) {
+            if (filter.mightContain("user:" + i)) {
+                positives++;
+            }
+        }
+        Assert.assertTrue("false positives: " + positives, positives < 2000);
+    }
+
+    @Test
+    public void clearRemovesAll() {
+        LocalBloomFilter filter = new LocalBloomFilter(100, 0.01);
+        filter.put("a");
+        filter.clear();
+        Assert.assertFalse(filter.mightContain("a"));
+    }
+}
@@ -0,0 +1,36 @@
+package com.common.dao.redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 本地缓存：类型匹配、失效期间放弃写入、过期时间受redis剩余时间限制
+ */
+public class NearCacheTest {
+
+    @Test
+    public void putAndGet() {
+        NearCache cache = new NearCache(100, 0, 60000);
+        cache.put("d:k", cache.stamp("d:k"), "v", String.class, 1, -1);
+        Assert.assertEquals("v", cache.get("d:k", String.class).getValue());
+        Assert.assertNull(cache.get("d:k", Integer.class));
+    }
+
+    @Test
+    public void skipPutAfterInvalidate() {
+        NearCache cache = new NearCache(100, 0, 60000);
+        long stamp = cache.stamp("d:k");
+        cache.invalidate("d:k");
+        cache.put("d:k", stamp, "stale", String.class, 1, -1);
+        Assert.assertNull(cache.get("d:k", String.class));
+    }
+
+    @Test
+    public void ttlCappedByRedis() throws Exception {
+        NearCache cache = new NearCache(100, 0, 60000);
+        cache.put("d:k", cache.stamp("d:k"), "v", String.class, 1, 50);
+        Assert.assertNotNull(cache.get("d:k", String.class));
+        Thread.sleep(120);
+        Assert.assertNull(cache.get("d:k", String.class));
+    }
+}
@@ -0,0 +1,99 @@
+package com.common.dao.redis;
+
+import com.common.dao.redis.codec.JsonRedisCodec;
+import com.common.dao.redis.codec.RedisValueSerializer;
+import com.common.dao.redis.server.BuiltinScripts;
+import com.common.dao.redis.server.EmbeddedRedisCluster;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisCluster;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * redis位图布隆过滤器：加入与判断、批量加入、重建中的位图同时写入（bloom_add.lua）、改名发布
+ */
+public class RedisBloomFilterTest {
+
+    private static final String BITMAP = "bloom:{test}";
+
+    private static final String STAGING = BITMAP + ":rebuild";
+
+    private EmbeddedRedisCluster cluster;
+
+    private JedisCluster jedisCluster;
+
+    private ScriptRegistry scripts;
+
+    private long numBits;
+
+    private int numHashes;
+
+    @Before
+    public void setup() throws Exception {
+        cluster = new EmbeddedRedisCluster(3).start();
+        BuiltinScripts.registerAll(cluster);
+        jedisCluster = cluster.newJedisCluster(new GenericObjectPoolConfig());
+        scripts = new ScriptRegistry(new ClusterNodeExecutor(new ClusterSlotRouter(jedisCluster)),
+                new RedisValueSerializer(new JsonRedisCodec(), null));
+        numBits = BloomFilter.optimalNumBits(2000, 0.001);
+        numHashes = BloomFilter.optimalNumHashes(2000, numBits);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        jedisCluster.close();
+        cluster.close();
+    }
+
+    @Test
+    public void putAndPutAll() {
+        RedisBloomFilter filter = new RedisBloomFilter(scripts, BITMAP, null, numBits, numHashes);
+        Assert.assertFalse(filter.exists());
+        filter.put("test:one");
+        Assert.assertTrue(filter.exists());
+        Assert.assertTrue(filter.mightContain("test:one"));
+        Assert.assertFalse(filter.mightContain("test:two"));
+
+        // 超过一批的key分多次pipeline
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < 1200; i++) {
+            keys.add("test:k" + i);
+        }
+        filter.putAll(keys);
+        for (String key : keys) {
+            Assert.assertTrue(filter.mightContain(key));
+        }
+        filter.clear();
+        Assert.assertFalse(filter.exists());
+    }
+
+    @Test
+    public void addWritesStagingWhileRebuilding() {
+        RedisBloomFilter filter = new RedisBloomFilter(scripts, BITMAP, STAGING, numBits, numHashes);
+        filter.put("test:before");
+        Assert.assertFalse(jedisCluster.exists(STAGING));
+
+        RedisBloomFilter staged = new RedisBloomFilter(scripts, STAGING, null, numBits, numHashes);
+        staged.reset();
+        filter.put("test:during");
+        staged.put("test:loaded");
+        Assert.assertTrue(staged.mightContain("test:during"));
+        Assert.assertFalse(staged.mightContain("test:before"));
+
+        RedisBloomFilter published = staged.renameTo(BITMAP);
+        Assert.assertFalse(jedisCluster.exists(STAGING));
+        Assert.assertTrue(published.mightContain("test:during"));
+        Assert.assertTrue(published.mightContain("test:loaded"));
+        // 重建后不再包含未被加载的key
+        Assert.assertFalse(published.mightContain("test:before"));
+        // 发布后的过滤器在下次重建开始前只写位图
+        published.put("test:after");
+        Assert.assertTrue(published.mightContain("test:after"));
+        Assert.assertFalse(jedisCluster.exists(STAGING));
+    }
+}
@@ -0,0 +1,127 @@
+package com.common.dao.redis;
+
+import com.common.dao.redis.codec.JsonRedisCodec;
+import com.common.dao.redis.codec.RedisValueSerializer;
+import com.common.dao.redis.server.BuiltinScripts;
+import com.common.dao.redis.server.EmbeddedRedisCluster;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisCluster;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式锁：自动续期、退避重试、租约过期与失去锁后的解锁
+ */
+public class RedisLockTest {
+
+    private EmbeddedRedisCluster cluster;
+
+    private JedisCluster jedisCluster;
+
+    private ScriptRegistry scripts;
+
+    private ScheduledExecutorService renewer;
+
+    private LockMetrics metrics;
+
+    @Before
+    public void setup() throws Exception {
+        cluster = new EmbeddedRedisCluster(3).start();
+        BuiltinScripts.registerAll(cluster);
+        jedisCluster = cluster.newJedisCluster(new GenericObjectPoolConfig());
+        scripts = new ScriptRegistry(new ClusterNodeExecutor(new ClusterSlotRouter(jedisCluster)),
+                new RedisValueSerializer(new JsonRedisCodec(), null));
+        renewer = Executors.newSingleThreadScheduledExecutor();
+        metrics = new LockMetrics();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        renewer.shutdownNow();
+        jedisCluster.close();
+        cluster.close();
+    }
+
+    @Test
+    public void renewKeepsLeaseAlive() throws Exception {
+        RedisLock lock = new RedisLock(scripts, renewer, metrics, "test", "renew", 300);
+        RedisLock.Lease lease = lock.tryLock();
+        Assert.assertNotNull(lease);
+        // 持有时间超过租期的数倍
+        Thread.sleep(1000);
+        Assert.assertTrue(lease.isValid());
+        Assert.assertTrue(metrics.getRenewals() >= 2);
+        Assert.assertTrue(jedisCluster.exists(lock.getLockKey()));
+        Assert.assertNull(lock.tryLock());
+        Assert.assertTrue(lease.unlock());
+        Assert.assertFalse(jedisCluster.exists(lock.getLockKey()));
+        Assert.assertEquals(0, metrics.getLost());
+    }
+
+    @Test
+    public void tryLockBacksOffUntilReleased() throws Exception {
+        // 无续期，租约到期后被等待者拿到
+        RedisLock holder = new RedisLock(scripts, null, metrics, "test", "wait", 300);
+        RedisLock.Lease first = holder.tryLock();
+        Assert.assertNotNull(first);
+
+        RedisLock waiter = new RedisLock(scripts, null, metrics, "test", "wait", 10000);
+        long start = System.nanoTime();
+        RedisLock.Lease second = waiter.tryLock(3, TimeUnit.SECONDS);
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertNotNull(second);
+        Assert.assertTrue(second.getToken() > first.getToken());
+        Assert.assertTrue(waited >= 200);
+        // 退避重试：次数远少于忙等
+        long attempts = metrics.getAttempts() - 1;
+        Assert.assertTrue("attempts:" + attempts, attempts > 1 && attempts < 40);
+        Assert.assertEquals(1, metrics.getContended());
+        second.close();
+    }
+
+    @Test
+    public void tryLockTimesOut() throws Exception {
+        RedisLock lock = new RedisLock(scripts, renewer, metrics, "test", "timeout", 10000);
+        RedisLock.Lease lease = lock.tryLock();
+        long start = System.nanoTime();
+        Assert.assertNull(lock.tryLock(150, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 150);
+        Assert.assertEquals(1, metrics.getTimeouts());
+        lease.close();
+    }
+
+    @Test
+    public void expiredHolderCannotUnlockNewOwner() throws Exception {
+        RedisLock lock = new RedisLock(scripts, null, metrics, "test", "expire", 100);
+        RedisLock.Lease stale = lock.tryLock();
+        Thread.sleep(200);
+        Assert.assertFalse(stale.isValid());
+
+        RedisLock.Lease current = lock.tryLock();
+        Assert.assertNotNull(current);
+        Assert.assertFalse(stale.unlock());
+        Assert.assertTrue(jedisCluster.exists(lock.getLockKey()));
+        Assert.assertTrue(current.unlock());
+    }
+
+    @Test
+    public void renewDetectsLostLease() throws Exception {
+        RedisLock lock = new RedisLock(scripts, renewer, metrics, "test", "lost", 300);
+        RedisLock.Lease lease = lock.tryLock();
+        // 锁被他人改写
+        jedisCluster.set(lock.getLockKey(), "other");
+        for (int i = 0; i < 50 && lease.isValid(); i++) {
+            Thread.sleep(20);
+        }
+        Assert.assertFalse(lease.isValid());
+        Assert.assertEquals(1, metrics.getLost());
+        Assert.assertFalse(lease.unlock());
+        Assert.assertEquals("other", jedisCluster.get(lock.getLockKey()));
+    }
+}
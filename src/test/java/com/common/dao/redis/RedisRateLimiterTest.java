@@ -0,0 +1,113 @@
+package com.common.dao.redis;
+
+import com.common.dao.redis.codec.JsonRedisCodec;
+import com.common.dao.redis.codec.RedisValueSerializer;
+import com.common.dao.redis.server.BuiltinScripts;
+import com.common.dao.redis.server.EmbeddedRedisCluster;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisCluster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 集群限流：令牌桶、滑动窗口的上限，多实例共享上限，并发时合并redis申请
+ */
+public class RedisRateLimiterTest {
+
+    private EmbeddedRedisCluster cluster;
+
+    private JedisCluster jedisCluster;
+
+    private ScriptRegistry scripts;
+
+    @Before
+    public void setup() throws Exception {
+        cluster = new EmbeddedRedisCluster(3).start();
+        BuiltinScripts.registerAll(cluster);
+        jedisCluster = cluster.newJedisCluster(new GenericObjectPoolConfig());
+        scripts = new ScriptRegistry(new ClusterNodeExecutor(new ClusterSlotRouter(jedisCluster)),
+                new RedisValueSerializer(new JsonRedisCodec(), null));
+    }
+
+    @After
+    public void teardown() throws Exception {
+        jedisCluster.close();
+        cluster.close();
+    }
+
+    @Test
+    public void tokenBucketAllowsBurstUpToCapacity() {
+        RedisRateLimiter limiter = RedisRateLimiter.tokenBucket(scripts, "test:ratelimit:bucket", 1, 20, 5);
+        int allowed = 0;
+        for (int i = 0; i < 30; i++) {
+            if (limiter.tryAcquire()) {
+                allowed++;
+            }
+        }
+        // 每秒只生成1个令牌，测试期间最多多出1个
+        Assert.assertTrue("allowed:" + allowed, allowed >= 20 && allowed <= 21);
+        Assert.assertTrue(limiter.getLocalHits() >= 15);
+        Assert.assertTrue(limiter.getRejected() >= 9);
+        // 许可不足时不消耗
+        Assert.assertFalse(limiter.tryAcquire(5));
+    }
+
+    @Test
+    public void slidingWindowSharedByInstances() {
+        RedisRateLimiter first = RedisRateLimiter.slidingWindow(scripts, "test:ratelimit:window", 10, 60000, 3);
+        RedisRateLimiter second = RedisRateLimiter.slidingWindow(scripts, "test:ratelimit:window", 10, 60000, 3);
+        int allowed = 0;
+        for (int i = 0; i < 10; i++) {
+            if (first.tryAcquire()) {
+                allowed++;
+            }
+            if (second.tryAcquire()) {
+                allowed++;
+            }
+        }
+        Assert.assertEquals(10, allowed);
+        Assert.assertTrue(first.getRemoteCalls() < 10);
+    }
+
+    @Test
+    public void concurrentCallersShareRefill() throws Exception {
+        final RedisRateLimiter limiter = RedisRateLimiter.tokenBucket(scripts, "test:ratelimit:concurrent", 1, 100, 10);
+        final AtomicInteger allowed = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 50; i++) {
+                        if (limiter.tryAcquire()) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertTrue("allowed:" + allowed.get(), allowed.get() >= 100 && allowed.get() <= 101);
+        Assert.assertEquals(400, allowed.get() + limiter.getRejected());
+        // 许可按批申请，并发线程共享同一次申请，远少于调用次数
+        Assert.assertTrue("remote:" + limiter.getRemoteCalls(), limiter.getRemoteCalls() < 200);
+    }
+}
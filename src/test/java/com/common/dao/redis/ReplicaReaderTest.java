@@ -0,0 +1,165 @@
+package com.common.dao.redis;
+
+import com.common.dao.redis.server.EmbeddedRedisCluster;
+import com.common.dao.redis.server.EmbeddedRedisNode;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Protocol;
+
+
+/**
+ * 从节点读：READONLY 连接、按复制 offset 估算的落后容忍、失败回退主节点
+ */
+public class ReplicaReaderTest {
+
+    private EmbeddedRedisCluster cluster;
+
+    private JedisCluster jedisCluster;
+
+    private ClusterSlotRouter router;
+
+    private ReplicaReader reader;
+
+    @Before
+    public void setup() throws Exception {
+        cluster = new EmbeddedRedisCluster(3, 1).start();
+        jedisCluster = cluster.newJedisCluster(new GenericObjectPoolConfig());
+        router = new ClusterSlotRouter(jedisCluster);
+        reader = new ReplicaReader(router, new ClusterNodeExecutor(router), false, 300,
+                new GenericObjectPoolConfig(), Protocol.DEFAULT_TIMEOUT, 50);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        reader.shutdown();
+        jedisCluster.close();
+        cluster.close();
+    }
+
+    @Test
+    public void readsFromReplicaWithinLag() throws Exception {
+        jedisCluster.set("r1", "v1");
+        EmbeddedRedisNode replica = cluster.getReplicas(cluster.masterOf("r1")).get(0);
+        awaitProbe(replica, true);
+
+        long before = replica.getCommandCount();
+        Assert.assertEquals("v1", get("r1"));
+        Assert.assertEquals(1, reader.getReplicaReads());
+        Assert.assertTrue(replica.getCommandCount() > before);
+
+        // 从节点停止复制，主节点继续写入，落后超过容忍值后读主节点
+        replica.pauseReplication();
+        jedisCluster.set("r1", "v2");
+        Thread.sleep(100);
+        Assert.assertEquals("v2", get("r1"));
+        Assert.assertEquals(2, reader.getReplicaReads());
+        Thread.sleep(500);
+        Assert.assertEquals("v2", get("r1"));
+        Assert.assertEquals(2, reader.getReplicaReads());
+
+        // 恢复复制后重新读从节点
+        replica.resumeReplication();
+        Thread.sleep(200);
+        Assert.assertEquals("v2", get("r1"));
+        Assert.assertEquals(3, reader.getReplicaReads());
+    }
+
+    @Test
+    public void openReplicaBreakerReadsMaster() throws Exception {
+        CircuitBreakers breakers = new CircuitBreakers();
+        breakers.setMinimumCalls(1);
+        reader.shutdown();
+        reader = new ReplicaReader(router, new ClusterNodeExecutor(router, breakers), false, -1,
+                new GenericObjectPoolConfig(), Protocol.DEFAULT_TIMEOUT, 50);
+        jedisCluster.set("r3", "v3");
+        EmbeddedRedisNode replica = cluster.getReplicas(cluster.masterOf("r3")).get(0);
+        awaitProbe(replica, true);
+
+        // 从节点读失败计入熔断，回退主节点
+        replica.getFaults().disconnectRate(1);
+        Assert.assertEquals("v3", get("r3"));
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breakers.get(replica.getAddress()).getState());
+
+        // 探测恢复后熔断仍打开，直接读主节点
+        replica.getFaults().reset();
+        awaitProbe(replica, true);
+        Assert.assertEquals("v3", get("r3"));
+        Assert.assertEquals(0, reader.getReplicaReads());
+        Assert.assertEquals(1, reader.getFallbacks());
+    }
+
+    @Test
+    public void fallsBackToMasterWhenReplicaDown() throws Exception {
+        jedisCluster.set("r2", "v2");
+        EmbeddedRedisNode replica = cluster.getReplicas(cluster.masterOf("r2")).get(0);
+        awaitProbe(replica, true);
+        replica.stop();
+
+        Assert.assertEquals("v2", get("r2"));
+        Assert.assertEquals(0, reader.getReplicaReads());
+        Assert.assertEquals(1, reader.getFallbacks());
+        awaitProbe(replica, false);
+        Assert.assertEquals("v2", get("r2"));
+        Assert.assertEquals(1, reader.getFallbacks());
+    }
+
+    @Test
+    public void parsesInfoReplication() {
+        ReplicaReader.Replication replication = ReplicaReader.parseReplication("# Replication\r\nrole:master\r\n"
+                + "connected_slaves:2\r\n"
+                + "slave0:ip=10.0.0.2,port=7001,state=online,offset=100,lag=1\r\n"
+                + "slave1:ip=10.0.0.3,port=7001,state=wait_bgsave,offset=0,lag=0\r\n"
+                + "master_repl_offset:130\r\n");
+        Assert.assertEquals(130, replication.masterOffset);
+        Assert.assertEquals(Long.valueOf(100), replication.offsets.get("10.0.0.2:7001"));
+        Assert.assertNull(replication.offsets.get("10.0.0.3:7001"));
+    }
+
+    @Test
+    public void estimatesStalenessFromOffsets() {
+        ReplicaReader.OffsetHistory history = new ReplicaReader.OffsetHistory();
+        history.add(1000, 100, 2000);
+        Assert.assertEquals(0, history.staleness(100, 1000));
+        Assert.assertEquals(Long.MAX_VALUE, history.staleness(90, 1000));
+        history.add(2000, 150, 2000);
+        history.add(3000, 200, 2000);
+        // 从节点有第一次探测前的写入，没有之后的
+        Assert.assertEquals(2000, history.staleness(120, 3000));
+        Assert.assertEquals(1000, history.staleness(150, 3000));
+        Assert.assertEquals(0, history.staleness(200, 3000));
+        // 容忍窗口外的记录被丢弃，只保留窗口前的最后一条
+        history.add(5500, 300, 2000);
+        Assert.assertEquals(Long.MAX_VALUE, history.staleness(120, 5500));
+        Assert.assertEquals(Long.MAX_VALUE, history.staleness(150, 5500));
+        Assert.assertEquals(2500, history.staleness(200, 5500));
+    }
+
+    private String get(String key) {
+        return reader.read(key, command(key));
+    }
+
+    private static ClusterNodeExecutor.NodeCommand<String> command(final String key) {
+        return new ClusterNodeExecutor.NodeCommand<String>() {
+            @Override
+            public String execute(Jedis connection) {
+                return connection.get(key);
+            }
+        };
+    }
+
+    private void awaitProbe(EmbeddedRedisNode node, boolean available) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            Long latency = reader.latencies().get(node.getAddress());
+            if (latency != null && (latency >= 0) == available) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        Assert.fail("probe did not see " + node + " available=" + available);
+    }
+}
@@ -0,0 +1,85 @@
+package com.common.dao.redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 扫描迭代器：多个节点并发投递，调用线程取出全部key
+ */
+public class ScanIteratorTest {
+
+    @Test
+    public void iterateAllNodes() throws Exception {
+        final ScanIterator iterator = new ScanIterator(3, 2);
+        List<Thread> producers = new ArrayList<Thread>();
+        for (int n = 0; n < 3; n++) {
+            final int node = n;
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int page = 0; page < 10; page++) {
+                        iterator.offer(Arrays.asList(node + ":" + page + ":a", node + ":" + page + ":b"));
+                    }
+                    iterator.finish();
+                }
+            });
+            producer.start();
+            producers.add(producer);
+        }
+
+        Set<String> keys = new HashSet<String>();
+        while (iterator.hasNext()) {
+            keys.add(iterator.next());
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        Assert.assertEquals(60, keys.size());
+    }
+
+    @Test
+    public void closeStopsProducer() throws Exception {
+        final ScanIterator iterator = new ScanIterator(1, 1);
+        final boolean[] accepted = new boolean[1];
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                boolean ok = true;
+                while (ok) {
+                    ok = iterator.offer(Arrays.asList("k"));
+                }
+                accepted[0] = ok;
+            }
+        });
+        producer.start();
+        Assert.assertEquals("k", iterator.next());
+        iterator.close();
+        producer.join(2000);
+        Assert.assertFalse(producer.isAlive());
+        Assert.assertFalse(accepted[0]);
+        Assert.assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void abandonedIteratorStopsProducer() throws Exception {
+        final ScanIterator iterator = new ScanIterator(1, 1, 200);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (iterator.offer(Arrays.asList("k"))) {
+                }
+            }
+        });
+        producer.start();
+        Assert.assertEquals("k", iterator.next());
+        // 不再读取也不调用 close
+        producer.join(3000);
+        Assert.assertFalse(producer.isAlive());
+    }
+}
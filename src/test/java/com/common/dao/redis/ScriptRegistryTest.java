@@ -0,0 +1,45 @@
+package com.common.dao.redis;
+
+import com.alibaba.fastjson.TypeReference;
+import com.common.dao.redis.codec.JsonRedisCodec;
+import com.common.dao.redis.codec.RedisValueSerializer;
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.util.SafeEncoder;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * lua脚本：SHA1与redis一致，classpath加载缓存，返回值按类型转换
+ */
+public class ScriptRegistryTest {
+
+    private final ScriptRegistry registry = new ScriptRegistry(null,
+            new RedisValueSerializer(new JsonRedisCodec(), null));
+
+    @Test
+    public void sha1MatchesRedis() {
+        // redis-cli SCRIPT LOAD "return 1"
+        Assert.assertEquals("e0e1f9fabfc9d4800c877a703b823ac0578ff8db", new RedisScript("one", "return 1").getSha1());
+    }
+
+    @Test
+    public void loadFromClasspath() {
+        RedisScript script = registry.load("lua/compare_and_delete.lua");
+        Assert.assertTrue(script.getSource().contains("redis.call('del', KEYS[1])"));
+        Assert.assertSame(script, registry.load("lua/compare_and_delete.lua"));
+    }
+
+    @Test
+    public void convertReplies() {
+        Assert.assertEquals(Long.valueOf(3), registry.<Long>convert(3L, Long.class));
+        Assert.assertEquals(Boolean.FALSE, registry.<Boolean>convert(0L, Boolean.class));
+        Assert.assertEquals("ok", registry.<String>convert(SafeEncoder.encode("ok"), String.class));
+        Assert.assertEquals(Long.valueOf(12), registry.<Long>convert(SafeEncoder.encode("12"), Long.class));
+        List<Long> list = registry.convert(Arrays.<Object>asList(1L, SafeEncoder.encode("2")),
+                new TypeReference<List<Long>>() {}.getType());
+        Assert.assertEquals(Arrays.asList(1L, 2L), list);
+        Assert.assertNull(registry.convert(null, String.class));
+    }
+}
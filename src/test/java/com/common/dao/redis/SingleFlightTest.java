@@ -0,0 +1,74 @@
+package com.common.dao.redis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并发加载合并：同一key只调用一次loader，所有线程得到同一结果
+ */
+public class SingleFlightTest {
+
+    @Test
+    public void concurrentCallsShareOneLoad() throws Exception {
+        final SingleFlight singleFlight = new SingleFlight();
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger results = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 16; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Integer value = singleFlight.execute("k", new Callable<Integer>() {
+                            @Override
+                            public Integer call() throws Exception {
+                                loads.incrementAndGet();
+                                release.await();
+                                return 42;
+                            }
+                        });
+                        results.addAndGet(value);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        while (singleFlight.size() == 0) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(50);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(16 * 42, results.get());
+        Assert.assertEquals(0, singleFlight.size());
+    }
+
+    @Test
+    public void earlyRefreshNearExpiry() {
+        EarlyRefresh refresh = new EarlyRefresh(1.0, 100);
+        Assert.assertFalse(refresh.shouldRefresh("k", 1));
+        refresh.record("k", 1000);
+        Assert.assertTrue(refresh.shouldRefresh("k", 0));
+        Assert.assertFalse(refresh.shouldRefresh("k", -1));
+        int hits = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (refresh.shouldRefresh("k", 1000000)) {
+                hits++;
+            }
+        }
+        Assert.assertTrue(hits < 5);
+    }
+}
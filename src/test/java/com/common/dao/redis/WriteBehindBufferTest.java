@@ -0,0 +1,114 @@
+package com.common.dao.redis;
+
+import com.common.dao.redis.codec.JsonRedisCodec;
+import com.common.dao.redis.codec.RedisValueSerializer;
+import com.common.dao.redis.server.BuiltinScripts;
+import com.common.dao.redis.server.EmbeddedRedisCluster;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.util.SafeEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 延迟写入缓冲：按 key 丢弃、删除与正在写入的值并发时不复活，也不清除删除之后的同步写入
+ */
+public class WriteBehindBufferTest {
+
+    private EmbeddedRedisCluster cluster;
+
+    private JedisCluster jedisCluster;
+
+    private ClusterPipeline pipeline;
+
+    private WriteBehindBuffer buffer;
+
+    @Before
+    public void setup() throws Exception {
+        cluster = new EmbeddedRedisCluster(3).start();
+        BuiltinScripts.registerAll(cluster);
+        jedisCluster = cluster.newJedisCluster(new GenericObjectPoolConfig());
+        ClusterSlotRouter router = new ClusterSlotRouter(jedisCluster);
+        pipeline = new ClusterPipeline(router, 4);
+        ScriptRegistry scripts = new ScriptRegistry(new ClusterNodeExecutor(router),
+                new RedisValueSerializer(new JsonRedisCodec(), null));
+        buffer = new WriteBehindBuffer(pipeline, scripts, 60000, 0, 1000, 100);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        buffer.shutdown();
+        pipeline.shutdown();
+        jedisCluster.close();
+        cluster.close();
+    }
+
+    @Test
+    public void discardDropsKeyAndFields() {
+        buffer.hset("h", "f1", SafeEncoder.encode("1"), 0);
+        buffer.hset("h", "f2", SafeEncoder.encode("2"), 0);
+        buffer.set("s", SafeEncoder.encode("v"), 0);
+        buffer.set("s", SafeEncoder.encode("v2"), 0);
+        Assert.assertEquals(3, buffer.size());
+        Assert.assertEquals("v2", SafeEncoder.encode(buffer.get("s", null)));
+
+        buffer.discard("h", "f1");
+        Assert.assertNull(buffer.get("h", "f1"));
+        Assert.assertEquals("2", SafeEncoder.encode(buffer.get("h", "f2")));
+        buffer.discard("h");
+        Assert.assertNull(buffer.get("h", "f2"));
+        Assert.assertEquals(1, buffer.size());
+
+        buffer.flush();
+        Assert.assertEquals(0, buffer.size());
+        Assert.assertFalse(jedisCluster.exists("h"));
+        Assert.assertEquals("v2", jedisCluster.get("s"));
+    }
+
+    @Test
+    public void deleteDuringFlushIsFenced() throws Exception {
+        // 先加载槽位，之后各节点的写入并行发送
+        buffer.set("warm", SafeEncoder.encode("v"), 0);
+        buffer.flush();
+        buffer.set("wb1", SafeEncoder.encode("v"), 0);
+        buffer.hset("wb2", "f", SafeEncoder.encode("1"), 0);
+        buffer.hset("wb2", "g", SafeEncoder.encode("2"), 0);
+        buffer.set("wb3", SafeEncoder.encode("v"), 0);
+        cluster.getFaults().latency(300, TimeUnit.MILLISECONDS);
+        Thread flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                buffer.flush();
+            }
+        });
+        flusher.start();
+        for (int i = 0; i < 100 && buffer.size() > 0; i++) {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(0, buffer.size());
+        Assert.assertEquals("v", SafeEncoder.encode(buffer.get("wb1", null)));
+        // 等待各节点收到本次写入（回复前有延迟）
+        Thread.sleep(100);
+
+        // 写入尚未完成时删除：不再读到正在写入的值，写入完成后补发删除
+        buffer.discard("wb1");
+        buffer.discard("wb2", "f");
+        Assert.assertNull(buffer.get("wb1", null));
+        Assert.assertNull(buffer.get("wb2", "f"));
+        Assert.assertEquals("2", SafeEncoder.encode(buffer.get("wb2", "g")));
+        // 删除之后的同步写入不被补发的删除清除
+        buffer.discard("wb3");
+        jedisCluster.set("wb3", "sync");
+        flusher.join();
+        cluster.getFaults().reset();
+
+        Assert.assertFalse(jedisCluster.exists("wb1"));
+        Assert.assertFalse(jedisCluster.hexists("wb2", "f"));
+        Assert.assertEquals("2", jedisCluster.hget("wb2", "g"));
+        Assert.assertEquals("sync", jedisCluster.get("wb3"));
+    }
+}
@@ -0,0 +1,104 @@
+package com.common.dao.redis.codec;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.TypeReference;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 值序列化：smile写入带版本头，原json数据仍可读取
+ */
+public class RedisValueSerializerTest {
+
+    private final Type type = new TypeReference<Map<String, List<Integer>>>() {}.getType();
+
+    private Map<String, List<Integer>> sample() {
+        List<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < 100; i++) {
+            list.add(i * 1000);
+        }
+        Map<String, List<Integer>> value = new HashMap<String, List<Integer>>();
+        value.put("numbers", list);
+        return value;
+    }
+
+    @Test
+    public void smileRoundTrip() {
+        RedisValueSerializer serializer = new RedisValueSerializer(new SmileRedisCodec(), null);
+        byte[] data = serializer.serialize(sample());
+        Assert.assertEquals(SmileRedisCodec.VERSION, data[0]);
+        Assert.assertTrue(data.length < JSON.toJSONBytes(sample()).length);
+        Map<String, List<Integer>> value = serializer.deserialize(data, type);
+        Assert.assertEquals(sample(), value);
+    }
+
+    @Test
+    public void readLegacyJson() throws Exception {
+        RedisValueSerializer serializer = new RedisValueSerializer(new SmileRedisCodec(), null);
+        byte[] legacy = JSON.toJSONString(sample()).getBytes("UTF-8");
+        Map<String, List<Integer>> value = serializer.deserialize(legacy, type);
+        Assert.assertEquals(sample(), value);
+        Assert.assertEquals("1", serializer.deserialize("\"1\"".getBytes("UTF-8"), String.class));
+    }
+
+    @Test
+    public void readJsonStartingWithWhitespace() throws Exception {
+        RedisValueSerializer serializer = new RedisValueSerializer(new SmileRedisCodec(), null);
+        Map<String, List<Integer>> value = serializer.deserialize(("\n" + JSON.toJSONString(sample())).getBytes("UTF-8"), type);
+        Assert.assertEquals(sample(), value);
+        Assert.assertEquals("1", serializer.deserialize("\t\r\n\"1\"".getBytes("UTF-8"), String.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectReservedVersion() {
+        new RedisValueSerializer(new JsonRedisCodec(), Arrays.<RedisCodec>asList(new SmileRedisCodec() {
+            @Override
+            public byte version() {
+                return '\n';
+            }
+        }));
+    }
+
+    @Test
+    public void compressLargeValue() {
+        DeflateCompressor compressor = new DeflateCompressor(64, 1);
+        RedisValueSerializer serializer = new RedisValueSerializer(new JsonRedisCodec(), null, compressor);
+        byte[] data = serializer.serialize(sample());
+        Assert.assertTrue(DeflateCompressor.isCompressed(data));
+        Assert.assertEquals(sample(), serializer.<Map<String, List<Integer>>>deserialize(data, type));
+        Assert.assertEquals(1, compressor.getCompressedCount());
+        Assert.assertTrue(compressor.getRatio() < 1D);
+
+        // 小值不压缩
+        Assert.assertFalse(DeflateCompressor.isCompressed(serializer.serialize("small")));
+    }
+
+    @Test
+    public void ignoreInvalidCompressHeader() {
+        DeflateCompressor compressor = new DeflateCompressor(64, 1);
+        byte[] negative = {DeflateCompressor.MARKER, (byte) 0x80, 0, 0, 0, 'a'};
+        Assert.assertSame(negative, compressor.decompress(negative));
+        byte[] huge = {DeflateCompressor.MARKER, 0x10, 0, 0, 0, 'a'};
+        Assert.assertSame(huge, compressor.decompress(huge));
+        // 长度合理但不是deflate数据（如 setB 写入的原始字节）
+        byte[] invalid = {DeflateCompressor.MARKER, 0, 0, 0, 4, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF};
+        Assert.assertSame(invalid, compressor.decompress(invalid));
+        byte[] truncated = {DeflateCompressor.MARKER, 0, 0, 0, 100, 'a', 'b', 'c'};
+        Assert.assertSame(truncated, compressor.decompress(truncated));
+        Assert.assertEquals(0, compressor.getDecompressedCount());
+    }
+
+    @Test
+    public void jsonWriterKeepsFormat() throws Exception {
+        RedisValueSerializer serializer = new RedisValueSerializer(new JsonRedisCodec(), null);
+        Assert.assertEquals(JSON.toJSONString(sample()), new String(serializer.serialize(sample()), "UTF-8"));
+        Assert.assertNull(serializer.deserialize(null, type));
+    }
+}
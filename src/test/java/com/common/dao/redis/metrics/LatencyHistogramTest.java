@@ -0,0 +1,38 @@
+package com.common.dao.redis.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 直方图：百分位相对误差在桶宽以内
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100000; i++) {
+            histogram.record(i);
+        }
+        Assert.assertEquals(100000, histogram.getCount());
+        Assert.assertEquals(100000, histogram.getMax());
+        Assert.assertEquals(50000.5, histogram.getMean(), 0.001);
+        assertClose(50000, histogram.getPercentile(50));
+        assertClose(99000, histogram.getPercentile(99));
+        assertClose(99900, histogram.getPercentile(99.9));
+        Assert.assertEquals(1, histogram.getPercentile(0.0001));
+    }
+
+    @Test
+    public void bucketsCoverValues() {
+        for (long value = 0; value < 1000000; value += 7) {
+            int index = LatencyHistogram.index(value);
+            Assert.assertTrue(value <= LatencyHistogram.upperBound(index));
+            Assert.assertTrue(index == 0 || value > LatencyHistogram.upperBound(index - 1));
+        }
+    }
+
+    private static void assertClose(long expected, long actual) {
+        Assert.assertTrue("expected ~" + expected + " but " + actual, Math.abs(actual - expected) <= expected / 32 + 1);
+    }
+}
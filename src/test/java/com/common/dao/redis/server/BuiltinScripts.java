@@ -0,0 +1,222 @@
+package com.common.dao.redis.server;
+
+import com.common.dao.redis.ClusterPurger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @Description: src/main/resources/lua 下脚本及代码中内联脚本（ClusterPurger.UNLINK_SCRIPT）的Java实现，与lua源码逐行对应
+ * 				   修改lua脚本时需同步修改这里，否则SHA1不匹配，EVALSHA 回复无实现的错误
+ * 				   注意：测试中执行的是这里的Java实现，lua源码本身不会被解释执行，
+ * 				   lua中的语法错误或与Java实现不一致的逻辑测试无法发现，修改脚本后需在真实redis上验证
+ */
+public final class BuiltinScripts {
+
+    private BuiltinScripts() {
+    }
+
+    /**
+     * 注册全部脚本
+     *
+     * @param cluster
+     */
+    public static void registerAll(EmbeddedRedisCluster cluster) {
+        cluster.registerScript(source("lua/compare_and_delete.lua"), new ScriptHandler() {
+            @Override
+            public Object eval(Keyspace keyspace, List<byte[]> keys, List<byte[]> args) {
+                String key = Keyspace.key(keys.get(0));
+                if (Arrays.equals(keyspace.get(key), args.get(0))) {
+                    return keyspace.del(key);
+                }
+                return 0L;
+            }
+        });
+        cluster.registerScript(source("lua/compare_and_hdel.lua"), new ScriptHandler() {
+            @Override
+            public Object eval(Keyspace keyspace, List<byte[]> keys, List<byte[]> args) {
+                String key = Keyspace.key(keys.get(0));
+                String field = Keyspace.key(args.get(0));
+                if (Arrays.equals(keyspace.hget(key, field), args.get(1))) {
+                    return keyspace.hdel(key, field);
+                }
+                return 0L;
+            }
+        });
+        cluster.registerScript(source("lua/compare_and_set.lua"), new ScriptHandler() {
+            @Override
+            public Object eval(Keyspace keyspace, List<byte[]> keys, List<byte[]> args) {
+                String key = Keyspace.key(keys.get(0));
+                if (Arrays.equals(keyspace.get(key), args.get(0))) {
+                    long ttl = Resp.number(args.get(2));
+                    keyspace.set(key, args.get(1), ttl > 0 ? ttl * 1000 : 0);
+                    return 1L;
+                }
+                return 0L;
+            }
+        });
+        cluster.registerScript(source("lua/lock_acquire.lua"), new ScriptHandler() {
+            @Override
+            public Object eval(Keyspace keyspace, List<byte[]> keys, List<byte[]> args) {
+                if (keyspace.setIfAbsent(Keyspace.key(keys.get(0)), args.get(0), Resp.number(args.get(1)))) {
+                    return keyspace.incrBy(Keyspace.key(keys.get(1)), 1);
+                }
+                return 0L;
+            }
+        });
+        cluster.registerScript(source("lua/lock_renew.lua"), new ScriptHandler() {
+            @Override
+            public Object eval(Keyspace keyspace, List<byte[]> keys, List<byte[]> args) {
+                String key = Keyspace.key(keys.get(0));
+                if (Arrays.equals(keyspace.get(key), args.get(0))) {
+                    return keyspace.pexpire(key, Resp.number(args.get(1))) ? 1L : 0L;
+                }
+                return 0L;
+            }
+        });
+        cluster.registerScript(source("lua/bloom_add.lua"), new ScriptHandler() {
+            @Override
+            public Object eval(Keyspace keyspace, List<byte[]> keys, List<byte[]> args) {
+                String bitmap = Keyspace.key(keys.get(0));
+                for (byte[] offset : args) {
+                    keyspace.setbit(bitmap, Resp.number(offset), true);
+                }
+                String staging = Keyspace.key(keys.get(1));
+                if (keyspace.exists(staging)) {
+                    for (byte[] offset : args) {
+                        keyspace.setbit(staging, Resp.number(offset), true);
+                    }
+                }
+                return 1L;
+            }
+        });
+        cluster.registerScript(source("lua/ratelimit_token_bucket.lua"), new ScriptHandler() {
+            @Override
+            public Object eval(Keyspace keyspace, List<byte[]> keys, List<byte[]> args) {
+                String key = Keyspace.key(keys.get(0));
+                double rate = number(args.get(0));
+                double capacity = number(args.get(1));
+                double requested = number(args.get(2));
+                long now = System.currentTimeMillis();
+
+                Double tokens = number(keyspace.hget(key, "tokens"));
+                Double ts = number(keyspace.hget(key, "ts"));
+                if (tokens == null || ts == null) {
+                    tokens = capacity;
+                    ts = (double) now;
+                }
+                tokens = Math.min(capacity, tokens + Math.max(0, now - ts) * rate / 1000);
+
+                double granted = Math.min(requested, Math.floor(tokens));
+                tokens = tokens - granted;
+                keyspace.hset(key, "tokens", Resp.bytes(tostring(tokens)));
+                keyspace.hset(key, "ts", Resp.bytes(tostring(now)));
+                keyspace.pexpire(key, (long) Math.ceil(capacity * 1000 / rate) + 1000);
+                return (long) granted;
+            }
+        });
+        cluster.registerScript(source("lua/ratelimit_sliding_window.lua"), new ScriptHandler() {
+            @Override
+            public Object eval(Keyspace keyspace, List<byte[]> keys, List<byte[]> args) {
+                String key = Keyspace.key(keys.get(0));
+                double window = number(args.get(0));
+                double limit = number(args.get(1));
+                double requested = number(args.get(2));
+                long now = System.currentTimeMillis();
+
+                double current = Math.floor(now / window);
+                double elapsed = (now % window) / window;
+                Double curr = number(keyspace.hget(key, tostring(current)));
+                Double prev = number(keyspace.hget(key, tostring(current - 1)));
+                double used = (prev == null ? 0 : prev) * (1 - elapsed) + (curr == null ? 0 : curr);
+
+                double granted = Math.max(0, Math.min(requested, Math.floor(limit - used)));
+                if (granted > 0) {
+                    keyspace.hincrBy(key, tostring(current), (long) granted);
+                }
+                TreeMap<String, byte[]> hash = keyspace.hash(key, false);
+                if (hash != null) {
+                    for (Map.Entry<String, byte[]> field : new TreeMap<String, byte[]>(hash).entrySet()) {
+                        Double value = number(Keyspace.raw(field.getKey()));
+                        if (value != null && value < current - 1) {
+                            keyspace.hdel(key, field.getKey());
+                        }
+                    }
+                }
+                keyspace.pexpire(key, (long) (window * 2));
+                return (long) granted;
+            }
+        });
+        cluster.registerScript(ClusterPurger.UNLINK_SCRIPT, new ScriptHandler() {
+            @Override
+            public Object eval(Keyspace keyspace, List<byte[]> keys, List<byte[]> args) {
+                long count = 0;
+                for (byte[] key : keys) {
+                    count += keyspace.del(Keyspace.key(key));
+                }
+                return Resp.bytes(String.valueOf(count));
+            }
+        });
+    }
+
+    /**
+     * 读取classpath中的脚本源码，与 ScriptRegistry.load 一致
+     *
+     * @param resource
+     * @return
+     */
+    public static String source(String resource) {
+        InputStream in = BuiltinScripts.class.getClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            throw new IllegalArgumentException("script not found: " + resource);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), Resp.UTF8);
+        } catch (IOException e) {
+            throw new IllegalStateException("script read error: " + resource, e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * lua tonumber，不是数字时返回null
+     */
+    private static Double number(byte[] raw) {
+        if (raw == null) {
+            return null;
+        }
+        try {
+            return Double.valueOf(Resp.string(raw).trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * lua tostring(number)，即 %.14g
+     */
+    private static String tostring(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return new BigDecimal(value).round(new MathContext(14)).stripTrailingZeros().toPlainString();
+    }
+}
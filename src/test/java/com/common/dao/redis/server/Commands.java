@@ -0,0 +1,361 @@
+package com.common.dao.redis.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * @Description: 数据命令，在 Keyspace 上执行
+ * 				   调用方负责槽位路由检查，并以 keyspace 为锁保证原子性
+ */
+final class Commands {
+
+    /**
+     * 写命令，从节点不执行
+     */
+    private static final Set<String> WRITES = new HashSet<String>(Arrays.asList(
+            "SET", "SETEX", "PSETEX", "SETNX", "MSET", "DEL", "EXPIRE", "PEXPIRE", "PERSIST", "RENAME",
+            "INCR", "DECR", "INCRBY", "DECRBY", "SETBIT", "HSET", "HMSET", "HDEL", "HINCRBY",
+            "EVAL", "EVALSHA", "FLUSHALL", "FLUSHDB"));
+
+    /**
+     * 所有参数都是key的命令
+     */
+    private static final Set<String> ALL_KEYS = new HashSet<String>(Arrays.asList("MGET", "DEL", "EXISTS"));
+
+    /**
+     * 不带key的命令
+     */
+    private static final Set<String> NO_KEYS = new HashSet<String>(Arrays.asList(
+            "PING", "ECHO", "QUIT", "SELECT", "AUTH", "CLIENT", "INFO", "TIME", "READONLY", "READWRITE", "ASKING",
+            "CLUSTER", "SCAN", "KEYS", "DBSIZE", "FLUSHALL", "FLUSHDB", "SCRIPT",
+            "PUBLISH", "SUBSCRIBE", "UNSUBSCRIBE", "PSUBSCRIBE", "PUNSUBSCRIBE"));
+
+    private Commands() {
+    }
+
+    static boolean isWrite(String name) {
+        return WRITES.contains(name);
+    }
+
+    /**
+     * 命令操作的key，用于槽位路由
+     *
+     * @param name
+     * @param args
+     * @return
+     */
+    static List<byte[]> keys(String name, List<byte[]> args) {
+        if (NO_KEYS.contains(name) || args.size() < 2) {
+            return Collections.emptyList();
+        }
+        if (ALL_KEYS.contains(name)) {
+            return args.subList(1, args.size());
+        }
+        if ("MSET".equals(name)) {
+            List<byte[]> keys = new ArrayList<byte[]>();
+            for (int i = 1; i < args.size(); i += 2) {
+                keys.add(args.get(i));
+            }
+            return keys;
+        }
+        if ("RENAME".equals(name)) {
+            return args.subList(1, Math.min(3, args.size()));
+        }
+        if ("EVAL".equals(name) || "EVALSHA".equals(name)) {
+            if (args.size() < 3) {
+                return Collections.emptyList();
+            }
+            int numkeys = (int) Resp.number(args.get(2));
+            if (numkeys < 0 || 3 + numkeys > args.size()) {
+                throw new RespError("ERR Number of keys can't be greater than number of args");
+            }
+            return args.subList(3, 3 + numkeys);
+        }
+        return args.subList(1, 2);
+    }
+
+    /**
+     * 执行
+     *
+     * @param keyspace
+     * @param name 大写命令名
+     * @param args 包括命令名
+     * @return 回复
+     */
+    static Object execute(Keyspace keyspace, String name, List<byte[]> args) {
+        int argc = args.size();
+        if ("GET".equals(name)) {
+            arity(name, argc, 2, 2);
+            return keyspace.get(key(args, 1));
+        } else if ("SET".equals(name)) {
+            return set(keyspace, args);
+        } else if ("SETEX".equals(name) || "PSETEX".equals(name)) {
+            arity(name, argc, 4, 4);
+            long ttl = positive(args.get(2));
+            keyspace.set(key(args, 1), args.get(3), "SETEX".equals(name) ? ttl * 1000 : ttl);
+            return Resp.OK;
+        } else if ("SETNX".equals(name)) {
+            arity(name, argc, 3, 3);
+            return keyspace.setIfAbsent(key(args, 1), args.get(2), 0);
+        } else if ("MGET".equals(name)) {
+            arity(name, argc, 2, -1);
+            List<byte[]> values = new ArrayList<byte[]>(argc - 1);
+            for (int i = 1; i < argc; i++) {
+                Object value;
+                try {
+                    value = keyspace.get(key(args, i));
+                } catch (RespError e) {
+                    value = null;
+                }
+                values.add((byte[]) value);
+            }
+            return values;
+        } else if ("MSET".equals(name)) {
+            if (argc < 3 || argc % 2 == 0) {
+                throw RespError.arity(name);
+            }
+            for (int i = 1; i < argc; i += 2) {
+                keyspace.set(key(args, i), args.get(i + 1), 0);
+            }
+            return Resp.OK;
+        } else if ("DEL".equals(name)) {
+            arity(name, argc, 2, -1);
+            long deleted = 0;
+            for (int i = 1; i < argc; i++) {
+                deleted += keyspace.del(key(args, i));
+            }
+            return deleted;
+        } else if ("EXISTS".equals(name)) {
+            arity(name, argc, 2, -1);
+            long count = 0;
+            for (int i = 1; i < argc; i++) {
+                count += keyspace.exists(key(args, i)) ? 1 : 0;
+            }
+            return count;
+        } else if ("EXPIRE".equals(name) || "PEXPIRE".equals(name)) {
+            arity(name, argc, 3, 3);
+            long ttl = Resp.number(args.get(2));
+            return keyspace.pexpire(key(args, 1), "EXPIRE".equals(name) ? ttl * 1000 : ttl);
+        } else if ("TTL".equals(name)) {
+            arity(name, argc, 2, 2);
+            long pttl = keyspace.pttl(key(args, 1));
+            return pttl < 0 ? pttl : (pttl + 500) / 1000;
+        } else if ("PTTL".equals(name)) {
+            arity(name, argc, 2, 2);
+            return keyspace.pttl(key(args, 1));
+        } else if ("PERSIST".equals(name)) {
+            arity(name, argc, 2, 2);
+            return keyspace.persist(key(args, 1));
+        } else if ("RENAME".equals(name)) {
+            arity(name, argc, 3, 3);
+            keyspace.rename(key(args, 1), key(args, 2));
+            return Resp.OK;
+        } else if ("TYPE".equals(name)) {
+            arity(name, argc, 2, 2);
+            String key = key(args, 1);
+            if (!keyspace.exists(key)) {
+                return new Resp.Status("none");
+            }
+            return new Resp.Status(keyspace.isHash(key) ? "hash" : "string");
+        } else if ("INCR".equals(name) || "DECR".equals(name)) {
+            arity(name, argc, 2, 2);
+            return keyspace.incrBy(key(args, 1), "INCR".equals(name) ? 1 : -1);
+        } else if ("INCRBY".equals(name) || "DECRBY".equals(name)) {
+            arity(name, argc, 3, 3);
+            long delta = Resp.number(args.get(2));
+            return keyspace.incrBy(key(args, 1), "INCRBY".equals(name) ? delta : -delta);
+        } else if ("STRLEN".equals(name)) {
+            arity(name, argc, 2, 2);
+            byte[] value = keyspace.get(key(args, 1));
+            return (long) (value == null ? 0 : value.length);
+        } else if ("GETBIT".equals(name)) {
+            arity(name, argc, 3, 3);
+            return keyspace.getbit(key(args, 1), Resp.number(args.get(2)));
+        } else if ("SETBIT".equals(name)) {
+            arity(name, argc, 4, 4);
+            long bit = Resp.number(args.get(3));
+            if (bit != 0 && bit != 1) {
+                throw new RespError("ERR bit is not an integer or out of range");
+            }
+            return keyspace.setbit(key(args, 1), Resp.number(args.get(2)), bit == 1);
+        } else if ("HGET".equals(name)) {
+            arity(name, argc, 3, 3);
+            return keyspace.hget(key(args, 1), key(args, 2));
+        } else if ("HSET".equals(name) || "HMSET".equals(name)) {
+            if (argc < 4 || argc % 2 != 0) {
+                throw RespError.arity(name);
+            }
+            long added = 0;
+            for (int i = 2; i < argc; i += 2) {
+                added += keyspace.hset(key(args, 1), key(args, i), args.get(i + 1)) ? 1 : 0;
+            }
+            return "HSET".equals(name) ? (Object) added : Resp.OK;
+        } else if ("HMGET".equals(name)) {
+            arity(name, argc, 3, -1);
+            List<byte[]> values = new ArrayList<byte[]>(argc - 2);
+            for (int i = 2; i < argc; i++) {
+                values.add(keyspace.hget(key(args, 1), key(args, i)));
+            }
+            return values;
+        } else if ("HDEL".equals(name)) {
+            arity(name, argc, 3, -1);
+            long deleted = 0;
+            for (int i = 2; i < argc; i++) {
+                deleted += keyspace.hdel(key(args, 1), key(args, i));
+            }
+            return deleted;
+        } else if ("HGETALL".equals(name) || "HKEYS".equals(name) || "HVALS".equals(name)) {
+            arity(name, argc, 2, 2);
+            TreeMap<String, byte[]> hash = keyspace.hash(key(args, 1), false);
+            List<byte[]> reply = new ArrayList<byte[]>();
+            if (hash != null) {
+                for (Map.Entry<String, byte[]> entry : hash.entrySet()) {
+                    if (!"HVALS".equals(name)) {
+                        reply.add(Keyspace.raw(entry.getKey()));
+                    }
+                    if (!"HKEYS".equals(name)) {
+                        reply.add(entry.getValue());
+                    }
+                }
+            }
+            return reply;
+        } else if ("HLEN".equals(name)) {
+            arity(name, argc, 2, 2);
+            TreeMap<String, byte[]> hash = keyspace.hash(key(args, 1), false);
+            return (long) (hash == null ? 0 : hash.size());
+        } else if ("HEXISTS".equals(name)) {
+            arity(name, argc, 3, 3);
+            return keyspace.hget(key(args, 1), key(args, 2)) != null;
+        } else if ("HINCRBY".equals(name)) {
+            arity(name, argc, 4, 4);
+            return keyspace.hincrBy(key(args, 1), key(args, 2), Resp.number(args.get(3)));
+        } else if ("HSCAN".equals(name)) {
+            arity(name, argc, 3, -1);
+            ScanOptions options = new ScanOptions(args, 3);
+            Keyspace.ScanResult<Map.Entry<String, byte[]>> result =
+                    keyspace.hscan(key(args, 1), options.cursor(args.get(2)), options.pattern, options.count);
+            List<byte[]> items = new ArrayList<byte[]>();
+            for (Map.Entry<String, byte[]> entry : result.getItems()) {
+                items.add(Keyspace.raw(entry.getKey()));
+                items.add(entry.getValue());
+            }
+            return Arrays.asList(Resp.bytes(Long.toString(result.getCursor())), items);
+        } else if ("SCAN".equals(name)) {
+            arity(name, argc, 2, -1);
+            ScanOptions options = new ScanOptions(args, 2);
+            Keyspace.ScanResult<String> result = keyspace.scan(options.cursor(args.get(1)), options.pattern, options.count);
+            List<byte[]> keys = new ArrayList<byte[]>(result.getItems().size());
+            for (String key : result.getItems()) {
+                keys.add(Keyspace.raw(key));
+            }
+            return Arrays.asList(Resp.bytes(Long.toString(result.getCursor())), keys);
+        } else if ("KEYS".equals(name)) {
+            arity(name, argc, 2, 2);
+            List<byte[]> keys = new ArrayList<byte[]>();
+            for (String key : keyspace.keys(key(args, 1))) {
+                keys.add(Keyspace.raw(key));
+            }
+            return keys;
+        } else if ("DBSIZE".equals(name)) {
+            return (long) keyspace.size();
+        } else if ("FLUSHALL".equals(name) || "FLUSHDB".equals(name)) {
+            keyspace.flush();
+            return Resp.OK;
+        } else if ("TIME".equals(name)) {
+            long micros = System.currentTimeMillis() * 1000 + (System.nanoTime() / 1000) % 1000;
+            return Arrays.asList(Resp.bytes(Long.toString(micros / 1000000)), Resp.bytes(Long.toString(micros % 1000000)));
+        }
+        throw new RespError("ERR unknown command '" + name.toLowerCase(Locale.ROOT) + "'");
+    }
+
+    private static Object set(Keyspace keyspace, List<byte[]> args) {
+        if (args.size() < 3) {
+            throw RespError.arity("SET");
+        }
+        long ttl = 0;
+        boolean nx = false;
+        boolean xx = false;
+        for (int i = 3; i < args.size(); i++) {
+            String option = Resp.string(args.get(i)).toUpperCase(Locale.ROOT);
+            if ("NX".equals(option)) {
+                nx = true;
+            } else if ("XX".equals(option)) {
+                xx = true;
+            } else if (("EX".equals(option) || "PX".equals(option)) && i + 1 < args.size()) {
+                ttl = positive(args.get(++i));
+                if ("EX".equals(option)) {
+                    ttl *= 1000;
+                }
+            } else {
+                throw RespError.syntax();
+            }
+        }
+        if (nx && xx) {
+            throw RespError.syntax();
+        }
+        String key = key(args, 1);
+        boolean exists = keyspace.exists(key);
+        if ((nx && exists) || (xx && !exists)) {
+            return null;
+        }
+        keyspace.set(key, args.get(2), ttl);
+        return Resp.OK;
+    }
+
+    /**
+     * SCAN/HSCAN 的 MATCH 与 COUNT 参数
+     */
+    private static class ScanOptions {
+        private String pattern;
+        private int count = 10;
+
+        ScanOptions(List<byte[]> args, int from) {
+            for (int i = from; i < args.size(); i++) {
+                String option = Resp.string(args.get(i)).toUpperCase(Locale.ROOT);
+                if ("MATCH".equals(option) && i + 1 < args.size()) {
+                    pattern = key(args, ++i);
+                } else if ("COUNT".equals(option) && i + 1 < args.size()) {
+                    count = (int) Resp.number(args.get(++i));
+                    if (count <= 0) {
+                        throw RespError.syntax();
+                    }
+                } else {
+                    throw RespError.syntax();
+                }
+            }
+        }
+
+        long cursor(byte[] raw) {
+            try {
+                return Long.parseLong(Resp.string(raw));
+            } catch (NumberFormatException e) {
+                throw new RespError("ERR invalid cursor");
+            }
+        }
+    }
+
+    private static String key(List<byte[]> args, int index) {
+        return Keyspace.key(args.get(index));
+    }
+
+    private static long positive(byte[] raw) {
+        long value = Resp.number(raw);
+        if (value <= 0) {
+            throw new RespError("ERR invalid expire time");
+        }
+        return value;
+    }
+
+    private static void arity(String name, int argc, int min, int max) {
+        if (argc < min || (max >= 0 && argc > max)) {
+            throw RespError.arity(name);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.common.dao.redis.server;
+
+import com.common.util.CodecUtils;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.util.JedisClusterCRC16;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Description: 进程内redis集群，用于单元测试与压测，无需外部redis
+ * 				   支持 RedisHelper 用到的字符串、hash、位图、过期、SCAN/HSCAN、发布订阅、脚本及 CLUSTER SLOTS/NODES
+ * 				   槽位在主节点间平均分配，可通过 migrate 迁移以触发客户端 MOVED 处理；
+ * 				   lua 脚本不解释执行，需通过 registerScript 注册Java实现（见 BuiltinScripts）
+ * 				   getFaults() 的延迟与故障作用于所有节点，EmbeddedRedisNode.getFaults() 只作用于单个节点
+ *
+ * 				   EmbeddedRedisCluster cluster = new EmbeddedRedisCluster(3, 1).start();
+ * 				   JedisCluster jedisCluster = cluster.newJedisCluster(new GenericObjectPoolConfig());
+ */
+public class EmbeddedRedisCluster implements Closeable {
+
+    private final List<EmbeddedRedisNode> masters = new ArrayList<EmbeddedRedisNode>();
+
+    private final Map<EmbeddedRedisNode, List<EmbeddedRedisNode>> replicas = new ConcurrentHashMap<EmbeddedRedisNode, List<EmbeddedRedisNode>>();
+
+    private final FaultInjector faults = new FaultInjector();
+
+    private final PubSubHub pubSub = new PubSubHub();
+
+    private final Map<String, ScriptHandler> scriptHandlers = new ConcurrentHashMap<String, ScriptHandler>();
+
+    /**
+     * slot -> 主节点
+     */
+    private volatile EmbeddedRedisNode[] slots = new EmbeddedRedisNode[JedisCluster.HASHSLOTS];
+
+    public EmbeddedRedisCluster(int masterCount) {
+        this(masterCount, 0);
+    }
+
+    /**
+     * @param masterCount 主节点数
+     * @param replicasPerMaster 每个主节点的从节点数
+     */
+    public EmbeddedRedisCluster(int masterCount, int replicasPerMaster) {
+        if (masterCount < 1) {
+            throw new IllegalArgumentException("masterCount must be positive");
+        }
+        int index = 0;
+        for (int i = 0; i < masterCount; i++) {
+            EmbeddedRedisNode master = new EmbeddedRedisNode(this, nodeId(index++), null);
+            masters.add(master);
+            List<EmbeddedRedisNode> list = new ArrayList<EmbeddedRedisNode>();
+            for (int j = 0; j < replicasPerMaster; j++) {
+                list.add(new EmbeddedRedisNode(this, nodeId(index++), master));
+            }
+            replicas.put(master, Collections.unmodifiableList(list));
+            int start = i * JedisCluster.HASHSLOTS / masterCount;
+            int end = (i + 1) * JedisCluster.HASHSLOTS / masterCount;
+            for (int slot = start; slot < end; slot++) {
+                slots[slot] = master;
+            }
+        }
+    }
+
+    /**
+     * 启动所有节点
+     *
+     * @return
+     * @throws IOException
+     */
+    public EmbeddedRedisCluster start() throws IOException {
+        for (EmbeddedRedisNode node : getNodes()) {
+            node.start();
+        }
+        return this;
+    }
+
+    /**
+     * 停止所有节点
+     */
+    @Override
+    public void close() {
+        for (EmbeddedRedisNode node : getNodes()) {
+            node.stop();
+        }
+    }
+
+    /**
+     * 创建连接本集群的 JedisCluster
+     *
+     * @param poolConfig
+     * @return
+     */
+    public JedisCluster newJedisCluster(GenericObjectPoolConfig poolConfig) {
+        return new JedisCluster(getStartNodes(), 2000, 5, poolConfig);
+    }
+
+    /**
+     * JedisCluster 初始节点
+     *
+     * @return
+     */
+    public Set<HostAndPort> getStartNodes() {
+        Set<HostAndPort> nodes = new LinkedHashSet<HostAndPort>();
+        for (EmbeddedRedisNode master : masters) {
+            nodes.add(new HostAndPort(master.getHost(), master.getPort()));
+        }
+        return nodes;
+    }
+
+    public List<EmbeddedRedisNode> getMasters() {
+        return Collections.unmodifiableList(masters);
+    }
+
+    public List<EmbeddedRedisNode> getReplicas(EmbeddedRedisNode master) {
+        List<EmbeddedRedisNode> list = replicas.get(master);
+        return list == null ? Collections.<EmbeddedRedisNode>emptyList() : list;
+    }
+
+    /**
+     * 所有节点，主节点在前
+     *
+     * @return
+     */
+    public List<EmbeddedRedisNode> getNodes() {
+        List<EmbeddedRedisNode> nodes = new ArrayList<EmbeddedRedisNode>(masters);
+        for (EmbeddedRedisNode master : masters) {
+            nodes.addAll(getReplicas(master));
+        }
+        return nodes;
+    }
+
+    /**
+     * key所在主节点
+     *
+     * @param key
+     * @return
+     */
+    public EmbeddedRedisNode masterOf(String key) {
+        return slots[JedisClusterCRC16.getSlot(key)];
+    }
+
+    /**
+     * 作用于所有节点的故障注入
+     *
+     * @return
+     */
+    public FaultInjector getFaults() {
+        return faults;
+    }
+
+    /**
+     * 注册脚本的Java实现
+     *
+     * @param source lua源码，按其SHA1匹配 EVAL/EVALSHA
+     * @param handler
+     */
+    public void registerScript(String source, ScriptHandler handler) {
+        scriptHandlers.put(sha1(Resp.bytes(source)), handler);
+    }
+
+    /**
+     * 清空所有节点的数据
+     */
+    public void flushAll() {
+        for (EmbeddedRedisNode master : masters) {
+            synchronized (master.getKeyspace()) {
+                master.getKeyspace().flush();
+            }
+        }
+    }
+
+    /**
+     * 把槽位迁移到另一个主节点（连同数据），客户端访问原节点时收到 MOVED
+     *
+     * @param slot
+     * @param target
+     */
+    public synchronized void migrate(int slot, EmbeddedRedisNode target) {
+        if (!target.isMaster()) {
+            throw new IllegalArgumentException("target must be a master: " + target);
+        }
+        EmbeddedRedisNode source = slots[slot];
+        if (source == target) {
+            return;
+        }
+        Keyspace from = source.getKeyspace();
+        Keyspace to = target.getKeyspace();
+        synchronized (from) {
+            synchronized (to) {
+                for (String key : from.keys(null)) {
+                    if (slot(Keyspace.raw(key)) != slot) {
+                        continue;
+                    }
+                    long pttl = from.pttl(key);
+                    if (from.isHash(key)) {
+                        for (Map.Entry<String, byte[]> entry : from.hash(key, false).entrySet()) {
+                            to.hset(key, entry.getKey(), entry.getValue());
+                        }
+                        if (pttl > 0) {
+                            to.pexpire(key, pttl);
+                        }
+                    } else {
+                        to.set(key, from.get(key), pttl > 0 ? pttl : 0);
+                    }
+                    from.del(key);
+                }
+                EmbeddedRedisNode[] copy = slots.clone();
+                copy[slot] = target;
+                slots = copy;
+            }
+        }
+    }
+
+    PubSubHub getPubSub() {
+        return pubSub;
+    }
+
+    ScriptHandler scriptHandler(String sha) {
+        return scriptHandlers.get(sha);
+    }
+
+    EmbeddedRedisNode slotOwner(int slot) {
+        return slots[slot];
+    }
+
+    /**
+     * CLUSTER SLOTS 回复：[start, end, [host, port, id], [从节点]...]
+     *
+     * @return
+     */
+    List<Object> slotsReply() {
+        List<Object> reply = new ArrayList<Object>();
+        EmbeddedRedisNode[] current = slots;
+        int start = 0;
+        for (int slot = 1; slot <= current.length; slot++) {
+            if (slot < current.length && current[slot] == current[start]) {
+                continue;
+            }
+            EmbeddedRedisNode master = current[start];
+            List<Object> range = new ArrayList<Object>();
+            range.add((long) start);
+            range.add((long) slot - 1);
+            range.add(nodeReply(master));
+            for (EmbeddedRedisNode replica : getReplicas(master)) {
+                range.add(nodeReply(replica));
+            }
+            reply.add(range);
+            start = slot;
+        }
+        return reply;
+    }
+
+    /**
+     * CLUSTER NODES 回复
+     *
+     * @param self 收到命令的节点
+     * @return
+     */
+    String nodesReply(EmbeddedRedisNode self) {
+        EmbeddedRedisNode[] current = slots;
+        StringBuilder reply = new StringBuilder();
+        for (EmbeddedRedisNode node : getNodes()) {
+            reply.append(node.getId()).append(' ').append(node.getAddress()).append(' ');
+            if (node == self) {
+                reply.append("myself,");
+            }
+            reply.append(node.isMaster() ? "master" : "slave");
+            if (!node.isRunning()) {
+                reply.append(",fail");
+            }
+            reply.append(' ').append(node.isMaster() ? "-" : node.getMaster().getId());
+            reply.append(" 0 0 ").append(masters.indexOf(node.getMaster()) + 1);
+            reply.append(node.isRunning() ? " connected" : " disconnected");
+            if (node.isMaster()) {
+                int start = -1;
+                for (int slot = 0; slot <= current.length; slot++) {
+                    boolean owned = slot < current.length && current[slot] == node;
+                    if (owned && start < 0) {
+                        start = slot;
+                    } else if (!owned && start >= 0) {
+                        reply.append(' ').append(start);
+                        if (slot - 1 > start) {
+                            reply.append('-').append(slot - 1);
+                        }
+                        start = -1;
+                    }
+                }
+            }
+            reply.append('\n');
+        }
+        return reply.toString();
+    }
+
+    /**
+     * 计算key槽位，支持 {hashtag}
+     *
+     * @param key
+     * @return
+     */
+    static int slot(byte[] key) {
+        int start = -1;
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] == '{' && start < 0) {
+                start = i;
+            } else if (key[i] == '}' && start >= 0) {
+                if (i > start + 1) {
+                    key = Arrays.copyOfRange(key, start + 1, i);
+                }
+                break;
+            }
+        }
+        return JedisClusterCRC16.getCRC16(key) & (JedisCluster.HASHSLOTS - 1);
+    }
+
+    static String sha1(byte[] source) {
+        return CodecUtils.byte2hex(CodecUtils.encryptSHA(source)).toLowerCase(Locale.ROOT);
+    }
+
+    private static List<Object> nodeReply(EmbeddedRedisNode node) {
+        List<Object> reply = new ArrayList<Object>(3);
+        reply.add(Resp.bytes(node.getHost()));
+        reply.add((long) node.getPort());
+        reply.add(Resp.bytes(node.getId()));
+        return reply;
+    }
+
+    private static String nodeId(int index) {
+        return sha1(Resp.bytes("embedded-redis-node-" + index));
+    }
+}
@@ -0,0 +1,188 @@
+package com.common.dao.redis.server;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.util.JedisClusterCRC16;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 进程内集群：JedisCluster 路由、MOVED、故障注入、发布订阅、从节点只读
+ */
+public class EmbeddedRedisClusterTest {
+
+    private EmbeddedRedisCluster cluster;
+
+    private JedisCluster jedisCluster;
+
+    @Before
+    public void setup() throws Exception {
+        cluster = new EmbeddedRedisCluster(3, 1).start();
+        jedisCluster = cluster.newJedisCluster(new GenericObjectPoolConfig());
+    }
+
+    @After
+    public void teardown() throws Exception {
+        jedisCluster.close();
+        cluster.close();
+    }
+
+    @Test
+    public void routesKeysAcrossMasters() {
+        for (int i = 0; i < 300; i++) {
+            jedisCluster.set("k" + i, "v" + i);
+        }
+        for (int i = 0; i < 300; i++) {
+            Assert.assertEquals("v" + i, jedisCluster.get("k" + i));
+        }
+        for (EmbeddedRedisNode master : cluster.getMasters()) {
+            Assert.assertTrue(master.getKeyspace().size() > 50);
+        }
+        jedisCluster.hset("h", "f", "1");
+        Assert.assertEquals(Long.valueOf(3), jedisCluster.hincrBy("h", "f", 2));
+        jedisCluster.expire("h", 100);
+        Assert.assertTrue(jedisCluster.ttl("h") > 90);
+    }
+
+    @Test
+    public void everyShippedScriptHasPort() throws Exception {
+        BuiltinScripts.registerAll(cluster);
+        File dir = new File(getClass().getClassLoader().getResource("lua").toURI());
+        File[] scripts = dir.listFiles();
+        Assert.assertTrue(scripts != null && scripts.length > 0);
+        for (File script : scripts) {
+            String source = BuiltinScripts.source("lua/" + script.getName());
+            Assert.assertNotNull("no java port for " + script.getName(),
+                    cluster.scriptHandler(EmbeddedRedisCluster.sha1(Resp.bytes(source))));
+        }
+    }
+
+    @Test
+    public void followsMovedAfterMigration() {
+        jedisCluster.set("moving", "1");
+        EmbeddedRedisNode source = cluster.masterOf("moving");
+        EmbeddedRedisNode target = cluster.getMasters().get((cluster.getMasters().indexOf(source) + 1) % 3);
+        cluster.migrate(JedisClusterCRC16.getSlot("moving"), target);
+        Assert.assertSame(target, cluster.masterOf("moving"));
+        Assert.assertEquals("1", jedisCluster.get("moving"));
+
+        Jedis direct = new Jedis(source.getHost(), source.getPort());
+        try {
+            direct.get("moving");
+            Assert.fail();
+        } catch (JedisMovedDataException e) {
+            Assert.assertEquals(target.getPort(), e.getTargetNode().getPort());
+        } finally {
+            direct.close();
+        }
+    }
+
+    @Test
+    public void injectsFailuresAndLatency() {
+        jedisCluster.set("f", "1");
+        cluster.getFaults().errorRate(1).only("GET");
+        try {
+            jedisCluster.get("f");
+            Assert.fail();
+        } catch (JedisDataException e) {
+            Assert.assertTrue(e.getMessage().contains("injected"));
+        }
+        Assert.assertEquals("OK", jedisCluster.set("f", "2"));
+
+        cluster.getFaults().reset().latency(50, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        Assert.assertEquals("2", jedisCluster.get("f"));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        cluster.getFaults().reset();
+        cluster.masterOf("f").getFaults().disconnectRate(1);
+        try {
+            jedisCluster.get("f");
+            Assert.fail();
+        } catch (JedisException e) {
+            // 连接被关闭后重试仍失败
+        }
+        cluster.masterOf("f").getFaults().reset();
+        Assert.assertEquals("2", jedisCluster.get("f"));
+    }
+
+    @Test
+    public void replicaServesReadsAfterReadonly() throws Exception {
+        jedisCluster.set("r", "1");
+        EmbeddedRedisNode replica = cluster.getReplicas(cluster.masterOf("r")).get(0);
+        Jedis jedis = new Jedis(replica.getHost(), replica.getPort());
+        try {
+            try {
+                jedis.get("r");
+                Assert.fail();
+            } catch (JedisMovedDataException e) {
+                Assert.assertEquals(cluster.masterOf("r").getPort(), e.getTargetNode().getPort());
+            }
+            // jedis 2.7.3 没有 READONLY 命令，直接写入连接
+            jedis.getClient().getSocket().getOutputStream().write(Resp.bytes("*1\r\n$8\r\nREADONLY\r\n"));
+            Assert.assertEquals("OK", jedis.getClient().getStatusCodeReply());
+            Assert.assertEquals("1", jedis.get("r"));
+            try {
+                jedis.set("r", "2");
+                Assert.fail();
+            } catch (JedisMovedDataException e) {
+                // 写命令仍重定向到主节点
+            }
+        } finally {
+            jedis.close();
+        }
+    }
+
+    @Test
+    public void deliversMessagesAcrossNodes() throws Exception {
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        final CountDownLatch received = new CountDownLatch(1);
+        final AtomicReference<String> message = new AtomicReference<String>();
+        final JedisPubSub pubSub = new JedisPubSub() {
+            @Override
+            public void onSubscribe(String channel, int subscribedChannels) {
+                subscribed.countDown();
+            }
+
+            @Override
+            public void onMessage(String channel, String text) {
+                message.set(text);
+                received.countDown();
+            }
+        };
+        EmbeddedRedisNode first = cluster.getMasters().get(0);
+        final Jedis subscriber = new Jedis(first.getHost(), first.getPort());
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                subscriber.subscribe(pubSub, "ch");
+            }
+        });
+        thread.start();
+        Assert.assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+
+        EmbeddedRedisNode second = cluster.getMasters().get(1);
+        Jedis publisher = new Jedis(second.getHost(), second.getPort());
+        Assert.assertEquals(Long.valueOf(1), publisher.publish("ch", "hello"));
+        publisher.close();
+        Assert.assertTrue(received.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("hello", message.get());
+
+        pubSub.unsubscribe();
+        thread.join(5000);
+        Assert.assertFalse(thread.isAlive());
+        subscriber.close();
+    }
+}
@@ -0,0 +1,564 @@
+package com.common.dao.redis.server;
+
+import com.common.dao.redis.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description: 集群中的一个节点，每个客户端连接一个线程
+ * 				   主节点负责 EmbeddedRedisCluster 分配的槽位，不属于自己的key回复 MOVED；
+ * 				   从节点与主节点共享数据，连接发送 READONLY 后可执行读命令，否则回复 MOVED 到主节点
+ * 				   主节点按写命令参数字节数累加 master_repl_offset，INFO replication 列出从节点及其 offset；
+ * 				   数据共享，从节点 offset 与主节点相同，pauseReplication() 后停在暂停时的 offset，用于模拟复制落后
+ * 				   stop() 后端口保留，start() 在同一端口重新监听，用于模拟节点宕机与恢复
+ */
+public class EmbeddedRedisNode {
+    protected transient final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final String HOST = "127.0.0.1";
+
+    /**
+     * 已直接推送回复（订阅确认）或连接已断开，不再写回复
+     */
+    private static final Object NO_REPLY = new Object();
+
+    private final EmbeddedRedisCluster cluster;
+
+    private final String id;
+
+    private final EmbeddedRedisNode master;
+
+    private final Keyspace keyspace;
+
+    private final FaultInjector faults = new FaultInjector();
+
+    /**
+     * 已加载的脚本 SHA1 -> 源码，每个节点独立，SCRIPT FLUSH 后 EVALSHA 回复 NOSCRIPT
+     */
+    private final Map<String, byte[]> scripts = new ConcurrentHashMap<String, byte[]>();
+
+    private final Set<Connection> connections = Collections.newSetFromMap(new ConcurrentHashMap<Connection, Boolean>());
+
+    private final AtomicLong commands = new AtomicLong();
+
+    /**
+     * 主节点的 master_repl_offset
+     */
+    private final AtomicLong replicationOffset = new AtomicLong();
+
+    /**
+     * 从节点暂停复制时的 offset，未暂停为 -1
+     */
+    private volatile long pausedOffset = -1;
+
+    private volatile ServerSocket serverSocket;
+
+    private volatile int port;
+
+    private ExecutorService executor;
+
+    EmbeddedRedisNode(EmbeddedRedisCluster cluster, String id, EmbeddedRedisNode master) {
+        this.cluster = cluster;
+        this.id = id;
+        this.master = master;
+        this.keyspace = master == null ? new Keyspace() : master.keyspace;
+    }
+
+    /**
+     * 开始监听，首次使用随机端口，之后使用同一端口
+     *
+     * @throws IOException
+     */
+    public synchronized void start() throws IOException {
+        if (serverSocket != null) {
+            return;
+        }
+        ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        socket.bind(new InetSocketAddress(InetAddress.getByName(HOST), port), 512);
+        port = socket.getLocalPort();
+        serverSocket = socket;
+        executor = Executors.newCachedThreadPool(new NamedThreadFactory("embedded-redis-" + port));
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        });
+    }
+
+    /**
+     * 停止监听并断开所有连接，数据保留
+     */
+    public synchronized void stop() {
+        ServerSocket socket = serverSocket;
+        if (socket == null) {
+            return;
+        }
+        serverSocket = null;
+        close(socket);
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        executor.shutdownNow();
+    }
+
+    public boolean isRunning() {
+        return serverSocket != null;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getHost() {
+        return HOST;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * 与 JedisCluster.getClusterNodes() 的key一致
+     *
+     * @return
+     */
+    public String getAddress() {
+        return HOST + ":" + port;
+    }
+
+    public boolean isMaster() {
+        return master == null;
+    }
+
+    /**
+     * 从节点所属主节点，主节点返回自身
+     *
+     * @return
+     */
+    public EmbeddedRedisNode getMaster() {
+        return master == null ? this : master;
+    }
+
+    public Keyspace getKeyspace() {
+        return keyspace;
+    }
+
+    /**
+     * 仅作用于本节点的故障注入
+     *
+     * @return
+     */
+    public FaultInjector getFaults() {
+        return faults;
+    }
+
+    /**
+     * 已处理的命令数
+     *
+     * @return
+     */
+    public long getCommandCount() {
+        return commands.get();
+    }
+
+    /**
+     * 从节点暂停复制：主节点 INFO replication 中该从节点的 offset 停在当前值，主节点 offset 随写入继续增长
+     */
+    public void pauseReplication() {
+        this.pausedOffset = master.replicationOffset.get();
+    }
+
+    /**
+     * 从节点恢复复制，offset 重新与主节点相同
+     */
+    public void resumeReplication() {
+        this.pausedOffset = -1;
+    }
+
+    /**
+     * 从节点在主节点 INFO replication 中报告的 offset
+     */
+    private long replicaOffset() {
+        long paused = pausedOffset;
+        return paused < 0 ? master.replicationOffset.get() : paused;
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    @Override
+    public String toString() {
+        return getAddress() + (isMaster() ? " master" : " replica of " + master.getAddress());
+    }
+
+    private void accept() {
+        while (true) {
+            ServerSocket socket = serverSocket;
+            if (socket == null) {
+                return;
+            }
+            try {
+                Socket client = socket.accept();
+                client.setTcpNoDelay(true);
+                Connection connection = new Connection(client);
+                connections.add(connection);
+                executor.execute(connection);
+            } catch (Exception e) {
+                if (serverSocket != null) {
+                    logger.warn("embedded redis accept error, node:" + getAddress(), e);
+                }
+                return;
+            }
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * 客户端连接
+     */
+    private class Connection implements Runnable, PubSubHub.Subscriber {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final Set<String> channels = new LinkedHashSet<String>();
+        private final Set<String> patterns = new LinkedHashSet<String>();
+        private boolean readonly;
+        private boolean quit;
+        private volatile boolean closed;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), 65536);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 65536);
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<byte[]> args;
+                while (!closed && (args = Resp.readCommand(in)) != null) {
+                    if (args.isEmpty()) {
+                        continue;
+                    }
+                    Object reply = handle(args);
+                    if (closed) {
+                        break;
+                    }
+                    if (reply != NO_REPLY) {
+                        synchronized (out) {
+                            Resp.write(out, reply);
+                        }
+                    }
+                    if (quit || in.available() == 0) {
+                        delay();
+                        synchronized (out) {
+                            out.flush();
+                        }
+                    }
+                    if (quit) {
+                        break;
+                    }
+                }
+            } catch (SocketException e) {
+                // 连接被关闭
+            } catch (Exception e) {
+                if (!closed) {
+                    logger.warn("embedded redis connection error, node:" + getAddress(), e);
+                }
+            } finally {
+                close();
+            }
+        }
+
+        @Override
+        public void push(List<Object> message) {
+            try {
+                synchronized (out) {
+                    Resp.write(out, message);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            closed = true;
+            connections.remove(this);
+            for (String channel : channels) {
+                cluster.getPubSub().unsubscribe(channel, this);
+            }
+            for (String pattern : patterns) {
+                cluster.getPubSub().punsubscribe(pattern, this);
+            }
+            EmbeddedRedisNode.close(socket);
+        }
+
+        private void delay() throws InterruptedException {
+            long nanos = cluster.getFaults().delayNanos() + faults.delayNanos();
+            if (nanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            }
+        }
+
+        private Object handle(List<byte[]> args) {
+            String name = Resp.string(args.get(0)).toUpperCase(Locale.ROOT);
+            FaultInjector.Action action = cluster.getFaults().before(name);
+            if (action == FaultInjector.Action.NONE) {
+                action = faults.before(name);
+            }
+            if (action == FaultInjector.Action.DISCONNECT) {
+                close();
+                return NO_REPLY;
+            }
+            if (action == FaultInjector.Action.ERROR) {
+                return new RespError("ERR injected failure");
+            }
+            commands.incrementAndGet();
+            try {
+                return dispatch(name, args);
+            } catch (RespError e) {
+                return e;
+            } catch (RuntimeException e) {
+                return new RespError("ERR " + e);
+            }
+        }
+
+        private Object dispatch(String name, List<byte[]> args) {
+            if ((!channels.isEmpty() || !patterns.isEmpty()) && !name.endsWith("SUBSCRIBE")
+                    && !"PING".equals(name) && !"QUIT".equals(name)) {
+                throw new RespError("ERR only (P)SUBSCRIBE / (P)UNSUBSCRIBE / PING / QUIT allowed in this context");
+            }
+            if ("PING".equals(name)) {
+                return args.size() > 1 ? args.get(1) : Resp.PONG;
+            } else if ("ECHO".equals(name)) {
+                return args.get(1);
+            } else if ("QUIT".equals(name)) {
+                quit = true;
+                return Resp.OK;
+            } else if ("SELECT".equals(name)) {
+                if (Resp.number(args.get(1)) != 0) {
+                    throw new RespError("ERR SELECT is not allowed in cluster mode");
+                }
+                return Resp.OK;
+            } else if ("AUTH".equals(name) || "CLIENT".equals(name)) {
+                return Resp.OK;
+            } else if ("INFO".equals(name)) {
+                return Resp.bytes(info());
+            } else if ("READONLY".equals(name)) {
+                readonly = true;
+                return Resp.OK;
+            } else if ("READWRITE".equals(name)) {
+                readonly = false;
+                return Resp.OK;
+            } else if ("ASKING".equals(name)) {
+                return Resp.OK;
+            } else if ("CLUSTER".equals(name)) {
+                return cluster(args);
+            } else if ("PUBLISH".equals(name)) {
+                return cluster.getPubSub().publish(args.get(1), args.get(2));
+            } else if ("SUBSCRIBE".equals(name) || "PSUBSCRIBE".equals(name)) {
+                subscribe("PSUBSCRIBE".equals(name), args);
+                return NO_REPLY;
+            } else if ("UNSUBSCRIBE".equals(name) || "PUNSUBSCRIBE".equals(name)) {
+                unsubscribe("PUNSUBSCRIBE".equals(name), args);
+                return NO_REPLY;
+            } else if ("SCRIPT".equals(name)) {
+                return script(args);
+            }
+            route(name, args);
+            if (isMaster() && (Commands.isWrite(name) || "EVAL".equals(name) || "EVALSHA".equals(name))) {
+                long bytes = 0;
+                for (byte[] arg : args) {
+                    bytes += arg.length;
+                }
+                replicationOffset.addAndGet(bytes);
+            }
+            if ("EVAL".equals(name) || "EVALSHA".equals(name)) {
+                return eval(name, args);
+            }
+            synchronized (keyspace) {
+                return Commands.execute(keyspace, name, args);
+            }
+        }
+
+        private String info() {
+            StringBuilder info = new StringBuilder("# Server\r\nredis_version:3.2.0\r\nredis_mode:cluster\r\n");
+            info.append("# Replication\r\nrole:").append(isMaster() ? "master" : "slave").append("\r\n");
+            if (isMaster()) {
+                List<EmbeddedRedisNode> replicas = cluster.getReplicas(EmbeddedRedisNode.this);
+                info.append("connected_slaves:").append(replicas.size()).append("\r\n");
+                info.append("master_repl_offset:").append(replicationOffset.get()).append("\r\n");
+                for (int i = 0; i < replicas.size(); i++) {
+                    EmbeddedRedisNode replica = replicas.get(i);
+                    info.append("slave").append(i).append(":ip=").append(HOST).append(",port=").append(replica.getPort())
+                            .append(",state=online,offset=").append(replica.replicaOffset()).append(",lag=0\r\n");
+                }
+            } else {
+                info.append("master_host:").append(HOST).append("\r\nmaster_port:").append(master.getPort())
+                        .append("\r\nmaster_link_status:up\r\n");
+            }
+            return info.toString();
+        }
+
+        /**
+         * 槽位检查，不属于本节点时抛出 MOVED
+         */
+        private void route(String name, List<byte[]> args) {
+            List<byte[]> keys = Commands.keys(name, args);
+            if (keys.isEmpty()) {
+                return;
+            }
+            int slot = EmbeddedRedisCluster.slot(keys.get(0));
+            for (int i = 1; i < keys.size(); i++) {
+                if (EmbeddedRedisCluster.slot(keys.get(i)) != slot) {
+                    throw new RespError("CROSSSLOT Keys in request don't hash to the same slot");
+                }
+            }
+            EmbeddedRedisNode owner = cluster.slotOwner(slot);
+            if (owner == null) {
+                throw new RespError("CLUSTERDOWN Hash slot not served");
+            }
+            if (owner != getMaster() || (!isMaster() && (!readonly || Commands.isWrite(name)))) {
+                throw new RespError("MOVED " + slot + " " + owner.getAddress());
+            }
+        }
+
+        private Object eval(String name, List<byte[]> args) {
+            byte[] sha;
+            if ("EVAL".equals(name)) {
+                sha = Resp.bytes(EmbeddedRedisCluster.sha1(args.get(1)));
+                scripts.put(Resp.string(sha), args.get(1));
+            } else {
+                sha = args.get(1);
+            }
+            String key = Resp.string(sha).toLowerCase(Locale.ROOT);
+            if (!scripts.containsKey(key)) {
+                throw new RespError("NOSCRIPT No matching script. Please use EVAL.");
+            }
+            ScriptHandler handler = cluster.scriptHandler(key);
+            if (handler == null) {
+                throw new RespError("ERR embedded redis has no handler for script " + key);
+            }
+            int numkeys = (int) Resp.number(args.get(2));
+            List<byte[]> keys = new ArrayList<byte[]>(args.subList(3, 3 + numkeys));
+            List<byte[]> argv = new ArrayList<byte[]>(args.subList(3 + numkeys, args.size()));
+            synchronized (keyspace) {
+                return handler.eval(keyspace, keys, argv);
+            }
+        }
+
+        private Object script(List<byte[]> args) {
+            String sub = Resp.string(args.get(1)).toUpperCase(Locale.ROOT);
+            if ("LOAD".equals(sub)) {
+                String sha = EmbeddedRedisCluster.sha1(args.get(2));
+                scripts.put(sha, args.get(2));
+                return Resp.bytes(sha);
+            } else if ("EXISTS".equals(sub)) {
+                List<Long> exists = new ArrayList<Long>();
+                for (int i = 2; i < args.size(); i++) {
+                    exists.add(scripts.containsKey(Resp.string(args.get(i)).toLowerCase(Locale.ROOT)) ? 1L : 0L);
+                }
+                return exists;
+            } else if ("FLUSH".equals(sub)) {
+                scripts.clear();
+                return Resp.OK;
+            }
+            throw new RespError("ERR Unknown SCRIPT subcommand '" + sub.toLowerCase(Locale.ROOT) + "'");
+        }
+
+        private Object cluster(List<byte[]> args) {
+            String sub = Resp.string(args.get(1)).toUpperCase(Locale.ROOT);
+            if ("SLOTS".equals(sub)) {
+                return cluster.slotsReply();
+            } else if ("NODES".equals(sub)) {
+                return Resp.bytes(cluster.nodesReply(EmbeddedRedisNode.this));
+            } else if ("INFO".equals(sub)) {
+                return Resp.bytes("cluster_state:ok\r\ncluster_slots_assigned:16384\r\ncluster_known_nodes:"
+                        + cluster.getNodes().size() + "\r\ncluster_size:" + cluster.getMasters().size() + "\r\n");
+            } else if ("MYID".equals(sub)) {
+                return Resp.bytes(id);
+            } else if ("KEYSLOT".equals(sub)) {
+                return (long) EmbeddedRedisCluster.slot(args.get(2));
+            }
+            throw new RespError("ERR Unknown CLUSTER subcommand '" + sub.toLowerCase(Locale.ROOT) + "'");
+        }
+
+        private void subscribe(boolean pattern, List<byte[]> args) {
+            Set<String> names = pattern ? patterns : channels;
+            for (int i = 1; i < args.size(); i++) {
+                String channel = Keyspace.key(args.get(i));
+                if (names.add(channel)) {
+                    if (pattern) {
+                        cluster.getPubSub().psubscribe(channel, this);
+                    } else {
+                        cluster.getPubSub().subscribe(channel, this);
+                    }
+                }
+                ack(pattern ? "psubscribe" : "subscribe", args.get(i));
+            }
+        }
+
+        private void unsubscribe(boolean pattern, List<byte[]> args) {
+            Set<String> names = pattern ? patterns : channels;
+            List<String> targets = new ArrayList<String>();
+            for (int i = 1; i < args.size(); i++) {
+                targets.add(Keyspace.key(args.get(i)));
+            }
+            if (targets.isEmpty()) {
+                targets.addAll(names);
+            }
+            if (targets.isEmpty()) {
+                ack(pattern ? "punsubscribe" : "unsubscribe", null);
+            }
+            for (String channel : targets) {
+                names.remove(channel);
+                if (pattern) {
+                    cluster.getPubSub().punsubscribe(channel, this);
+                } else {
+                    cluster.getPubSub().unsubscribe(channel, this);
+                }
+                ack(pattern ? "punsubscribe" : "unsubscribe", Keyspace.raw(channel));
+            }
+        }
+
+        private void ack(String kind, byte[] channel) {
+            push(Arrays.<Object>asList(Resp.bytes(kind), channel, (long) (channels.size() + patterns.size())));
+        }
+    }
+}
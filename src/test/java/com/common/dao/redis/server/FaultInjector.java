@@ -0,0 +1,119 @@
+package com.common.dao.redis.server;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 延迟与故障注入，运行中可随时修改
+ * 				   延迟按往返计算：节点读完客户端已发送的命令（一次pipeline）后，回复前等待 latency + [0, jitter)
+ * 				   错误与断连按命令计算：以 errorRate 概率回复 "ERR injected failure"，
+ * 				   以 disconnectRate 概率直接关闭连接（客户端得到 JedisConnectionException）
+ * 				   commands 非空时错误与断连只作用于其中的命令
+ */
+public class FaultInjector {
+
+    /**
+     * 单条命令的处理结果
+     */
+    public enum Action {
+        NONE, ERROR, DISCONNECT
+    }
+
+    private volatile long latencyNanos;
+
+    private volatile long jitterNanos;
+
+    private volatile double errorRate;
+
+    private volatile double disconnectRate;
+
+    private volatile Set<String> commands = Collections.emptySet();
+
+    public FaultInjector latency(long latency, TimeUnit unit) {
+        this.latencyNanos = unit.toNanos(latency);
+        return this;
+    }
+
+    public FaultInjector jitter(long jitter, TimeUnit unit) {
+        this.jitterNanos = unit.toNanos(jitter);
+        return this;
+    }
+
+    public FaultInjector errorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    public FaultInjector disconnectRate(double disconnectRate) {
+        this.disconnectRate = disconnectRate;
+        return this;
+    }
+
+    /**
+     * 错误与断连只作用于这些命令，不传时作用于所有命令
+     *
+     * @param names
+     * @return
+     */
+    public FaultInjector only(String... names) {
+        Set<String> set = new HashSet<String>();
+        for (String name : Arrays.asList(names)) {
+            set.add(name.toUpperCase(Locale.ROOT));
+        }
+        this.commands = Collections.unmodifiableSet(set);
+        return this;
+    }
+
+    /**
+     * 清除所有注入
+     */
+    public FaultInjector reset() {
+        latencyNanos = 0;
+        jitterNanos = 0;
+        errorRate = 0;
+        disconnectRate = 0;
+        commands = Collections.emptySet();
+        return this;
+    }
+
+    /**
+     * 命令执行前调用
+     *
+     * @param command 大写命令名
+     * @return
+     */
+    public Action before(String command) {
+        double error = errorRate;
+        double disconnect = disconnectRate;
+        if (error <= 0 && disconnect <= 0) {
+            return Action.NONE;
+        }
+        Set<String> only = commands;
+        if (!only.isEmpty() && !only.contains(command)) {
+            return Action.NONE;
+        }
+        double r = ThreadLocalRandom.current().nextDouble();
+        if (r < disconnect) {
+            return Action.DISCONNECT;
+        }
+        if (r < disconnect + error) {
+            return Action.ERROR;
+        }
+        return Action.NONE;
+    }
+
+    /**
+     * 本次往返的延迟纳秒数
+     *
+     * @return
+     */
+    public long delayNanos() {
+        long jitter = jitterNanos;
+        return latencyNanos + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter) : 0);
+    }
+}
@@ -0,0 +1,454 @@
+package com.common.dao.redis.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * @Description: 单个节点（主节点及其从节点共享）的数据
+ * 				   key 与 hash field 以 ISO-8859-1 字符串保存，与原始字节一一对应；值为 byte[] 或 hash
+ * 				   过期在访问时惰性删除；方法本身不加锁，调用方以本对象为锁保证命令（包括脚本）原子执行
+ * 				   SCAN/HSCAN 游标记录上次返回的key，遍历期间增删不会导致遗漏仍存在的key
+ */
+public class Keyspace {
+
+    private static final int MAX_CURSORS = 10000;
+
+    private final TreeMap<String, Object> data = new TreeMap<String, Object>();
+
+    private final Map<String, Long> expires = new HashMap<String, Long>();
+
+    private final AtomicLong cursorSeq = new AtomicLong();
+
+    private final Map<Long, String> cursors = new LinkedHashMap<Long, String>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            return size() > MAX_CURSORS;
+        }
+    };
+
+    /**
+     * 遍历结果
+     */
+    public static class ScanResult<T> {
+        private final long cursor;
+        private final List<T> items;
+
+        ScanResult(long cursor, List<T> items) {
+            this.cursor = cursor;
+            this.items = items;
+        }
+
+        public long getCursor() {
+            return cursor;
+        }
+
+        public List<T> getItems() {
+            return items;
+        }
+    }
+
+    public static String key(byte[] raw) {
+        return new String(raw, Resp.LATIN1);
+    }
+
+    public static byte[] raw(String key) {
+        return key.getBytes(Resp.LATIN1);
+    }
+
+    // ---------------- 通用 ----------------
+
+    public boolean exists(String key) {
+        return lookup(key) != null;
+    }
+
+    public boolean isHash(String key) {
+        return lookup(key) instanceof TreeMap;
+    }
+
+    public long del(String key) {
+        expires.remove(key);
+        return data.remove(key) == null ? 0 : 1;
+    }
+
+    /**
+     * 剩余过期毫秒数，-2 不存在，-1 未设置过期
+     *
+     * @param key
+     * @return
+     */
+    public long pttl(String key) {
+        if (lookup(key) == null) {
+            return -2;
+        }
+        Long expireAt = expires.get(key);
+        return expireAt == null ? -1 : Math.max(0, expireAt - System.currentTimeMillis());
+    }
+
+    public boolean pexpire(String key, long millis) {
+        if (lookup(key) == null) {
+            return false;
+        }
+        if (millis <= 0) {
+            del(key);
+        } else {
+            expires.put(key, System.currentTimeMillis() + millis);
+        }
+        return true;
+    }
+
+    public boolean persist(String key) {
+        return lookup(key) != null && expires.remove(key) != null;
+    }
+
+    public void rename(String source, String target) {
+        Object value = lookup(source);
+        if (value == null) {
+            throw new RespError("ERR no such key");
+        }
+        Long expireAt = expires.remove(source);
+        data.remove(source);
+        data.put(target, value);
+        if (expireAt != null) {
+            expires.put(target, expireAt);
+        } else {
+            expires.remove(target);
+        }
+    }
+
+    public int size() {
+        purge();
+        return data.size();
+    }
+
+    public void flush() {
+        data.clear();
+        expires.clear();
+        cursors.clear();
+    }
+
+    /**
+     * 匹配的所有key
+     *
+     * @param pattern glob，为null时返回全部
+     * @return
+     */
+    public List<String> keys(String pattern) {
+        purge();
+        Pattern regex = pattern == null ? null : glob(pattern);
+        List<String> keys = new ArrayList<String>();
+        for (String key : data.keySet()) {
+            if (regex == null || regex.matcher(key).matches()) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * 遍历key
+     *
+     * @param cursor 0 表示开始
+     * @param pattern glob，为null时不过滤
+     * @param count 本次检查的key数
+     * @return 游标为0表示遍历结束
+     */
+    public ScanResult<String> scan(long cursor, String pattern, int count) {
+        Pattern regex = pattern == null ? null : glob(pattern);
+        NavigableMap<String, Object> rest = tail(data, cursor);
+        List<String> keys = new ArrayList<String>();
+        String last = null;
+        int checked = 0;
+        long now = System.currentTimeMillis();
+        for (String key : rest.keySet()) {
+            if (checked++ >= count) {
+                break;
+            }
+            last = key;
+            Long expireAt = expires.get(key);
+            if (expireAt != null && expireAt <= now) {
+                continue;
+            }
+            if (regex == null || regex.matcher(key).matches()) {
+                keys.add(key);
+            }
+        }
+        return new ScanResult<String>(next(rest, last), keys);
+    }
+
+    // ---------------- 字符串 ----------------
+
+    public byte[] get(String key) {
+        Object value = lookup(key);
+        if (value != null && !(value instanceof byte[])) {
+            throw RespError.wrongType();
+        }
+        return (byte[]) value;
+    }
+
+    /**
+     * 写入
+     *
+     * @param key
+     * @param value
+     * @param ttlMillis 小于等于0时不过期
+     */
+    public void set(String key, byte[] value, long ttlMillis) {
+        data.put(key, value);
+        if (ttlMillis > 0) {
+            expires.put(key, System.currentTimeMillis() + ttlMillis);
+        } else {
+            expires.remove(key);
+        }
+    }
+
+    public boolean setIfAbsent(String key, byte[] value, long ttlMillis) {
+        if (lookup(key) != null) {
+            return false;
+        }
+        set(key, value, ttlMillis);
+        return true;
+    }
+
+    public long incrBy(String key, long delta) {
+        byte[] value = get(key);
+        long current = value == null ? 0 : Resp.number(value);
+        long result = current + delta;
+        data.put(key, Resp.bytes(Long.toString(result)));
+        return result;
+    }
+
+    public boolean getbit(String key, long offset) {
+        byte[] value = get(key);
+        int index = (int) (offset >>> 3);
+        if (value == null || index >= value.length) {
+            return false;
+        }
+        return (value[index] & (0x80 >>> (offset & 7))) != 0;
+    }
+
+    /**
+     * 置位，返回原值
+     *
+     * @param key
+     * @param offset
+     * @param bit
+     * @return
+     */
+    public boolean setbit(String key, long offset, boolean bit) {
+        if (offset < 0 || offset >= 1L << 32) {
+            throw new RespError("ERR bit offset is not an integer or out of range");
+        }
+        byte[] value = get(key);
+        int index = (int) (offset >>> 3);
+        if (value == null) {
+            value = new byte[index + 1];
+        } else if (index >= value.length) {
+            value = Arrays.copyOf(value, index + 1);
+        }
+        int mask = 0x80 >>> (offset & 7);
+        boolean old = (value[index] & mask) != 0;
+        if (bit) {
+            value[index] |= mask;
+        } else {
+            value[index] &= ~mask;
+        }
+        data.put(key, value);
+        return old;
+    }
+
+    // ---------------- hash ----------------
+
+    public byte[] hget(String key, String field) {
+        TreeMap<String, byte[]> hash = hash(key, false);
+        return hash == null ? null : hash.get(field);
+    }
+
+    /**
+     * 写入字段，返回是否新增
+     *
+     * @param key
+     * @param field
+     * @param value
+     * @return
+     */
+    public boolean hset(String key, String field, byte[] value) {
+        return hash(key, true).put(field, value) == null;
+    }
+
+    public long hdel(String key, String field) {
+        TreeMap<String, byte[]> hash = hash(key, false);
+        if (hash == null || hash.remove(field) == null) {
+            return 0;
+        }
+        if (hash.isEmpty()) {
+            del(key);
+        }
+        return 1;
+    }
+
+    public long hincrBy(String key, String field, long delta) {
+        TreeMap<String, byte[]> hash = hash(key, true);
+        byte[] value = hash.get(field);
+        long result = (value == null ? 0 : Resp.number(value)) + delta;
+        hash.put(field, Resp.bytes(Long.toString(result)));
+        return result;
+    }
+
+    /**
+     * 得到hash，不存在且 create 为false时返回null
+     *
+     * @param key
+     * @param create
+     * @return
+     */
+    public TreeMap<String, byte[]> hash(String key, boolean create) {
+        Object value = lookup(key);
+        if (value == null) {
+            if (!create) {
+                return null;
+            }
+            TreeMap<String, byte[]> hash = new TreeMap<String, byte[]>();
+            data.put(key, hash);
+            return hash;
+        }
+        if (!(value instanceof TreeMap)) {
+            throw RespError.wrongType();
+        }
+        @SuppressWarnings("unchecked")
+        TreeMap<String, byte[]> hash = (TreeMap<String, byte[]>) value;
+        return hash;
+    }
+
+    /**
+     * 遍历hash字段
+     *
+     * @param key
+     * @param cursor
+     * @param pattern
+     * @param count
+     * @return
+     */
+    public ScanResult<Map.Entry<String, byte[]>> hscan(String key, long cursor, String pattern, int count) {
+        TreeMap<String, byte[]> hash = hash(key, false);
+        if (hash == null) {
+            return new ScanResult<Map.Entry<String, byte[]>>(0, new ArrayList<Map.Entry<String, byte[]>>());
+        }
+        Pattern regex = pattern == null ? null : glob(pattern);
+        NavigableMap<String, byte[]> rest = tail(hash, cursor);
+        List<Map.Entry<String, byte[]>> entries = new ArrayList<Map.Entry<String, byte[]>>();
+        String last = null;
+        int checked = 0;
+        for (Map.Entry<String, byte[]> entry : rest.entrySet()) {
+            if (checked++ >= count) {
+                break;
+            }
+            last = entry.getKey();
+            if (regex == null || regex.matcher(entry.getKey()).matches()) {
+                entries.add(entry);
+            }
+        }
+        return new ScanResult<Map.Entry<String, byte[]>>(next(rest, last), entries);
+    }
+
+    // ---------------- 内部 ----------------
+
+    private Object lookup(String key) {
+        Long expireAt = expires.get(key);
+        if (expireAt != null && expireAt <= System.currentTimeMillis()) {
+            expires.remove(key);
+            data.remove(key);
+            return null;
+        }
+        return data.get(key);
+    }
+
+    private void purge() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<String, Long>> it = expires.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Long> entry = it.next();
+            if (entry.getValue() <= now) {
+                data.remove(entry.getKey());
+                it.remove();
+            }
+        }
+    }
+
+    private <V> NavigableMap<String, V> tail(NavigableMap<String, V> map, long cursor) {
+        if (cursor == 0) {
+            return map;
+        }
+        String last = cursors.get(cursor);
+        if (last == null) {
+            throw new RespError("ERR invalid cursor");
+        }
+        return map.tailMap(last, false);
+    }
+
+    private long next(NavigableMap<String, ?> rest, String last) {
+        if (last == null || rest.tailMap(last, false).isEmpty()) {
+            return 0;
+        }
+        long cursor = cursorSeq.incrementAndGet();
+        cursors.put(cursor, last);
+        return cursor;
+    }
+
+    /**
+     * redis glob 转正则：* ? [...] 及 \ 转义
+     *
+     * @param glob
+     * @return
+     */
+    static Pattern glob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        boolean inClass = false;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '\\' && i + 1 < glob.length()) {
+                char escaped = glob.charAt(++i);
+                if (!inClass) {
+                    regex.append(Pattern.quote(String.valueOf(escaped)));
+                } else if (Character.isLetterOrDigit(escaped)) {
+                    regex.append(escaped);
+                } else {
+                    regex.append('\\').append(escaped);
+                }
+            } else if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                    regex.append(']');
+                } else if (c == '^' && glob.charAt(i - 1) == '[') {
+                    regex.append('^');
+                } else if (c == '-') {
+                    regex.append('-');
+                } else if (Character.isLetterOrDigit(c)) {
+                    regex.append(c);
+                } else {
+                    regex.append('\\').append(c);
+                }
+            } else if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else if (c == '[') {
+                inClass = true;
+                regex.append('[');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        if (inClass) {
+            regex.append(']');
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+}
@@ -0,0 +1,103 @@
+package com.common.dao.redis.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * @Description: 集群范围的发布订阅，与redis集群一致：任一节点 PUBLISH 的消息投递给所有节点上的订阅者
+ */
+class PubSubHub {
+
+    /**
+     * 订阅者（客户端连接）
+     */
+    interface Subscriber {
+
+        /**
+         * 推送消息，失败时由实现方关闭连接
+         *
+         * @param message
+         */
+        void push(List<Object> message);
+    }
+
+    private final ConcurrentHashMap<String, Set<Subscriber>> channels = new ConcurrentHashMap<String, Set<Subscriber>>();
+
+    private final ConcurrentHashMap<String, Set<Subscriber>> patterns = new ConcurrentHashMap<String, Set<Subscriber>>();
+
+    void subscribe(String channel, Subscriber subscriber) {
+        members(channels, channel).add(subscriber);
+    }
+
+    void unsubscribe(String channel, Subscriber subscriber) {
+        Set<Subscriber> set = channels.get(channel);
+        if (set != null) {
+            set.remove(subscriber);
+        }
+    }
+
+    void psubscribe(String pattern, Subscriber subscriber) {
+        members(patterns, pattern).add(subscriber);
+    }
+
+    void punsubscribe(String pattern, Subscriber subscriber) {
+        Set<Subscriber> set = patterns.get(pattern);
+        if (set != null) {
+            set.remove(subscriber);
+        }
+    }
+
+    /**
+     * 发布，返回收到消息的订阅数
+     *
+     * @param channel
+     * @param message
+     * @return
+     */
+    long publish(byte[] channel, byte[] message) {
+        String name = Keyspace.key(channel);
+        long receivers = 0;
+        Set<Subscriber> set = channels.get(name);
+        if (set != null) {
+            for (Subscriber subscriber : set) {
+                List<Object> push = new ArrayList<Object>(3);
+                push.add(Resp.bytes("message"));
+                push.add(channel);
+                push.add(message);
+                subscriber.push(push);
+                receivers++;
+            }
+        }
+        for (Map.Entry<String, Set<Subscriber>> entry : patterns.entrySet()) {
+            if (entry.getValue().isEmpty() || !Keyspace.glob(entry.getKey()).matcher(name).matches()) {
+                continue;
+            }
+            for (Subscriber subscriber : entry.getValue()) {
+                List<Object> push = new ArrayList<Object>(4);
+                push.add(Resp.bytes("pmessage"));
+                push.add(Keyspace.raw(entry.getKey()));
+                push.add(channel);
+                push.add(message);
+                subscriber.push(push);
+                receivers++;
+            }
+        }
+        return receivers;
+    }
+
+    private static Set<Subscriber> members(ConcurrentHashMap<String, Set<Subscriber>> map, String name) {
+        Set<Subscriber> set = map.get(name);
+        if (set == null) {
+            Set<Subscriber> created = ConcurrentHashMap.newKeySet();
+            set = map.putIfAbsent(name, created);
+            if (set == null) {
+                set = created;
+            }
+        }
+        return set;
+    }
+}
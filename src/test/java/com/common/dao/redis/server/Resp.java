@@ -0,0 +1,184 @@
+package com.common.dao.redis.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * @Description: RESP 协议编解码
+ * 				   请求只支持多条批量字符串(*N $len ...)与内联命令；
+ * 				   回复按Java类型编码：null 空批量，byte[] 批量，Long/Integer 整数，Status 状态，
+ * 				   RespError 错误，Collection 数组，NULL_ARRAY 空数组(*-1)
+ */
+public final class Resp {
+
+    public static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * key与二进制值互转使用的无损编码
+     */
+    public static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+    public static final Status OK = new Status("OK");
+
+    public static final Status PONG = new Status("PONG");
+
+    public static final Object NULL_ARRAY = new Object();
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    /**
+     * 状态回复(+前缀)
+     */
+    public static final class Status {
+        private final String text;
+
+        public Status(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    private Resp() {
+    }
+
+    /**
+     * 读取一条命令，连接关闭时返回null
+     *
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static List<byte[]> readCommand(InputStream in) throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            return null;
+        }
+        if (b != '*') {
+            String line = (char) b + readLine(in);
+            List<byte[]> args = new ArrayList<byte[]>();
+            for (String part : line.trim().split("\\s+")) {
+                if (!part.isEmpty()) {
+                    args.add(part.getBytes(UTF8));
+                }
+            }
+            return args;
+        }
+        int count = Integer.parseInt(readLine(in));
+        List<byte[]> args = new ArrayList<byte[]>(Math.max(count, 0));
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("protocol error: expected '$'");
+            }
+            int len = Integer.parseInt(readLine(in));
+            byte[] arg = new byte[len];
+            int off = 0;
+            while (off < len) {
+                int n = in.read(arg, off, len - off);
+                if (n == -1) {
+                    throw new EOFException();
+                }
+                off += n;
+            }
+            if (in.read() != '\r' || in.read() != '\n') {
+                throw new IOException("protocol error: expected CRLF");
+            }
+            args.add(arg);
+        }
+        return args;
+    }
+
+    /**
+     * 写出回复
+     *
+     * @param out
+     * @param reply
+     * @throws IOException
+     */
+    public static void write(OutputStream out, Object reply) throws IOException {
+        if (reply == null) {
+            out.write('$');
+            writeNumber(out, -1);
+        } else if (reply instanceof byte[]) {
+            byte[] bytes = (byte[]) reply;
+            out.write('$');
+            writeNumber(out, bytes.length);
+            out.write(bytes);
+            out.write(CRLF);
+        } else if (reply instanceof Long || reply instanceof Integer) {
+            out.write(':');
+            writeNumber(out, ((Number) reply).longValue());
+        } else if (reply instanceof Boolean) {
+            out.write(':');
+            writeNumber(out, (Boolean) reply ? 1 : 0);
+        } else if (reply instanceof Status) {
+            out.write('+');
+            out.write(reply.toString().getBytes(UTF8));
+            out.write(CRLF);
+        } else if (reply instanceof RespError) {
+            out.write('-');
+            out.write(((RespError) reply).getMessage().replace('\r', ' ').replace('\n', ' ').getBytes(UTF8));
+            out.write(CRLF);
+        } else if (reply instanceof String) {
+            write(out, ((String) reply).getBytes(UTF8));
+        } else if (reply instanceof Collection) {
+            Collection<?> items = (Collection<?>) reply;
+            out.write('*');
+            writeNumber(out, items.size());
+            for (Object item : items) {
+                write(out, item);
+            }
+        } else if (reply == NULL_ARRAY) {
+            out.write('*');
+            writeNumber(out, -1);
+        } else {
+            throw new IllegalArgumentException("unsupported reply type: " + reply.getClass());
+        }
+    }
+
+    public static String string(byte[] bytes) {
+        return new String(bytes, UTF8);
+    }
+
+    public static byte[] bytes(String text) {
+        return text.getBytes(UTF8);
+    }
+
+    public static long number(byte[] bytes) {
+        try {
+            return Long.parseLong(string(bytes));
+        } catch (NumberFormatException e) {
+            throw RespError.notInteger();
+        }
+    }
+
+    private static void writeNumber(OutputStream out, long value) throws IOException {
+        out.write(Long.toString(value).getBytes(LATIN1));
+        out.write(CRLF);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(16);
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b == -1) {
+                throw new EOFException();
+            }
+            line.write(b);
+        }
+        if (in.read() != '\n') {
+            throw new IOException("protocol error: expected LF");
+        }
+        return new String(line.toByteArray(), LATIN1);
+    }
+}
@@ -0,0 +1,29 @@
+package com.common.dao.redis.server;
+
+/**
+ * @Description: 以RESP错误回复(-前缀)返回给客户端的异常，message 即回复内容，如 "ERR ..."、"MOVED 866 127.0.0.1:7001"
+ */
+public class RespError extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RespError(String message) {
+        super(message);
+    }
+
+    public static RespError arity(String command) {
+        return new RespError("ERR wrong number of arguments for '" + command.toLowerCase() + "' command");
+    }
+
+    public static RespError wrongType() {
+        return new RespError("WRONGTYPE Operation against a key holding the wrong kind of value");
+    }
+
+    public static RespError notInteger() {
+        return new RespError("ERR value is not an integer or out of range");
+    }
+
+    public static RespError syntax() {
+        return new RespError("ERR syntax error");
+    }
+}
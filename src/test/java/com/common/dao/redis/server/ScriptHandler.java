@@ -0,0 +1,20 @@
+package com.common.dao.redis.server;
+
+import java.util.List;
+
+/**
+ * @Description: 脚本的Java实现
+ * 				   节点不解释lua，EVAL/EVALSHA 按脚本SHA1找到注册的实现执行，执行期间持有 keyspace 锁
+ */
+public interface ScriptHandler {
+
+    /**
+     * 执行脚本
+     *
+     * @param keyspace 脚本key所在节点的数据
+     * @param keys KEYS
+     * @param args ARGV
+     * @return 回复，类型同 Resp.write；lua 的 false 对应 null
+     */
+    Object eval(Keyspace keyspace, List<byte[]> keys, List<byte[]> args);
+}